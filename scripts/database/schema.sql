@@ -25,6 +25,7 @@ CREATE TABLE walls(
     WallDescription VARCHAR(100),
     WallContent     MEDIUMTEXT      NOT NULL,
     image_file_name VARCHAR(255)    NOT NULL,
+    image_placeholder VARCHAR(32),
     PRIMARY KEY (WID),
     FOREIGN KEY (GID) REFERENCES gyms(GID)
 )AUTO_INCREMENT = 1;
@@ -36,7 +37,11 @@ CREATE TABLE routes(
     Difficulty      INTEGER     NOT NULL,
     route_content    MEDIUMTEXT  NOT NULL,
     image_file_name VARCHAR(255),
+    image_placeholder VARCHAR(32),
+    hold_fingerprint CHAR(64),
     PRIMARY KEY (RID),
+    UNIQUE KEY route_fingerprint (hold_fingerprint, creator_user_id, Difficulty),
+    KEY route_image (image_file_name),
     FOREIGN KEY (WID) REFERENCES walls(WID),
     FOREIGN KEY (creator_user_id) REFERENCES users(UID)
 )AUTO_INCREMENT = 1;
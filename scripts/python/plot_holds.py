@@ -39,7 +39,7 @@ def get_wall_image(
     wall_image_directory_of_route: str,
     wall_image_filename_of_route: str,
 ) -> Image:
-    """Open the wall image file. Exits if the file does not exist."""
+    """Open the wall image file. Raises if the file does not exist."""
     # parse the wall image path
     wall_image_path = os.path.join(
         wall_image_directory_of_route, wall_image_filename_of_route
@@ -47,8 +47,7 @@ def get_wall_image(
 
     # ensure file exists
     if not os.path.isfile(wall_image_path):
-        print("Wall image file does not exist")
-        sys.exit(1)
+        raise FileNotFoundError("Wall image file does not exist")
 
     # open the wall image
     return Image.open(wall_image_path)
@@ -67,6 +66,31 @@ def create_route_image_filepath(
     return os.path.join(route_image_directory_in, route_image_filename)
 
 
+def create_route_image(
+    wall_image_filename_in: str,
+    wall_image_directory_in: str,
+    route_image_directory_in: str,
+    route_id_in: str,
+    holds: List[dict],
+) -> str:
+    """Create and save a route image, returning its file path."""
+    # get the wall image, create the route image
+    wall_image_of_route: Image = get_wall_image(
+        wall_image_directory_in, wall_image_filename_in
+    )
+    route_image_out: Image = create_blank_route_image(wall_image_of_route)
+
+    # create the route image path
+    route_image_path_out: str = create_route_image_filepath(
+        route_id_in, wall_image_filename_in, route_image_directory_in
+    )
+
+    # plot the holds on the wall image, save the route image
+    plot_holds(wall_image_of_route, route_image_out, holds)
+    route_image_out.save(route_image_path_out)
+    return route_image_path_out
+
+
 if __name__ == "__main__":
     # ensure we have all 5 arguments
     if len(sys.argv) != 6:
@@ -87,17 +111,15 @@ if __name__ == "__main__":
         holds_json,
     ) = tuple(sys.argv[1:])
 
-    # get the wall image, create the route image
-    wall_image: Image = get_wall_image(wall_image_directory, wall_image_filename)
-    route_image: Image = create_blank_route_image(wall_image)
-
-    # create the route image path
-    route_image_path: str = create_route_image_filepath(
-        route_id, wall_image_filename, route_image_directory
-    )
-
-    # plot the holds on the wall image
-    plot_holds(wall_image, route_image, json.loads(holds_json))
-
-    # save the route image
-    route_image.save(route_image_path)
+    # plot the holds on the wall image, save the route image
+    try:
+        create_route_image(
+            wall_image_filename,
+            wall_image_directory,
+            route_image_directory,
+            route_id,
+            json.loads(holds_json),
+        )
+    except FileNotFoundError as error:
+        print(error)
+        sys.exit(1)
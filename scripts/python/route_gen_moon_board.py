@@ -29,6 +29,41 @@ static_warwick_route = json.dumps(
 # storing cached routes for the Warwick MoonBoard
 WARWICK_CACHED_ROUTES_FILENAME = "warwick-routes-cached-v4-9.json"
 
+# parsed route caches, by path (kept for the lifetime of a worker)
+_parsed_caches: Dict[str, Dict[str, List[List[dict]]]] = {}
+
+
+def generate_route(grade: int, cache_path: str = "") -> List[dict]:
+    """Pick a random route of a grade (V1-V14), parsing the cache once."""
+    # ensure grade is in range V1-V14
+    if grade < 1 or grade > 14:
+        raise ValueError("Grade must be between 1 and 14")
+
+    # if grade is 1-3 or 10-14, use the static route
+    if grade <= 3 or grade >= 10:
+        return json.loads(static_warwick_route)
+
+    # default to the cache next to this script
+    if not cache_path:
+        cache_path = os.path.join(
+            os.path.dirname(os.path.abspath(__file__)),
+            WARWICK_CACHED_ROUTES_FILENAME,
+        )
+
+    # load Warwick wall route cache
+    if cache_path not in _parsed_caches:
+        if not os.path.isfile(cache_path):
+            raise FileNotFoundError("Cache file does not exist")
+        _parsed_caches[cache_path] = parse_json_file(cache_path)
+    routes = _parsed_caches[cache_path]
+    assert len(routes) != 0
+
+    # pick a random route of grade from the cache
+    graded_routes: List[List[dict]] = routes[str(grade)]
+    assert len(graded_routes) != 0
+    return random.choice(graded_routes)
+
+
 if __name__ == "__main__":
     # ensure we have both arguments
     if len(sys.argv) != 2:
@@ -0,0 +1,69 @@
+"""Long-lived worker: call script functions over line-delimited JSON.
+
+Each request is one line on stdin:
+    {"id": 1, "script": "/path/to/script.py", "function": "name",
+     "args": {...}}
+and each response is one line on stdout:
+    {"id": 1, "ok": true, "result": ...}
+    {"id": 1, "ok": false, "error": "..."}
+A request without a script is a health check (ping), and a request
+without a function only imports the script (warm-up).
+"""
+import importlib.util
+import json
+import sys
+from types import ModuleType
+from typing import Any, Dict
+
+# loaded scripts, by path (imports are paid once per worker)
+_modules: Dict[str, ModuleType] = {}
+
+
+def load_script(script_path: str) -> ModuleType:
+    """Import a script as a module, once per path."""
+    if script_path not in _modules:
+        spec = importlib.util.spec_from_file_location(
+            "worker_script_" + str(len(_modules)), script_path
+        )
+        if spec is None or spec.loader is None:
+            raise ImportError("Cannot load script " + script_path)
+        module = importlib.util.module_from_spec(spec)
+        spec.loader.exec_module(module)  # type: ignore
+        _modules[script_path] = module
+    return _modules[script_path]
+
+
+def handle(request: Dict[str, Any]) -> Any:
+    """Handle one request, returning the function result."""
+    script_path = request.get("script")
+    if not script_path:
+        return "pong"
+    module = load_script(script_path)
+    if "function" not in request:
+        return "loaded"
+    function = getattr(module, request["function"])
+    return function(**request.get("args", {}))
+
+
+def serve() -> None:
+    """Serve requests from stdin until it is closed."""
+    # keep stray prints in scripts off the response stream
+    responses = sys.stdout
+    sys.stdout = sys.stderr
+
+    for line in sys.stdin:
+        if not line.strip():
+            continue
+        request_id = None
+        try:
+            request = json.loads(line)
+            request_id = request.get("id")
+            response = {"id": request_id, "ok": True, "result": handle(request)}
+        except Exception as error:  # pylint: disable=broad-except
+            response = {"id": request_id, "ok": False, "error": repr(error)}
+        responses.write(json.dumps(response) + "\n")
+        responses.flush()
+
+
+if __name__ == "__main__":
+    serve()
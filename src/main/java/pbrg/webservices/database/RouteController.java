@@ -8,7 +8,9 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import pbrg.webservices.models.Route;
@@ -16,6 +18,9 @@ import pbrg.webservices.models.RouteFull;
 
 public final class RouteController {
 
+    /** Number of updates sent to the database in one batch. */
+    static final int UPDATE_BATCH_SIZE = 500;
+
     /** Static class, no need to instantiate. */
     private RouteController() {
         throw new IllegalStateException("Utility class");
@@ -35,7 +40,8 @@ public final class RouteController {
         try (
             Connection connection = getDataSource().getConnection();
             PreparedStatement pst = connection.prepareStatement(
-                "SELECT * "
+                "SELECT routes.RID, routes.Difficulty, "
+                    + "routes.image_placeholder "
                     + "FROM routes "
                     + "INNER JOIN walls ON routes.WID = walls.WID "
                     + "INNER JOIN gyms ON walls.GID = gyms.GID "
@@ -50,7 +56,8 @@ public final class RouteController {
                 routes.add(new Route(
                     rs.getInt("RID"),
                     rs.getInt("Difficulty"),
-                    "Route #" + rs.getInt("RID")
+                    "Route #" + rs.getInt("RID"),
+                    rs.getString("image_placeholder")
                 ));
             }
         } catch (SQLException e) {
@@ -59,6 +66,41 @@ public final class RouteController {
         return routes;
     }
 
+    /**
+     * Get the image file names of a user's routes in a gym.
+     *
+     * @param gymId  gym ID
+     * @param userId creator user ID
+     * @return image file names by route ID (null for routes without an
+     * image), null if they could not be read
+     */
+    public static @Nullable Map<Integer, String> getRouteImageFileNames(
+        final int gymId, final int userId
+    ) {
+        Map<Integer, String> imageFileNames = new HashMap<>();
+        try (
+            Connection connection = getDataSource().getConnection();
+            PreparedStatement pst = connection.prepareStatement(
+                "SELECT routes.RID, routes.image_file_name "
+                    + "FROM routes "
+                    + "INNER JOIN walls ON routes.WID = walls.WID "
+                    + "WHERE walls.GID = ? AND routes.creator_user_id = ?"
+            )
+        ) {
+            pst.setInt(1, gymId);
+            pst.setInt(2, userId);
+            ResultSet rs = pst.executeQuery();
+            while (rs.next()) {
+                imageFileNames.put(
+                    rs.getInt("RID"), rs.getString("image_file_name")
+                );
+            }
+        } catch (SQLException e) {
+            return null;
+        }
+        return imageFileNames;
+    }
+
     /**
      * Get a route by its ID.
      * @param routeId route ID
@@ -95,6 +137,71 @@ public final class RouteController {
         return route;
     }
 
+    /**
+     * Get every route, to build in-memory indexes from.
+     * @return all routes, null if they could not be read
+     */
+    public static @Nullable List<RouteFull> getAllRoutes() {
+        List<RouteFull> routes = new ArrayList<>();
+        try (
+            Connection connection = getDataSource().getConnection();
+            PreparedStatement pst = connection.prepareStatement(
+                "SELECT * "
+                    + "FROM routes"
+            )
+        ) {
+            ResultSet rs = pst.executeQuery();
+            while (rs.next()) {
+                routes.add(new RouteFull(
+                    rs.getInt("RID"),
+                    rs.getInt("WID"),
+                    rs.getInt("creator_user_id"),
+                    rs.getInt("Difficulty"),
+                    rs.getString("route_content"),
+                    rs.getString("image_file_name")
+                ));
+            }
+        } catch (SQLException e) {
+            return null;
+        }
+        return routes;
+    }
+
+    /**
+     * Get the routes on a wall, e.g. to render their images again.
+     * @param wallId wall identifier
+     * @return the wall's routes, null if they could not be read
+     */
+    public static @Nullable List<RouteFull> getRoutesOnWall(
+        final int wallId
+    ) {
+        List<RouteFull> routes = new ArrayList<>();
+        try (
+            Connection connection = getDataSource().getConnection();
+            PreparedStatement pst = connection.prepareStatement(
+                "SELECT * "
+                    + "FROM routes "
+                    + "WHERE WID = ?"
+            )
+        ) {
+            pst.setInt(1, wallId);
+            ResultSet rs = pst.executeQuery();
+            while (rs.next()) {
+                routes.add(new RouteFull(
+                    rs.getInt("RID"),
+                    rs.getInt("WID"),
+                    rs.getInt("creator_user_id"),
+                    rs.getInt("Difficulty"),
+                    rs.getString("route_content"),
+                    rs.getString("image_file_name")
+                ));
+            }
+        } catch (SQLException e) {
+            return null;
+        }
+        return routes;
+    }
+
     /**
      * Check if a user, by ID, has created a route, by ID.
      *
@@ -197,20 +304,42 @@ public final class RouteController {
     public static Integer addRoute(
         final String routeContent, final int difficulty,
         final int creatorUserId, final int wallId
+    ) {
+        return addRoute(routeContent, difficulty, creatorUserId, wallId, null);
+    }
+
+    /**
+     * Create a new route (without image) in the database, with the
+     * fingerprint of its holds. A user has at most one route of a
+     * difficulty per fingerprint.
+     * @param routeContent route content (list of holds)
+     * @param difficulty route difficulty
+     * @param creatorUserId creator user identifier
+     * @param wallId wall identifier
+     * @param holdFingerprint fingerprint of the wall and holds, or null
+     * @return route identifier, null if not created (e.g. a duplicate)
+     */
+    public static Integer addRoute(
+        final String routeContent, final int difficulty,
+        final int creatorUserId, final int wallId,
+        final @Nullable String holdFingerprint
     ) {
         Integer routeId = null;
         try (
             Connection connection = getDataSource().getConnection();
             PreparedStatement pst = connection.prepareStatement(
                 "INSERT INTO routes "
-                    + "(route_content, difficulty, creator_user_id, WID) "
-                    + "VALUES (?, ?, ?, ?) ",
+                    + "(route_content, difficulty, creator_user_id, WID, "
+                    + "hold_fingerprint) "
+                    + "VALUES (?, ?, ?, ?, ?) ",
                 Statement.RETURN_GENERATED_KEYS
             )
         ) {
-            Object[] values =
-                {routeContent, difficulty, creatorUserId, wallId};
-            String[] types = {"String", "int", "int", "int"};
+            Object[] values = {
+                routeContent, difficulty, creatorUserId, wallId,
+                holdFingerprint
+            };
+            String[] types = {"String", "int", "int", "int", "String"};
 
             for (int i = 0; i < values.length; i++) {
                 Object value = values[i];
@@ -236,7 +365,98 @@ public final class RouteController {
     }
 
     /**
-     * Add a route image to an existing route.
+     * Get a user's route of a difficulty with a hold fingerprint.
+     * @param holdFingerprint fingerprint of the wall and holds
+     * @param creatorUserId creator user identifier
+     * @param difficulty route difficulty
+     * @return route identifier, null if none
+     */
+    public static @Nullable Integer getRouteIdByFingerprint(
+        final @NotNull String holdFingerprint,
+        final int creatorUserId, final int difficulty
+    ) {
+        Integer routeId = null;
+        try (
+            Connection connection = getDataSource().getConnection();
+            PreparedStatement pst = connection.prepareStatement(
+                "SELECT routes.RID "
+                    + "FROM routes "
+                    + "WHERE hold_fingerprint = ? "
+                    + "AND creator_user_id = ? AND Difficulty = ?"
+            )
+        ) {
+            pst.setString(1, holdFingerprint);
+            pst.setInt(2, creatorUserId);
+            pst.setInt(3, difficulty);
+            ResultSet rs = pst.executeQuery();
+            if (rs.next()) {
+                routeId = rs.getInt("RID");
+            }
+        } catch (SQLException e) {
+            return null;
+        }
+        return routeId;
+    }
+
+    /**
+     * Count the routes referencing a route image. Routes on the same
+     * holds of a wall share one image file (see RouteUtils).
+     * @param imageFileName route image file name
+     * @return the number of routes, null if they could not be counted
+     */
+    public static @Nullable Integer countRouteImageReferences(
+        final @NotNull String imageFileName
+    ) {
+        try (
+            Connection connection = getDataSource().getConnection();
+            PreparedStatement pst = connection.prepareStatement(
+                "SELECT COUNT(*) AS refs "
+                    + "FROM routes "
+                    + "WHERE image_file_name = ?"
+            )
+        ) {
+            pst.setString(1, imageFileName);
+            ResultSet rs = pst.executeQuery();
+            return rs.next() ? rs.getInt("refs") : 0;
+        } catch (SQLException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Get the placeholder of a route image, stored with any route
+     * referencing it.
+     * @param imageFileName route image file name
+     * @return the placeholder, null if none is stored
+     */
+    public static @Nullable String getRouteImagePlaceholder(
+        final @NotNull String imageFileName
+    ) {
+        String placeholder = null;
+        try (
+            Connection connection = getDataSource().getConnection();
+            PreparedStatement pst = connection.prepareStatement(
+                "SELECT routes.image_placeholder "
+                    + "FROM routes "
+                    + "WHERE image_file_name = ? "
+                    + "AND image_placeholder IS NOT NULL "
+                    + "LIMIT 1"
+            )
+        ) {
+            pst.setString(1, imageFileName);
+            ResultSet rs = pst.executeQuery();
+            if (rs.next()) {
+                placeholder = rs.getString("image_placeholder");
+            }
+        } catch (SQLException e) {
+            return null;
+        }
+        return placeholder;
+    }
+
+    /**
+     * Add a route image to an existing route, leaving its placeholder
+     * unchanged.
      * @param routeId route identifier
      * @param imageFileName route image file name
      * @return true if image was added, false otherwise
@@ -265,6 +485,104 @@ public final class RouteController {
         return updated;
     }
 
+    /**
+     * Add a route image, and its placeholder, to an existing route.
+     * @param routeId route identifier
+     * @param imageFileName route image file name
+     * @param imagePlaceholder route image placeholder, or null
+     * @return true if image was added, false otherwise
+     */
+    public static boolean addImageToRoute(
+        final int routeId, final String imageFileName,
+        final @Nullable String imagePlaceholder
+    ) {
+        boolean updated;
+        try (
+            Connection connection = getDataSource().getConnection();
+            PreparedStatement pst = connection.prepareStatement(
+                "UPDATE routes "
+                    + "SET image_file_name = ?, image_placeholder = ? "
+                    + "WHERE RID = ?"
+            )
+        ) {
+            pst.setString(1, imageFileName);
+            pst.setString(2, imagePlaceholder);
+            pst.setInt(3, routeId);
+
+            // the number of rows affected by the update query
+            int rowsAffected = pst.executeUpdate();
+            updated = rowsAffected > 0;
+        } catch (SQLException e) {
+            return false;
+        }
+        return updated;
+    }
+
+    /**
+     * Set the images of many routes, without placeholders, in batched
+     * statements of one transaction: all are set, or none.
+     * @param imageFileNames route image file names (null to clear) by
+     * route identifier
+     * @return true if the images were set, false otherwise
+     */
+    public static boolean setRouteImages(
+        final @NotNull Map<Integer, String> imageFileNames
+    ) {
+        return setRouteImages(imageFileNames, Map.of());
+    }
+
+    /**
+     * Set the images of many routes, and their placeholders, in batched
+     * statements of one transaction: all are set, or none.
+     * @param imageFileNames route image file names (null to clear) by
+     * route identifier
+     * @param imagePlaceholders route image placeholders by route image
+     * file name; images without one get none
+     * @return true if the images were set, false otherwise
+     */
+    public static boolean setRouteImages(
+        final @NotNull Map<Integer, String> imageFileNames,
+        final @NotNull Map<String, String> imagePlaceholders
+    ) {
+        if (imageFileNames.isEmpty()) {
+            return true;
+        }
+        try (Connection connection = getDataSource().getConnection()) {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try (PreparedStatement pst = connection.prepareStatement(
+                "UPDATE routes "
+                    + "SET image_file_name = ?, image_placeholder = ? "
+                    + "WHERE RID = ?"
+            )) {
+                int batched = 0;
+                for (Map.Entry<Integer, String> image
+                    : imageFileNames.entrySet()) {
+                    pst.setString(1, image.getValue());
+                    pst.setString(2, image.getValue() == null
+                        ? null : imagePlaceholders.get(image.getValue()));
+                    pst.setInt(3, image.getKey());
+                    pst.addBatch();
+                    if (++batched % UPDATE_BATCH_SIZE == 0) {
+                        pst.executeBatch();
+                    }
+                }
+                if (batched % UPDATE_BATCH_SIZE != 0) {
+                    pst.executeBatch();
+                }
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException e) {
+            return false;
+        }
+        return true;
+    }
+
     /**
      * Delete a route from the database only.
      * Note does NOT delete the route image.
@@ -93,6 +93,92 @@ public final class WallController {
         return fileName;
     }
 
+    /**
+     * Get a wall image's placeholder by wall id.
+     * @param wallId the wall id
+     * @return the placeholder, null if none is stored (or the wall does
+     * not exist)
+     */
+    public static @Nullable String getWallImagePlaceholder(
+        final int wallId
+    ) {
+        String placeholder = null;
+        try (
+            Connection connection = getDataSource().getConnection();
+            PreparedStatement pst = connection.prepareStatement(
+                "SELECT walls.image_placeholder "
+                    + "FROM walls "
+                    + "WHERE WID = ?"
+            )
+        ) {
+            pst.setInt(1, wallId);
+            ResultSet rs = pst.executeQuery();
+
+            // get the placeholder of the wall image
+            if (rs.next()) {
+                placeholder = rs.getString("image_placeholder");
+            }
+        } catch (SQLException e) {
+            return null;
+        }
+        return placeholder;
+    }
+
+    /**
+     * Set a wall image's placeholder by wall id.
+     * @param wallId the wall id
+     * @param placeholder the placeholder, or null to clear it
+     * @return true if the placeholder was set, false otherwise
+     */
+    public static boolean setWallImagePlaceholder(
+        final int wallId, @Nullable final String placeholder
+    ) {
+        boolean updated;
+        try (
+            Connection connection = getDataSource().getConnection();
+            PreparedStatement pst = connection.prepareStatement(
+                "UPDATE walls "
+                    + "SET image_placeholder = ? "
+                    + "WHERE WID = ?"
+            )
+        ) {
+            pst.setString(1, placeholder);
+            pst.setInt(2, wallId);
+            updated = pst.executeUpdate() > 0;
+        } catch (SQLException e) {
+            return false;
+        }
+        return updated;
+    }
+
+    /**
+     * Get a wall's content by wall id.
+     * @param wallId the wall id
+     * @return the wall content, null if the wall does not exist
+     */
+    public static @Nullable String getWallContent(final int wallId) {
+        String content = null;
+        try (
+            Connection connection = getDataSource().getConnection();
+            PreparedStatement pst = connection.prepareStatement(
+                "SELECT walls.WallContent "
+                    + "FROM walls "
+                    + "WHERE WID = ?"
+            )
+        ) {
+            pst.setInt(1, wallId);
+            ResultSet rs = pst.executeQuery();
+
+            // get the wall content
+            if (rs.next()) {
+                content = rs.getString("WallContent");
+            }
+        } catch (SQLException e) {
+            return null;
+        }
+        return content;
+    }
+
     /**
      * Returns the wall image file name based on the route ID.
      * @param routeId the route ID
@@ -1,5 +1,7 @@
 package pbrg.webservices.models;
 
+import org.jetbrains.annotations.Nullable;
+
 public class Route {
 
     /**
@@ -17,6 +19,11 @@ public class Route {
      */
     private final String routeName;
 
+    /**
+     * Route image placeholder, null if the image is not yet rendered.
+     */
+    private final String imagePlaceholder;
+
     /**
      * Construct a route using its id, difficulty, and name.
      *
@@ -28,10 +35,29 @@ public class Route {
         final int pRouteID,
         final int pDifficulty,
         final String pRouteName
+    ) {
+        this(pRouteID, pDifficulty, pRouteName, null);
+    }
+
+    /**
+     * Construct a route using its id, difficulty, name, and image
+     * placeholder.
+     *
+     * @param pRouteID          route ID
+     * @param pDifficulty       difficulty
+     * @param pRouteName        route name
+     * @param pImagePlaceholder image placeholder, or null
+     */
+    public Route(
+        final int pRouteID,
+        final int pDifficulty,
+        final String pRouteName,
+        @Nullable final String pImagePlaceholder
     ) {
         this.routeID = pRouteID;
         this.difficulty = pDifficulty;
         this.routeName = pRouteName;
+        this.imagePlaceholder = pImagePlaceholder;
     }
 
     /**
@@ -60,4 +86,13 @@ public class Route {
     public final String getRouteName() {
         return routeName;
     }
+
+    /**
+     * Get route image placeholder (see ImagePlaceholders).
+     *
+     * @return image placeholder, null if the image is not yet rendered
+     */
+    public final @Nullable String getImagePlaceholder() {
+        return imagePlaceholder;
+    }
 }
@@ -0,0 +1,292 @@
+package pbrg.webservices.servlets;
+
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Guards an async request's response against use after its AsyncContext
+ * completes, when the container recycles it for other requests. The
+ * handler writes through a guarded view of the response; the timeout and
+ * the handler each finish the request through the guard, and whichever
+ * is first wins. Finishing never waits for the handler: a write already
+ * in progress runs on, and the handler's next one fails.
+ */
+final class AsyncGuard {
+
+    /** Whether the handler has started writing the response. */
+    private final AtomicBoolean writing = new AtomicBoolean();
+
+    /** Whether the request has been finished (by handler or timeout). */
+    private final AtomicBoolean finished = new AtomicBoolean();
+
+    /** Work finishing a request. */
+    @FunctionalInterface
+    interface Finisher {
+        /**
+         * Finish the request.
+         * @param handlerWriting whether the handler started writing
+         */
+        void finish(boolean handlerWriting);
+    }
+
+    /**
+     * Finish the request, unless already finished.
+     * @param finisher the work finishing it, e.g. completing its context
+     * @return true if this call finished it, false if already finished
+     */
+    boolean finish(@NotNull final Finisher finisher) {
+        if (!finished.compareAndSet(false, true)) {
+            return false;
+        }
+        // the handler marks writing before checking finished, so if it
+        // is not writing yet, it will not start
+        finisher.finish(writing.get());
+        return true;
+    }
+
+    /**
+     * Check if the request has been finished.
+     * @return true if finished, false otherwise
+     */
+    boolean isFinished() {
+        return finished.get();
+    }
+
+    /**
+     * Get a guarded view of a response.
+     * @param response the response
+     * @return the guarded response
+     */
+    @NotNull HttpServletResponse response(
+        @NotNull final HttpServletResponse response
+    ) {
+        return new GuardedResponse(response);
+    }
+
+    /**
+     * Mark the handler as writing, failing if the request is finished.
+     * @throws IllegalStateException if finished
+     */
+    private void startWriting() {
+        writing.set(true);
+        if (finished.get()) {
+            throw new IllegalStateException("Async request is complete");
+        }
+    }
+
+    /**
+     * Fail if the request has been finished, as an I/O error.
+     * @throws IOException if finished
+     */
+    private void ensureWritable() throws IOException {
+        if (finished.get()) {
+            throw new IOException("Async request is complete");
+        }
+    }
+
+    /** A response, guarded: calls that write or commit it are checked. */
+    private final class GuardedResponse extends HttpServletResponseWrapper {
+
+        /**
+         * Guard a response.
+         * @param response the response
+         */
+        GuardedResponse(@NotNull final HttpServletResponse response) {
+            super(response);
+        }
+
+        @Override
+        public void setStatus(final int sc) {
+            startWriting();
+            super.setStatus(sc);
+        }
+
+        @Override
+        public void sendError(final int sc) throws IOException {
+            startWriting();
+            super.sendError(sc);
+        }
+
+        @Override
+        public void sendError(final int sc, final String msg)
+            throws IOException {
+            startWriting();
+            super.sendError(sc, msg);
+        }
+
+        @Override
+        public void sendRedirect(final String location) throws IOException {
+            startWriting();
+            super.sendRedirect(location);
+        }
+
+        @Override
+        public void setHeader(final String name, final String value) {
+            startWriting();
+            super.setHeader(name, value);
+        }
+
+        @Override
+        public void addHeader(final String name, final String value) {
+            startWriting();
+            super.addHeader(name, value);
+        }
+
+        @Override
+        public void setDateHeader(final String name, final long date) {
+            startWriting();
+            super.setDateHeader(name, date);
+        }
+
+        @Override
+        public void setIntHeader(final String name, final int value) {
+            startWriting();
+            super.setIntHeader(name, value);
+        }
+
+        @Override
+        public void addCookie(final Cookie cookie) {
+            startWriting();
+            super.addCookie(cookie);
+        }
+
+        @Override
+        public void setContentType(final String type) {
+            startWriting();
+            super.setContentType(type);
+        }
+
+        @Override
+        public void setContentLength(final int len) {
+            startWriting();
+            super.setContentLength(len);
+        }
+
+        @Override
+        public void setContentLengthLong(final long len) {
+            startWriting();
+            super.setContentLengthLong(len);
+        }
+
+        @Override
+        public void setCharacterEncoding(final String charset) {
+            startWriting();
+            super.setCharacterEncoding(charset);
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            startWriting();
+            super.flushBuffer();
+        }
+
+        @Override
+        public @NotNull ServletOutputStream getOutputStream()
+            throws IOException {
+            startWriting();
+            return new GuardedOutputStream(super.getOutputStream());
+        }
+
+        @Override
+        public @NotNull PrintWriter getWriter() throws IOException {
+            startWriting();
+            return new PrintWriter(new GuardedWriter(super.getWriter()));
+        }
+    }
+
+    /** A response output stream, guarded. */
+    private final class GuardedOutputStream extends ServletOutputStream {
+
+        /** The response's stream. */
+        private final ServletOutputStream out;
+
+        /**
+         * Guard a response's stream.
+         * @param pOut the response's stream
+         */
+        GuardedOutputStream(@NotNull final ServletOutputStream pOut) {
+            out = pOut;
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            ensureWritable();
+            out.write(b);
+        }
+
+        @Override
+        public void write(
+            final byte @NotNull [] b, final int off, final int len
+        ) throws IOException {
+            ensureWritable();
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            ensureWritable();
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            ensureWritable();
+            out.close();
+        }
+
+        @Override
+        public boolean isReady() {
+            return !finished.get() && out.isReady();
+        }
+
+        @Override
+        public void setWriteListener(@NotNull final WriteListener listener) {
+            startWriting();
+            out.setWriteListener(listener);
+        }
+    }
+
+    /** A response writer, guarded. */
+    private final class GuardedWriter extends Writer {
+
+        /** The response's writer. */
+        private final PrintWriter out;
+
+        /**
+         * Guard a response's writer.
+         * @param pOut the response's writer
+         */
+        GuardedWriter(@NotNull final PrintWriter pOut) {
+            out = pOut;
+        }
+
+        @Override
+        public void write(
+            final char @NotNull [] cbuf, final int off, final int len
+        ) throws IOException {
+            ensureWritable();
+            out.write(cbuf, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            ensureWritable();
+            out.flush();
+        }
+
+        @Override
+        public void close() {
+            if (!finished.get()) {
+                out.close();
+            }
+        }
+    }
+}
@@ -2,12 +2,8 @@ package pbrg.webservices.servlets;
 
 import static pbrg.webservices.database.AuthenticationController.userExists;
 import static pbrg.webservices.database.GymController.gymExists;
-import static pbrg.webservices.database.RouteController.addRoute;
-import static pbrg.webservices.database.WallController.addWall;
-import static pbrg.webservices.database.WallController.getWallIdFromGymId;
-import static pbrg.webservices.database.WallController.gymHasWall;
-import static pbrg.webservices.utils.RouteUtils.createAndStoreRouteImage;
-import static pbrg.webservices.utils.RouteUtils.generateRouteMoonBoard;
+import static pbrg.webservices.utils.RouteUtils.generateAndStoreRoute;
+import static pbrg.webservices.utils.RouteUtils.getRouteGenerationJobs;
 
 import jakarta.servlet.annotation.WebServlet;
 import jakarta.servlet.http.HttpServletRequest;
@@ -15,14 +11,14 @@ import jakarta.servlet.http.HttpServletResponse;
 import jakarta.servlet.http.HttpSession;
 import java.io.IOException;
 import org.jetbrains.annotations.NotNull;
-import org.json.JSONArray;
 import org.json.JSONObject;
-import pbrg.webservices.database.WallController;
-import pbrg.webservices.utils.RouteUtils;
+import pbrg.webservices.utils.RouteGenerationJobs;
+import pbrg.webservices.utils.RouteGenerator;
 
 @WebServlet(
     name = "GenerateRouteServlet",
-    urlPatterns = "/GenerateRoute"
+    urlPatterns = "/GenerateRoute",
+    asyncSupported = true
 )
 public class GenerateRouteServlet extends MyHttpServlet {
 
@@ -34,13 +30,21 @@ public class GenerateRouteServlet extends MyHttpServlet {
         doPost(request, response);
     }
 
-    /**
-     * given wall ID and grade, generate a route.
-     * */
     @Override
     protected final void doPost(
         final @NotNull HttpServletRequest request,
         final @NotNull HttpServletResponse response
+    ) throws IOException {
+        handleAsync(request, response, this::generateRoute);
+    }
+
+    /**
+     * given wall ID and grade, generate a route. With "async": true, the
+     * route is generated by a job, polled with /GetRouteGenerationJob.
+     * */
+    private void generateRoute(
+        final @NotNull HttpServletRequest request,
+        final @NotNull HttpServletResponse response
     ) throws IOException {
         // validate request
         boolean requiresSession = true;
@@ -48,6 +52,7 @@ public class GenerateRouteServlet extends MyHttpServlet {
         String gymIdKey = "gid";
         String[] sessionAttributes = {userIdKey, gymIdKey};
         String difficultyKey = "difficulty";
+        String asyncKey = "async";
         JSONObject body = getBodyAsJson(request);
         String[] bodyAttributes = {difficultyKey};
         if (!validateRequest(
@@ -66,6 +71,12 @@ public class GenerateRouteServlet extends MyHttpServlet {
         // get the difficulty
         assert body != null;
         int grade = body.getInt(difficultyKey);
+        if (!RouteGenerator.isValidGrade(grade)) {
+            response.sendError(
+                HttpServletResponse.SC_BAD_REQUEST, "Invalid difficulty"
+            );
+            return;
+        }
 
         // ensure the user exists
         if (!userExists(userId)) {
@@ -85,53 +96,31 @@ public class GenerateRouteServlet extends MyHttpServlet {
             return;
         }
 
-        // ensure the gym has a wall; if not, mock one
-        boolean mockingWall = false;
-        if (!gymHasWall(gymId)) {
-            // add a wall using the MoonBoard wall
-            addWall(gymId, "MoonBoard", "MoonBoard2016.jpg");
-            mockingWall = true;
-        }
-        assert gymHasWall(gymId);
-
-        // get the wall ID
-        Integer wallID = getWallIdFromGymId(gymId);
-        assert wallID != null;
-
-        // generate the route
-        JSONArray route;
-        try {
-            route = generateRouteMoonBoard(grade);
-            assert !route.isEmpty();
-        } catch (IOException | RuntimeException e) {
-            // cleanup the wall, if mocked
-            if (mockingWall) {
-                WallController.deleteWall(wallID);
-            }
-            response.sendError(
-                HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
-                "Route generation failed" + e.getMessage()
+        // in async mode, submit a job and return its id
+        if (body.optBoolean(asyncKey)) {
+            RouteGenerationJobs.Job job = getRouteGenerationJobs().submit(
+                userId, () -> generateAndStoreRoute(userId, gymId, grade)
             );
+            if (job == null) {
+                response.sendError(
+                    HttpServletResponse.SC_SERVICE_UNAVAILABLE,
+                    "Too many routes being generated, try again later"
+                );
+                return;
+            }
+            response.setContentType("application/json");
+            response.getWriter().write(job.toJSON().toString());
+            response.setStatus(HttpServletResponse.SC_ACCEPTED);
             return;
         }
 
-        // store the route as a new route in the database
-        Integer routeId = addRoute(
-            route.toString(), grade, userId, wallID
-        );
-        assert routeId != null;
-
-        // generate the route image (thumbnail)
-        boolean routeImageGenerated = createAndStoreRouteImage(routeId);
-        if (!routeImageGenerated) {
-            // cleanup the route, wall (if mocked)
-            RouteUtils.deleteRoute(routeId);
-            if (mockingWall) {
-                WallController.deleteWall(wallID);
-            }
+        // generate the route and store it; its image renders when viewed
+        int routeId;
+        try {
+            routeId = generateAndStoreRoute(userId, gymId, grade);
+        } catch (IOException e) {
             response.sendError(
-                HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
-                "Failed to create route image."
+                HttpServletResponse.SC_INTERNAL_SERVER_ERROR, e.getMessage()
             );
             return;
         }
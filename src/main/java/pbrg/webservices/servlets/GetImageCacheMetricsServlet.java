@@ -0,0 +1,52 @@
+package pbrg.webservices.servlets;
+
+import static pbrg.webservices.utils.ServletUtils.getImageByteCache;
+
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import org.jetbrains.annotations.NotNull;
+
+@WebServlet(
+    name = "GetImageCacheMetricsServlet",
+    urlPatterns = "/GetImageCacheMetrics"
+)
+public class GetImageCacheMetricsServlet extends MyHttpServlet {
+
+    @Override
+    protected final void doGet(
+        final @NotNull HttpServletRequest request,
+        final @NotNull HttpServletResponse response
+    ) throws IOException {
+        doPost(request, response);
+    }
+
+    /**
+     * Return the image byte cache's metrics (hits, misses, evictions),
+     * for sizing its memory budget, to a signed in user.
+     */
+    @Override
+    protected final void doPost(
+        final @NotNull HttpServletRequest request,
+        final @NotNull HttpServletResponse response
+    ) throws IOException {
+        // validate request
+        boolean requiresSession = true;
+        String userIdKey = "uid";
+        String[] sessionAttributes = {userIdKey};
+        String[] bodyAttributes = {};
+        if (!validateRequest(
+            request, response, null, requiresSession,
+            sessionAttributes, bodyAttributes
+        )) {
+            return;
+        }
+
+        response.setContentType("application/json");
+        response.getWriter().write(getImageByteCache().getMetrics().toString());
+
+        // report success
+        response.setStatus(HttpServletResponse.SC_OK);
+    }
+}
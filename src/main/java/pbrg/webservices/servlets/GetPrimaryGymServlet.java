@@ -4,8 +4,12 @@ import static pbrg.webservices.database.AuthenticationController.userExists;
 import static pbrg.webservices.database.GymController.getGym;
 import static pbrg.webservices.database.GymController.getPrimaryGymOfUser;
 import static pbrg.webservices.database.GymController.userHasPrimaryGym;
+import static pbrg.webservices.database.WallController.getWallIdFromGymId;
+import static pbrg.webservices.database.WallController
+    .getWallImagePlaceholder;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonObject;
 import jakarta.servlet.annotation.WebServlet;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
@@ -73,8 +77,17 @@ public class GetPrimaryGymServlet extends MyHttpServlet {
         assert gym != null;
 
         session.setAttribute("gid", gymId);
-        String json = new Gson().toJson(gym);
-        response.getWriter().write(json);
+        JsonObject json = new Gson().toJsonTree(gym).getAsJsonObject();
+
+        // with its wall image's placeholder, if one is stored (it is made
+        // when the wall is stored, and by route image re-renders)
+        Integer wallId = getWallIdFromGymId(gymId);
+        String placeholder = wallId == null
+            ? null : getWallImagePlaceholder(wallId);
+        if (placeholder != null) {
+            json.addProperty("wallImagePlaceholder", placeholder);
+        }
+        response.getWriter().write(json.toString());
 
         // report success
         response.setStatus(HttpServletResponse.SC_OK);
@@ -0,0 +1,106 @@
+package pbrg.webservices.servlets;
+
+import static pbrg.webservices.utils.RouteUtils.getRouteGenerationJobs;
+
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
+import java.io.IOException;
+import java.time.Duration;
+import org.jetbrains.annotations.NotNull;
+import org.json.JSONObject;
+import pbrg.webservices.utils.RouteGenerationJobs;
+
+@WebServlet(
+    name = "GetRouteGenerationJobServlet",
+    urlPatterns = "/GetRouteGenerationJob",
+    asyncSupported = true
+)
+public class GetRouteGenerationJobServlet extends MyHttpServlet {
+
+    @Override
+    protected final void doGet(
+        final @NotNull HttpServletRequest request,
+        final @NotNull HttpServletResponse response
+    ) throws IOException {
+        doPost(request, response);
+    }
+
+    /**
+     * given a job ID, return the job's status, and its route ID once done.
+     * With "waitMillis", wait (up to 30s) for the job to finish first.
+     * */
+    @Override
+    protected final void doPost(
+        final @NotNull HttpServletRequest request,
+        final @NotNull HttpServletResponse response
+    ) throws IOException {
+        // validate request
+        boolean requiresSession = true;
+        String userIdKey = "uid";
+        String[] sessionAttributes = {userIdKey};
+        String jobIdKey = "jobId";
+        String waitKey = "waitMillis";
+        JSONObject body = getBodyAsJson(request);
+        String[] bodyAttributes = {jobIdKey};
+        if (!validateRequest(
+            request, response, body, requiresSession,
+            sessionAttributes, bodyAttributes
+        )) {
+            return;
+        }
+
+        // get arguments
+        HttpSession session = getSession(request);
+        assert session != null;
+        int userId = (int) session.getAttribute(userIdKey);
+        assert body != null;
+        String jobId = body.getString(jobIdKey);
+
+        // ensure the job exists, and belongs to the user
+        RouteGenerationJobs.Job job = getRouteGenerationJobs().get(jobId);
+        if (job == null || job.getOwnerId() != userId) {
+            response.sendError(
+                HttpServletResponse.SC_NOT_FOUND,
+                "Job does not exist"
+            );
+            return;
+        }
+
+        // long-poll: wait for the job to finish, if asked
+        long waitMillis = Math.min(
+            Math.max(0, body.optLong(waitKey)),
+            RouteGenerationJobs.MAX_WAIT.toMillis()
+        );
+        if (waitMillis > 0 && !job.isDone()) {
+            // answer when the job finishes, holding no thread meanwhile
+            handleAsyncWhen(
+                request, response,
+                job.whenDone(Duration.ofMillis(waitMillis)),
+                (req, res) -> writeJob(res, job)
+            );
+            return;
+        }
+
+        writeJob(response, job);
+    }
+
+    /**
+     * Write the job status as the response.
+     * @param response the http servlet response
+     * @param job the job
+     * @throws IOException if the response cannot be written
+     */
+    private static void writeJob(
+        final @NotNull HttpServletResponse response,
+        final @NotNull RouteGenerationJobs.Job job
+    ) throws IOException {
+        // return the job status
+        response.setContentType("application/json");
+        response.getWriter().write(job.toJSON().toString());
+
+        // report success
+        response.setStatus(HttpServletResponse.SC_OK);
+    }
+}
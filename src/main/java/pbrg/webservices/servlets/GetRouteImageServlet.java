@@ -1,21 +1,42 @@
 package pbrg.webservices.servlets;
 
 import static pbrg.webservices.database.RouteController.routeExists;
-import static pbrg.webservices.utils.RouteUtils.getRouteImageFileName;
+import static pbrg.webservices.utils.RouteUtils
+    .getOrCreateRouteImageVariant;
+import static pbrg.webservices.utils.RouteUtils.getRouteContentJSONArray;
+import static pbrg.webservices.utils.RouteUtils.getRouteWallImageSize;
 import static pbrg.webservices.utils.ServletUtils.returnRouteImageAsBitmap;
 
 import jakarta.servlet.annotation.WebServlet;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import jakarta.servlet.http.HttpSession;
+import java.awt.Dimension;
 import java.io.File;
 import java.io.IOException;
 import org.jetbrains.annotations.NotNull;
-import pbrg.webservices.utils.ServletUtils;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import pbrg.webservices.utils.HoldRenderer;
+import pbrg.webservices.utils.ImageVariants;
 
-@WebServlet(name = "GetRouteImageServlet", urlPatterns = "/GetRouteImage")
+@WebServlet(
+    name = "GetRouteImageServlet",
+    urlPatterns = "/GetRouteImage",
+    asyncSupported = true
+)
 public class GetRouteImageServlet extends MyHttpServlet {
 
+    /** Format of the rendered route image. */
+    static final String FORMAT_IMAGE = "image";
+
+    /** Format of an SVG overlay of the route's holds. */
+    static final String FORMAT_SVG = "svg";
+
+    /** Format of a JSON overlay of the route's holds. */
+    static final String FORMAT_JSON = "json";
+
     @Override
     protected final void doGet(
         final @NotNull HttpServletRequest request,
@@ -28,12 +49,30 @@ public class GetRouteImageServlet extends MyHttpServlet {
     protected final void doPost(
         final @NotNull HttpServletRequest request,
         final @NotNull HttpServletResponse response
+    ) throws IOException {
+        handleAsync(request, response, this::getRouteImage);
+    }
+
+    /**
+     * Given a route ID (in session), return its route image, rendered
+     * on first view. The optional "size" downscales it (see
+     * ImageVariants). With "format": "svg" or "json", only the route's
+     * holds are returned, to draw over the wall image from /GetWallImage.
+     * @param request the http servlet request
+     * @param response the http servlet response
+     * @throws IOException if an input or output error is detected
+     */
+    private void getRouteImage(
+        final @NotNull HttpServletRequest request,
+        final @NotNull HttpServletResponse response
     ) throws IOException {
         // validate request
         boolean requiresSession = true;
         String routeIdKey = "rid";
         String[] sessionAttributes = {routeIdKey};
         String[] bodyAttributes = {};
+        String sizeKey = "size";
+        String formatKey = "format";
         if (!validateRequest(
             request, response, null, requiresSession,
             sessionAttributes, bodyAttributes
@@ -41,6 +80,31 @@ public class GetRouteImageServlet extends MyHttpServlet {
             return;
         }
 
+        // get the requested size: a name (thumb, medium, full) or width
+        JSONObject body = getBodyAsJson(request);
+        Integer width = ImageVariants.parseWidth(
+            body == null ? null : body.opt(sizeKey)
+        );
+        if (width == null) {
+            response.sendError(
+                HttpServletResponse.SC_BAD_REQUEST,
+                "Invalid image size"
+            );
+            return;
+        }
+
+        // get the requested format: the image, or an overlay of its holds
+        String format = body == null
+            ? FORMAT_IMAGE : body.optString(formatKey, FORMAT_IMAGE);
+        if (!format.equals(FORMAT_IMAGE) && !format.equals(FORMAT_SVG)
+            && !format.equals(FORMAT_JSON)) {
+            response.sendError(
+                HttpServletResponse.SC_BAD_REQUEST,
+                "Invalid format, expected image, svg or json"
+            );
+            return;
+        }
+
         // get route id
         HttpSession session = getSession(request);
         assert session != null;
@@ -55,40 +119,78 @@ public class GetRouteImageServlet extends MyHttpServlet {
             return;
         }
 
-        // ensure the route image has been generated
-        String routeImageFileName = getRouteImageFileName(routeId);
-        boolean routeImageNotGenerated = routeImageFileName == null;
-        if (routeImageNotGenerated) {
-            response.sendError(
-                HttpServletResponse.SC_EXPECTATION_FAILED,
-                "Route image has not been generated"
-            );
+        // return an overlay of the holds, for the client's wall image
+        if (!format.equals(FORMAT_IMAGE)) {
+            returnRouteOverlay(response, routeId, format);
             return;
         }
 
-        // ensure the file exists
-        File routeImageFile = new File(
-            ServletUtils.getRouteImagePath(), routeImageFileName
-        );
-        if (!routeImageFile.exists()) {
+        // get the route image at the size, rendering it on first view (a
+        // smaller size is rendered from the wall, not the route image)
+        File image = getOrCreateRouteImageVariant(routeId, width);
+        if (image == null) {
             response.sendError(
                 HttpServletResponse.SC_EXPECTATION_FAILED,
-                "Image file does not exist"
+                "Route image could not be rendered"
             );
             return;
         }
 
+        // return the image (200), or 304 if the client's copy is current
         try {
-            returnRouteImageAsBitmap(response, routeImageFileName);
+            returnRouteImageAsBitmap(
+                request, response, image.getName(), ImageVariants.FULL);
         } catch (IOException e) {
             response.sendError(
                 HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
                 "Error reading image file"
             );
+        }
+    }
+
+    /**
+     * Return the holds of a route as an overlay for its wall image.
+     * @param response the http servlet response
+     * @param routeId the route id
+     * @param format the overlay format, svg or json
+     * @throws IOException if an input or output error is detected
+     */
+    private static void returnRouteOverlay(
+        final @NotNull HttpServletResponse response,
+        final int routeId,
+        final @NotNull String format
+    ) throws IOException {
+        JSONArray holds = getRouteContentJSONArray(routeId);
+        Dimension wallSize = getRouteWallImageSize(routeId);
+        if (holds == null || wallSize == null) {
+            response.sendError(
+                HttpServletResponse.SC_EXPECTATION_FAILED,
+                "Route has no holds or wall image"
+            );
+            return;
+        }
+
+        String overlay;
+        try {
+            overlay = format.equals(FORMAT_SVG)
+                ? HoldRenderer.overlaySvg(
+                    holds, wallSize.width, wallSize.height
+                )
+                : HoldRenderer.overlayJSON(
+                    holds, wallSize.width, wallSize.height
+                ).toString();
+        } catch (JSONException e) {
+            response.sendError(
+                HttpServletResponse.SC_EXPECTATION_FAILED,
+                "Route holds are malformed"
+            );
             return;
         }
 
-        // report success
+        response.setContentType(
+            format.equals(FORMAT_SVG) ? "image/svg+xml" : "application/json"
+        );
+        response.getWriter().write(overlay);
         response.setStatus(HttpServletResponse.SC_OK);
     }
 }
@@ -0,0 +1,52 @@
+package pbrg.webservices.servlets;
+
+import static pbrg.webservices.utils.RouteUtils.getRoutePool;
+
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import org.jetbrains.annotations.NotNull;
+
+@WebServlet(
+    name = "GetRoutePoolMetricsServlet",
+    urlPatterns = "/GetRoutePoolMetrics"
+)
+public class GetRoutePoolMetricsServlet extends MyHttpServlet {
+
+    @Override
+    protected final void doGet(
+        final @NotNull HttpServletRequest request,
+        final @NotNull HttpServletResponse response
+    ) throws IOException {
+        doPost(request, response);
+    }
+
+    /**
+     * Return the pre-generated route pool's metrics (hits, misses, ready
+     * routes), for sizing the pool, to a signed in user.
+     */
+    @Override
+    protected final void doPost(
+        final @NotNull HttpServletRequest request,
+        final @NotNull HttpServletResponse response
+    ) throws IOException {
+        // validate request
+        boolean requiresSession = true;
+        String userIdKey = "uid";
+        String[] sessionAttributes = {userIdKey};
+        String[] bodyAttributes = {};
+        if (!validateRequest(
+            request, response, null, requiresSession,
+            sessionAttributes, bodyAttributes
+        )) {
+            return;
+        }
+
+        response.setContentType("application/json");
+        response.getWriter().write(getRoutePool().getMetrics().toString());
+
+        // report success
+        response.setStatus(HttpServletResponse.SC_OK);
+    }
+}
@@ -0,0 +1,210 @@
+package pbrg.webservices.servlets;
+
+import static pbrg.webservices.database.AuthenticationController.userExists;
+import static pbrg.webservices.database.GymController.gymExists;
+import static pbrg.webservices.database.RouteController
+    .getRouteImageFileNames;
+import static pbrg.webservices.database.RouteController
+    .getRoutesInGymMadeByUser;
+import static pbrg.webservices.utils.ServletUtils.returnRouteSheetAsBitmap;
+
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import org.jetbrains.annotations.NotNull;
+import org.json.JSONObject;
+import pbrg.webservices.models.Route;
+import pbrg.webservices.utils.RouteSheets;
+
+@WebServlet(
+    name = "GetRouteSheetServlet",
+    urlPatterns = "/GetRouteSheet",
+    asyncSupported = true
+)
+public class GetRouteSheetServlet extends MyHttpServlet {
+
+    /** Format of the sheet's index. */
+    static final String FORMAT_JSON = "json";
+
+    /** Format of the sheet's sprite image. */
+    static final String FORMAT_IMAGE = "image";
+
+    @Override
+    protected final void doGet(
+        final @NotNull HttpServletRequest request,
+        final @NotNull HttpServletResponse response
+    ) throws IOException {
+        doPost(request, response);
+    }
+
+    @Override
+    protected final void doPost(
+        final @NotNull HttpServletRequest request,
+        final @NotNull HttpServletResponse response
+    ) throws IOException {
+        handleAsync(request, response, this::getRouteSheet);
+    }
+
+    /**
+     * Given a user ID and gym ID (in session), return a page of the
+     * user's routes in the gym (as /GetRoutes lists them, by id) as a
+     * contact sheet (see RouteSheets): by default its JSON index of each
+     * route's tile, with "format": "image" its sprite image. The optional
+     * "page" (from 0) and "pageSize" choose the page. An image request
+     * may name the "sheetId" of the index it goes with: that stored sheet
+     * is returned, or 404 if it has since been replaced.
+     * @param request the http servlet request
+     * @param response the http servlet response
+     * @throws IOException if an input or output error is detected
+     */
+    private void getRouteSheet(
+        final @NotNull HttpServletRequest request,
+        final @NotNull HttpServletResponse response
+    ) throws IOException {
+        // validate request
+        boolean requiresSession = true;
+        String userIdKey = "uid";
+        String gymIdKey = "gid";
+        String[] sessionAttributes = {userIdKey, gymIdKey};
+        String[] bodyAttributes = {};
+        String pageKey = "page";
+        String pageSizeKey = "pageSize";
+        String formatKey = "format";
+        String sheetIdKey = "sheetId";
+        if (!validateRequest(
+            request, response, null, requiresSession,
+            sessionAttributes, bodyAttributes
+        )) {
+            return;
+        }
+
+        // get the requested page and format
+        JSONObject body = getBodyAsJson(request);
+        int page = body == null ? 0 : body.optInt(pageKey, 0);
+        int pageSize = body == null
+            ? RouteSheets.DEFAULT_PAGE_SIZE
+            : body.optInt(pageSizeKey, RouteSheets.DEFAULT_PAGE_SIZE);
+        String format = body == null
+            ? FORMAT_JSON : body.optString(formatKey, FORMAT_JSON);
+        if (page < 0 || pageSize <= 0
+            || pageSize > RouteSheets.MAX_PAGE_SIZE) {
+            response.sendError(
+                HttpServletResponse.SC_BAD_REQUEST,
+                "Invalid page"
+            );
+            return;
+        }
+        if (!format.equals(FORMAT_JSON) && !format.equals(FORMAT_IMAGE)) {
+            response.sendError(
+                HttpServletResponse.SC_BAD_REQUEST,
+                "Invalid format, expected json or image"
+            );
+            return;
+        }
+
+        // collect user id, gym id from cookies
+        HttpSession session = getSession(request);
+        assert session != null;
+        int userId = (int) session.getAttribute(userIdKey);
+        int gymId = (int) session.getAttribute(gymIdKey);
+
+        // ensure the user id is valid
+        if (!userExists(userId)) {
+            response.sendError(
+                HttpServletResponse.SC_BAD_REQUEST,
+                "User ID does not exist"
+            );
+            return;
+        }
+
+        // ensure the gym id is valid
+        if (!gymExists(gymId)) {
+            response.sendError(
+                HttpServletResponse.SC_BAD_REQUEST,
+                "Gym ID does not exist"
+            );
+            return;
+        }
+
+        // return the named sheet's image, if still stored
+        String list = "u" + userId + "-g" + gymId;
+        String pageName = "p" + page + "x" + pageSize;
+        String sheetId = body == null
+            ? null : body.optString(sheetIdKey, null);
+        if (format.equals(FORMAT_IMAGE) && sheetId != null) {
+            RouteSheets.Sheet sheet =
+                RouteSheets.getStoredSheet(list, pageName, sheetId);
+            if (sheet == null) {
+                response.sendError(
+                    HttpServletResponse.SC_NOT_FOUND,
+                    "Route sheet does not exist"
+                );
+                return;
+            }
+            returnSheetImage(request, response, sheet);
+            return;
+        }
+
+        // get the sheet of the page, built if missing or stale
+        List<Route> routes = RouteSheets.page(
+            getRoutesInGymMadeByUser(gymId, userId), page, pageSize
+        );
+        Map<Integer, String> imageFileNames =
+            getRouteImageFileNames(gymId, userId);
+        RouteSheets.Sheet sheet;
+        try {
+            sheet = RouteSheets.getOrCreateSheet(
+                list, pageName, routes,
+                imageFileNames == null ? Map.of() : imageFileNames
+            );
+        } catch (IOException e) {
+            response.sendError(
+                HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
+                "Route sheet could not be made"
+            );
+            return;
+        }
+
+        // return the index
+        if (format.equals(FORMAT_JSON)) {
+            JSONObject index = sheet.getIndex();
+            index.put(pageKey, page);
+            index.put(pageSizeKey, pageSize);
+            response.setContentType("application/json");
+            response.setCharacterEncoding("UTF-8");
+            response.getWriter().write(index.toString());
+            response.setStatus(HttpServletResponse.SC_OK);
+            return;
+        }
+
+        // or the image
+        returnSheetImage(request, response, sheet);
+    }
+
+    /**
+     * Return a sheet's image (200), or 304 if the client's copy is
+     * current.
+     * @param request the http servlet request
+     * @param response the http servlet response
+     * @param sheet the sheet
+     * @throws IOException if an input or output error is detected
+     */
+    private static void returnSheetImage(
+        final @NotNull HttpServletRequest request,
+        final @NotNull HttpServletResponse response,
+        final @NotNull RouteSheets.Sheet sheet
+    ) throws IOException {
+        try {
+            returnRouteSheetAsBitmap(request, response, sheet.getImage());
+        } catch (IOException e) {
+            response.sendError(
+                HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
+                "Error reading route sheet"
+            );
+        }
+    }
+}
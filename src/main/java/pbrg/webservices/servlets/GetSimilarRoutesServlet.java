@@ -0,0 +1,107 @@
+package pbrg.webservices.servlets;
+
+import static pbrg.webservices.database.RouteController.routeExists;
+
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
+import java.io.IOException;
+import org.jetbrains.annotations.NotNull;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import pbrg.webservices.models.Route;
+import pbrg.webservices.utils.RouteUtils;
+import pbrg.webservices.utils.SimilarRouteIndex;
+
+@WebServlet(name = "GetSimilarRoutesServlet", urlPatterns = "/GetSimilarRoutes")
+public class GetSimilarRoutesServlet extends MyHttpServlet {
+
+    /** The number of similar routes returned by default. */
+    static final int DEFAULT_COUNT = 10;
+
+    /** The most similar routes returned. */
+    static final int MAX_COUNT = 50;
+
+    @Override
+    protected final void doGet(
+        final @NotNull HttpServletRequest request,
+        final @NotNull HttpServletResponse response
+    ) throws IOException {
+        doPost(request, response);
+    }
+
+    /**
+     * return the routes on the same wall most similar (by shared holds)
+     * to the session's route, most similar first. The optional "count"
+     * sets how many (up to 50).
+     * */
+    @Override
+    protected final void doPost(
+        final @NotNull HttpServletRequest request,
+        final @NotNull HttpServletResponse response
+    ) throws IOException {
+        // validate request
+        boolean requiresSession = true;
+        String routeIdKey = "rid";
+        String[] sessionAttributes = {routeIdKey};
+        String countKey = "count";
+        JSONObject body = getBodyAsJson(request);
+        String[] bodyAttributes = {};
+        if (!validateRequest(
+            request, response, body, requiresSession,
+            sessionAttributes, bodyAttributes
+        )) {
+            return;
+        }
+
+        // get arguments
+        HttpSession session = getSession(request);
+        assert session != null;
+        int routeId = (int) session.getAttribute(routeIdKey);
+        int count = body == null
+            ? DEFAULT_COUNT
+            : body.optInt(countKey, DEFAULT_COUNT);
+        count = Math.min(Math.max(0, count), MAX_COUNT);
+
+        // ensure the route exists
+        if (!routeExists(routeId)) {
+            response.sendError(
+                HttpServletResponse.SC_BAD_REQUEST,
+                "Route does not exist"
+            );
+            return;
+        }
+
+        // ensure the index is available
+        SimilarRouteIndex index = RouteUtils.getSimilarRouteIndex();
+        if (index == null) {
+            response.sendError(
+                HttpServletResponse.SC_SERVICE_UNAVAILABLE,
+                "Similar routes are unavailable"
+            );
+            return;
+        }
+
+        // find the similar routes
+        JSONArray routes = new JSONArray();
+        for (SimilarRouteIndex.Match match : index.similar(routeId, count)) {
+            JSONObject route = new JSONObject(new Route(
+                match.getRouteId(), match.getDifficulty(),
+                "Route #" + match.getRouteId()
+            ));
+            route.put("similarity", match.getSimilarity());
+            routes.put(route);
+        }
+        JSONObject responseBody = new JSONObject();
+        responseBody.put("routes", routes);
+
+        // send response
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        response.getWriter().write(responseBody.toString());
+
+        // report success
+        response.setStatus(HttpServletResponse.SC_OK);
+    }
+}
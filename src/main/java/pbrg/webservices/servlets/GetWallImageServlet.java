@@ -7,6 +7,8 @@ import jakarta.servlet.http.HttpSession;
 import java.io.File;
 import java.io.IOException;
 import org.jetbrains.annotations.NotNull;
+import org.json.JSONObject;
+import pbrg.webservices.utils.ImageVariants;
 import pbrg.webservices.utils.ServletUtils;
 
 import static pbrg.webservices.database.GymController.gymExists;
@@ -17,7 +19,11 @@ import static pbrg.webservices.database.WallController
 import static pbrg.webservices.database.WallController.gymHasWall;
 import static pbrg.webservices.utils.ServletUtils.returnWallImageAsBitmap;
 
-@WebServlet(name = "GetWallImageServlet", urlPatterns = "/GetWallImage")
+@WebServlet(
+    name = "GetWallImageServlet",
+    urlPatterns = "/GetWallImage",
+    asyncSupported = true
+)
 public class GetWallImageServlet extends MyHttpServlet {
 
     @Override
@@ -32,12 +38,27 @@ public class GetWallImageServlet extends MyHttpServlet {
     protected final void doPost(
         final @NotNull HttpServletRequest request,
         final @NotNull HttpServletResponse response
+    ) throws IOException {
+        handleAsync(request, response, this::getWallImage);
+    }
+
+    /**
+     * Given a gym ID (in session), return its wall image. The optional
+     * "size" downscales it (see ImageVariants).
+     * @param request the http servlet request
+     * @param response the http servlet response
+     * @throws IOException if an input or output error is detected
+     */
+    private void getWallImage(
+        final @NotNull HttpServletRequest request,
+        final @NotNull HttpServletResponse response
     ) throws IOException {
         // validate request
         boolean requiresSession = true;
         String gymIdKey = "gid";
         String[] sessionAttributes = {gymIdKey};
         String[] bodyAttributes = {};
+        String sizeKey = "size";
         if (!validateRequest(
             request, response, null, requiresSession,
             sessionAttributes, bodyAttributes
@@ -45,6 +66,19 @@ public class GetWallImageServlet extends MyHttpServlet {
             return;
         }
 
+        // get the requested size: a name (thumb, medium, full) or width
+        JSONObject body = getBodyAsJson(request);
+        Integer width = ImageVariants.parseWidth(
+            body == null ? null : body.opt(sizeKey)
+        );
+        if (width == null) {
+            response.sendError(
+                HttpServletResponse.SC_BAD_REQUEST,
+                "Invalid image size"
+            );
+            return;
+        }
+
         // get gym id
         HttpSession session = getSession(request);
         assert session != null;
@@ -86,17 +120,15 @@ public class GetWallImageServlet extends MyHttpServlet {
             return;
         }
 
+        // return the image (200), or 304 if the client's copy is current
         try {
-            returnWallImageAsBitmap(response, wallImageFileName);
+            returnWallImageAsBitmap(
+                request, response, wallImageFileName, width);
         } catch (IOException e) {
             response.sendError(
                 HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
                 "Error reading image file, ensure it is in a supported format"
             );
-            return;
         }
-
-        // report success
-        response.setStatus(HttpServletResponse.SC_OK);
     }
 }
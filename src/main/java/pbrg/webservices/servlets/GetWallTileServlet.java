@@ -0,0 +1,173 @@
+package pbrg.webservices.servlets;
+
+import static pbrg.webservices.database.GymController.gymExists;
+import static pbrg.webservices.database.WallController.getWallIdFromGymId;
+import static pbrg.webservices.database.WallController.getWallImageFileName;
+import static pbrg.webservices.database.WallController.gymHasWall;
+import static pbrg.webservices.utils.ServletUtils.returnWallTileAsBitmap;
+
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import org.jetbrains.annotations.NotNull;
+import org.json.JSONObject;
+import pbrg.webservices.utils.ServletUtils;
+import pbrg.webservices.utils.WallTiles;
+
+@WebServlet(
+    name = "GetWallTileServlet",
+    urlPatterns = "/GetWallTile",
+    asyncSupported = true
+)
+public class GetWallTileServlet extends MyHttpServlet {
+
+    @Override
+    protected final void doGet(
+        final @NotNull HttpServletRequest request,
+        final @NotNull HttpServletResponse response
+    ) throws IOException {
+        doPost(request, response);
+    }
+
+    @Override
+    protected final void doPost(
+        final @NotNull HttpServletRequest request,
+        final @NotNull HttpServletResponse response
+    ) throws IOException {
+        handleAsync(request, response, this::getWallTile);
+    }
+
+    /**
+     * Given a gym ID (in session), return a tile of its wall image's
+     * pyramid (see WallTiles), addressed by "level", "x" and "y". Without
+     * a level, the pyramid's description is returned: the wall size, the
+     * tile size, the number of levels and the tile format.
+     * @param request the http servlet request
+     * @param response the http servlet response
+     * @throws IOException if an input or output error is detected
+     */
+    private void getWallTile(
+        final @NotNull HttpServletRequest request,
+        final @NotNull HttpServletResponse response
+    ) throws IOException {
+        // validate request
+        boolean requiresSession = true;
+        String gymIdKey = "gid";
+        String[] sessionAttributes = {gymIdKey};
+        String[] bodyAttributes = {};
+        String levelKey = "level";
+        String xKey = "x";
+        String yKey = "y";
+        if (!validateRequest(
+            request, response, null, requiresSession,
+            sessionAttributes, bodyAttributes
+        )) {
+            return;
+        }
+
+        // get gym id
+        HttpSession session = getSession(request);
+        assert session != null;
+        int gymId = (int) session.getAttribute(gymIdKey);
+
+        // ensure the gym exists
+        if (!gymExists(gymId)) {
+            response.sendError(
+                HttpServletResponse.SC_BAD_REQUEST,
+                "Gym does not exist"
+            );
+            return;
+        }
+
+        // ensure the gym has a wall
+        if (!gymHasWall(gymId)) {
+            response.sendError(
+                HttpServletResponse.SC_BAD_REQUEST,
+                "Gym has no wall"
+            );
+            return;
+        }
+
+        // get the wall image file name
+        Integer wallId = getWallIdFromGymId(gymId);
+        assert wallId != null;
+        String wallImageFileName = getWallImageFileName(wallId);
+        assert wallImageFileName != null;
+
+        // ensure the file exists
+        File wallImageFile = new File(
+            ServletUtils.getWallImagePath(), wallImageFileName
+        );
+        if (!wallImageFile.exists()) {
+            response.sendError(
+                HttpServletResponse.SC_EXPECTATION_FAILED,
+                "Image file does not exist"
+            );
+            return;
+        }
+
+        // get the wall's tiles, built on first request
+        WallTiles.Pyramid pyramid;
+        try {
+            pyramid = WallTiles.getOrCreatePyramid(wallImageFile);
+        } catch (IOException e) {
+            response.sendError(
+                HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
+                "Error tiling image file, ensure it is in a supported format"
+            );
+            return;
+        }
+
+        // without a tile address, describe the pyramid
+        JSONObject body = getBodyAsJson(request);
+        if (body == null || !body.has(levelKey)) {
+            response.setContentType("application/json");
+            response.getWriter().write(pyramid.toJSON().toString());
+            response.setStatus(HttpServletResponse.SC_OK);
+            return;
+        }
+
+        // ensure the tile exists
+        int level = body.optInt(levelKey, -1);
+        int x = body.optInt(xKey, -1);
+        int y = body.optInt(yKey, -1);
+        if (!pyramid.hasTile(level, x, y)) {
+            response.sendError(
+                HttpServletResponse.SC_BAD_REQUEST,
+                "Invalid tile"
+            );
+            return;
+        }
+
+        // return the tile (200), or 304 if the client's copy is current;
+        // a missing tile (e.g. moved away as the pyramid is rebuilt) is a
+        // miss, served from the pyramid in place, or rebuilt
+        try {
+            try {
+                returnWallTileAsBitmap(
+                    request, response, pyramid.tileFile(level, x, y));
+            } catch (FileNotFoundException e) {
+                File tile = WallTiles.getOrCreateTile(
+                    wallImageFile, level, x, y
+                );
+                if (tile == null) {
+                    response.sendError(
+                        HttpServletResponse.SC_BAD_REQUEST,
+                        "Invalid tile"
+                    );
+                    return;
+                }
+                returnWallTileAsBitmap(request, response, tile);
+            }
+        } catch (IOException e) {
+            response.sendError(
+                HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
+                "Error reading tile file"
+            );
+        }
+    }
+}
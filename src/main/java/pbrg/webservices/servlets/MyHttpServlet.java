@@ -1,5 +1,8 @@
 package pbrg.webservices.servlets;
 
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
 import jakarta.servlet.http.Cookie;
 import jakarta.servlet.http.HttpServlet;
 import jakarta.servlet.http.HttpServletRequest;
@@ -7,6 +10,16 @@ import jakarta.servlet.http.HttpServletResponse;
 import jakarta.servlet.http.HttpSession;
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.json.JSONException;
@@ -14,6 +27,246 @@ import org.json.JSONObject;
 
 public class MyHttpServlet extends HttpServlet {
 
+    /** Time an async request may take before it is answered with 503. */
+    static final Duration ASYNC_TIMEOUT = Duration.ofSeconds(60);
+
+    /** Number of async requests waiting for a thread. */
+    static final int ASYNC_QUEUE_CAPACITY = 256;
+
+    /** Threads per core running async requests (mostly blocked on I/O). */
+    private static final int ASYNC_THREADS_PER_CORE = 4;
+
+    /** Runs async requests, off the container's threads. */
+    private static ExecutorService asyncExecutor;
+
+    /** Work handling a request, run off the container's threads. */
+    @FunctionalInterface
+    protected interface RequestHandler {
+        /**
+         * Handle a request.
+         * @param request the http servlet request
+         * @param response the http servlet response
+         * @throws IOException if an input or output error is detected
+         */
+        void handle(
+            @NotNull HttpServletRequest request,
+            @NotNull HttpServletResponse response
+        ) throws IOException;
+    }
+
+    /**
+     * Handle a request on the async executor, completing the request's
+     * AsyncContext when done. Requests that do not support async are
+     * handled on the calling thread; when the executor is full, 503.
+     * The handler writes through a guarded view of the response (see
+     * AsyncGuard), which fails once the request has timed out, as the
+     * container then recycles it.
+     * @param request the http servlet request
+     * @param response the http servlet response
+     * @param handler the work handling the request
+     * @throws IOException if an input or output error is detected
+     */
+    protected static void handleAsync(
+        final @NotNull HttpServletRequest request,
+        final @NotNull HttpServletResponse response,
+        final @NotNull RequestHandler handler
+    ) throws IOException {
+        handleAsyncWhen(
+            request, response, CompletableFuture.completedFuture(null),
+            handler
+        );
+    }
+
+    /**
+     * Handle a request on the async executor once a stage completes,
+     * holding no thread meanwhile; as handleAsync otherwise. Requests
+     * that do not support async wait for the stage on the calling
+     * thread. The stage should complete well within ASYNC_TIMEOUT,
+     * after which the request is answered with 503.
+     * @param request the http servlet request
+     * @param response the http servlet response
+     * @param ready the stage to wait for (its outcome is ignored)
+     * @param handler the work handling the request
+     * @throws IOException if an input or output error is detected
+     */
+    protected static void handleAsyncWhen(
+        final @NotNull HttpServletRequest request,
+        final @NotNull HttpServletResponse response,
+        final @NotNull CompletionStage<?> ready,
+        final @NotNull RequestHandler handler
+    ) throws IOException {
+        if (!request.isAsyncSupported()) {
+            try {
+                ready.toCompletableFuture().get();
+            } catch (ExecutionException e) {
+                // outcome ignored
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            handler.handle(request, response);
+            return;
+        }
+
+        AsyncContext context = request.startAsync(request, response);
+        context.setTimeout(ASYNC_TIMEOUT.toMillis());
+        AsyncGuard guard = new AsyncGuard();
+        context.addListener(new TimeoutListener(guard));
+        ready.whenComplete((result, error) -> dispatch(
+            context, guard, request, response, handler
+        ));
+    }
+
+    /**
+     * Run an async request's handler on the async executor, finishing
+     * the request through its guard when done; when full, 503.
+     * @param context the request's async context
+     * @param guard the request's guard
+     * @param request the http servlet request
+     * @param response the http servlet response
+     * @param handler the work handling the request
+     */
+    private static void dispatch(
+        final @NotNull AsyncContext context,
+        final @NotNull AsyncGuard guard,
+        final @NotNull HttpServletRequest request,
+        final @NotNull HttpServletResponse response,
+        final @NotNull RequestHandler handler
+    ) {
+        HttpServletResponse guardedResponse = guard.response(response);
+        try {
+            getAsyncExecutor().execute(() -> {
+                try {
+                    handler.handle(request, guardedResponse);
+                } catch (IOException | RuntimeException e) {
+                    sendErrorIfUncommitted(
+                        guardedResponse,
+                        HttpServletResponse.SC_INTERNAL_SERVER_ERROR
+                    );
+                } finally {
+                    guard.finish(writing -> completeQuietly(context));
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            guard.finish(writing -> {
+                sendErrorIfUncommitted(
+                    response, HttpServletResponse.SC_SERVICE_UNAVAILABLE
+                );
+                completeQuietly(context);
+            });
+        }
+    }
+
+    /**
+     * Get the async executor, starting it on first use.
+     * @return the async executor
+     */
+    private static synchronized @NotNull ExecutorService getAsyncExecutor() {
+        if (asyncExecutor == null) {
+            int threads = ASYNC_THREADS_PER_CORE
+                * Runtime.getRuntime().availableProcessors();
+            AtomicInteger threadCount = new AtomicInteger();
+            asyncExecutor = new ThreadPoolExecutor(
+                threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(ASYNC_QUEUE_CAPACITY),
+                task -> {
+                    Thread thread = new Thread(
+                        task, "servlet-async-" + threadCount.incrementAndGet()
+                    );
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            );
+        }
+        return asyncExecutor;
+    }
+
+    /** Stop the async executor, if started. */
+    static synchronized void closeAsyncExecutor() {
+        if (asyncExecutor != null) {
+            asyncExecutor.shutdownNow();
+            asyncExecutor = null;
+        }
+    }
+
+    /**
+     * Send an error, unless the response has already been committed.
+     * @param response the http servlet response
+     * @param status the error status
+     */
+    private static void sendErrorIfUncommitted(
+        final @NotNull HttpServletResponse response, final int status
+    ) {
+        try {
+            if (!response.isCommitted()) {
+                response.sendError(status);
+            }
+        } catch (IOException | IllegalStateException e) {
+            // the client has gone, or the request has timed out
+        }
+    }
+
+    /**
+     * Complete an async context, unless it has already been completed
+     * (for example, by its timeout).
+     * @param context the async context
+     */
+    private static void completeQuietly(final @NotNull AsyncContext context) {
+        try {
+            context.complete();
+        } catch (IllegalStateException e) {
+            // already completed
+        }
+    }
+
+    /**
+     * Answers async requests that pass their timeout with 503, unless the
+     * handler has started writing its response (which is then cut off).
+     */
+    private static final class TimeoutListener implements AsyncListener {
+
+        /** The guard of the request's handler. */
+        private final AsyncGuard guard;
+
+        /**
+         * Create a listener finishing a request through its guard.
+         * @param pGuard the guard of the request's handler
+         */
+        TimeoutListener(final @NotNull AsyncGuard pGuard) {
+            guard = pGuard;
+        }
+
+        @Override
+        public void onTimeout(final @NotNull AsyncEvent event) {
+            guard.finish(handlerWriting -> {
+                if (!handlerWriting) {
+                    sendErrorIfUncommitted(
+                        (HttpServletResponse) event.getSuppliedResponse(),
+                        HttpServletResponse.SC_SERVICE_UNAVAILABLE
+                    );
+                }
+                completeQuietly(event.getAsyncContext());
+            });
+        }
+
+        @Override
+        public void onComplete(final @NotNull AsyncEvent event) {
+            // stop the handler, if the container completed the request
+            guard.finish(handlerWriting -> { });
+        }
+
+        @Override
+        public void onError(final @NotNull AsyncEvent event) {
+            guard.finish(
+                handlerWriting -> completeQuietly(event.getAsyncContext())
+            );
+        }
+
+        @Override
+        public void onStartAsync(final @NotNull AsyncEvent event) {
+            // nothing to prepare
+        }
+    }
+
     /**
      * Override doGet method to support non-null params.
      * @param request an {@link HttpServletRequest} object that contains
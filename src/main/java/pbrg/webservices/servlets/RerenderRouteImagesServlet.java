@@ -0,0 +1,113 @@
+package pbrg.webservices.servlets;
+
+import static pbrg.webservices.database.GymController.gymExists;
+import static pbrg.webservices.database.WallController.getWallIdFromGymId;
+import static pbrg.webservices.database.WallController.gymHasWall;
+import static pbrg.webservices.utils.RouteUtils.getRouteImageRerenders;
+
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
+import java.io.IOException;
+import org.jetbrains.annotations.NotNull;
+import org.json.JSONObject;
+import pbrg.webservices.utils.RouteImageRerenders;
+
+@WebServlet(
+    name = "RerenderRouteImagesServlet",
+    urlPatterns = "/RerenderRouteImages"
+)
+public class RerenderRouteImagesServlet extends MyHttpServlet {
+
+    @Override
+    protected final void doGet(
+        final @NotNull HttpServletRequest request,
+        final @NotNull HttpServletResponse response
+    ) throws IOException {
+        doPost(request, response);
+    }
+
+    /**
+     * Given a gym ID (in session), re-render the route images of its wall,
+     * e.g. once its photo is replaced, returning the job (see
+     * RouteImageRerenders). Given a job ID, return the job's status and
+     * progress; with "cancel" set, cancel it first.
+     * */
+    @Override
+    protected final void doPost(
+        final @NotNull HttpServletRequest request,
+        final @NotNull HttpServletResponse response
+    ) throws IOException {
+        // validate request
+        boolean requiresSession = true;
+        String gymIdKey = "gid";
+        String[] sessionAttributes = {gymIdKey};
+        String[] bodyAttributes = {};
+        String jobIdKey = "jobId";
+        String cancelKey = "cancel";
+        if (!validateRequest(
+            request, response, null, requiresSession,
+            sessionAttributes, bodyAttributes
+        )) {
+            return;
+        }
+
+        // get gym id
+        HttpSession session = getSession(request);
+        assert session != null;
+        int gymId = (int) session.getAttribute(gymIdKey);
+
+        // ensure the gym exists, and has a wall
+        if (!gymExists(gymId)) {
+            response.sendError(
+                HttpServletResponse.SC_BAD_REQUEST,
+                "Gym does not exist"
+            );
+            return;
+        }
+        if (!gymHasWall(gymId)) {
+            response.sendError(
+                HttpServletResponse.SC_BAD_REQUEST,
+                "Gym has no wall"
+            );
+            return;
+        }
+        Integer wallId = getWallIdFromGymId(gymId);
+        assert wallId != null;
+
+        // without a job id, start the wall's re-render
+        JSONObject body = getBodyAsJson(request);
+        RouteImageRerenders.Job job;
+        if (body == null || !body.has(jobIdKey)) {
+            job = getRouteImageRerenders().submit(wallId);
+            if (job == null) {
+                response.sendError(
+                    HttpServletResponse.SC_SERVICE_UNAVAILABLE,
+                    "Route images cannot be re-rendered now"
+                );
+                return;
+            }
+        } else {
+            // ensure the job exists, and is of the gym's wall
+            job = getRouteImageRerenders().get(body.optString(jobIdKey));
+            if (job == null || job.getWallId() != wallId) {
+                response.sendError(
+                    HttpServletResponse.SC_NOT_FOUND,
+                    "Job does not exist"
+                );
+                return;
+            }
+            if (body.optBoolean(cancelKey)) {
+                job.cancel();
+            }
+        }
+
+        // return the job status
+        response.setContentType("application/json");
+        response.getWriter().write(job.toJSON().toString());
+
+        // report success
+        response.setStatus(HttpServletResponse.SC_OK);
+    }
+}
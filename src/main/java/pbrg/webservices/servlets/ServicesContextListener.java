@@ -0,0 +1,97 @@
+package pbrg.webservices.servlets;
+
+import jakarta.servlet.ServletContext;
+import jakarta.servlet.ServletContextEvent;
+import jakarta.servlet.ServletContextListener;
+import jakarta.servlet.annotation.WebListener;
+import java.io.IOException;
+import org.jetbrains.annotations.NotNull;
+import pbrg.webservices.utils.ImageByteCache;
+import pbrg.webservices.utils.RouteUtils;
+import pbrg.webservices.utils.ServletUtils;
+import pbrg.webservices.utils.WallRasterCache;
+
+/**
+ * Web application lifecycle: warms shared resources on startup and
+ * releases them on shutdown.
+ */
+@WebListener
+public class ServicesContextListener implements ServletContextListener {
+
+    /** Context parameter: memory budget of decoded walls, in bytes. */
+    static final String WALL_CACHE_BUDGET = "wallRasterCacheBudget";
+
+    /** Context parameter: whether decoded walls are held off the heap. */
+    static final String WALL_CACHE_OFF_HEAP = "wallRasterCacheOffHeap";
+
+    /** Context parameter: memory budget of served image bytes, in bytes. */
+    static final String IMAGE_CACHE_BUDGET = "imageByteCacheBudget";
+
+    @Override
+    public void contextInitialized(final @NotNull ServletContextEvent event) {
+        // size the decoded wall cache, if configured
+        ServletContext context = event.getServletContext();
+        String budget = context.getInitParameter(WALL_CACHE_BUDGET);
+        String offHeap = context.getInitParameter(WALL_CACHE_OFF_HEAP);
+        if (budget != null || offHeap != null) {
+            try {
+                RouteUtils.setWallRasterCache(new WallRasterCache(
+                    budget == null
+                        ? WallRasterCache.DEFAULT_BUDGET
+                        : Long.parseLong(budget.trim()),
+                    Boolean.parseBoolean(offHeap)
+                ));
+            } catch (IllegalArgumentException e) {
+                // keep the default cache
+                context.log("Wall raster cache misconfigured", e);
+            }
+        }
+
+        // size the served image cache, if configured
+        String imageBudget = context.getInitParameter(IMAGE_CACHE_BUDGET);
+        if (imageBudget != null) {
+            try {
+                ServletUtils.setImageByteCache(
+                    new ImageByteCache(Long.parseLong(imageBudget.trim()))
+                );
+            } catch (IllegalArgumentException e) {
+                // keep the default cache
+                context.log("Image byte cache misconfigured", e);
+            }
+        }
+
+        // load the cached routes once, rather than on the first request
+        try {
+            RouteUtils.getRouteGenerator();
+        } catch (IOException e) {
+            // retried on first use
+            event.getServletContext().log("Route cache not loaded", e);
+        }
+
+        // start the python workers, paying interpreter startup up front
+        try {
+            RouteUtils.getPythonWorkerPool();
+        } catch (IOException e) {
+            // retried on first use
+            event.getServletContext().log("Python workers not started", e);
+        }
+
+        // index the stored routes for similar route queries
+        if (RouteUtils.getSimilarRouteIndex() == null) {
+            // retried on first use
+            event.getServletContext().log("Similar route index not built");
+        }
+    }
+
+    @Override
+    public void contextDestroyed(final @NotNull ServletContextEvent event) {
+        MyHttpServlet.closeAsyncExecutor();
+        RouteUtils.closeRouteGenerationJobs();
+        RouteUtils.closeRouteImageRerenders();
+        RouteUtils.closeRoutePool();
+        RouteUtils.closePythonWorkerPool();
+        RouteUtils.closeSimilarRouteIndex();
+        RouteUtils.getWallRasterCache().clear();
+        ServletUtils.getImageByteCache().clear();
+    }
+}
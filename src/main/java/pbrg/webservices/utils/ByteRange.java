@@ -0,0 +1,178 @@
+package pbrg.webservices.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A range of bytes of a file, as asked for by an HTTP Range header, so
+ * clients can resume interrupted downloads or fetch part of an image.
+ */
+final class ByteRange {
+
+    /** Most ranges served per request; more are answered in full. */
+    static final int MAX_RANGES = 16;
+
+    /** The only range unit. */
+    private static final String UNIT = "bytes=";
+
+    /** The first byte of the range. */
+    private final long start;
+
+    /** The last byte of the range (inclusive). */
+    private final long end;
+
+    /**
+     * Create a range of bytes.
+     * @param pStart the first byte
+     * @param pEnd the last byte (inclusive)
+     */
+    ByteRange(final long pStart, final long pEnd) {
+        start = pStart;
+        end = pEnd;
+    }
+
+    /**
+     * Get the first byte of the range.
+     * @return the offset of the first byte
+     */
+    long getStart() {
+        return start;
+    }
+
+    /**
+     * Get the last byte of the range.
+     * @return the offset of the last byte (inclusive)
+     */
+    long getEnd() {
+        return end;
+    }
+
+    /**
+     * Get the number of bytes in the range.
+     * @return the length, in bytes
+     */
+    long length() {
+        return end - start + 1;
+    }
+
+    /**
+     * Get the range as a Content-Range header value.
+     * @param size the file size, in bytes
+     * @return the value, e.g. "bytes 0-99/1000"
+     */
+    @NotNull String contentRange(final long size) {
+        return "bytes " + start + "-" + end + "/" + size;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ByteRange)) {
+            return false;
+        }
+        ByteRange range = (ByteRange) o;
+        return start == range.start && end == range.end;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(start) * 31 + Long.hashCode(end);
+    }
+
+    @Override
+    public String toString() {
+        return start + "-" + end;
+    }
+
+    /**
+     * Parse a Range header against a file: "bytes=" then comma separated
+     * first-last, first- (to the end) or -suffix (the last bytes).
+     * @param header the Range header, null if absent
+     * @param size the file size, in bytes
+     * @return the ranges within the file, in the requested order (empty
+     * if none are, so the request is unsatisfiable); null to send the
+     * whole file: no, malformed, or too many ranges
+     */
+    @Contract("null, _ -> null")
+    static @Nullable List<ByteRange> parse(
+        @Nullable final String header, final long size
+    ) {
+        if (header == null
+            || !header.toLowerCase(Locale.ROOT).startsWith(UNIT)) {
+            return null;
+        }
+
+        List<ByteRange> ranges = new ArrayList<>();
+        int specs = 0;
+        for (String spec : header.substring(UNIT.length()).split(",")) {
+            spec = spec.trim();
+            if (spec.isEmpty()) {
+                continue;
+            }
+            if (++specs > MAX_RANGES) {
+                return null;
+            }
+
+            // split first-last, either of which may be missing
+            int dash = spec.indexOf('-');
+            if (dash < 0) {
+                return null;
+            }
+            Long first;
+            Long last;
+            try {
+                first = parseOffset(spec.substring(0, dash));
+                last = parseOffset(spec.substring(dash + 1));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            if (first == null && last == null) {
+                return null;
+            }
+
+            if (first == null) {
+                // the last bytes of the file
+                if (last > 0 && size > 0) {
+                    ranges.add(
+                        new ByteRange(Math.max(0, size - last), size - 1)
+                    );
+                }
+            } else if (last != null && last < first) {
+                return null;
+            } else if (first < size) {
+                ranges.add(new ByteRange(
+                    first, last == null ? size - 1 : Math.min(last, size - 1)
+                ));
+            }
+        }
+        if (specs == 0) {
+            return null;
+        }
+        return Collections.unmodifiableList(ranges);
+    }
+
+    /**
+     * Parse a byte offset.
+     * @param offset the offset, digits only
+     * @return the offset, null if empty
+     * @throws NumberFormatException if not a non-negative long
+     */
+    @Contract(pure = true)
+    private static @Nullable Long parseOffset(@NotNull final String offset) {
+        String digits = offset.trim();
+        if (digits.isEmpty()) {
+            return null;
+        }
+        if (!digits.chars().allMatch(c -> c >= '0' && c <= '9')) {
+            throw new NumberFormatException("Not an offset: " + digits);
+        }
+        return Long.parseLong(digits);
+    }
+}
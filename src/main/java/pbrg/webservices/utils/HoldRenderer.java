@@ -0,0 +1,304 @@
+package pbrg.webservices.utils;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.geom.Ellipse2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import javax.imageio.ImageIO;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Draws routes on wall images in-process, a port of plot_holds.py: each
+ * hold is a red circle outline (radius 25, width 5) on a copy of the
+ * wall, at its normalised coordinates.
+ */
+public final class HoldRenderer {
+
+    /** Radius of a hold circle, in pixels. */
+    public static final int HOLD_RADIUS = 25;
+
+    /** Width of a hold circle's outline, in pixels. */
+    public static final int HOLD_OUTLINE_WIDTH = 5;
+
+    /** Least radius of a downscaled hold circle, so it stays visible. */
+    public static final int MIN_HOLD_RADIUS = 3;
+
+    /** Colour of a hold circle. */
+    public static final Color HOLD_COLOUR = Color.RED;
+
+    private HoldRenderer() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * Draw holds on a copy of a wall image.
+     * @param wall the wall image, left unchanged
+     * @param holds the holds, as a JSON array of normalised {x, y}
+     * @param alpha whether to keep the wall's transparency, if any
+     * @return the route image
+     */
+    @Contract("_, _, _ -> new")
+    public static @NotNull BufferedImage render(
+        @NotNull final BufferedImage wall,
+        @NotNull final JSONArray holds,
+        final boolean alpha
+    ) {
+        return render(wall, holds, alpha, 1);
+    }
+
+    /**
+     * Draw holds on a copy of a downscaled wall image, the hold circles
+     * downscaled to match, e.g. for thumbnails.
+     * @param wall the wall image, left unchanged
+     * @param holds the holds, as a JSON array of normalised {x, y}
+     * @param alpha whether to keep the wall's transparency, if any
+     * @param scale the wall's scale, 1 for full size
+     * @return the route image
+     */
+    @Contract("_, _, _, _ -> new")
+    public static @NotNull BufferedImage render(
+        @NotNull final BufferedImage wall,
+        @NotNull final JSONArray holds,
+        final boolean alpha,
+        final double scale
+    ) {
+        int width = wall.getWidth();
+        int height = wall.getHeight();
+        boolean keepAlpha = alpha && wall.getColorModel().hasAlpha();
+        BufferedImage route = new BufferedImage(
+            width, height,
+            keepAlpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB
+        );
+
+        // circles stay visible, outlines at least a pixel wide
+        double radius = Math.max(MIN_HOLD_RADIUS, HOLD_RADIUS * scale);
+        double outline = Math.max(1, HOLD_OUTLINE_WIDTH * scale);
+        Graphics2D graphics = route.createGraphics();
+        try {
+            graphics.drawImage(wall, 0, 0, null);
+            graphics.setColor(HOLD_COLOUR);
+            graphics.setStroke(new BasicStroke((float) outline));
+            for (int i = 0; i < holds.length(); i++) {
+                JSONObject hold = holds.getJSONObject(i);
+                drawHold(
+                    graphics,
+                    (int) Math.rint(hold.getDouble("x") * width),
+                    (int) Math.rint(hold.getDouble("y") * height),
+                    radius, outline
+                );
+            }
+        } finally {
+            graphics.dispose();
+        }
+        return route;
+    }
+
+    /**
+     * Draw a hold circle. Like PIL, the outline lies inside the circle's
+     * bounds (x - radius to x + radius, inclusive).
+     * @param graphics the graphics to draw with
+     * @param x the hold's x coordinate, in pixels
+     * @param y the hold's y coordinate, in pixels
+     * @param radius the circle's radius, in pixels
+     * @param outline the outline width, in pixels
+     */
+    private static void drawHold(
+        @NotNull final Graphics2D graphics, final int x, final int y,
+        final double radius, final double outline
+    ) {
+        double inset = outline / 2.0;
+        double diameter = 2 * radius + 1 - outline;
+        graphics.draw(new Ellipse2D.Double(
+            x - radius + inset, y - radius + inset,
+            diameter, diameter
+        ));
+    }
+
+    /**
+     * Describe holds as an overlay for a wall image, for clients to draw
+     * over the wall themselves: the wall size, the hold circle style, and
+     * the holds' normalised coordinates.
+     * @param holds the holds, as a JSON array of normalised {x, y}
+     * @param width the wall width, in pixels
+     * @param height the wall height, in pixels
+     * @return the overlay, as JSON
+     */
+    @Contract("_, _, _ -> new")
+    public static @NotNull JSONObject overlayJSON(
+        @NotNull final JSONArray holds, final int width, final int height
+    ) {
+        JSONArray points = new JSONArray();
+        for (int i = 0; i < holds.length(); i++) {
+            JSONObject hold = holds.getJSONObject(i);
+            points.put(RouteGenerator.hold(
+                hold.getDouble("x"), hold.getDouble("y")
+            ));
+        }
+        JSONObject overlay = new JSONObject();
+        overlay.put("width", width);
+        overlay.put("height", height);
+        overlay.put("radius", HOLD_RADIUS);
+        overlay.put("strokeWidth", HOLD_OUTLINE_WIDTH);
+        overlay.put("colour", colourHex());
+        overlay.put("holds", points);
+        return overlay;
+    }
+
+    /**
+     * Draw holds as an SVG overlay for a wall image, in the wall's pixel
+     * coordinates: the circles cover the pixels render() colours.
+     * @param holds the holds, as a JSON array of normalised {x, y}
+     * @param width the wall width, in pixels
+     * @param height the wall height, in pixels
+     * @return the SVG document
+     */
+    public static @NotNull String overlaySvg(
+        @NotNull final JSONArray holds, final int width, final int height
+    ) {
+        // pixel x spans x to x + 1, so a circle's outer edge is half a
+        // pixel beyond the radius, and the stroke is centred inside it
+        double radius = HOLD_RADIUS + 0.5 - HOLD_OUTLINE_WIDTH / 2.0;
+        StringBuilder svg = new StringBuilder();
+        svg.append("<svg xmlns=\"http://www.w3.org/2000/svg\"")
+            .append(" width=\"").append(width)
+            .append("\" height=\"").append(height)
+            .append("\" viewBox=\"0 0 ").append(width).append(' ')
+            .append(height).append("\">")
+            .append("<g fill=\"none\" stroke=\"").append(colourHex())
+            .append("\" stroke-width=\"").append(HOLD_OUTLINE_WIDTH)
+            .append("\">");
+        for (int i = 0; i < holds.length(); i++) {
+            JSONObject hold = holds.getJSONObject(i);
+            svg.append("<circle cx=\"")
+                .append(Math.rint(hold.getDouble("x") * width) + 0.5)
+                .append("\" cy=\"")
+                .append(Math.rint(hold.getDouble("y") * height) + 0.5)
+                .append("\" r=\"").append(radius).append("\"/>");
+        }
+        return svg.append("</g></svg>").toString();
+    }
+
+    /**
+     * Get the hold colour as hex.
+     * @return the colour, e.g. "#ff0000"
+     */
+    @Contract(pure = true)
+    private static @NotNull String colourHex() {
+        return String.format("#%06x", HOLD_COLOUR.getRGB() & 0xFFFFFF);
+    }
+
+    /**
+     * Draw holds on a wall image file, writing the route image file in
+     * the format its extension names. Readers never see a partial file.
+     * @param wallImage the wall image file
+     * @param routeImage the route image file to write
+     * @param holds the holds, as a JSON array of normalised {x, y}
+     * @throws IOException if the wall cannot be read or the route written
+     */
+    public static void render(
+        @NotNull final File wallImage,
+        @NotNull final File routeImage,
+        @NotNull final JSONArray holds
+    ) throws IOException {
+        BufferedImage wall = WallRasterCache.decode(wallImage);
+        writeAtomically(
+            render(wall, holds, supportsAlpha(routeImage)), routeImage
+        );
+    }
+
+    /**
+     * Draw holds on a wall image file, decoded through a cache, writing
+     * the route image file in the format its extension names. Readers
+     * never see a partial file.
+     * @param walls the decoded walls
+     * @param wallImage the wall image file
+     * @param routeImage the route image file to write
+     * @param holds the holds, as a JSON array of normalised {x, y}
+     * @throws IOException if the wall cannot be read or the route written
+     */
+    public static void render(
+        @NotNull final WallRasterCache walls,
+        @NotNull final File wallImage,
+        @NotNull final File routeImage,
+        @NotNull final JSONArray holds
+    ) throws IOException {
+        BufferedImage wall = walls.get(wallImage);
+        writeAtomically(
+            render(wall, holds, supportsAlpha(routeImage)), routeImage
+        );
+    }
+
+    /**
+     * Write an image in the format its file extension names.
+     * @param image the image
+     * @param file the file to write
+     * @throws IOException if the format is unsupported or writing fails
+     */
+    static void write(
+        @NotNull final BufferedImage image, @NotNull final File file
+    ) throws IOException {
+        String format = formatName(file);
+        if (!ImageIO.write(image, format, file)) {
+            throw new IOException("No writer for image format " + format);
+        }
+    }
+
+    /**
+     * Write an image to a temporary file beside the target, then move it
+     * in place, so concurrent writers of one file cannot interleave.
+     * @param image the image
+     * @param file the file to write
+     * @throws IOException if the format is unsupported or writing fails
+     */
+    static void writeAtomically(
+        @NotNull final BufferedImage image, @NotNull final File file
+    ) throws IOException {
+        File temporary = File.createTempFile(
+            ".render", "." + formatName(file),
+            file.getAbsoluteFile().getParentFile()
+        );
+        try {
+            write(image, temporary);
+            Files.move(
+                temporary.toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE
+            );
+        } finally {
+            Files.deleteIfExists(temporary.toPath());
+        }
+    }
+
+    /**
+     * Get the image format of a file, from its extension.
+     * @param file the file
+     * @return the format name, e.g. "jpg"
+     */
+    @Contract(pure = true)
+    static @NotNull String formatName(@NotNull final File file) {
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        return dot < 0 ? "" : name.substring(dot + 1).toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Check whether a file's image format keeps transparency.
+     * @param file the file
+     * @return true if it does, false otherwise
+     */
+    @Contract(pure = true)
+    static boolean supportsAlpha(@NotNull final File file) {
+        String format = formatName(file);
+        return !format.equals("jpg") && !format.equals("jpeg")
+            && !format.equals("bmp");
+    }
+}
@@ -0,0 +1,232 @@
+package pbrg.webservices.utils;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * The canonical holds of a wall: normalised {x, y} positions, each with
+ * an id (its index). Route coordinates snap to the nearest hold, so a
+ * route becomes a set of hold ids, held as a long[] bitset (see
+ * RouteBits) of {@link #words()} words.
+ */
+public final class HoldTable {
+
+    /** Furthest a coordinate may be from a hold and still snap to it. */
+    public static final double SNAP_DISTANCE = 0.005;
+
+    /** Key of the holds in the JSON form. */
+    private static final String HOLDS_KEY = "holds";
+
+    /** Normalised x coordinate of each hold, by id. */
+    private final double[] xs;
+
+    /** Normalised y coordinate of each hold, by id. */
+    private final double[] ys;
+
+    /**
+     * Create a hold table.
+     * @param pXs normalised x coordinate of each hold, by id
+     * @param pYs normalised y coordinate of each hold, by id
+     */
+    public HoldTable(@NotNull final double[] pXs, @NotNull final double[] pYs) {
+        if (pXs.length != pYs.length) {
+            throw new IllegalArgumentException("Unpaired hold coordinates");
+        }
+        xs = pXs.clone();
+        ys = pYs.clone();
+    }
+
+    /**
+     * Build a hold table from the holds used by routes: positions within
+     * the snap distance are one hold. Ids run top to bottom, then left
+     * to right.
+     * @param routes routes, as JSON arrays of {x, y} holds
+     * @return the hold table
+     */
+    public static @NotNull HoldTable fromRoutes(
+        @NotNull final Iterable<JSONArray> routes
+    ) {
+        List<double[]> holds = new ArrayList<>();
+        for (JSONArray route : routes) {
+            for (int i = 0; i < route.length(); i++) {
+                JSONObject hold = route.getJSONObject(i);
+                double x = hold.getDouble("x");
+                double y = hold.getDouble("y");
+                boolean known = false;
+                for (double[] existing : holds) {
+                    if (distanceSquared(existing[0], existing[1], x, y)
+                        <= SNAP_DISTANCE * SNAP_DISTANCE) {
+                        known = true;
+                        break;
+                    }
+                }
+                if (!known) {
+                    holds.add(new double[] {x, y});
+                }
+            }
+        }
+        holds.sort(Comparator.<double[]>comparingDouble(hold -> hold[1])
+            .thenComparingDouble(hold -> hold[0]));
+
+        double[] holdXs = new double[holds.size()];
+        double[] holdYs = new double[holds.size()];
+        for (int id = 0; id < holds.size(); id++) {
+            holdXs[id] = holds.get(id)[0];
+            holdYs[id] = holds.get(id)[1];
+        }
+        return new HoldTable(holdXs, holdYs);
+    }
+
+    /**
+     * Parse a hold table from its JSON form ({"holds": [{x, y}, ...]}),
+     * as stored in a wall's content.
+     * @param json the JSON form
+     * @return the hold table, null if the text is not a hold table
+     */
+    public static @Nullable HoldTable fromJSON(@Nullable final String json) {
+        if (json == null) {
+            return null;
+        }
+        try {
+            JSONArray holds = new JSONObject(json).getJSONArray(HOLDS_KEY);
+            double[] holdXs = new double[holds.length()];
+            double[] holdYs = new double[holds.length()];
+            for (int id = 0; id < holds.length(); id++) {
+                JSONObject hold = holds.getJSONObject(id);
+                holdXs[id] = hold.getDouble("x");
+                holdYs[id] = hold.getDouble("y");
+            }
+            return new HoldTable(holdXs, holdYs);
+        } catch (JSONException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Get the JSON form of the hold table, to store in a wall's content.
+     * @return the JSON form
+     */
+    @Contract("-> new")
+    public @NotNull JSONObject toJSON() {
+        JSONObject json = new JSONObject();
+        json.put(HOLDS_KEY, toHolds(RouteBits.all(size())));
+        return json;
+    }
+
+    /**
+     * Get the number of holds.
+     * @return the number of holds
+     */
+    public int size() {
+        return xs.length;
+    }
+
+    /**
+     * Get the number of words in a route bitset of this wall.
+     * @return the number of longs
+     */
+    public int words() {
+        return RouteBits.words(size());
+    }
+
+    /**
+     * Get the id of the hold nearest a coordinate.
+     * @param x normalised x coordinate
+     * @param y normalised y coordinate
+     * @return the hold id, -1 if no hold is within the snap distance
+     */
+    public int snap(final double x, final double y) {
+        int nearest = -1;
+        double nearestDistance = SNAP_DISTANCE * SNAP_DISTANCE;
+        for (int id = 0; id < xs.length; id++) {
+            double distance = distanceSquared(xs[id], ys[id], x, y);
+            if (distance <= nearestDistance) {
+                nearest = id;
+                nearestDistance = distance;
+            }
+        }
+        return nearest;
+    }
+
+    /**
+     * Snap a route's holds to this wall's holds.
+     * @param route route, as a JSON array of {x, y} holds
+     * @return the route as a bitset, null if a hold is not on this wall
+     */
+    public long @Nullable [] toBits(@NotNull final JSONArray route) {
+        long[] bits = new long[words()];
+        for (int i = 0; i < route.length(); i++) {
+            JSONObject hold = route.optJSONObject(i);
+            if (hold == null || !hold.has("x") || !hold.has("y")) {
+                return null;
+            }
+            int id = snap(hold.optDouble("x"), hold.optDouble("y"));
+            if (id < 0) {
+                return null;
+            }
+            RouteBits.set(bits, id);
+        }
+        return bits;
+    }
+
+    /**
+     * Get the holds of a route bitset, in id order.
+     * @param bits the route bitset
+     * @return route, as a JSON array of canonical {x, y} holds
+     */
+    @Contract("_ -> new")
+    public @NotNull JSONArray toHolds(final long @NotNull [] bits) {
+        JSONArray holds = new JSONArray();
+        for (int id = RouteBits.next(bits, 0); id >= 0 && id < size();
+             id = RouteBits.next(bits, id + 1)) {
+            holds.put(RouteGenerator.hold(xs[id], ys[id]));
+        }
+        return holds;
+    }
+
+    /**
+     * Snap a route's holds to this wall's canonical coordinates, keeping
+     * their order.
+     * @param route route, as a JSON array of {x, y} holds
+     * @return the canonical route, null if a hold is not on this wall
+     */
+    public @Nullable JSONArray canonicalise(@NotNull final JSONArray route) {
+        JSONArray canonical = new JSONArray();
+        for (int i = 0; i < route.length(); i++) {
+            JSONObject hold = route.optJSONObject(i);
+            if (hold == null || !hold.has("x") || !hold.has("y")) {
+                return null;
+            }
+            int id = snap(hold.optDouble("x"), hold.optDouble("y"));
+            if (id < 0) {
+                return null;
+            }
+            canonical.put(RouteGenerator.hold(xs[id], ys[id]));
+        }
+        return canonical;
+    }
+
+    /**
+     * Get the squared distance between two points.
+     * @param x1 first x
+     * @param y1 first y
+     * @param x2 second x
+     * @param y2 second y
+     * @return the squared distance
+     */
+    @Contract(pure = true)
+    private static double distanceSquared(
+        final double x1, final double y1, final double x2, final double y2
+    ) {
+        double dx = x1 - x2;
+        double dy = y1 - y2;
+        return dx * dx + dy * dy;
+    }
+}
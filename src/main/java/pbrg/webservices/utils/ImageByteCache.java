@@ -0,0 +1,281 @@
+package pbrg.webservices.utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.json.JSONObject;
+
+/**
+ * Bytes of the images served most, so a request for a popular wall or
+ * route image is answered from memory rather than disk. Images are held
+ * off the heap, in direct buffers, with their response headers worked
+ * out up front. They are keyed by file, checked against its modification
+ * time and size (a changed file is read again), and evicted least
+ * recently used first, to keep within a memory budget.
+ */
+public final class ImageByteCache {
+
+    /** Default memory budget: 32 MiB, a few dozen wall photos. */
+    public static final long DEFAULT_BUDGET = 32L << 20;
+
+    /** An image and its response headers. */
+    static final class Entry {
+
+        /** The image's content type. */
+        private final String contentType;
+
+        /** The image's entity tag. */
+        private final String entityTag;
+
+        /** The image file's modification time. */
+        private final long modified;
+
+        /** The image's bytes, read-only and off the heap. */
+        private final ByteBuffer bytes;
+
+        /**
+         * Create a cached image.
+         * @param pContentType the content type
+         * @param pEntityTag the entity tag
+         * @param pModified the file's modification time
+         * @param pBytes the bytes, read-only
+         */
+        Entry(
+            @NotNull final String pContentType,
+            @NotNull final String pEntityTag,
+            final long pModified,
+            @NotNull final ByteBuffer pBytes
+        ) {
+            contentType = pContentType;
+            entityTag = pEntityTag;
+            modified = pModified;
+            bytes = pBytes;
+        }
+
+        /**
+         * Get the image's content type.
+         * @return the content type, e.g. "image/jpeg"
+         */
+        @NotNull String getContentType() {
+            return contentType;
+        }
+
+        /**
+         * Get the image's entity tag.
+         * @return the quoted entity tag
+         */
+        @NotNull String getEntityTag() {
+            return entityTag;
+        }
+
+        /**
+         * Get the image file's modification time.
+         * @return the modification time
+         */
+        long getModified() {
+            return modified;
+        }
+
+        /**
+         * Get the image's size.
+         * @return the size, in bytes
+         */
+        long length() {
+            return bytes.capacity();
+        }
+
+        /**
+         * Write part of the image to a stream.
+         * @param position the first byte to write
+         * @param count the number of bytes to write
+         * @param outputStream the stream
+         * @throws IOException stream errors
+         */
+        void write(
+            final long position, final long count,
+            @NotNull final OutputStream outputStream
+        ) throws IOException {
+            ByteBuffer part = bytes.duplicate();
+            part.limit((int) (position + count)).position((int) position);
+            Channels.newChannel(outputStream).write(part);
+        }
+    }
+
+    /** The memory budget, in bytes. */
+    private final long budget;
+
+    /** Cached images by file path, least recently used first. */
+    private final LinkedHashMap<String, Entry> entries =
+        new LinkedHashMap<>(16, 0.75f, true);
+
+    /** Size of the cached images, in bytes. */
+    private long bytes;
+
+    /** Number of lookups served from the cache. */
+    private long hits;
+
+    /** Number of lookups that read the file. */
+    private long misses;
+
+    /** Number of images evicted to keep within the budget. */
+    private long evictions;
+
+    /**
+     * Create an image byte cache.
+     * @param pBudget the memory budget, in bytes
+     */
+    public ImageByteCache(final long pBudget) {
+        if (pBudget < 0) {
+            throw new IllegalArgumentException("Negative memory budget");
+        }
+        budget = pBudget;
+    }
+
+    /**
+     * Get a cached image, reading it on a miss.
+     * @param image the image file
+     * @param contentType the image's content type
+     * @return the image, null if larger than the budget (so not cached)
+     * @throws IOException if the image cannot be read
+     */
+    @Nullable Entry get(
+        @NotNull final File image, @NotNull final String contentType
+    ) throws IOException {
+        String key = image.getAbsolutePath();
+        long modified = image.lastModified();
+        long length = image.length();
+        synchronized (this) {
+            Entry cached = entries.get(key);
+            if (cached != null && cached.modified == modified
+                && cached.length() == length
+                && cached.contentType.equals(contentType)) {
+                hits++;
+                return cached;
+            }
+
+            // drop a stale image now, rather than when evicted
+            if (cached != null) {
+                entries.remove(key);
+                bytes -= cached.length();
+            }
+            misses++;
+        }
+
+        // read outside the lock, so other images are still served
+        Entry entry;
+        try (
+            FileInputStream fis = new FileInputStream(image);
+            FileChannel channel = fis.getChannel()
+        ) {
+            long size = channel.size();
+            if (size > budget || size > Integer.MAX_VALUE) {
+                return null;
+            }
+            ByteBuffer buffer = ByteBuffer.allocateDirect((int) size);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, buffer.position()) < 0) {
+                    throw new IOException("Image " + image + " was truncated");
+                }
+            }
+            buffer.flip();
+            entry = new Entry(
+                contentType,
+                ServletUtils.entityTag(image.getName(), size, modified),
+                modified, buffer.asReadOnlyBuffer()
+            );
+        }
+        synchronized (this) {
+            Entry replaced = entries.put(key, entry);
+            if (replaced != null) {
+                bytes -= replaced.length();
+            }
+            bytes += entry.length();
+            evict();
+        }
+        return entry;
+    }
+
+    /** Evict the least recently used images until within the budget. */
+    private void evict() {
+        Iterator<Map.Entry<String, Entry>> eldest =
+            entries.entrySet().iterator();
+        while (bytes > budget && eldest.hasNext()) {
+            bytes -= eldest.next().getValue().length();
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    /** Drop every cached image. */
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    /**
+     * Get the number of cached images.
+     * @return the number of images
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Get the size of the cached images.
+     * @return the size, in bytes
+     */
+    public synchronized long bytes() {
+        return bytes;
+    }
+
+    /**
+     * Get the number of lookups served from the cache.
+     * @return the number of hits
+     */
+    public synchronized long hits() {
+        return hits;
+    }
+
+    /**
+     * Get the number of lookups that read the file.
+     * @return the number of misses
+     */
+    public synchronized long misses() {
+        return misses;
+    }
+
+    /**
+     * Get the number of images evicted to keep within the budget.
+     * @return the number of evictions
+     */
+    public synchronized long evictions() {
+        return evictions;
+    }
+
+    /**
+     * Describe the cache as JSON: hits, misses, hit rate, evictions,
+     * cached images and their size, and the memory budget.
+     * @return the cache metrics
+     */
+    public synchronized @NotNull JSONObject getMetrics() {
+        long lookups = hits + misses;
+        JSONObject metrics = new JSONObject();
+        metrics.put("hits", hits);
+        metrics.put("misses", misses);
+        metrics.put("hitRate", lookups == 0 ? 0 : (double) hits / lookups);
+        metrics.put("evictions", evictions);
+        metrics.put("images", entries.size());
+        metrics.put("bytes", bytes);
+        metrics.put("budget", budget);
+        return metrics;
+    }
+}
@@ -0,0 +1,239 @@
+package pbrg.webservices.utils;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Low-quality placeholders of wall and route images, as BlurHash strings:
+ * the image's average colour and its lowest frequencies, in 28 base 83
+ * characters. Clients paint the placeholder (decoded with any BlurHash
+ * library) while the image loads, or instead of loading it off screen.
+ * Placeholders are computed when an image is rendered, and stored beside
+ * its file name.
+ */
+public final class ImagePlaceholders {
+
+    /** Number of horizontal components. */
+    static final int COMPONENTS_X = 4;
+
+    /** Number of vertical components. */
+    static final int COMPONENTS_Y = 3;
+
+    /** Length of a placeholder, in characters. */
+    public static final int LENGTH = 1 + 1 + 4 + 2 * (
+        COMPONENTS_X * COMPONENTS_Y - 1
+    );
+
+    /** Width images are downscaled to before encoding. */
+    static final int SAMPLE_WIDTH = 32;
+
+    /** Digits of the base 83 encoding. */
+    private static final String DIGITS = "0123456789"
+        + "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz"
+        + "#$%*+,-.:;=?@[]^_{|}~";
+
+    /** Base of the encoding. */
+    private static final int BASE = 83;
+
+    /** Most quantised value of a component's maximum. */
+    private static final int MAX_QUANTISED = 82;
+
+    /** Scale of the quantised maximum. */
+    private static final double MAX_SCALE = 166;
+
+    /** Levels of a quantised component channel, each side of zero. */
+    private static final int AC_LEVELS = 9;
+
+    /** Levels of a quantised component channel. */
+    private static final int AC_RANGE = 2 * AC_LEVELS + 1;
+
+    /** Most value of a colour channel. */
+    private static final int CHANNEL_MAX = 255;
+
+    /** Bits of a colour channel. */
+    private static final int CHANNEL_BITS = 8;
+
+    /** Digits of the average colour. */
+    private static final int DC_DIGITS = 4;
+
+    /** Digits of a component. */
+    private static final int AC_DIGITS = 2;
+
+    private ImagePlaceholders() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * Compute an image file's placeholder, decoding it subsampled (see
+     * ImageVariants.subsampling).
+     * @param image the image file
+     * @return the placeholder, null if the image cannot be read
+     */
+    public static @Nullable String of(@NotNull final File image) {
+        try {
+            return encode(ImageVariants.decode(
+                image, ImageVariants.imageWidth(image), SAMPLE_WIDTH
+            ));
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Compute an image's placeholder.
+     * @param image the image, an INT_RGB or INT_ARGB image
+     * @return the placeholder, of LENGTH characters
+     */
+    public static @NotNull String encode(@NotNull final BufferedImage image) {
+        BufferedImage sample = image.getWidth() > SAMPLE_WIDTH
+            ? ImageVariants.scale(image, SAMPLE_WIDTH) : image;
+        int width = sample.getWidth();
+        int height = sample.getHeight();
+        int[] rgb = sample.getRGB(0, 0, width, height, null, 0, width);
+
+        // linearise the pixels once
+        double[][] linear = new double[3][rgb.length];
+        for (int i = 0; i < rgb.length; i++) {
+            linear[0][i] = toLinear((rgb[i] >> 2 * CHANNEL_BITS) & CHANNEL_MAX);
+            linear[1][i] = toLinear((rgb[i] >> CHANNEL_BITS) & CHANNEL_MAX);
+            linear[2][i] = toLinear(rgb[i] & CHANNEL_MAX);
+        }
+
+        // project onto the cosine bases, lowest frequency first
+        double[][] factors = new double[COMPONENTS_X * COMPONENTS_Y][];
+        for (int j = 0; j < COMPONENTS_Y; j++) {
+            double[] rows = basis(j, height);
+            for (int i = 0; i < COMPONENTS_X; i++) {
+                double[] columns = basis(i, width);
+                double normalisation = i == 0 && j == 0 ? 1 : 2;
+                double[] factor = new double[3];
+                for (int y = 0; y < height; y++) {
+                    for (int x = 0; x < width; x++) {
+                        double weight = normalisation * columns[x] * rows[y];
+                        int pixel = y * width + x;
+                        for (int c = 0; c < 3; c++) {
+                            factor[c] += weight * linear[c][pixel];
+                        }
+                    }
+                }
+                for (int c = 0; c < 3; c++) {
+                    factor[c] /= (double) width * height;
+                }
+                factors[j * COMPONENTS_X + i] = factor;
+            }
+        }
+
+        // the size, then the components' maximum
+        StringBuilder hash = new StringBuilder(LENGTH);
+        encode83(
+            (COMPONENTS_X - 1) + (COMPONENTS_Y - 1) * AC_LEVELS, 1, hash
+        );
+        double max = 0;
+        for (int k = 1; k < factors.length; k++) {
+            for (double value : factors[k]) {
+                max = Math.max(max, Math.abs(value));
+            }
+        }
+        int quantisedMax = (int) Math.max(
+            0, Math.min(MAX_QUANTISED, Math.floor(max * MAX_SCALE - 0.5))
+        );
+        double maxValue = (quantisedMax + 1) / MAX_SCALE;
+        encode83(quantisedMax, 1, hash);
+
+        // the average colour, then the components
+        double[] dc = factors[0];
+        encode83(
+            (toSrgb(dc[0]) << 2 * CHANNEL_BITS)
+                + (toSrgb(dc[1]) << CHANNEL_BITS) + toSrgb(dc[2]),
+            DC_DIGITS, hash
+        );
+        for (int k = 1; k < factors.length; k++) {
+            int value = 0;
+            for (double channel : factors[k]) {
+                value = value * AC_RANGE + (int) Math.max(0, Math.min(
+                    AC_RANGE - 1,
+                    Math.floor(
+                        signedSqrt(channel / maxValue) * AC_LEVELS
+                            + AC_LEVELS + 0.5
+                    )
+                ));
+            }
+            encode83(value, AC_DIGITS, hash);
+        }
+        return hash.toString();
+    }
+
+    /**
+     * Get a cosine basis along an axis.
+     * @param frequency the basis' frequency
+     * @param size the axis' length, in pixels
+     * @return the basis at each pixel
+     */
+    @Contract(pure = true)
+    private static double @NotNull [] basis(
+        final int frequency, final int size
+    ) {
+        double[] basis = new double[size];
+        for (int p = 0; p < size; p++) {
+            basis[p] = Math.cos(Math.PI * frequency * p / size);
+        }
+        return basis;
+    }
+
+    /**
+     * Append a value in base 83.
+     * @param value the value
+     * @param digits the number of digits
+     * @param hash the placeholder being encoded
+     */
+    private static void encode83(
+        final int value, final int digits, @NotNull final StringBuilder hash
+    ) {
+        int divisor = 1;
+        for (int d = 1; d < digits; d++) {
+            divisor *= BASE;
+        }
+        for (; divisor > 0; divisor /= BASE) {
+            hash.append(DIGITS.charAt((value / divisor) % BASE));
+        }
+    }
+
+    /**
+     * Convert an sRGB channel to linear light.
+     * @param channel the channel, 0 to 255
+     * @return the linear value, 0 to 1
+     */
+    @Contract(pure = true)
+    static double toLinear(final int channel) {
+        double v = channel / (double) CHANNEL_MAX;
+        return v <= 0.04045 ? v / 12.92 : Math.pow((v + 0.055) / 1.055, 2.4);
+    }
+
+    /**
+     * Convert linear light to an sRGB channel.
+     * @param value the linear value
+     * @return the channel, 0 to 255
+     */
+    @Contract(pure = true)
+    static int toSrgb(final double value) {
+        double v = Math.max(0, Math.min(1, value));
+        return v <= 0.0031308
+            ? (int) (v * 12.92 * CHANNEL_MAX + 0.5)
+            : (int) ((1.055 * Math.pow(v, 1 / 2.4) - 0.055) * CHANNEL_MAX
+                + 0.5);
+    }
+
+    /**
+     * Take a square root, keeping the sign.
+     * @param value the value
+     * @return the signed square root
+     */
+    @Contract(pure = true)
+    private static double signedSqrt(final double value) {
+        return Math.copySign(Math.sqrt(Math.abs(value)), value);
+    }
+}
@@ -0,0 +1,347 @@
+package pbrg.webservices.utils;
+
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.json.JSONArray;
+
+/**
+ * Downscaled variants of wall and route images, cached on disk next to
+ * the original as name@w{width}.ext. Requested widths round up to a fixed
+ * ladder, so an image has few variants. A variant carries its original's
+ * modification time, so a changed original makes it stale.
+ */
+public final class ImageVariants {
+
+    /** Width of the original image (no variant). */
+    public static final int FULL = 0;
+
+    /** Widths of the variants, ascending. */
+    static final int[] WIDTHS = {128, 256, 512, 768, 1024, 1536, 2048};
+
+    /** Widths by size name. */
+    private static final Map<String, Integer> NAMED_WIDTHS = Map.of(
+        "thumb", 256,
+        "medium", 768,
+        "full", FULL
+    );
+
+    private ImageVariants() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * Parse a requested size: a size name (thumb, medium, full) or a
+     * width in pixels, rounded up to a variant width.
+     * @param size the size, a name or width; null for full size
+     * @return the variant width (FULL for the original), null if invalid
+     */
+    @Contract(pure = true)
+    public static @Nullable Integer parseWidth(@Nullable final Object size) {
+        if (size == null) {
+            return FULL;
+        }
+        int width;
+        if (size instanceof Number) {
+            width = ((Number) size).intValue();
+        } else {
+            String name = size.toString().trim().toLowerCase(Locale.ROOT);
+            Integer named = NAMED_WIDTHS.get(name);
+            if (named != null) {
+                return named;
+            }
+            try {
+                width = Integer.parseInt(name);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        if (width <= 0) {
+            return null;
+        }
+        for (int variantWidth : WIDTHS) {
+            if (width <= variantWidth) {
+                return variantWidth;
+            }
+        }
+        return FULL;
+    }
+
+    /**
+     * Get the file of an image's variant.
+     * @param original the original image file
+     * @param width the variant width
+     * @return the variant file, which may not exist
+     */
+    @Contract(pure = true)
+    static @NotNull File variantFile(
+        @NotNull final File original, final int width
+    ) {
+        String name = original.getName();
+        int dot = name.lastIndexOf('.');
+        String base = dot < 0 ? name : name.substring(0, dot);
+        String extension = dot < 0 ? "" : name.substring(dot);
+        return new File(
+            original.getParentFile(), base + "@w" + width + extension
+        );
+    }
+
+    /**
+     * Get an image at most a width wide: its cached variant, created if
+     * missing or stale, or the original if no wider.
+     * @param original the original image file
+     * @param width the variant width (FULL for the original)
+     * @return the image file to serve
+     * @throws IOException if the original cannot be read or the variant
+     * written
+     */
+    public static @NotNull File variant(
+        @NotNull final File original, final int width
+    ) throws IOException {
+        if (width == FULL) {
+            return original;
+        }
+
+        // serve the cached variant, unless the original changed since
+        File variant = variantFile(original, width);
+        long modified = original.lastModified();
+        if (variant.isFile() && variant.lastModified() == modified) {
+            return variant;
+        }
+        int originalWidth = imageWidth(original);
+        if (originalWidth <= width) {
+            return original;
+        }
+
+        // decode only the pixels the width needs, then write the variant
+        BufferedImage scaled =
+            scale(decode(original, originalWidth, width), width);
+        writeVariant(scaled, variant, modified);
+        return variant;
+    }
+
+    /**
+     * Get a route image at most a width wide, as variant() does, but
+     * rendered from its wall rather than downscaled from the full size
+     * route image: the wall is decoded subsampled, and the holds drawn at
+     * the variant's scale. The route image need not be rendered yet: its
+     * variant is then stamped with the wall's modification time, and is
+     * rendered again once the route image is.
+     * @param routeImage the route image file, which may not exist
+     * @param wallImage the route's wall image file
+     * @param holds the route's holds, as a JSON array of normalised {x, y}
+     * @param width the variant width (FULL for the original)
+     * @return the image file to serve, the route image (which may not
+     * exist) if the wall is no wider
+     * @throws IOException if the wall cannot be read or the variant
+     * written
+     */
+    public static @NotNull File routeVariant(
+        @NotNull final File routeImage, @NotNull final File wallImage,
+        @NotNull final JSONArray holds, final int width
+    ) throws IOException {
+        if (width == FULL) {
+            return routeImage;
+        }
+
+        // serve the cached variant, unless the route image changed since
+        File variant = variantFile(routeImage, width);
+        long modified = routeImage.isFile()
+            ? routeImage.lastModified() : wallImage.lastModified();
+        if (variant.isFile() && variant.lastModified() == modified) {
+            return variant;
+        }
+        int wallWidth = imageWidth(wallImage);
+        if (wallWidth <= width) {
+            return routeImage;
+        }
+
+        // draw the holds on the downscaled wall, scaled to match
+        BufferedImage wall = scale(decode(wallImage, wallWidth, width), width);
+        BufferedImage route = HoldRenderer.render(
+            wall, holds, HoldRenderer.supportsAlpha(routeImage),
+            (double) width / wallWidth
+        );
+        writeVariant(route, variant, modified);
+        return variant;
+    }
+
+    /**
+     * Write a variant beside its original, then move it in place. The
+     * variant carries the original's modification time.
+     * @param image the downscaled image
+     * @param variant the variant file
+     * @param modified the original's modification time
+     * @throws IOException if the variant cannot be written
+     */
+    private static void writeVariant(
+        @NotNull final BufferedImage image, @NotNull final File variant,
+        final long modified
+    ) throws IOException {
+        File temporary = File.createTempFile(
+            ".variant", "." + HoldRenderer.formatName(variant),
+            variant.getAbsoluteFile().getParentFile()
+        );
+        try {
+            HoldRenderer.write(image, temporary);
+            Files.setLastModifiedTime(
+                temporary.toPath(), FileTime.fromMillis(modified)
+            );
+            Files.move(
+                temporary.toPath(), variant.toPath(),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE
+            );
+        } finally {
+            Files.deleteIfExists(temporary.toPath());
+        }
+    }
+
+    /**
+     * Get the source subsampling for decoding an image to be downscaled
+     * to a width: the largest step that keeps at least twice the width,
+     * so the bilinear steps of scale() still smooth the result.
+     * @param imageWidth the image width
+     * @param width the width it is downscaled to
+     * @return the subsampling, 1 to decode every pixel
+     */
+    @Contract(pure = true)
+    static int subsampling(final int imageWidth, final int width) {
+        return Math.max(1, imageWidth / (2 * width));
+    }
+
+    /**
+     * Decode an image to be downscaled to a width, reading only every
+     * n-th pixel of every n-th row (see subsampling), so memory and time
+     * shrink with the square of the step.
+     * @param image the image file
+     * @param imageWidth the image width
+     * @param width the width it is downscaled to
+     * @return the decoded image, an INT_RGB or INT_ARGB image
+     * @throws IOException if the image cannot be read
+     */
+    static @NotNull BufferedImage decode(
+        @NotNull final File image, final int imageWidth, final int width
+    ) throws IOException {
+        return WallRasterCache.decode(image, subsampling(imageWidth, width));
+    }
+
+    /**
+     * Delete an image's cached variants.
+     * @param original the original image file
+     */
+    public static void deleteVariants(@NotNull final File original) {
+        for (int width : WIDTHS) {
+            File variant = variantFile(original, width);
+            if (variant.exists() && !variant.delete()) {
+                variant.deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * Read an image's width from its header, without decoding it.
+     * @param image the image file
+     * @return the width, in pixels
+     * @throws IOException if the image cannot be read
+     */
+    static int imageWidth(@NotNull final File image) throws IOException {
+        return imageSize(image).width;
+    }
+
+    /**
+     * Read an image's size from its header, without decoding it.
+     * @param image the image file
+     * @return the width and height, in pixels
+     * @throws IOException if the image cannot be read
+     */
+    public static @NotNull Dimension imageSize(@NotNull final File image)
+        throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(image)) {
+            Iterator<ImageReader> readers =
+                input == null ? null : ImageIO.getImageReaders(input);
+            if (readers == null || !readers.hasNext()) {
+                throw new IOException("Image " + image + " is unreadable");
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                return new Dimension(reader.getWidth(0), reader.getHeight(0));
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Downscale an image to a width, keeping its aspect ratio. Halving
+     * with bilinear filtering until the last step keeps detail that one
+     * large bilinear step would skip.
+     * @param image the image, an INT_RGB or INT_ARGB image
+     * @param width the width, less than the image's
+     * @return the downscaled image
+     */
+    @Contract("_, _ -> new")
+    static @NotNull BufferedImage scale(
+        @NotNull final BufferedImage image, final int width
+    ) {
+        int height = Math.max(1, (int) Math.round(
+            (double) image.getHeight() * width / image.getWidth()
+        ));
+        BufferedImage scaled = image;
+        int w = image.getWidth();
+        int h = image.getHeight();
+        do {
+            w = Math.max(width, w / 2);
+            h = Math.max(height, h / 2);
+            scaled = resize(scaled, w, h, image.getType());
+        } while (w != width || h != height);
+        return scaled;
+    }
+
+    /**
+     * Resize an image in one bilinear step.
+     * @param image the image
+     * @param width the new width
+     * @param height the new height
+     * @param type the new image's type
+     * @return the resized image
+     */
+    @Contract("_, _, _, _ -> new")
+    static @NotNull BufferedImage resize(
+        @NotNull final BufferedImage image, final int width,
+        final int height, final int type
+    ) {
+        BufferedImage resized = new BufferedImage(width, height, type);
+        Graphics2D graphics = resized.createGraphics();
+        try {
+            graphics.setRenderingHint(
+                RenderingHints.KEY_INTERPOLATION,
+                RenderingHints.VALUE_INTERPOLATION_BILINEAR
+            );
+            graphics.setRenderingHint(
+                RenderingHints.KEY_RENDERING,
+                RenderingHints.VALUE_RENDER_QUALITY
+            );
+            graphics.drawImage(image, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return resized;
+    }
+}
@@ -0,0 +1,131 @@
+package pbrg.webservices.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+/**
+ * Cached routes parsed from JSON (grade -> list of routes -> list of
+ * {x, y} holds), held in flat per-grade coordinate arrays.
+ */
+final class JsonRouteCorpus implements RouteCorpus {
+
+    /**
+     * Per-grade route offsets: routes of grade g occupy holds
+     * [offsets[g][i], offsets[g][i + 1]) in the coordinate arrays.
+     */
+    private final int[][] offsets =
+        new int[RouteGenerator.MAX_GRADE + 1][];
+
+    /** Per-grade normalised x coordinates, all routes back-to-back. */
+    private final double[][] xs =
+        new double[RouteGenerator.MAX_GRADE + 1][];
+
+    /** Per-grade normalised y coordinates, all routes back-to-back. */
+    private final double[][] ys =
+        new double[RouteGenerator.MAX_GRADE + 1][];
+
+    /**
+     * Parse a cached routes file.
+     * @param cacheFile the cached routes file
+     * @throws IOException if the file cannot be read or parsed
+     */
+    JsonRouteCorpus(@NotNull final File cacheFile) throws IOException {
+        JSONObject routesByGrade;
+        try (Reader reader = Files.newBufferedReader(
+            cacheFile.toPath(), StandardCharsets.UTF_8
+        )) {
+            routesByGrade = new JSONObject(new JSONTokener(reader));
+        } catch (JSONException e) {
+            throw new IOException(
+                "Route cache " + cacheFile + " is invalid", e
+            );
+        }
+
+        try {
+            for (String gradeKey : routesByGrade.keySet()) {
+                loadGrade(
+                    Integer.parseInt(gradeKey),
+                    routesByGrade.getJSONArray(gradeKey)
+                );
+            }
+        } catch (JSONException | IllegalArgumentException e) {
+            throw new IOException(
+                "Route cache " + cacheFile + " is invalid", e
+            );
+        }
+    }
+
+    /**
+     * Flatten the routes of a grade into the coordinate arrays.
+     * @param grade the grade
+     * @param routes the routes of the grade
+     */
+    private void loadGrade(final int grade, @NotNull final JSONArray routes) {
+        if (!RouteGenerator.isValidGrade(grade)) {
+            throw new IllegalArgumentException("Invalid grade: " + grade);
+        }
+
+        int holdCount = 0;
+        for (int i = 0; i < routes.length(); i++) {
+            holdCount += routes.getJSONArray(i).length();
+        }
+
+        int[] gradeOffsets = new int[routes.length() + 1];
+        double[] gradeXs = new double[holdCount];
+        double[] gradeYs = new double[holdCount];
+        int hold = 0;
+        for (int i = 0; i < routes.length(); i++) {
+            gradeOffsets[i] = hold;
+            JSONArray route = routes.getJSONArray(i);
+            for (int j = 0; j < route.length(); j++) {
+                JSONObject coordinate = route.getJSONObject(j);
+                gradeXs[hold] = coordinate.getDouble("x");
+                gradeYs[hold] = coordinate.getDouble("y");
+                hold++;
+            }
+        }
+        gradeOffsets[routes.length()] = hold;
+
+        offsets[grade] = gradeOffsets;
+        xs[grade] = gradeXs;
+        ys[grade] = gradeYs;
+    }
+
+    /**
+     * Get the number of cached routes of a grade.
+     * @param grade grade
+     * @return number of routes, 0 if none are cached
+     */
+    @Override
+    public int routeCount(final int grade) {
+        if (!RouteGenerator.isValidGrade(grade) || offsets[grade] == null) {
+            return 0;
+        }
+        return offsets[grade].length - 1;
+    }
+
+    /**
+     * Get a cached route by grade and index.
+     * @param grade grade
+     * @param index route index within the grade
+     * @return route as a JSON array of {x, y} holds
+     */
+    @Override
+    public @NotNull JSONArray getRoute(final int grade, final int index) {
+        int[] gradeOffsets = offsets[grade];
+        JSONArray route = new JSONArray();
+        for (int i = gradeOffsets[index]; i < gradeOffsets[index + 1]; i++) {
+            route.put(RouteGenerator.hold(xs[grade][i], ys[grade][i]));
+        }
+        return route;
+    }
+}
@@ -0,0 +1,280 @@
+package pbrg.webservices.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Cached routes in a compact binary file, memory-mapped read-only: routes
+ * are read straight from the mapping, with no parsing and next to no heap.
+ *
+ * <p>Layout (big-endian):
+ * <pre>
+ * int     magic ("BRC1")
+ * int     max grade G
+ * int[G + 2]    first route of each grade 0..G, then the route count R
+ * int[R + 1]    first hold of each route, then the hold count H
+ * char[2 * H]   x, y of each hold, 16-bit fixed point (value / 65535)
+ * </pre>
+ */
+final class MappedRouteCorpus implements RouteCorpus {
+
+    /** Identifies a route corpus file ("BRC1"). */
+    static final int MAGIC = 0x42524331;
+
+    /** Scale of a 16-bit fixed point coordinate. */
+    static final double FIXED_POINT_SCALE = 0xFFFF;
+
+    /** Size of the fixed header (magic, max grade), in bytes. */
+    private static final int HEADER_BYTES = 2 * Integer.BYTES;
+
+    /** Size of a hold (x, y), in bytes. */
+    private static final int HOLD_BYTES = 2 * Character.BYTES;
+
+    /** The mapped file. */
+    private final MappedByteBuffer buffer;
+
+    /** The highest grade in the file. */
+    private final int maxGrade;
+
+    /** Position of the per-grade route table. */
+    private final int gradeTable;
+
+    /** Position of the per-route hold table. */
+    private final int routeTable;
+
+    /** Position of the holds. */
+    private final int holdTable;
+
+    /**
+     * Map a route corpus file.
+     * @param corpusFile the route corpus file
+     * @throws IOException if the file cannot be mapped or is invalid
+     */
+    MappedRouteCorpus(@NotNull final File corpusFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(
+            corpusFile.toPath(), StandardOpenOption.READ
+        )) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw invalid(corpusFile);
+            }
+            buffer = channel.map(
+                FileChannel.MapMode.READ_ONLY, 0, channel.size()
+            );
+        }
+
+        // validate the header and tables against the file size
+        int size = buffer.capacity();
+        if (size < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+            throw invalid(corpusFile);
+        }
+        maxGrade = buffer.getInt(Integer.BYTES);
+        if (maxGrade < 0 || maxGrade > RouteGenerator.MAX_GRADE) {
+            throw invalid(corpusFile);
+        }
+        gradeTable = HEADER_BYTES;
+        routeTable = gradeTable + (maxGrade + 2) * Integer.BYTES;
+        if (routeTable > size) {
+            throw invalid(corpusFile);
+        }
+        long routes = buffer.getInt(routeTable - Integer.BYTES);
+        long routeTableEnd = routeTable + (routes + 1) * Integer.BYTES;
+        if (routes < 0 || routeTableEnd > size) {
+            throw invalid(corpusFile);
+        }
+        holdTable = (int) routeTableEnd;
+        long holds = buffer.getInt(holdTable - Integer.BYTES);
+        if (holds < 0 || holdTable + holds * HOLD_BYTES != size) {
+            throw invalid(corpusFile);
+        }
+    }
+
+    /**
+     * Build the error for an invalid route corpus file.
+     * @param corpusFile the route corpus file
+     * @return the error
+     */
+    private static @NotNull IOException invalid(
+        @NotNull final File corpusFile
+    ) {
+        return new IOException("Route corpus " + corpusFile + " is invalid");
+    }
+
+    /**
+     * Check if a file is a route corpus (starts with the magic number).
+     * @param file the file
+     * @return true if a route corpus, false otherwise
+     * @throws IOException if the file cannot be read
+     */
+    static boolean isRouteCorpus(@NotNull final File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+            Files.newInputStream(file.toPath())
+        )) {
+            return in.readInt() == MAGIC;
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Get the index of the first route of a grade.
+     * @param grade grade, 0 to maxGrade + 1
+     * @return route index
+     */
+    private int firstRoute(final int grade) {
+        return buffer.getInt(gradeTable + grade * Integer.BYTES);
+    }
+
+    /**
+     * Get the index of the first hold of a route.
+     * @param route route index, 0 to the route count
+     * @return hold index
+     */
+    private int firstHold(final int route) {
+        return buffer.getInt(routeTable + route * Integer.BYTES);
+    }
+
+    @Override
+    public int routeCount(final int grade) {
+        if (grade < 0 || grade > maxGrade) {
+            return 0;
+        }
+        return firstRoute(grade + 1) - firstRoute(grade);
+    }
+
+    @Override
+    public @NotNull JSONArray getRoute(final int grade, final int index) {
+        if (index < 0 || index >= routeCount(grade)) {
+            throw new IndexOutOfBoundsException(
+                "No route " + index + " of grade " + grade
+            );
+        }
+        int route = firstRoute(grade) + index;
+        JSONArray holds = new JSONArray();
+        for (int i = firstHold(route); i < firstHold(route + 1); i++) {
+            int position = holdTable + i * HOLD_BYTES;
+            holds.put(RouteGenerator.hold(
+                decode(buffer.getChar(position)),
+                decode(buffer.getChar(position + Character.BYTES))
+            ));
+        }
+        return holds;
+    }
+
+    /**
+     * Quantise a normalised coordinate to 16-bit fixed point.
+     * @param value coordinate, clamped to [0, 1]
+     * @return fixed point coordinate
+     */
+    @Contract(pure = true)
+    static char encode(final double value) {
+        double clamped = Math.max(0, Math.min(1, value));
+        return (char) Math.round(clamped * FIXED_POINT_SCALE);
+    }
+
+    /**
+     * Expand a 16-bit fixed point coordinate.
+     * @param value fixed point coordinate
+     * @return normalised coordinate
+     */
+    @Contract(pure = true)
+    static double decode(final char value) {
+        return value / FIXED_POINT_SCALE;
+    }
+
+    /**
+     * Write routes as a route corpus file.
+     * @param source the routes
+     * @param corpusFile the route corpus file to write
+     * @throws IOException if the file cannot be written
+     */
+    static void write(
+        @NotNull final RouteCorpus source, @NotNull final File corpusFile
+    ) throws IOException {
+        int maxGrade = RouteGenerator.MAX_GRADE;
+
+        // count the routes and holds
+        int routes = 0;
+        int holds = 0;
+        for (int grade = 0; grade <= maxGrade; grade++) {
+            for (int i = 0; i < source.routeCount(grade); i++) {
+                holds += source.getRoute(grade, i).length();
+                routes++;
+            }
+        }
+
+        try (DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream(Files.newOutputStream(corpusFile.toPath()))
+        )) {
+            out.writeInt(MAGIC);
+            out.writeInt(maxGrade);
+
+            // first route of each grade
+            int route = 0;
+            for (int grade = 0; grade <= maxGrade; grade++) {
+                out.writeInt(route);
+                route += source.routeCount(grade);
+            }
+            out.writeInt(routes);
+
+            // first hold of each route
+            int hold = 0;
+            for (int grade = 0; grade <= maxGrade; grade++) {
+                for (int i = 0; i < source.routeCount(grade); i++) {
+                    out.writeInt(hold);
+                    hold += source.getRoute(grade, i).length();
+                }
+            }
+            out.writeInt(holds);
+
+            // the holds
+            for (int grade = 0; grade <= maxGrade; grade++) {
+                for (int i = 0; i < source.routeCount(grade); i++) {
+                    JSONArray routeHolds = source.getRoute(grade, i);
+                    for (int j = 0; j < routeHolds.length(); j++) {
+                        JSONObject coordinate = routeHolds.getJSONObject(j);
+                        out.writeChar(encode(coordinate.getDouble("x")));
+                        out.writeChar(encode(coordinate.getDouble("y")));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Convert a JSON cached routes file to a route corpus file.
+     * @param jsonFile the JSON cached routes file
+     * @param corpusFile the route corpus file to write
+     * @throws IOException if either file cannot be read or written
+     */
+    static void convert(
+        @NotNull final File jsonFile, @NotNull final File corpusFile
+    ) throws IOException {
+        write(new JsonRouteCorpus(jsonFile), corpusFile);
+    }
+
+    /**
+     * Convert a JSON cached routes file to a route corpus file.
+     * @param args the JSON file, then the route corpus file
+     * @throws IOException if either file cannot be read or written
+     */
+    public static void main(final String[] args) throws IOException {
+        if (args.length != 2) {
+            throw new IllegalArgumentException(
+                "Usage: MappedRouteCorpus <routes.json> <routes.bin>"
+            );
+        }
+        convert(new File(args[0]), new File(args[1]));
+    }
+}
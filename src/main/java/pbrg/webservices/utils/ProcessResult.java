@@ -0,0 +1,112 @@
+package pbrg.webservices.utils;
+
+import java.time.Duration;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The outcome of running a process: exit code, captured output, duration.
+ */
+public final class ProcessResult {
+
+    /** Exit code reported when the process was killed at its deadline. */
+    public static final int TIMED_OUT_EXIT_CODE = -1;
+
+    /** The exit code. */
+    private final int exitCode;
+
+    /** The captured stdout (possibly truncated). */
+    private final String stdout;
+
+    /** The captured stderr (possibly truncated). */
+    private final String stderr;
+
+    /** The wall-clock duration. */
+    private final Duration duration;
+
+    /** Whether the process was killed at its deadline. */
+    private final boolean timedOut;
+
+    /** Whether either stream was cut at the buffer limit. */
+    private final boolean truncated;
+
+    /**
+     * Construct a process result.
+     * @param pExitCode exit code
+     * @param pStdout captured stdout
+     * @param pStderr captured stderr
+     * @param pDuration wall-clock duration
+     * @param pTimedOut whether the process was killed at its deadline
+     * @param pTruncated whether either stream was cut at the buffer limit
+     */
+    public ProcessResult(
+        final int pExitCode,
+        @NotNull final String pStdout,
+        @NotNull final String pStderr,
+        @NotNull final Duration pDuration,
+        final boolean pTimedOut,
+        final boolean pTruncated
+    ) {
+        this.exitCode = pExitCode;
+        this.stdout = pStdout;
+        this.stderr = pStderr;
+        this.duration = pDuration;
+        this.timedOut = pTimedOut;
+        this.truncated = pTruncated;
+    }
+
+    /**
+     * Get the exit code.
+     * @return exit code, TIMED_OUT_EXIT_CODE if killed at the deadline
+     */
+    public int getExitCode() {
+        return exitCode;
+    }
+
+    /**
+     * Get the captured stdout.
+     * @return stdout
+     */
+    public @NotNull String getStdout() {
+        return stdout;
+    }
+
+    /**
+     * Get the captured stderr.
+     * @return stderr
+     */
+    public @NotNull String getStderr() {
+        return stderr;
+    }
+
+    /**
+     * Get the wall-clock duration.
+     * @return duration
+     */
+    public @NotNull Duration getDuration() {
+        return duration;
+    }
+
+    /**
+     * Check if the process was killed at its deadline.
+     * @return true if timed out, false otherwise
+     */
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+
+    /**
+     * Check if either stream was cut at the buffer limit.
+     * @return true if truncated, false otherwise
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    /**
+     * Check if the process finished in time with exit code 0.
+     * @return true if successful, false otherwise
+     */
+    public boolean isSuccess() {
+        return !timedOut && exitCode == 0;
+    }
+}
@@ -1,15 +1,49 @@
 package pbrg.webservices.utils;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.StringReader;
 import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Stream;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 public final class ProcessUtils {
 
+    /** Default deadline for a process run by runProcessEnsureSuccess. */
+    public static final Duration DEFAULT_DEADLINE = Duration.ofSeconds(60);
+
+    /** Default cap on the bytes kept from each of stdout and stderr. */
+    public static final int DEFAULT_MAX_OUTPUT_BYTES = 1024 * 1024;
+
+    /** Time allowed to finish draining output after the process ends. */
+    static final Duration DRAIN_GRACE = Duration.ofSeconds(1);
+
+    /** Size of the buffer used to drain a stream. */
+    private static final int DRAIN_BUFFER_BYTES = 8192;
+
+    /** Threads draining process output streams. */
+    private static final ExecutorService DRAINERS =
+        Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task, "process-output-drainer");
+            thread.setDaemon(true);
+            return thread;
+        });
+
     /** Static class, no need to instantiate. */
     private ProcessUtils() {
         throw new IllegalStateException("Utility class");
@@ -26,7 +60,7 @@ public final class ProcessUtils {
     }
 
     /**
-     * Run the process builder command.
+     * Run the process builder command (no deadline).
      * @param command The command to run
      * @param collectOutput Whether to collect the output of the command
      * @return The output of the command
@@ -35,47 +69,165 @@ public final class ProcessUtils {
         final @NotNull ProcessBuilder command,
         final boolean collectOutput
     ) {
-        List<String> output = null;
+        ProcessResult result;
         try {
-            Process process = command.start();
-            if (collectOutput) {
-                output = collectOutputAsList(process);
-            }
-            int exitCode = process.waitFor();
-            process.destroy();
-            if (exitCode != 0) {
-                throw new InterruptedException(
-                    "Command failed (non-zero exit code)"
+            result = runProcess(command, null, DEFAULT_MAX_OUTPUT_BYTES);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (!result.isSuccess()) {
+            throw new RuntimeException(
+                "Command failed (non-zero exit code)"
+            );
+        }
+        if (!collectOutput) {
+            return null;
+        }
+        try (BufferedReader reader = new BufferedReader(
+            new StringReader(result.getStdout())
+        )) {
+            return readLines(reader);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Run a process to completion or its deadline, draining stdout and
+     * stderr concurrently so a chatty process cannot block on a full pipe.
+     * At the deadline the process and its descendants are killed.
+     * @param pb process builder
+     * @param deadline wall-clock deadline, null for none
+     * @param maxOutputBytes bytes kept from each stream, the rest discarded
+     * @return the result
+     * @throws IOException if the process cannot be started
+     */
+    public static @NotNull ProcessResult runProcess(
+        @NotNull final ProcessBuilder pb,
+        @Nullable final Duration deadline,
+        final int maxOutputBytes
+    ) throws IOException {
+        long startNanos = System.nanoTime();
+        Process process = pb.start();
+
+        // nothing is written to stdin
+        OutputStream stdin = process.getOutputStream();
+        if (stdin != null) {
+            stdin.close();
+        }
+
+        BoundedOutput stdout = new BoundedOutput(maxOutputBytes);
+        BoundedOutput stderr = new BoundedOutput(maxOutputBytes);
+        Future<?> stdoutDrain =
+            DRAINERS.submit(() -> stdout.drain(process.getInputStream()));
+        Future<?> stderrDrain =
+            DRAINERS.submit(() -> stderr.drain(process.getErrorStream()));
+
+        boolean finished;
+        int exitCode = ProcessResult.TIMED_OUT_EXIT_CODE;
+        try {
+            if (deadline == null) {
+                exitCode = process.waitFor();
+                finished = true;
+            } else {
+                finished = process.waitFor(
+                    deadline.toNanos(), TimeUnit.NANOSECONDS
                 );
+                if (finished) {
+                    exitCode = process.exitValue();
+                }
             }
-            return output;
-        } catch (IOException | InterruptedException e) {
+        } catch (InterruptedException e) {
+            destroyProcessTree(process);
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting for process", e);
+        }
+        if (!finished) {
+            destroyProcessTree(process);
+        }
+
+        awaitDrain(stdoutDrain);
+        awaitDrain(stderrDrain);
+
+        return new ProcessResult(
+            exitCode,
+            stdout.toString(),
+            stderr.toString(),
+            Duration.ofNanos(System.nanoTime() - startNanos),
+            !finished,
+            stdout.isTruncated() || stderr.isTruncated()
+        );
+    }
+
+    /**
+     * Wait briefly for a stream to finish draining, then give up on it
+     * (a surviving grandchild may hold the pipe open).
+     * @param drain the draining task
+     */
+    private static void awaitDrain(@NotNull final Future<?> drain) {
+        try {
+            drain.get(DRAIN_GRACE.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException | ExecutionException e) {
+            drain.cancel(true);
+        } catch (InterruptedException e) {
+            drain.cancel(true);
             Thread.currentThread().interrupt();
-            throw new RuntimeException(e);
         }
     }
 
     /**
-     * Run a process, throwing a RuntimeException if the process fails.
+     * Kill a process and all of its descendants.
+     * @param process the process
+     */
+    static void destroyProcessTree(@NotNull final Process process) {
+        Stream<ProcessHandle> descendants = process.descendants();
+        if (descendants != null) {
+            descendants.forEach(ProcessHandle::destroyForcibly);
+        }
+        process.destroyForcibly();
+    }
+
+    /**
+     * Run a process, throwing a RuntimeException if the process fails
+     * or passes the default deadline.
      * @param pb process builder
-     * @return process
+     * @return the result
      */
-    static Process runProcessEnsureSuccess(@NotNull final ProcessBuilder pb) {
-        // read the output printed by the python script
-        Process process;
+    static @NotNull ProcessResult runProcessEnsureSuccess(
+        @NotNull final ProcessBuilder pb
+    ) {
+        return runProcessEnsureSuccess(pb, DEFAULT_DEADLINE);
+    }
+
+    /**
+     * Run a process, throwing a RuntimeException if the process fails
+     * or passes its deadline.
+     * @param pb process builder
+     * @param deadline wall-clock deadline
+     * @return the result
+     */
+    static @NotNull ProcessResult runProcessEnsureSuccess(
+        @NotNull final ProcessBuilder pb,
+        @NotNull final Duration deadline
+    ) {
+        ProcessResult result;
         try {
-            process = pb.start();
+            result = runProcess(pb, deadline, DEFAULT_MAX_OUTPUT_BYTES);
         } catch (IOException e) {
             throw new UncheckedIOException(e);
         }
-        // ensure success
-        int exitCode = getExitCode(process);
-        if (exitCode != 0) {
+        if (result.isTimedOut()) {
             throw new RuntimeException(
-                "Route thumbnail generation failed with exit code " + exitCode
+                "Process killed after its deadline of " + deadline
             );
         }
-        return process;
+        if (!result.isSuccess()) {
+            throw new RuntimeException(
+                "Process failed with exit code " + result.getExitCode()
+                    + ": " + result.getStderr()
+            );
+        }
+        return result;
     }
 
     /**
@@ -86,8 +238,17 @@ public final class ProcessUtils {
     static StringBuilder runProcessGetOutputEnsureSuccess(
         @NotNull final ProcessBuilder pb
     ) throws IOException {
-        Process process = runProcessEnsureSuccess(pb);
-        return collectOutput(process);
+        ProcessResult result = runProcessEnsureSuccess(pb);
+        StringBuilder output = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(
+            new StringReader(result.getStdout())
+        )) {
+            for (String line : readLines(reader)) {
+                output.append(line);
+                output.append(System.lineSeparator());
+            }
+        }
+        return output;
     }
 
     /**
@@ -157,4 +318,66 @@ public final class ProcessUtils {
         }
         return exitCode;
     }
+
+    /** Keeps the first bytes of a stream, discarding the rest. */
+    private static final class BoundedOutput {
+
+        /** The kept bytes. */
+        private final ByteArrayOutputStream kept =
+            new ByteArrayOutputStream();
+
+        /** The number of bytes to keep. */
+        private final int limit;
+
+        /** Whether bytes were discarded. */
+        private volatile boolean truncated;
+
+        /**
+         * Construct a bounded output.
+         * @param pLimit the number of bytes to keep
+         */
+        BoundedOutput(final int pLimit) {
+            limit = pLimit;
+        }
+
+        /**
+         * Read a stream to its end.
+         * @param stream the stream, may be null
+         */
+        void drain(@Nullable final InputStream stream) {
+            if (stream == null) {
+                return;
+            }
+            byte[] buffer = new byte[DRAIN_BUFFER_BYTES];
+            try (InputStream in = stream) {
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    synchronized (kept) {
+                        int room = Math.max(0, limit - kept.size());
+                        kept.write(buffer, 0, Math.min(room, read));
+                        if (read > room) {
+                            truncated = true;
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                // stream closed as the process was killed
+            }
+        }
+
+        /**
+         * Check if bytes were discarded.
+         * @return true if truncated, false otherwise
+         */
+        boolean isTruncated() {
+            return truncated;
+        }
+
+        @Override
+        public String toString() {
+            synchronized (kept) {
+                return kept.toString(StandardCharsets.UTF_8);
+            }
+        }
+    }
 }
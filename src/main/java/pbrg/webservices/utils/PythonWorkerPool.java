@@ -0,0 +1,458 @@
+package pbrg.webservices.utils;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * A pool of long-lived python workers (worker.py), each serving one
+ * line-delimited JSON request at a time over stdin/stdout. Scripts are
+ * imported once per worker, so calls skip interpreter startup and imports.
+ */
+public final class PythonWorkerPool implements AutoCloseable {
+
+    /** Default deadline for a call, once it has a worker. */
+    public static final Duration DEFAULT_DEADLINE = Duration.ofSeconds(30);
+
+    /** Longest time a call waits for an idle worker. */
+    static final Duration WORKER_WAIT = Duration.ofSeconds(30);
+
+    /** Deadline for a health check (or warm-up) request. */
+    static final Duration PING_DEADLINE = Duration.ofSeconds(10);
+
+    /** Seconds between health checks of idle workers. */
+    static final long HEALTH_CHECK_INTERVAL_SECONDS = 30;
+
+    /** The worker script. */
+    private final File workerScript;
+
+    /** The number of workers. */
+    private final int size;
+
+    /** Workers waiting for a call. */
+    private final BlockingQueue<Worker> idle = new LinkedBlockingQueue<>();
+
+    /** Workers that could not be restarted, re-tried by health checks. */
+    private final AtomicInteger missing = new AtomicInteger();
+
+    /** Request identifiers. */
+    private final AtomicLong nextRequestId = new AtomicLong();
+
+    /** Runs the periodic health checks. */
+    private final ScheduledExecutorService healthChecker;
+
+    /** Whether the pool has been closed. */
+    private volatile boolean closed;
+
+    /**
+     * Start a pool, one worker per core.
+     * @param pWorkerScript the worker script (worker.py)
+     * @throws IOException if the workers cannot be started
+     */
+    public PythonWorkerPool(@NotNull final File pWorkerScript)
+        throws IOException {
+        this(pWorkerScript, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Start a pool, waiting for every worker to answer a ping.
+     * @param pWorkerScript the worker script (worker.py)
+     * @param pSize the number of workers
+     * @throws IOException if the workers cannot be started
+     */
+    public PythonWorkerPool(
+        @NotNull final File pWorkerScript, final int pSize
+    ) throws IOException {
+        if (!pWorkerScript.isFile()) {
+            throw new IOException(
+                "Python script " + pWorkerScript + " does not exist"
+            );
+        }
+        if (pSize < 1) {
+            throw new IllegalArgumentException("Pool size must be positive");
+        }
+        workerScript = pWorkerScript;
+        size = pSize;
+
+        try {
+            for (int i = 0; i < size; i++) {
+                Worker worker = Worker.start(workerScript);
+                idle.add(worker);
+                ping(worker);
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+
+        healthChecker = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "python-worker-health");
+            thread.setDaemon(true);
+            return thread;
+        });
+        healthChecker.scheduleWithFixedDelay(
+            this::checkHealth,
+            HEALTH_CHECK_INTERVAL_SECONDS, HEALTH_CHECK_INTERVAL_SECONDS,
+            TimeUnit.SECONDS
+        );
+    }
+
+    /**
+     * Get the worker script this pool runs.
+     * @return the worker script
+     */
+    public @NotNull File getWorkerScript() {
+        return workerScript;
+    }
+
+    /**
+     * Get the number of workers.
+     * @return the number of workers
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Import scripts in every worker, so the first calls do not pay for
+     * them. A worker whose import times out or crashes is replaced (its
+     * late response would answer the next call), and its replacement
+     * imports scripts on first call instead.
+     * @param scripts the scripts to import
+     */
+    public void warm(@NotNull final File... scripts) {
+        List<Worker> workers = new ArrayList<>();
+        idle.drainTo(workers);
+        for (Worker worker : workers) {
+            Worker warmed = worker;
+            for (File script : scripts) {
+                JSONObject request = new JSONObject();
+                request.put("script", script.getAbsolutePath());
+                try {
+                    exchange(warmed, request, PING_DEADLINE.toNanos());
+                } catch (IOException e) {
+                    warmed = replace(warmed);
+                    break;
+                }
+            }
+            if (warmed != null) {
+                release(warmed);
+            }
+        }
+    }
+
+    /**
+     * Call a function of a script on a worker.
+     * @param script the python script
+     * @param function the function name
+     * @param args the keyword arguments
+     * @param deadline the deadline for the call, counted from when it is
+     * sent to a worker (waiting for a worker has its own, WORKER_WAIT)
+     * @return the function result (as parsed by org.json)
+     * @throws IOException if the call fails, errors, or passes the deadline
+     */
+    public @Nullable Object call(
+        @NotNull final File script,
+        @NotNull final String function,
+        @NotNull final JSONObject args,
+        @NotNull final Duration deadline
+    ) throws IOException {
+        if (closed) {
+            throw new IOException("Python worker pool is closed");
+        }
+        if (deadline.isNegative() || deadline.isZero()) {
+            // fail fast, before taking (and then killing) a worker
+            throw new IOException("Python call has no time left");
+        }
+
+        // wait for a worker
+        Worker worker;
+        try {
+            worker = idle.poll(WORKER_WAIT.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting for a python worker");
+        }
+        if (worker == null) {
+            throw new IOException("No python worker available");
+        }
+        if (!worker.isAlive()) {
+            worker = replace(worker);
+            if (worker == null) {
+                throw new IOException("Python worker could not be started");
+            }
+        }
+
+        JSONObject request = new JSONObject();
+        request.put("script", script.getAbsolutePath());
+        request.put("function", function);
+        request.put("args", args);
+
+        JSONObject response;
+        try {
+            response = exchange(worker, request, deadline.toNanos());
+        } catch (IOException e) {
+            // timed out or crashed: the worker's state is unknown
+            Worker replacement = replace(worker);
+            if (replacement != null) {
+                release(replacement);
+            }
+            throw e;
+        }
+        release(worker);
+
+        if (!response.optBoolean("ok")) {
+            throw new IOException(
+                "Python call " + function + " failed: "
+                    + response.optString("error")
+            );
+        }
+        return response.opt("result");
+    }
+
+    /**
+     * Send a request to a worker and wait for its response.
+     * @param worker the worker
+     * @param request the request
+     * @param timeoutNanos time to wait for the response
+     * @return the response
+     * @throws IOException on timeout, crash, or an unreadable response
+     */
+    private @NotNull JSONObject exchange(
+        @NotNull final Worker worker,
+        @NotNull final JSONObject request,
+        final long timeoutNanos
+    ) throws IOException {
+        long requestId = nextRequestId.incrementAndGet();
+        request.put("id", requestId);
+
+        String line = worker.exchange(request.toString(), timeoutNanos);
+        if (line == null) {
+            throw new IOException("Python call timed out");
+        }
+        try {
+            JSONObject response = new JSONObject(line);
+            if (response.optLong("id", -1) != requestId) {
+                throw new IOException("Python worker answered out of order");
+            }
+            return response;
+        } catch (JSONException e) {
+            throw new IOException("Python worker response is not JSON", e);
+        }
+    }
+
+    /**
+     * Ping a worker.
+     * @param worker the worker
+     * @throws IOException if the worker does not answer in time
+     */
+    private void ping(@NotNull final Worker worker) throws IOException {
+        exchange(worker, new JSONObject(), PING_DEADLINE.toNanos());
+    }
+
+    /**
+     * Return a worker to the pool (or stop it, if the pool is closed).
+     * @param worker the worker
+     */
+    private void release(@NotNull final Worker worker) {
+        if (closed) {
+            worker.destroy();
+            return;
+        }
+        idle.add(worker);
+        if (closed && idle.remove(worker)) {
+            worker.destroy();
+        }
+    }
+
+    /**
+     * Kill a worker and start a new one in its place.
+     * @param worker the worker to kill
+     * @return the new (checked-out) worker, null if it could not be started
+     */
+    private @Nullable Worker replace(@NotNull final Worker worker) {
+        worker.destroy();
+        if (closed) {
+            return null;
+        }
+        try {
+            return Worker.start(workerScript);
+        } catch (IOException e) {
+            missing.incrementAndGet();
+            return null;
+        }
+    }
+
+    /** Ping idle workers, restarting dead ones and missing ones. */
+    void checkHealth() {
+        List<Worker> workers = new ArrayList<>();
+        idle.drainTo(workers);
+        for (Worker worker : workers) {
+            try {
+                ping(worker);
+                release(worker);
+            } catch (IOException e) {
+                Worker replacement = replace(worker);
+                if (replacement != null) {
+                    release(replacement);
+                }
+            }
+        }
+
+        // re-try workers that could not be restarted
+        while (!closed && missing.get() > 0) {
+            try {
+                release(Worker.start(workerScript));
+                missing.decrementAndGet();
+            } catch (IOException e) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Get the number of idle workers.
+     * @return the number of idle workers
+     */
+    int idleCount() {
+        return idle.size();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        if (healthChecker != null) {
+            healthChecker.shutdownNow();
+        }
+        Worker worker;
+        while ((worker = idle.poll()) != null) {
+            worker.destroy();
+        }
+    }
+
+    /** A python worker process and the thread reading its output. */
+    private static final class Worker {
+
+        /** The worker process. */
+        private final Process process;
+
+        /** The worker's stdin. */
+        private final BufferedWriter stdin;
+
+        /** Lines written by the worker to stdout, then empty at its end. */
+        private final BlockingQueue<Optional<String>> lines =
+            new LinkedBlockingQueue<>();
+
+        /**
+         * Wrap a started worker process.
+         * @param pProcess the worker process
+         */
+        private Worker(@NotNull final Process pProcess) {
+            process = pProcess;
+            stdin = new BufferedWriter(new OutputStreamWriter(
+                process.getOutputStream(), StandardCharsets.UTF_8
+            ));
+            Thread reader = new Thread(
+                this::readOutput, "python-worker-" + process.pid()
+            );
+            reader.setDaemon(true);
+            reader.start();
+        }
+
+        /**
+         * Start a worker process.
+         * @param workerScript the worker script
+         * @return the worker
+         * @throws IOException if the process cannot be started
+         */
+        static @NotNull Worker start(@NotNull final File workerScript)
+            throws IOException {
+            ProcessBuilder pb = new ProcessBuilder(
+                "python3", "-u", workerScript.toString()
+            );
+            pb.redirectError(ProcessBuilder.Redirect.DISCARD);
+            return new Worker(pb.start());
+        }
+
+        /** Queue each line of output, then an empty end of output. */
+        private void readOutput() {
+            try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(
+                    process.getInputStream(), StandardCharsets.UTF_8
+                )
+            )) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    lines.add(Optional.of(line));
+                }
+            } catch (IOException e) {
+                // the worker was killed
+            }
+            lines.add(Optional.empty());
+        }
+
+        /**
+         * Write a request line and wait for the response line.
+         * @param request the request line
+         * @param timeoutNanos time to wait for the response
+         * @return the response line, or null on timeout
+         * @throws IOException if the request cannot be written, or the
+         * worker has exited
+         */
+        @Nullable String exchange(
+            @NotNull final String request, final long timeoutNanos
+        ) throws IOException {
+            stdin.write(request);
+            stdin.newLine();
+            stdin.flush();
+            Optional<String> line;
+            try {
+                line = lines.poll(timeoutNanos, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            if (line == null) {
+                return null;
+            }
+            if (line.isEmpty()) {
+                // keep the end of output for later exchanges
+                lines.add(line);
+                throw new IOException("Python worker exited");
+            }
+            return line.get();
+        }
+
+        /**
+         * Check if the worker process is running.
+         * @return true if running, false otherwise
+         */
+        boolean isAlive() {
+            return process.isAlive();
+        }
+
+        /** Kill the worker process. */
+        void destroy() {
+            process.destroyForcibly();
+        }
+    }
+}
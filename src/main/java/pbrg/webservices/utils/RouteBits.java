@@ -0,0 +1,211 @@
+package pbrg.webservices.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Routes as fixed-width bitsets of hold ids (bit id % 64 of word id / 64),
+ * so comparing routes is a handful of word operations.
+ */
+public final class RouteBits {
+
+    private RouteBits() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * Get the number of words in a bitset of a number of holds.
+     * @param holds the number of holds
+     * @return the number of longs
+     */
+    @Contract(pure = true)
+    public static int words(final int holds) {
+        return (holds + Long.SIZE - 1) / Long.SIZE;
+    }
+
+    /**
+     * Get a bitset with every hold set.
+     * @param holds the number of holds
+     * @return the bitset
+     */
+    @Contract("_ -> new")
+    public static long @NotNull [] all(final int holds) {
+        long[] bits = new long[words(holds)];
+        Arrays.fill(bits, -1L);
+        int spare = bits.length * Long.SIZE - holds;
+        if (spare > 0) {
+            bits[bits.length - 1] >>>= spare;
+        }
+        return bits;
+    }
+
+    /**
+     * Set a hold.
+     * @param bits the bitset
+     * @param id the hold id
+     */
+    public static void set(final long @NotNull [] bits, final int id) {
+        bits[id / Long.SIZE] |= 1L << (id % Long.SIZE);
+    }
+
+    /**
+     * Check whether a hold is set.
+     * @param bits the bitset
+     * @param id the hold id
+     * @return true if set, false otherwise
+     */
+    @Contract(pure = true)
+    public static boolean get(final long @NotNull [] bits, final int id) {
+        return (bits[id / Long.SIZE] & 1L << (id % Long.SIZE)) != 0;
+    }
+
+    /**
+     * Get the first hold set at or after an id.
+     * @param bits the bitset
+     * @param from the hold id to start at
+     * @return the hold id, -1 if none
+     */
+    @Contract(pure = true)
+    public static int next(final long @NotNull [] bits, final int from) {
+        int word = from / Long.SIZE;
+        if (from < 0 || word >= bits.length) {
+            return -1;
+        }
+        long remaining = bits[word] & (-1L << (from % Long.SIZE));
+        while (remaining == 0) {
+            if (++word == bits.length) {
+                return -1;
+            }
+            remaining = bits[word];
+        }
+        return word * Long.SIZE + Long.numberOfTrailingZeros(remaining);
+    }
+
+    /**
+     * Count the holds set.
+     * @param bits the bitset
+     * @return the number of holds
+     */
+    @Contract(pure = true)
+    public static int count(final long @NotNull [] bits) {
+        int count = 0;
+        for (long word : bits) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    /**
+     * Count the holds two routes share.
+     * @param a a bitset
+     * @param b a bitset, of the same wall
+     * @return the number of shared holds
+     */
+    @Contract(pure = true)
+    public static int overlap(
+        final long @NotNull [] a, final long @NotNull [] b
+    ) {
+        int count = 0;
+        for (int i = 0; i < Math.min(a.length, b.length); i++) {
+            count += Long.bitCount(a[i] & b[i]);
+        }
+        return count;
+    }
+
+    /**
+     * Check whether two routes use the same holds.
+     * @param a a bitset
+     * @param b a bitset, of the same wall
+     * @return true if the same hold set, false otherwise
+     */
+    @Contract(pure = true)
+    public static boolean sameHolds(
+        final long @NotNull [] a, final long @NotNull [] b
+    ) {
+        return Arrays.equals(a, b);
+    }
+
+    /**
+     * Encode a bitset as hex, one 16 digit word after another.
+     * @param bits the bitset
+     * @return the hex string
+     */
+    @Contract(pure = true)
+    public static @NotNull String toHex(final long @NotNull [] bits) {
+        StringBuilder hex = new StringBuilder(bits.length * Long.BYTES * 2);
+        for (long word : bits) {
+            String digits = Long.toHexString(word);
+            for (int i = digits.length(); i < Long.BYTES * 2; i++) {
+                hex.append('0');
+            }
+            hex.append(digits);
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Fingerprint a route: the SHA-256 (as hex) of its wall and hold set.
+     * Routes on the same holds of a wall, in any order, share it.
+     * @param wallId the wall id
+     * @param bits the bitset
+     * @return the 64 digit hex fingerprint
+     */
+    @Contract(pure = true)
+    public static @NotNull String fingerprint(
+        final int wallId, final long @NotNull [] bits
+    ) {
+        return sha256(wallId + ":" + toHex(bits));
+    }
+
+    /**
+     * Hash text with SHA-256.
+     * @param text the text
+     * @return the 64 digit hex hash of its UTF-8 bytes
+     */
+    @Contract(pure = true)
+    static @NotNull String sha256(@NotNull final String text) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform supports SHA-256
+            throw new IllegalStateException(e);
+        }
+        byte[] hash = digest.digest(text.getBytes(StandardCharsets.UTF_8));
+        StringBuilder hex = new StringBuilder(hash.length * 2);
+        for (byte b : hash) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16));
+            hex.append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Decode a bitset from hex.
+     * @param hex the hex string
+     * @return the bitset, null if not a hex encoded bitset
+     */
+    @Contract(pure = true)
+    public static long @Nullable [] fromHex(@Nullable final String hex) {
+        int digits = Long.BYTES * 2;
+        if (hex == null || hex.length() % digits != 0) {
+            return null;
+        }
+        long[] bits = new long[hex.length() / digits];
+        try {
+            for (int i = 0; i < bits.length; i++) {
+                bits[i] = Long.parseUnsignedLong(
+                    hex.substring(i * digits, (i + 1) * digits), 16
+                );
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return bits;
+    }
+}
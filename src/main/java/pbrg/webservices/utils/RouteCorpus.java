@@ -0,0 +1,27 @@
+package pbrg.webservices.utils;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.json.JSONArray;
+
+/**
+ * Cached routes by grade, the source of route generation.
+ */
+interface RouteCorpus {
+
+    /**
+     * Get the number of cached routes of a grade.
+     * @param grade grade
+     * @return number of routes, 0 if none are cached
+     */
+    int routeCount(int grade);
+
+    /**
+     * Get a cached route by grade and index.
+     * @param grade grade
+     * @param index route index within the grade
+     * @return route as a JSON array of {x, y} holds
+     */
+    @Contract("_, _ -> new")
+    @NotNull JSONArray getRoute(int grade, int index);
+}
@@ -0,0 +1,332 @@
+package pbrg.webservices.utils;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.json.JSONObject;
+
+/**
+ * Route generation jobs: run on a bounded executor, so request threads
+ * only submit and poll. Finished jobs are kept in memory until their
+ * time to live passes.
+ */
+public final class RouteGenerationJobs implements AutoCloseable {
+
+    /** Default time a finished job is kept. */
+    public static final Duration DEFAULT_TTL = Duration.ofMinutes(10);
+
+    /** Default number of jobs waiting for a thread. */
+    public static final int DEFAULT_QUEUE_CAPACITY = 64;
+
+    /** Longest a poll may wait for a job to finish. */
+    public static final Duration MAX_WAIT = Duration.ofSeconds(30);
+
+    /** Longest time between evictions of expired jobs. */
+    private static final Duration MAX_EVICTION_INTERVAL =
+        Duration.ofMinutes(1);
+
+    /** The state of a job. */
+    public enum Status {
+        /** Waiting for a thread. */
+        PENDING,
+        /** Running. */
+        RUNNING,
+        /** Finished with a route. */
+        SUCCEEDED,
+        /** Finished with an error. */
+        FAILED
+    }
+
+    /** Jobs by id. */
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+
+    /** Runs the jobs. */
+    private final ThreadPoolExecutor executor;
+
+    /** Evicts expired jobs. */
+    private final ScheduledExecutorService evictor;
+
+    /** The time a finished job is kept. */
+    private final Duration ttl;
+
+    /**
+     * Create the jobs executor.
+     * @param threads the number of jobs run at once
+     * @param queueCapacity the number of jobs waiting for a thread
+     * @param pTtl the time a finished job is kept
+     */
+    public RouteGenerationJobs(
+        final int threads, final int queueCapacity,
+        @NotNull final Duration pTtl
+    ) {
+        ttl = pTtl;
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(
+            threads, threads, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity),
+            task -> {
+                Thread thread = new Thread(
+                    task, "route-generation-" + threadCount.incrementAndGet()
+                );
+                thread.setDaemon(true);
+                return thread;
+            }
+        );
+
+        evictor = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "route-generation-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = Math.max(
+            1, Math.min(ttl.toMillis(), MAX_EVICTION_INTERVAL.toMillis())
+        );
+        evictor.scheduleWithFixedDelay(
+            this::evictExpired, interval, interval, TimeUnit.MILLISECONDS
+        );
+    }
+
+    /**
+     * Submit a job.
+     * @param ownerId the id of the user submitting the job
+     * @param task the task, returning the generated route id
+     * @return the job, null if too many jobs are waiting
+     */
+    public @Nullable Job submit(
+        final int ownerId, @NotNull final Callable<Integer> task
+    ) {
+        Job job = new Job(UUID.randomUUID().toString(), ownerId);
+        jobs.put(job.getId(), job);
+        try {
+            executor.execute(() -> job.run(task));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getId());
+            return null;
+        }
+        return job;
+    }
+
+    /**
+     * Get a job by id.
+     * @param jobId the job id
+     * @return the job, null if unknown or expired
+     */
+    public @Nullable Job get(@NotNull final String jobId) {
+        Job job = jobs.get(jobId);
+        if (job != null && job.isExpired(System.nanoTime(), ttl)) {
+            jobs.remove(jobId);
+            return null;
+        }
+        return job;
+    }
+
+    /** Remove finished jobs older than the time to live. */
+    void evictExpired() {
+        long now = System.nanoTime();
+        jobs.values().removeIf(job -> job.isExpired(now, ttl));
+    }
+
+    /**
+     * Get the number of jobs held.
+     * @return the number of jobs
+     */
+    int size() {
+        return jobs.size();
+    }
+
+    @Override
+    public void close() {
+        evictor.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    /** A route generation job. */
+    public static final class Job {
+
+        /** The job id. */
+        private final String id;
+
+        /** The id of the user who submitted the job. */
+        private final int ownerId;
+
+        /** Completed with the generated route id. */
+        private final CompletableFuture<Integer> result =
+            new CompletableFuture<>();
+
+        /** Whether the job has started. */
+        private volatile boolean started;
+
+        /** When the job finished (System.nanoTime). */
+        private volatile long finishedAt;
+
+        /**
+         * Create a pending job.
+         * @param pId the job id
+         * @param pOwnerId the id of the user who submitted the job
+         */
+        private Job(@NotNull final String pId, final int pOwnerId) {
+            id = pId;
+            ownerId = pOwnerId;
+        }
+
+        /**
+         * Run the task, recording its outcome.
+         * @param task the task
+         */
+        private void run(@NotNull final Callable<Integer> task) {
+            started = true;
+            try {
+                Integer routeId = task.call();
+                finishedAt = System.nanoTime();
+                result.complete(routeId);
+            } catch (Exception e) {
+                finishedAt = System.nanoTime();
+                result.completeExceptionally(e);
+            }
+        }
+
+        /**
+         * Get the job id.
+         * @return the job id
+         */
+        public @NotNull String getId() {
+            return id;
+        }
+
+        /**
+         * Get the id of the user who submitted the job.
+         * @return the user id
+         */
+        public int getOwnerId() {
+            return ownerId;
+        }
+
+        /**
+         * Get the state of the job.
+         * @return the status
+         */
+        public @NotNull Status getStatus() {
+            if (result.isCompletedExceptionally()) {
+                return Status.FAILED;
+            }
+            if (result.isDone()) {
+                return Status.SUCCEEDED;
+            }
+            return started ? Status.RUNNING : Status.PENDING;
+        }
+
+        /**
+         * Check if the job has finished.
+         * @return true if finished, false otherwise
+         */
+        public boolean isDone() {
+            return result.isDone();
+        }
+
+        /**
+         * Get the generated route id.
+         * @return the route id, null unless the job succeeded
+         */
+        public @Nullable Integer getRouteId() {
+            if (getStatus() != Status.SUCCEEDED) {
+                return null;
+            }
+            return result.join();
+        }
+
+        /**
+         * Get the error message of a failed job.
+         * @return the error message, null unless the job failed
+         */
+        public @Nullable String getError() {
+            if (getStatus() != Status.FAILED) {
+                return null;
+            }
+            try {
+                result.get();
+                return null;
+            } catch (ExecutionException e) {
+                return String.valueOf(e.getCause().getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+
+        /**
+         * Get a stage completing once the job has finished, or the
+         * timeout has passed, whichever is first.
+         * @param timeout the longest time to wait
+         * @return the stage
+         */
+        public @NotNull CompletionStage<Void> whenDone(
+            @NotNull final Duration timeout
+        ) {
+            return result.<Void>handle((routeId, error) -> null)
+                .completeOnTimeout(
+                    null, timeout.toNanos(), TimeUnit.NANOSECONDS
+                );
+        }
+
+        /**
+         * Wait for the job to finish.
+         * @param timeout the longest time to wait
+         * @return true if the job finished, false otherwise
+         */
+        public boolean await(@NotNull final Duration timeout) {
+            try {
+                result.get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+            } catch (ExecutionException | TimeoutException e) {
+                // failed, or still running
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return result.isDone();
+        }
+
+        /**
+         * Check if the job finished more than the time to live ago.
+         * @param now the current time (System.nanoTime)
+         * @param ttl the time to live
+         * @return true if expired, false otherwise
+         */
+        private boolean isExpired(final long now, @NotNull final Duration ttl) {
+            return result.isDone() && now - finishedAt > ttl.toNanos();
+        }
+
+        /**
+         * Describe the job as JSON: id, status, route id or error.
+         * @return the job as JSON
+         */
+        public @NotNull JSONObject toJSON() {
+            JSONObject json = new JSONObject();
+            json.put("jobId", id);
+            json.put("status", getStatus().name().toLowerCase(Locale.ROOT));
+            Integer routeId = getRouteId();
+            if (routeId != null) {
+                json.put("routeId", routeId);
+            }
+            String error = getError();
+            if (error != null) {
+                json.put("error", error);
+            }
+            return json;
+        }
+    }
+}
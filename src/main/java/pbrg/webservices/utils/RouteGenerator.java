@@ -0,0 +1,196 @@
+package pbrg.webservices.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * In-memory 2016 MoonBoard route generator, a port of
+ * route_gen_moon_board.py. The cached routes are loaded once, so
+ * generating a route is a random index.
+ */
+public final class RouteGenerator {
+
+    /** The lowest supported (Hueco) grade. */
+    public static final int MIN_GRADE = 1;
+
+    /** The highest supported (Hueco) grade. */
+    public static final int MAX_GRADE = 14;
+
+    /** Grades at or below this use the static route. */
+    static final int STATIC_ROUTE_MAX_LOW_GRADE = 3;
+
+    /** Grades at or above this use the static route. */
+    static final int STATIC_ROUTE_MIN_HIGH_GRADE = 10;
+
+    /** Static 2016 MoonBoard normalised-coordinate route (x, y pairs). */
+    private static final double[] STATIC_ROUTE = {
+        0.21353383458646616, 0.844574780058651,
+        0.29172932330827067, 0.793743890518084,
+        0.29172932330827067, 0.6412512218963832,
+        0.5263157894736842, 0.5395894428152492,
+        0.3699248120300752, 0.4887585532746823,
+        0.7609022556390977, 0.3362658846529814,
+        0.6045112781954888, 0.13294232649071358,
+    };
+
+    /** The cached routes file this generator was loaded from. */
+    private final File source;
+
+    /** The cached routes. */
+    private final RouteCorpus corpus;
+
+    /** The holds of the cached and static routes, built on first use. */
+    private volatile HoldTable holdTable;
+
+    /**
+     * Load a generator from a cached routes file: a binary route corpus
+     * (see MappedRouteCorpus), memory-mapped, or JSON
+     * (grade -> list of routes -> list of {x, y} holds), parsed.
+     * @param cacheFile the cached routes file
+     * @throws IOException if the file cannot be read or parsed
+     */
+    public RouteGenerator(@NotNull final File cacheFile) throws IOException {
+        source = cacheFile;
+        if (!cacheFile.isFile()) {
+            throw new IOException(
+                "Route cache " + cacheFile + " does not exist"
+            );
+        }
+        if (MappedRouteCorpus.isRouteCorpus(cacheFile)) {
+            corpus = new MappedRouteCorpus(cacheFile);
+        } else {
+            corpus = new JsonRouteCorpus(cacheFile);
+        }
+    }
+
+    /**
+     * Get the cached routes file this generator was loaded from.
+     * @return the cached routes file
+     */
+    public @NotNull File getSource() {
+        return source;
+    }
+
+    /**
+     * Check a grade is in the supported range (V1-V14).
+     * @param grade grade
+     * @return true if supported, false otherwise
+     */
+    @Contract(pure = true)
+    public static boolean isValidGrade(final int grade) {
+        return grade >= MIN_GRADE && grade <= MAX_GRADE;
+    }
+
+    /**
+     * Check if a grade is served by the static route.
+     * @param grade grade
+     * @return true if the static route is used, false otherwise
+     */
+    @Contract(pure = true)
+    static boolean usesStaticRoute(final int grade) {
+        return grade <= STATIC_ROUTE_MAX_LOW_GRADE
+            || grade >= STATIC_ROUTE_MIN_HIGH_GRADE;
+    }
+
+    /**
+     * Get the number of cached routes of a grade.
+     * @param grade grade
+     * @return number of routes, 0 if none are cached
+     */
+    public int routeCount(final int grade) {
+        return corpus.routeCount(grade);
+    }
+
+    /**
+     * Generate a route: the static route for grades 1-3 and 10-14,
+     * otherwise a random cached route of the grade.
+     * @param grade grade
+     * @return route as a JSON array of {x, y} holds
+     */
+    @Contract("_ -> new")
+    public @NotNull JSONArray generate(final int grade) {
+        if (!isValidGrade(grade)) {
+            throw new IllegalArgumentException(
+                "Grade must be between " + MIN_GRADE + " and " + MAX_GRADE
+            );
+        }
+
+        if (usesStaticRoute(grade)) {
+            return staticRoute();
+        }
+
+        int count = routeCount(grade);
+        if (count == 0) {
+            throw new IllegalStateException(
+                "No cached routes of grade " + grade
+            );
+        }
+        return getRoute(grade, ThreadLocalRandom.current().nextInt(count));
+    }
+
+    /**
+     * Get the static route.
+     * @return route as a JSON array of {x, y} holds
+     */
+    @Contract("-> new")
+    private static @NotNull JSONArray staticRoute() {
+        JSONArray route = new JSONArray();
+        for (int i = 0; i < STATIC_ROUTE.length; i += 2) {
+            route.put(hold(STATIC_ROUTE[i], STATIC_ROUTE[i + 1]));
+        }
+        return route;
+    }
+
+    /**
+     * Get the holds this generator places routes on: those of the cached
+     * and static routes, which are the canonical MoonBoard holds.
+     * @return the hold table
+     */
+    public @NotNull HoldTable getHoldTable() {
+        HoldTable table = holdTable;
+        if (table == null) {
+            List<JSONArray> routes = new ArrayList<>();
+            routes.add(staticRoute());
+            for (int grade = 0; grade <= MAX_GRADE; grade++) {
+                for (int i = 0; i < routeCount(grade); i++) {
+                    routes.add(getRoute(grade, i));
+                }
+            }
+            table = HoldTable.fromRoutes(routes);
+            holdTable = table;
+        }
+        return table;
+    }
+
+    /**
+     * Get a cached route by grade and index.
+     * @param grade grade
+     * @param index route index within the grade
+     * @return route as a JSON array of {x, y} holds
+     */
+    @Contract("_, _ -> new")
+    @NotNull JSONArray getRoute(final int grade, final int index) {
+        return corpus.getRoute(grade, index);
+    }
+
+    /**
+     * Create a hold as a JSON object.
+     * @param x normalised x coordinate
+     * @param y normalised y coordinate
+     * @return hold
+     */
+    @Contract("_, _ -> new")
+    static @NotNull JSONObject hold(final double x, final double y) {
+        JSONObject hold = new JSONObject();
+        hold.put("x", x);
+        hold.put("y", y);
+        return hold;
+    }
+}
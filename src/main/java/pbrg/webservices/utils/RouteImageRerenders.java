@@ -0,0 +1,480 @@
+package pbrg.webservices.utils;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import pbrg.webservices.database.RouteController;
+import pbrg.webservices.database.WallController;
+import pbrg.webservices.models.RouteFull;
+
+/**
+ * Bulk re-renders of a wall's route images, e.g. once its photo is
+ * replaced (route images are addressed by the wall image version, see
+ * RouteUtils.routeImageKey). A job decodes the wall once, renders each
+ * distinct hold set on a fork-join pool sharing the decoded raster,
+ * then points the routes at their new images in one batched update and
+ * deletes the stale images. One job runs per wall at a time; finished
+ * jobs are kept in memory until their time to live passes.
+ */
+public final class RouteImageRerenders implements AutoCloseable {
+
+    /** Default time a finished job is kept. */
+    public static final Duration DEFAULT_TTL = Duration.ofMinutes(10);
+
+    /** The state of a job. */
+    public enum Status {
+        /** Waiting for a thread. */
+        PENDING,
+        /** Rendering. */
+        RUNNING,
+        /** Finished, the routes pointing at their new images. */
+        SUCCEEDED,
+        /** Finished with an error, the routes unchanged. */
+        FAILED,
+        /** Cancelled, the routes unchanged. */
+        CANCELLED
+    }
+
+    /** Jobs by id. */
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+
+    /** Jobs not yet finished, by wall id. */
+    private final Map<Integer, Job> running = new ConcurrentHashMap<>();
+
+    /** Runs the jobs, and their renders. */
+    private final ForkJoinPool pool;
+
+    /** The time a finished job is kept. */
+    private final Duration ttl;
+
+    /**
+     * Create the re-render executor.
+     * @param parallelism the number of route images rendered at once
+     * @param pTtl the time a finished job is kept
+     */
+    public RouteImageRerenders(
+        final int parallelism, @NotNull final Duration pTtl
+    ) {
+        ttl = pTtl;
+        AtomicInteger threadCount = new AtomicInteger();
+        pool = new ForkJoinPool(
+            parallelism,
+            forkJoinPool -> {
+                ForkJoinWorkerThread thread = ForkJoinPool
+                    .defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+                thread.setName(
+                    "route-image-rerender-" + threadCount.incrementAndGet()
+                );
+                thread.setDaemon(true);
+                return thread;
+            },
+            null, false
+        );
+    }
+
+    /**
+     * Re-render the route images of a wall, unless a job for the wall is
+     * already in flight.
+     * @param wallId the wall id
+     * @return the new job, or the wall's job in flight; null if the pool
+     * is closed
+     */
+    public @Nullable Job submit(final int wallId) {
+        evictExpired();
+        Job job = new Job(UUID.randomUUID().toString(), wallId);
+        Job inFlight = running.putIfAbsent(wallId, job);
+        while (inFlight != null) {
+            if (!inFlight.isDone()) {
+                return inFlight;
+            }
+            // finished, but not yet removed
+            if (running.replace(wallId, inFlight, job)) {
+                break;
+            }
+            inFlight = running.putIfAbsent(wallId, job);
+        }
+        jobs.put(job.getId(), job);
+        try {
+            pool.execute(() -> {
+                try {
+                    job.run();
+                } finally {
+                    running.remove(wallId, job);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            running.remove(wallId, job);
+            jobs.remove(job.getId());
+            return null;
+        }
+        return job;
+    }
+
+    /**
+     * Get a job by id.
+     * @param jobId the job id
+     * @return the job, null if unknown or expired
+     */
+    public @Nullable Job get(@NotNull final String jobId) {
+        Job job = jobs.get(jobId);
+        if (job != null && job.isExpired(System.nanoTime(), ttl)) {
+            jobs.remove(jobId);
+            return null;
+        }
+        return job;
+    }
+
+    /** Remove finished jobs older than the time to live. */
+    void evictExpired() {
+        long now = System.nanoTime();
+        jobs.values().removeIf(job -> job.isExpired(now, ttl));
+    }
+
+    /**
+     * Get the number of jobs held.
+     * @return the number of jobs
+     */
+    int size() {
+        return jobs.size();
+    }
+
+    @Override
+    public void close() {
+        for (Job job : running.values()) {
+            job.cancel();
+        }
+        pool.shutdownNow();
+    }
+
+    /** A re-render of a wall's route images. */
+    public static final class Job {
+
+        /** The job id. */
+        private final String id;
+
+        /** The wall id. */
+        private final int wallId;
+
+        /** The number of images to render, known once running. */
+        private final AtomicInteger total = new AtomicInteger();
+
+        /** The number of images rendered (or found rendered). */
+        private final AtomicInteger rendered = new AtomicInteger();
+
+        /** The number of images that could not be rendered. */
+        private final AtomicInteger failed = new AtomicInteger();
+
+        /** The state of the job. */
+        private volatile Status status = Status.PENDING;
+
+        /** Whether the job has been asked to stop. */
+        private volatile boolean cancelled;
+
+        /** The error message of a failed job. */
+        private volatile String error;
+
+        /** When the job finished (System.nanoTime). */
+        private volatile long finishedAt;
+
+        /** Released once the job has finished. */
+        private final CountDownLatch finished = new CountDownLatch(1);
+
+        /**
+         * Create a pending job.
+         * @param pId the job id
+         * @param pWallId the wall id
+         */
+        private Job(@NotNull final String pId, final int pWallId) {
+            id = pId;
+            wallId = pWallId;
+        }
+
+        /** Run the job, recording its outcome. */
+        private void run() {
+            if (cancelled) {
+                finish(Status.CANCELLED, null);
+                return;
+            }
+            status = Status.RUNNING;
+            try {
+                finish(rerender(), null);
+            } catch (IOException | RuntimeException e) {
+                finish(Status.FAILED, String.valueOf(e.getMessage()));
+            }
+        }
+
+        /**
+         * Render the wall's route images, then point the routes at them.
+         * @return SUCCEEDED, or CANCELLED if cancelled while rendering
+         * @throws IOException if the wall or its routes cannot be read, or
+         * the routes updated
+         */
+        private @NotNull Status rerender() throws IOException {
+            String wallImageFileName =
+                WallController.getWallImageFileName(wallId);
+            List<RouteFull> routes = RouteController.getRoutesOnWall(wallId);
+            if (wallImageFileName == null || routes == null) {
+                throw new IOException("Wall does not exist");
+            }
+            File wallImage = new File(
+                ServletUtils.getWallImagePath(), wallImageFileName
+            );
+
+            // name each route's image; routes on the same holds share one
+            Map<Integer, String> images = new HashMap<>();
+            Map<String, JSONArray> renders = new LinkedHashMap<>();
+            for (RouteFull route : routes) {
+                JSONArray holds;
+                try {
+                    holds = new JSONArray(route.getRouteContent());
+                } catch (JSONException | NullPointerException e) {
+                    // rendered (or not) when viewed
+                    images.put(route.getRouteId(), null);
+                    continue;
+                }
+                String routeImageFileName = "r"
+                    + RouteUtils.routeImageKey(
+                        wallId, wallImageFileName, holds
+                    )
+                    + "-" + wallImageFileName;
+                images.put(route.getRouteId(), routeImageFileName);
+                renders.putIfAbsent(routeImageFileName, holds);
+            }
+            total.set(renders.size());
+
+            // decode the wall once, and render on the pool
+            BufferedImage wall = WallRasterCache.decode(wallImage);
+            boolean alpha = HoldRenderer.supportsAlpha(wallImage);
+            Set<String> written = ConcurrentHashMap.newKeySet();
+            Set<String> unrendered = ConcurrentHashMap.newKeySet();
+            Map<String, String> placeholders = new ConcurrentHashMap<>();
+            new ArrayList<>(renders.entrySet()).parallelStream()
+                .forEach(render -> {
+                    if (cancelled) {
+                        return;
+                    }
+                    File routeImage = new File(
+                        ServletUtils.getRouteImagePath(), render.getKey()
+                    );
+                    try {
+                        String placeholder;
+                        if (routeImage.isFile()) {
+                            placeholder = RouteUtils.routeImagePlaceholder(
+                                render.getKey()
+                            );
+                        } else {
+                            BufferedImage image = HoldRenderer.render(
+                                wall, render.getValue(), alpha
+                            );
+                            HoldRenderer.writeAtomically(image, routeImage);
+                            written.add(render.getKey());
+                            placeholder = ImagePlaceholders.encode(image);
+                        }
+                        if (placeholder != null) {
+                            placeholders.put(render.getKey(), placeholder);
+                        }
+                        rendered.incrementAndGet();
+                    } catch (IOException | RuntimeException e) {
+                        unrendered.add(render.getKey());
+                        failed.incrementAndGet();
+                    }
+                });
+            if (cancelled) {
+                written.forEach(RouteUtils::deleteRouteImage);
+                return Status.CANCELLED;
+            }
+
+            // point the routes at their images, with their placeholders
+            // (so routes stored before placeholders get them); routes
+            // whose image failed are rendered when viewed
+            Map<Integer, String> updates = new HashMap<>();
+            Set<String> stale = new HashSet<>();
+            for (RouteFull route : routes) {
+                String image = images.get(route.getRouteId());
+                if (image != null && unrendered.contains(image)) {
+                    image = null;
+                }
+                String old = route.getImageFileName();
+                if (old == null ? image != null : !old.equals(image)) {
+                    if (old != null) {
+                        stale.add(old);
+                    }
+                } else if (image == null) {
+                    continue;
+                }
+                updates.put(route.getRouteId(), image);
+            }
+            if (!RouteController.setRouteImages(updates, placeholders)) {
+                written.forEach(RouteUtils::deleteRouteImage);
+                throw new IOException("Routes could not be updated");
+            }
+            WallController.setWallImagePlaceholder(
+                wallId, ImagePlaceholders.encode(wall)
+            );
+
+            // delete the images no route references any more
+            stale.removeAll(images.values());
+            for (String image : stale) {
+                Integer references =
+                    RouteController.countRouteImageReferences(image);
+                if (references != null && references == 0) {
+                    RouteUtils.deleteRouteImage(image);
+                }
+            }
+            return Status.SUCCEEDED;
+        }
+
+        /**
+         * Record the job's outcome.
+         * @param outcome the final status
+         * @param message the error message, or null
+         */
+        private void finish(
+            @NotNull final Status outcome, @Nullable final String message
+        ) {
+            error = message;
+            finishedAt = System.nanoTime();
+            status = outcome;
+            finished.countDown();
+        }
+
+        /**
+         * Ask the job to stop. A running job stops before its next render,
+         * deletes the images it wrote and leaves the routes unchanged.
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+
+        /**
+         * Get the job id.
+         * @return the job id
+         */
+        public @NotNull String getId() {
+            return id;
+        }
+
+        /**
+         * Get the wall id.
+         * @return the wall id
+         */
+        public int getWallId() {
+            return wallId;
+        }
+
+        /**
+         * Get the state of the job.
+         * @return the status
+         */
+        public @NotNull Status getStatus() {
+            return status;
+        }
+
+        /**
+         * Check if the job has finished.
+         * @return true if finished, false otherwise
+         */
+        public boolean isDone() {
+            Status current = status;
+            return current != Status.PENDING && current != Status.RUNNING;
+        }
+
+        /**
+         * Wait for the job to finish.
+         * @param timeout the longest time to wait
+         * @return true if the job finished, false otherwise
+         */
+        public boolean await(@NotNull final Duration timeout) {
+            try {
+                finished.await(timeout.toNanos(), TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return isDone();
+        }
+
+        /**
+         * Get the number of images to render.
+         * @return the number of images, 0 until the job is running
+         */
+        public int getTotal() {
+            return total.get();
+        }
+
+        /**
+         * Get the number of images rendered so far.
+         * @return the number of images
+         */
+        public int getRendered() {
+            return rendered.get();
+        }
+
+        /**
+         * Get the number of images that could not be rendered.
+         * @return the number of images
+         */
+        public int getFailed() {
+            return failed.get();
+        }
+
+        /**
+         * Get the error message of a failed job.
+         * @return the error message, null unless the job failed
+         */
+        public @Nullable String getError() {
+            return error;
+        }
+
+        /**
+         * Check if the job finished more than the time to live ago.
+         * @param now the current time (System.nanoTime)
+         * @param ttl the time to live
+         * @return true if expired, false otherwise
+         */
+        private boolean isExpired(final long now, @NotNull final Duration ttl) {
+            return isDone() && now - finishedAt > ttl.toNanos();
+        }
+
+        /**
+         * Describe the job as JSON: id, wall id, status, progress, and
+         * error.
+         * @return the job as JSON
+         */
+        public @NotNull JSONObject toJSON() {
+            JSONObject json = new JSONObject();
+            json.put("jobId", id);
+            json.put("wallId", wallId);
+            json.put("status", getStatus().name().toLowerCase(Locale.ROOT));
+            json.put("total", getTotal());
+            json.put("rendered", getRendered());
+            json.put("failed", getFailed());
+            String message = getError();
+            if (message != null) {
+                json.put("error", message);
+            }
+            return json;
+        }
+    }
+}
@@ -0,0 +1,352 @@
+package pbrg.webservices.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Routes generated (and rendered) ahead of requests, per wall and grade.
+ * A claim that leaves fewer than the low-water mark of routes ready, or
+ * misses, tops the queue back up to the high-water mark in the
+ * background.
+ */
+public final class RoutePool implements AutoCloseable {
+
+    /** Default number of ready routes below which a queue is refilled. */
+    public static final int DEFAULT_LOW_WATER = 2;
+
+    /** Default number of ready routes a queue is refilled to. */
+    public static final int DEFAULT_HIGH_WATER = 4;
+
+    /** Creates ready routes. */
+    @FunctionalInterface
+    public interface RouteFactory {
+        /**
+         * Generate a route and render its image.
+         * @param wallImageFileName the wall image file name
+         * @param grade the grade
+         * @return the ready route
+         * @throws IOException if generation or rendering fails
+         */
+        @NotNull ReadyRoute create(
+            @NotNull String wallImageFileName, int grade
+        ) throws IOException;
+    }
+
+    /** A generated route, with its rendered image. */
+    public static final class ReadyRoute {
+
+        /** The holds. */
+        private final JSONArray holds;
+
+        /** The rendered image, renamed once the route is stored. */
+        private final File image;
+
+        /** Modification time of the wall image the route was drawn on. */
+        private final long wallVersion;
+
+        /**
+         * Create a ready route.
+         * @param pHolds the holds
+         * @param pImage the rendered image
+         * @param pWallVersion modification time of the wall image it was
+         * drawn on, read before drawing
+         */
+        public ReadyRoute(
+            @NotNull final JSONArray pHolds, @NotNull final File pImage,
+            final long pWallVersion
+        ) {
+            holds = pHolds;
+            image = pImage;
+            wallVersion = pWallVersion;
+        }
+
+        /**
+         * Get the holds.
+         * @return the holds
+         */
+        public @NotNull JSONArray getHolds() {
+            return holds;
+        }
+
+        /**
+         * Get the rendered image.
+         * @return the image file
+         */
+        public @NotNull File getImage() {
+            return image;
+        }
+
+        /**
+         * Get the modification time of the wall image it was drawn on.
+         * @return the wall version
+         */
+        public long getWallVersion() {
+            return wallVersion;
+        }
+    }
+
+    /** Ready routes by wall and grade. */
+    private final Map<String, BlockingQueue<ReadyRoute>> ready =
+        new ConcurrentHashMap<>();
+
+    /** Wall and grade keys being refilled. */
+    private final Set<String> refilling = ConcurrentHashMap.newKeySet();
+
+    /** Creates ready routes. */
+    private final RouteFactory factory;
+
+    /** Number of ready routes below which a queue is refilled. */
+    private final int lowWater;
+
+    /** Number of ready routes a queue is refilled to. */
+    private final int highWater;
+
+    /** Runs the refills, one at a time. */
+    private final ExecutorService refiller;
+
+    /** Claims served by a ready route. */
+    private final AtomicLong hits = new AtomicLong();
+
+    /** Claims with no route ready. */
+    private final AtomicLong misses = new AtomicLong();
+
+    /** Ready routes discarded as drawn on an older wall image. */
+    private final AtomicLong stale = new AtomicLong();
+
+    /** Routes generated by refills. */
+    private final AtomicLong generated = new AtomicLong();
+
+    /** Refill attempts that failed. */
+    private final AtomicLong failures = new AtomicLong();
+
+    /** Whether the pool has been closed. */
+    private volatile boolean closed;
+
+    /**
+     * Create an (empty) route pool.
+     * @param pFactory creates ready routes
+     * @param pLowWater ready routes below which a queue is refilled
+     * @param pHighWater ready routes a queue is refilled to
+     */
+    public RoutePool(
+        @NotNull final RouteFactory pFactory,
+        final int pLowWater, final int pHighWater
+    ) {
+        if (pLowWater < 0 || pHighWater < 1 || pHighWater < pLowWater) {
+            throw new IllegalArgumentException("Invalid water marks");
+        }
+        factory = pFactory;
+        lowWater = pLowWater;
+        highWater = pHighWater;
+        refiller = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "route-pool-refill");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Claim a ready route, refilling its queue in the background if low.
+     * Routes drawn on another version of the wall image are discarded.
+     * The caller owns the route (and its image) from then on.
+     * @param wallId the wall id
+     * @param wallImageFileName the wall image file name
+     * @param wallVersion the wall image's modification time
+     * @param grade the grade
+     * @return the ready route, null if none is ready
+     * @throws IllegalArgumentException if the grade is invalid
+     */
+    public @Nullable ReadyRoute claim(
+        final int wallId,
+        @NotNull final String wallImageFileName,
+        final long wallVersion,
+        final int grade
+    ) {
+        // only valid grades get a queue (and a refill)
+        if (!RouteGenerator.isValidGrade(grade)) {
+            throw new IllegalArgumentException("Invalid grade " + grade);
+        }
+        String key = key(wallId, wallImageFileName, grade);
+        BlockingQueue<ReadyRoute> queue =
+            ready.computeIfAbsent(key, k -> new LinkedBlockingQueue<>());
+        ReadyRoute route = queue.poll();
+        while (route != null && route.getWallVersion() != wallVersion) {
+            stale.incrementAndGet();
+            delete(route);
+            route = queue.poll();
+        }
+        if (route == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        if (queue.size() < lowWater || route == null) {
+            scheduleRefill(key, queue, wallImageFileName, grade);
+        }
+        return route;
+    }
+
+    /**
+     * Refill a queue to the high-water mark, unless already refilling.
+     * @param key the wall and grade key
+     * @param queue the queue
+     * @param wallImageFileName the wall image file name
+     * @param grade the grade
+     */
+    private void scheduleRefill(
+        @NotNull final String key,
+        @NotNull final BlockingQueue<ReadyRoute> queue,
+        @NotNull final String wallImageFileName,
+        final int grade
+    ) {
+        if (closed || !refilling.add(key)) {
+            return;
+        }
+        try {
+            refiller.execute(() -> {
+                try {
+                    while (!closed && queue.size() < highWater) {
+                        queue.add(factory.create(wallImageFileName, grade));
+                        generated.incrementAndGet();
+                    }
+                } catch (IOException | RuntimeException e) {
+                    // retried on the next claim
+                    failures.incrementAndGet();
+                } finally {
+                    refilling.remove(key);
+                }
+                if (closed) {
+                    discard(queue);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            refilling.remove(key);
+        }
+    }
+
+    /**
+     * Build the key of a wall and grade. The wall image is part of the
+     * key, so a wall whose image changes gets fresh routes.
+     * @param wallId the wall id
+     * @param wallImageFileName the wall image file name
+     * @param grade the grade
+     * @return the key
+     */
+    private static @NotNull String key(
+        final int wallId,
+        @NotNull final String wallImageFileName,
+        final int grade
+    ) {
+        return wallId + "/" + wallImageFileName + "/" + grade;
+    }
+
+    /**
+     * Get the number of routes ready for a wall and grade.
+     * @param wallId the wall id
+     * @param wallImageFileName the wall image file name
+     * @param grade the grade
+     * @return the number of ready routes
+     */
+    public int readyCount(
+        final int wallId,
+        @NotNull final String wallImageFileName,
+        final int grade
+    ) {
+        BlockingQueue<ReadyRoute> queue =
+            ready.get(key(wallId, wallImageFileName, grade));
+        return queue == null ? 0 : queue.size();
+    }
+
+    /**
+     * Get the number of claims served by a ready route.
+     * @return the number of hits
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Get the number of claims with no route ready.
+     * @return the number of misses
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Describe the pool as JSON: hits, misses, hit rate, routes
+     * generated, failed refills, stale routes discarded, and routes
+     * ready.
+     * @return the pool metrics
+     */
+    public @NotNull JSONObject getMetrics() {
+        long hitCount = hits.get();
+        long missCount = misses.get();
+        long claims = hitCount + missCount;
+        int readyTotal = 0;
+        for (BlockingQueue<ReadyRoute> queue : ready.values()) {
+            readyTotal += queue.size();
+        }
+
+        JSONObject metrics = new JSONObject();
+        metrics.put("hits", hitCount);
+        metrics.put("misses", missCount);
+        metrics.put("hitRate", claims == 0 ? 0 : (double) hitCount / claims);
+        metrics.put("generated", generated.get());
+        metrics.put("failures", failures.get());
+        metrics.put("stale", stale.get());
+        metrics.put("ready", readyTotal);
+        metrics.put("queues", ready.size());
+        metrics.put("lowWater", lowWater);
+        metrics.put("highWater", highWater);
+        return metrics;
+    }
+
+    /**
+     * Delete the images of unclaimed routes.
+     * @param queue the queue to empty
+     */
+    private static void discard(
+        @NotNull final BlockingQueue<ReadyRoute> queue
+    ) {
+        ReadyRoute route;
+        while ((route = queue.poll()) != null) {
+            delete(route);
+        }
+    }
+
+    /**
+     * Delete an unclaimed route's image.
+     * @param route the route
+     */
+    private static void delete(@NotNull final ReadyRoute route) {
+        try {
+            Files.deleteIfExists(route.getImage().toPath());
+        } catch (IOException e) {
+            // left behind, harmless
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        refiller.shutdownNow();
+        for (BlockingQueue<ReadyRoute> queue : ready.values()) {
+            discard(queue);
+        }
+    }
+}
@@ -0,0 +1,447 @@
+package pbrg.webservices.utils;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.imageio.ImageIO;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import pbrg.webservices.models.Route;
+
+/**
+ * Contact sheets of route lists: one sprite image of a page of routes'
+ * thumbnails, and a JSON index of each route's tile in it, so a route
+ * list costs two requests rather than one per route. Sheets are cached
+ * on disk beside the route images, addressed by the page's routes and
+ * their image file names, so a changed page is a new sheet. When a sheet
+ * is written, its page's older sheets are deleted, as are the list's
+ * oldest sheets past MAX_SHEETS_PER_LIST.
+ */
+public final class RouteSheets {
+
+    /** Width of a tile, in pixels (thumbnails of narrow walls may be less). */
+    public static final int TILE_WIDTH = 128;
+
+    /** Number of tiles in a row of a sheet. */
+    public static final int COLUMNS = 8;
+
+    /** Default number of routes on a page. */
+    public static final int DEFAULT_PAGE_SIZE = 24;
+
+    /** Most routes on a page. */
+    public static final int MAX_PAGE_SIZE = 64;
+
+    /** Length of a sheet id, in hex digits. */
+    private static final int ID_LENGTH = 32;
+
+    /** Most sheets kept on disk for a route list, across its pages. */
+    static final int MAX_SHEETS_PER_LIST = 16;
+
+    /** Prefix of sheet file names. */
+    static final String PREFIX = "sheet-";
+
+    /** Background of a sheet, behind narrow or short tiles. */
+    private static final Color BACKGROUND = Color.BLACK;
+
+    private RouteSheets() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /** A page of a route list's sheet on disk. */
+    public static final class Sheet {
+
+        /** The sprite image file. */
+        private final File image;
+
+        /** The index of the routes' tiles. */
+        private final JSONObject index;
+
+        /**
+         * Create a sheet.
+         * @param pImage the sprite image file
+         * @param pIndex the index of the routes' tiles
+         */
+        Sheet(@NotNull final File pImage, @NotNull final JSONObject pIndex) {
+            image = pImage;
+            index = pIndex;
+        }
+
+        /**
+         * Get the sprite image file.
+         * @return the image file
+         */
+        public @NotNull File getImage() {
+            return image;
+        }
+
+        /**
+         * Get the index of the routes' tiles: the sheet id and size, and
+         * each route's id, name, difficulty and tile (x, y, width,
+         * height) in the sprite.
+         * @return the index, as JSON
+         */
+        public @NotNull JSONObject getIndex() {
+            return new JSONObject(index.toString());
+        }
+    }
+
+    /**
+     * Get a page of routes, sorted by id.
+     * @param routes the routes
+     * @param page the page, from 0
+     * @param pageSize the number of routes on a page
+     * @return the routes on the page, empty past the last page
+     */
+    @Contract(pure = true)
+    public static @NotNull List<Route> page(
+        @NotNull final List<Route> routes, final int page, final int pageSize
+    ) {
+        List<Route> sorted = new ArrayList<>(routes);
+        sorted.sort((a, b) -> Integer.compare(a.getRouteId(), b.getRouteId()));
+        long from = (long) page * pageSize;
+        if (page < 0 || from >= sorted.size()) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(sorted.subList(
+            (int) from, (int) Math.min(sorted.size(), from + pageSize)
+        ));
+    }
+
+    /**
+     * Get a page of a route list's sheet, building it if missing or
+     * stale. A stored sheet is found from the routes and their image file
+     * names alone; otherwise route thumbnails are rendered if not yet
+     * rendered, and routes whose thumbnail cannot be rendered are left
+     * out (of the sheet, and of its id, so they are retried next time).
+     * @param list names the list, e.g. its user and gym
+     * @param page names the page, e.g. its number and size
+     * @param routes the routes on the page
+     * @param imageFileNames the routes' image file names, by route id
+     * (absent or null for routes without an image)
+     * @return the sheet
+     * @throws IOException if a thumbnail cannot be read or the sheet
+     * written
+     */
+    public static @NotNull Sheet getOrCreateSheet(
+        @NotNull final String list, @NotNull final String page,
+        @NotNull final List<Route> routes,
+        @NotNull final Map<Integer, String> imageFileNames
+    ) throws IOException {
+        // serve the stored sheet of these routes and images, if any
+        String id = sheetId(list, page, routes, imageFileNames);
+        Sheet stored = getStoredSheet(list, page, id);
+        if (stored != null) {
+            return stored;
+        }
+
+        // otherwise get each route's thumbnail, rendered if missing
+        List<Route> tiled = new ArrayList<>();
+        List<File> thumbnails = new ArrayList<>();
+        for (Route route : routes) {
+            File thumbnail = thumbnail(route.getRouteId());
+            if (thumbnail != null) {
+                tiled.add(route);
+                thumbnails.add(thumbnail);
+            }
+        }
+
+        // a sheet missing tiles is stored as the sheet of the routes it
+        // has, so the full sheet's id misses until every tile renders
+        if (tiled.size() < routes.size()) {
+            id = sheetId(list, page, tiled, imageFileNames);
+            stored = getStoredSheet(list, page, id);
+            if (stored != null) {
+                return stored;
+            }
+        }
+
+        // build it, and delete stale and old sheets
+        String name = sheetName(list, page, id);
+        Sheet sheet = build(
+            id, tiled, thumbnails, imageFile(name), indexFile(name)
+        );
+        pruneSheets(list, page, name);
+        return sheet;
+    }
+
+    /**
+     * Get a page of a route list's stored sheet by its id, as given in
+     * its index.
+     * @param list names the list
+     * @param page names the page
+     * @param sheetId the sheet id
+     * @return the sheet, null if the id is invalid or the sheet is gone
+     */
+    public static @Nullable Sheet getStoredSheet(
+        @NotNull final String list, @NotNull final String page,
+        @NotNull final String sheetId
+    ) {
+        if (!sheetId.matches("[0-9a-f]{" + ID_LENGTH + "}")) {
+            return null;
+        }
+        String name = sheetName(list, page, sheetId);
+        return storedSheet(imageFile(name), indexFile(name));
+    }
+
+    /**
+     * Delete a route list's sheets, of every page.
+     * @param list names the list
+     * @throws IOException if the sheets cannot be listed
+     */
+    public static void deleteSheets(@NotNull final String list)
+        throws IOException {
+        Path directory = new File(ServletUtils.getRouteImagePath()).toPath();
+        try (DirectoryStream<Path> sheets = Files.newDirectoryStream(
+            directory, PREFIX + list + "-*"
+        )) {
+            for (Path sheet : sheets) {
+                Files.deleteIfExists(sheet);
+            }
+        }
+    }
+
+    /**
+     * Delete a page's sheets but one, then the route list's oldest
+     * sheets (by when they were written) past MAX_SHEETS_PER_LIST.
+     * @param list names the list
+     * @param page names the page
+     * @param keep the file name (without extension) of the sheet to keep
+     * @throws IOException if the sheets cannot be listed
+     */
+    static void pruneSheets(
+        @NotNull final String list, @NotNull final String page,
+        @NotNull final String keep
+    ) throws IOException {
+        Path directory = new File(ServletUtils.getRouteImagePath()).toPath();
+        String pagePrefix = PREFIX + list + "-" + page + "-";
+        Map<String, List<Path>> others = new HashMap<>();
+        try (DirectoryStream<Path> sheets = Files.newDirectoryStream(
+            directory, PREFIX + list + "-*"
+        )) {
+            for (Path sheet : sheets) {
+                String file = sheet.getFileName().toString();
+                int extension = file.lastIndexOf('.');
+                String name = extension < 0
+                    ? file : file.substring(0, extension);
+                if (name.equals(keep)) {
+                    continue;
+                }
+                if (name.startsWith(pagePrefix)) {
+                    Files.deleteIfExists(sheet);
+                } else {
+                    others.computeIfAbsent(name, n -> new ArrayList<>())
+                        .add(sheet);
+                }
+            }
+        }
+
+        // the kept sheet counts towards the list's sheets
+        int excess = others.size() + 1 - MAX_SHEETS_PER_LIST;
+        if (excess <= 0) {
+            return;
+        }
+        List<List<Path>> oldest = new ArrayList<>(others.values());
+        oldest.sort(Comparator.comparingLong(
+            files -> files.get(0).toFile().lastModified()
+        ));
+        for (List<Path> files : oldest.subList(0, excess)) {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    /**
+     * Get the id of a page's sheet, from its routes and their images.
+     * @param list names the list
+     * @param page names the page
+     * @param routes the routes on the sheet
+     * @param imageFileNames the routes' image file names, by route id
+     * @return the sheet id
+     */
+    private static @NotNull String sheetId(
+        @NotNull final String list, @NotNull final String page,
+        @NotNull final List<Route> routes,
+        @NotNull final Map<Integer, String> imageFileNames
+    ) {
+        StringBuilder contents = new StringBuilder(list)
+            .append('-').append(page);
+        for (Route route : routes) {
+            contents.append(':').append(route.getRouteId())
+                .append('/').append(route.getDifficulty())
+                .append('/').append(imageFileNames.get(route.getRouteId()));
+        }
+        return RouteBits.sha256(contents.toString()).substring(0, ID_LENGTH);
+    }
+
+    /**
+     * Get the file name (without extension) of a page's sheet.
+     * @param list names the list
+     * @param page names the page
+     * @param sheetId the sheet id
+     * @return the file name
+     */
+    private static @NotNull String sheetName(
+        @NotNull final String list, @NotNull final String page,
+        @NotNull final String sheetId
+    ) {
+        return PREFIX + list + "-" + page + "-" + sheetId;
+    }
+
+    /**
+     * Get a route's thumbnail, rendering it if not yet rendered.
+     * @param routeId the route id
+     * @return the thumbnail file, null if it cannot be rendered
+     */
+    private static @Nullable File thumbnail(final int routeId) {
+        return RouteUtils.getOrCreateRouteImageVariant(routeId, TILE_WIDTH);
+    }
+
+    /**
+     * Get the sprite image file of a sheet.
+     * @param name the sheet's file name, without extension
+     * @return the image file, which may not exist
+     */
+    private static @NotNull File imageFile(@NotNull final String name) {
+        return new File(ServletUtils.getRouteImagePath(), name + ".jpg");
+    }
+
+    /**
+     * Get the index file of a sheet.
+     * @param name the sheet's file name, without extension
+     * @return the index file, which may not exist
+     */
+    private static @NotNull File indexFile(@NotNull final String name) {
+        return new File(ServletUtils.getRouteImagePath(), name + ".json");
+    }
+
+    /**
+     * Get a stored sheet.
+     * @param image the sprite image file
+     * @param indexFile the index file
+     * @return the sheet, null if either file is missing or unreadable
+     */
+    private static @Nullable Sheet storedSheet(
+        @NotNull final File image, @NotNull final File indexFile
+    ) {
+        if (!image.isFile() || !indexFile.isFile()) {
+            return null;
+        }
+        try {
+            return new Sheet(image, new JSONObject(new String(
+                Files.readAllBytes(indexFile.toPath()), StandardCharsets.UTF_8
+            )));
+        } catch (IOException | JSONException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Draw the thumbnails onto a sheet, row by row, and write it with its
+     * index. The image is written before the index, which marks the sheet
+     * complete; each is written beside its target, then moved in place.
+     * @param id the sheet id
+     * @param routes the routes
+     * @param thumbnails the routes' thumbnails
+     * @param image the sprite image file to write
+     * @param indexFile the index file to write
+     * @return the sheet
+     * @throws IOException if a thumbnail cannot be read or the sheet
+     * written
+     */
+    private static @NotNull Sheet build(
+        @NotNull final String id, @NotNull final List<Route> routes,
+        @NotNull final List<File> thumbnails,
+        @NotNull final File image, @NotNull final File indexFile
+    ) throws IOException {
+        // read the thumbnails; a row is as tall as its tallest
+        List<BufferedImage> tiles = new ArrayList<>();
+        int tileHeight = 1;
+        for (File thumbnail : thumbnails) {
+            BufferedImage tile = ImageIO.read(thumbnail);
+            if (tile == null) {
+                throw new IOException("Thumbnail " + thumbnail
+                    + " is unreadable");
+            }
+            tiles.add(tile);
+            tileHeight = Math.max(tileHeight, tile.getHeight());
+        }
+        int columns = Math.max(1, Math.min(COLUMNS, tiles.size()));
+        int rows = Math.max(1, (tiles.size() + columns - 1) / columns);
+
+        // draw the tiles, and index them
+        BufferedImage sheet = new BufferedImage(
+            columns * TILE_WIDTH, rows * tileHeight,
+            BufferedImage.TYPE_INT_RGB
+        );
+        JSONArray entries = new JSONArray();
+        Graphics2D graphics = sheet.createGraphics();
+        try {
+            graphics.setColor(BACKGROUND);
+            graphics.fillRect(0, 0, sheet.getWidth(), sheet.getHeight());
+            for (int i = 0; i < tiles.size(); i++) {
+                BufferedImage tile = tiles.get(i);
+                int x = (i % columns) * TILE_WIDTH;
+                int y = (i / columns) * tileHeight;
+                int width = Math.min(TILE_WIDTH, tile.getWidth());
+                graphics.drawImage(
+                    tile, x, y, x + width, y + tile.getHeight(),
+                    0, 0, width, tile.getHeight(), null
+                );
+                Route route = routes.get(i);
+                JSONObject entry = new JSONObject();
+                entry.put("routeId", route.getRouteId());
+                entry.put("routeName", route.getRouteName());
+                entry.put("difficulty", route.getDifficulty());
+                entry.put("x", x);
+                entry.put("y", y);
+                entry.put("width", width);
+                entry.put("height", tile.getHeight());
+                entries.put(entry);
+            }
+        } finally {
+            graphics.dispose();
+        }
+        JSONObject index = new JSONObject();
+        index.put("sheetId", id);
+        index.put("width", sheet.getWidth());
+        index.put("height", sheet.getHeight());
+        index.put("routes", entries);
+
+        // write the image, then the index
+        HoldRenderer.writeAtomically(sheet, image);
+        File temporary = File.createTempFile(
+            ".sheet", ".json", indexFile.getAbsoluteFile().getParentFile()
+        );
+        try {
+            Files.write(
+                temporary.toPath(),
+                index.toString().getBytes(StandardCharsets.UTF_8)
+            );
+            Files.move(
+                temporary.toPath(), indexFile.toPath(),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE
+            );
+        } finally {
+            Files.deleteIfExists(temporary.toPath());
+        }
+        return new Sheet(image, index);
+    }
+}
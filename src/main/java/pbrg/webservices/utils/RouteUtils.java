@@ -2,20 +2,48 @@ package pbrg.webservices.utils;
 
 import static pbrg.webservices.database.ProductionDatabase.production;
 import static pbrg.webservices.database.RouteController.addImageToRoute;
+import static pbrg.webservices.database.RouteController.addRoute;
+import static pbrg.webservices.database.RouteController
+    .countRouteImageReferences;
+import static pbrg.webservices.database.RouteController.getRouteContent;
+import static pbrg.webservices.database.RouteController.getRouteIdByFingerprint;
+import static pbrg.webservices.database.RouteController
+    .getRouteImagePlaceholder;
 import static pbrg.webservices.database.RouteController.routeExists;
+import static pbrg.webservices.database.WallController.addWall;
+import static pbrg.webservices.database.WallController.getWallContent;
+import static pbrg.webservices.database.WallController.getWallIdFromGymId;
+import static pbrg.webservices.database.WallController.getWallIdFromRoute;
+import static pbrg.webservices.database.WallController.getWallImageFileName;
 import static pbrg.webservices.database.WallController.getWallImageFileNameFromRouteId;
-import static pbrg.webservices.utils.ProcessUtils.runProcessEnsureSuccess;
-import static pbrg.webservices.utils.ProcessUtils.runProcessGetOutputEnsureSuccess;
+import static pbrg.webservices.database.WallController
+    .getWallImagePlaceholder;
+import static pbrg.webservices.database.WallController.gymHasWall;
+import static pbrg.webservices.database.WallController
+    .setWallImagePlaceholder;
 
+import java.awt.Dimension;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.json.JSONArray;
 import org.json.JSONException;
+import org.json.JSONObject;
 import pbrg.webservices.database.RouteController;
+import pbrg.webservices.database.WallController;
 import pbrg.webservices.models.RouteFull;
 
 public final class RouteUtils {
@@ -34,6 +62,65 @@ public final class RouteUtils {
     /** The file name for the hold plotting script. */
     private static String holdPlottingScript = "plot_holds.py";
 
+    /**
+     * The file name for the cached routes (in the python directory): the
+     * binary form of warwick-routes-cached-v4-9.json (see
+     * MappedRouteCorpus), regenerated whenever the JSON changes.
+     */
+    private static String routeCacheFile = "warwick-routes-cached-v4-9.bin";
+
+    /** The file name for the python worker script. */
+    private static final String WORKER_SCRIPT = "worker.py";
+
+    /** The pool of python workers, started on first use. */
+    private static volatile PythonWorkerPool pythonWorkerPool;
+
+    /** Route image renders in flight, by route id. */
+    private static final Map<Integer, CompletableFuture<String>>
+        ROUTE_IMAGE_RENDERS = new ConcurrentHashMap<>();
+
+    /** The decoded wall images, shared by route image renders. */
+    private static volatile WallRasterCache wallRasterCache =
+        new WallRasterCache(WallRasterCache.DEFAULT_BUDGET, false);
+
+    /** The in-memory route generator, loaded on first use. */
+    private static volatile RouteGenerator routeGenerator;
+
+    /** The route generation jobs, started on first use. */
+    private static volatile RouteGenerationJobs routeGenerationJobs;
+
+    /** The route image re-renders, started on first use. */
+    private static volatile RouteImageRerenders routeImageRerenders;
+
+    /** The pre-generated routes, started on first use. */
+    private static volatile RoutePool routePool;
+
+    /** Prefix of the image key of a pre-generated (unclaimed) route. */
+    private static final String POOLED_IMAGE_PREFIX = "pool-";
+
+    /** Content of walls mocked before walls stored their hold table. */
+    private static final String LEGACY_MOON_BOARD_CONTENT = "MoonBoard";
+
+    /** The similar route index, built from the stored routes on first use. */
+    private static volatile SimilarRouteIndex similarRouteIndex;
+
+    /**
+     * Held while the similar route index is built (a full route scan),
+     * apart from the lock of the other lazy getters.
+     */
+    private static final Object SIMILAR_ROUTE_INDEX_BUILD_LOCK =
+        new Object();
+
+    /** Guards publishing the similar route index, and changes to it. */
+    private static final Object SIMILAR_ROUTE_INDEX_LOCK = new Object();
+
+    /** Changes made while the similar route index is built, else null. */
+    private static List<Consumer<SimilarRouteIndex>> similarRouteChanges;
+
+    /** Hold tables of walls, parsed on first use (content is fixed). */
+    private static final Map<Integer, HoldTable> WALL_HOLD_TABLES =
+        new ConcurrentHashMap<>();
+
     /** Util class, no instances. */
     private RouteUtils() {
         throw new IllegalStateException("Utility class");
@@ -78,6 +165,22 @@ public final class RouteUtils {
         return routeGenerationScript;
     }
 
+    /**
+     * Configure the cached routes file.
+     * @param fileName the cached routes file name
+     */
+    public static void setRouteCacheFile(final String fileName) {
+        routeCacheFile = fileName;
+    }
+
+    /**
+     * Get the cached routes file.
+     * @return the cached routes file name
+     */
+    public static String getRouteCacheFile() {
+        return routeCacheFile;
+    }
+
     /**
      * Set the python scripts directory based on the environment.
      * @param inProduction true if in production, false otherwise
@@ -110,6 +213,676 @@ public final class RouteUtils {
         return pythonScriptsDir;
     }
 
+    /**
+     * Get the route generator, loading the cached routes on first use
+     * (or when the configured cache file changes).
+     * @return the route generator
+     * @throws IOException if the cached routes cannot be loaded
+     */
+    public static @NotNull RouteGenerator getRouteGenerator()
+        throws IOException {
+        File cacheFile = new File(getPythonScriptsDir(), getRouteCacheFile());
+        RouteGenerator generator = routeGenerator;
+        if (generator != null && cacheFile.equals(generator.getSource())) {
+            return generator;
+        }
+        synchronized (RouteUtils.class) {
+            generator = routeGenerator;
+            if (generator == null
+                || !cacheFile.equals(generator.getSource())) {
+                generator = new RouteGenerator(cacheFile);
+                routeGenerator = generator;
+            }
+            return generator;
+        }
+    }
+
+    /**
+     * Get the python worker pool, starting (and warming) it on first use
+     * or when the python scripts directory changes.
+     * @return the python worker pool
+     * @throws IOException if the workers cannot be started
+     */
+    public static @NotNull PythonWorkerPool getPythonWorkerPool()
+        throws IOException {
+        File workerScript = new File(getPythonScriptsDir(), WORKER_SCRIPT);
+        PythonWorkerPool pool = pythonWorkerPool;
+        if (pool != null && workerScript.equals(pool.getWorkerScript())) {
+            return pool;
+        }
+        synchronized (RouteUtils.class) {
+            pool = pythonWorkerPool;
+            if (pool == null || !workerScript.equals(pool.getWorkerScript())) {
+                if (pool != null) {
+                    pool.close();
+                }
+                pool = new PythonWorkerPool(workerScript);
+                pool.warm(
+                    new File(getPythonScriptsDir(), getRouteGenerationScript()),
+                    new File(getPythonScriptsDir(), getHoldPlottingScript())
+                );
+                pythonWorkerPool = pool;
+            }
+            return pool;
+        }
+    }
+
+    /** Stop the python worker pool, if started. */
+    public static void closePythonWorkerPool() {
+        synchronized (RouteUtils.class) {
+            if (pythonWorkerPool != null) {
+                pythonWorkerPool.close();
+                pythonWorkerPool = null;
+            }
+        }
+    }
+
+    /**
+     * Get the route generation jobs, starting the executor on first use.
+     * @return the route generation jobs
+     */
+    public static @NotNull RouteGenerationJobs getRouteGenerationJobs() {
+        RouteGenerationJobs jobs = routeGenerationJobs;
+        if (jobs != null) {
+            return jobs;
+        }
+        synchronized (RouteUtils.class) {
+            if (routeGenerationJobs == null) {
+                routeGenerationJobs = new RouteGenerationJobs(
+                    Runtime.getRuntime().availableProcessors(),
+                    RouteGenerationJobs.DEFAULT_QUEUE_CAPACITY,
+                    RouteGenerationJobs.DEFAULT_TTL
+                );
+            }
+            return routeGenerationJobs;
+        }
+    }
+
+    /** Stop the route generation jobs, if started. */
+    public static void closeRouteGenerationJobs() {
+        synchronized (RouteUtils.class) {
+            if (routeGenerationJobs != null) {
+                routeGenerationJobs.close();
+                routeGenerationJobs = null;
+            }
+        }
+    }
+
+    /**
+     * Get the route image re-renders, starting their pool on first use.
+     * @return the route image re-renders
+     */
+    public static @NotNull RouteImageRerenders getRouteImageRerenders() {
+        RouteImageRerenders rerenders = routeImageRerenders;
+        if (rerenders != null) {
+            return rerenders;
+        }
+        synchronized (RouteUtils.class) {
+            if (routeImageRerenders == null) {
+                routeImageRerenders = new RouteImageRerenders(
+                    Runtime.getRuntime().availableProcessors(),
+                    RouteImageRerenders.DEFAULT_TTL
+                );
+            }
+            return routeImageRerenders;
+        }
+    }
+
+    /** Stop the route image re-renders, if started. */
+    public static void closeRouteImageRerenders() {
+        synchronized (RouteUtils.class) {
+            if (routeImageRerenders != null) {
+                routeImageRerenders.close();
+                routeImageRerenders = null;
+            }
+        }
+    }
+
+    /**
+     * Get the cache of decoded wall images.
+     * @return the wall raster cache
+     */
+    public static @NotNull WallRasterCache getWallRasterCache() {
+        return wallRasterCache;
+    }
+
+    /**
+     * Replace the cache of decoded wall images, e.g. to change its memory
+     * budget.
+     * @param cache the wall raster cache
+     */
+    public static void setWallRasterCache(
+        @NotNull final WallRasterCache cache
+    ) {
+        WallRasterCache replaced = wallRasterCache;
+        wallRasterCache = cache;
+        replaced.clear();
+    }
+
+    /**
+     * Get the pre-generated route pool, starting it on first use.
+     * @return the route pool
+     */
+    public static @NotNull RoutePool getRoutePool() {
+        RoutePool pool = routePool;
+        if (pool != null) {
+            return pool;
+        }
+        synchronized (RouteUtils.class) {
+            if (routePool == null) {
+                routePool = new RoutePool(
+                    RouteUtils::createReadyRoute,
+                    RoutePool.DEFAULT_LOW_WATER, RoutePool.DEFAULT_HIGH_WATER
+                );
+            }
+            return routePool;
+        }
+    }
+
+    /** Stop the route pool, if started, deleting unclaimed images. */
+    public static void closeRoutePool() {
+        synchronized (RouteUtils.class) {
+            if (routePool != null) {
+                routePool.close();
+                routePool = null;
+            }
+        }
+    }
+
+    /**
+     * Generate a route and render its image, ahead of any request.
+     * @param wallImageFileName the wall image file name
+     * @param grade the grade
+     * @return the ready route
+     * @throws IOException if generation or rendering fails
+     */
+    static @NotNull RoutePool.ReadyRoute createReadyRoute(
+        @NotNull final String wallImageFileName, final int grade
+    ) throws IOException {
+        long wallVersion = new File(
+            ServletUtils.getWallImagePath(), wallImageFileName
+        ).lastModified();
+        JSONArray holds = generateRouteMoonBoard(grade);
+        String imageFileName = plotHoldsOnImage(
+            POOLED_IMAGE_PREFIX + UUID.randomUUID(), wallImageFileName,
+            ServletUtils.getWallImagePath(), ServletUtils.getRouteImagePath(),
+            holds
+        );
+        return new RoutePool.ReadyRoute(
+            holds, new File(ServletUtils.getRouteImagePath(), imageFileName),
+            wallVersion
+        );
+    }
+
+    /**
+     * Store a pre-generated route for a user, moving its image to its
+     * content address (see routeImageKey). If the user already has the
+     * route, or the image is already there, the image is discarded.
+     * @param ready the pre-generated route
+     * @param userId the creator of the route
+     * @param wallId the wall
+     * @param wallImageFileName the wall image file name
+     * @param grade the grade
+     * @return the route id, null if it could not be stored
+     */
+    private static @Nullable Integer storeReadyRoute(
+        @NotNull final RoutePool.ReadyRoute ready,
+        final int userId, final int wallId,
+        @NotNull final String wallImageFileName, final int grade
+    ) {
+        JSONArray route = canonicalRoute(wallId, ready.getHolds());
+        String fingerprint = holdFingerprint(wallId, route);
+        Integer existing = existingRoute(fingerprint, userId, grade);
+        if (existing != null) {
+            deleteRouteImage(ready.getImage().getName());
+            return existing;
+        }
+        Integer routeId = addRoute(
+            route.toString(), grade, userId, wallId, fingerprint
+        );
+        if (routeId == null) {
+            // possibly stored concurrently
+            deleteRouteImage(ready.getImage().getName());
+            return existingRoute(fingerprint, userId, grade);
+        }
+
+        // move the image to its content address, unless already there
+        String routeImageFileName = "r"
+            + routeImageKey(wallId, wallImageFileName, route)
+            + "-" + wallImageFileName;
+        File routeImage =
+            new File(ServletUtils.getRouteImagePath(), routeImageFileName);
+        boolean stored;
+        try {
+            if (routeImage.isFile()) {
+                deleteRouteImage(ready.getImage().getName());
+            } else {
+                Files.move(
+                    ready.getImage().toPath(), routeImage.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE
+                );
+            }
+            stored = addImageToRoute(
+                routeId, routeImageFileName,
+                routeImagePlaceholder(routeImageFileName)
+            );
+        } catch (IOException e) {
+            stored = false;
+        }
+        if (!stored) {
+            deleteRouteImage(ready.getImage().getName());
+            deleteRoute(routeId);
+            return null;
+        }
+        indexRoute(routeId, wallId, grade, route);
+        return routeId;
+    }
+
+    /**
+     * Generate a route for a gym's wall and store it. A pre-generated
+     * route is used when one is ready (see RoutePool). A gym without a
+     * wall gets a MoonBoard wall. A user generating a route they already
+     * have (same grade and holds) gets that route, and a route on holds
+     * with a rendered image shares it (see routeImageKey); other routes'
+     * images are rendered when first viewed (see getOrCreateRouteImage).
+     * On failure, the MoonBoard wall (if added) is removed.
+     * @param userId the creator of the route
+     * @param gymId the gym
+     * @param grade the grade
+     * @return the route id
+     * @throws IOException if the grade is invalid, or generation fails
+     */
+    public static int generateAndStoreRoute(
+        final int userId, final int gymId, final int grade
+    ) throws IOException {
+        // reject invalid grades before touching the wall or the pool
+        if (!RouteGenerator.isValidGrade(grade)) {
+            throw new IOException("Invalid grade " + grade);
+        }
+
+        // ensure the gym has a wall; if not, mock one
+        boolean mockingWall = false;
+        if (!gymHasWall(gymId)) {
+            // add a wall using the MoonBoard wall and its holds
+            addWall(
+                gymId, getRouteGenerator().getHoldTable().toJSON().toString(),
+                "MoonBoard2016.jpg"
+            );
+            mockingWall = true;
+        }
+        assert gymHasWall(gymId);
+
+        // get the wall ID
+        Integer wallID = getWallIdFromGymId(gymId);
+        assert wallID != null;
+        if (mockingWall) {
+            getOrCreateWallImagePlaceholder(wallID);
+        }
+
+        // claim a pre-generated route, if one is ready
+        String wallImageFileName = getWallImageFileName(wallID);
+        if (wallImageFileName != null) {
+            long wallVersion = new File(
+                ServletUtils.getWallImagePath(), wallImageFileName
+            ).lastModified();
+            RoutePool.ReadyRoute ready = getRoutePool().claim(
+                wallID, wallImageFileName, wallVersion, grade
+            );
+            Integer routeId = ready == null ? null : storeReadyRoute(
+                ready, userId, wallID, wallImageFileName, grade
+            );
+            if (routeId != null) {
+                return routeId;
+            }
+        }
+
+        // otherwise, generate the route
+        JSONArray route;
+        try {
+            route = generateRouteMoonBoard(grade);
+            assert !route.isEmpty();
+        } catch (IOException | RuntimeException e) {
+            // cleanup the wall, if mocked
+            if (mockingWall) {
+                WallController.deleteWall(wallID);
+            }
+            throw new IOException(
+                "Route generation failed" + e.getMessage(), e
+            );
+        }
+
+        // use the user's route on these holds, if they have it
+        route = canonicalRoute(wallID, route);
+        String fingerprint = holdFingerprint(wallID, route);
+        Integer existing = existingRoute(fingerprint, userId, grade);
+        if (existing != null) {
+            return existing;
+        }
+
+        // store the route as a new route in the database
+        Integer routeId = addRoute(
+            route.toString(), grade, userId, wallID, fingerprint
+        );
+        if (routeId == null) {
+            // possibly stored concurrently
+            existing = existingRoute(fingerprint, userId, grade);
+            if (existing != null) {
+                return existing;
+            }
+        }
+        assert routeId != null;
+
+        // use the image of these holds; else it is rendered when viewed
+        linkRouteImage(routeId, wallID, wallImageFileName, route);
+        indexRoute(routeId, wallID, grade, route);
+        return routeId;
+    }
+
+    /**
+     * Fingerprint a route's holds on its wall (see RouteBits).
+     * @param wallId the wall id
+     * @param route route, as a JSON array of {x, y} holds
+     * @return the fingerprint, null if the route is not on the wall's
+     * holds
+     */
+    static @Nullable String holdFingerprint(
+        final int wallId, @NotNull final JSONArray route
+    ) {
+        HoldTable table = getWallHoldTable(wallId);
+        long[] bits = table == null ? null : table.toBits(route);
+        return bits == null ? null : RouteBits.fingerprint(wallId, bits);
+    }
+
+    /**
+     * Get a user's route of a grade on fingerprinted holds.
+     * @param fingerprint the hold fingerprint, or null
+     * @param userId the user id
+     * @param grade the grade
+     * @return the route id, null if none (or no fingerprint)
+     */
+    private static @Nullable Integer existingRoute(
+        @Nullable final String fingerprint, final int userId, final int grade
+    ) {
+        if (fingerprint == null) {
+            return null;
+        }
+        return getRouteIdByFingerprint(fingerprint, userId, grade);
+    }
+
+    /**
+     * Get the content address of a route's image: a hash of the wall
+     * image version (name, modification time) and the route's hold set.
+     * Routes on the same holds of a wall share one image file, named
+     * "r" + key + "-" + wall image file name, and referenced by each.
+     * @param wallId the wall id
+     * @param wallImageFileName the wall image file name
+     * @param route route, as a JSON array of {x, y} holds
+     * @return the image key
+     */
+    static @NotNull String routeImageKey(
+        final int wallId, @NotNull final String wallImageFileName,
+        @NotNull final JSONArray route
+    ) {
+        // routes off the wall's holds are addressed by their content
+        String fingerprint = holdFingerprint(wallId, route);
+        long wallVersion = new File(
+            ServletUtils.getWallImagePath(), wallImageFileName
+        ).lastModified();
+        return RouteBits.sha256(
+            wallImageFileName + ":" + wallVersion + ":"
+                + (fingerprint != null ? fingerprint : route.toString())
+        );
+    }
+
+    /**
+     * Give a route the image of its holds, if already rendered.
+     * @param routeId the route id
+     * @param wallId the wall id
+     * @param wallImageFileName the wall image file name, or null
+     * @param route route, as a JSON array of {x, y} holds
+     * @return true if the route has the image, false otherwise
+     */
+    private static boolean linkRouteImage(
+        final int routeId, final int wallId,
+        @Nullable final String wallImageFileName,
+        @NotNull final JSONArray route
+    ) {
+        if (wallImageFileName == null) {
+            return false;
+        }
+        String routeImageFileName = "r"
+            + routeImageKey(wallId, wallImageFileName, route)
+            + "-" + wallImageFileName;
+        return new File(
+            ServletUtils.getRouteImagePath(), routeImageFileName
+        ).isFile() && addImageToRoute(
+            routeId, routeImageFileName,
+            routeImagePlaceholder(routeImageFileName)
+        );
+    }
+
+    /**
+     * Get a route image's placeholder (see ImagePlaceholders): the one
+     * stored with a route sharing the image, else computed from the image.
+     * @param routeImageFileName the route image file name
+     * @return the placeholder, null if the image cannot be read
+     */
+    static @Nullable String routeImagePlaceholder(
+        @NotNull final String routeImageFileName
+    ) {
+        String placeholder = getRouteImagePlaceholder(routeImageFileName);
+        if (placeholder != null) {
+            return placeholder;
+        }
+        return ImagePlaceholders.of(
+            new File(ServletUtils.getRouteImagePath(), routeImageFileName)
+        );
+    }
+
+    /**
+     * Get a wall image's placeholder (see ImagePlaceholders), computing
+     * and storing it if the wall has none (e.g. walls stored before
+     * placeholders were).
+     * @param wallId the wall id
+     * @return the placeholder, null if the wall does not exist or its
+     * image cannot be read
+     */
+    public static @Nullable String getOrCreateWallImagePlaceholder(
+        final int wallId
+    ) {
+        String placeholder = getWallImagePlaceholder(wallId);
+        if (placeholder != null) {
+            return placeholder;
+        }
+        String wallImageFileName = getWallImageFileName(wallId);
+        if (wallImageFileName == null) {
+            return null;
+        }
+        placeholder = ImagePlaceholders.of(
+            new File(ServletUtils.getWallImagePath(), wallImageFileName)
+        );
+        if (placeholder != null) {
+            setWallImagePlaceholder(wallId, placeholder);
+        }
+        return placeholder;
+    }
+
+    /**
+     * Get a wall's hold table, from its content. Walls mocked as a
+     * MoonBoard before their content held a hold table get the
+     * MoonBoard's.
+     * @param wallId the wall id
+     * @return the hold table, null if the wall has none
+     */
+    public static @Nullable HoldTable getWallHoldTable(final int wallId) {
+        HoldTable table = WALL_HOLD_TABLES.get(wallId);
+        if (table != null) {
+            return table;
+        }
+        String content = getWallContent(wallId);
+        if (LEGACY_MOON_BOARD_CONTENT.equals(content)) {
+            try {
+                table = getRouteGenerator().getHoldTable();
+            } catch (IOException e) {
+                return null;
+            }
+        } else {
+            table = HoldTable.fromJSON(content);
+        }
+        if (table != null) {
+            WALL_HOLD_TABLES.put(wallId, table);
+        }
+        return table;
+    }
+
+    /**
+     * Snap a route's holds to its wall's holds, so equal routes are
+     * stored equally.
+     * @param wallId the wall id
+     * @param route route, as a JSON array of {x, y} holds
+     * @return the canonical route, or the route if it cannot be snapped
+     */
+    static @NotNull JSONArray canonicalRoute(
+        final int wallId, @NotNull final JSONArray route
+    ) {
+        HoldTable table = getWallHoldTable(wallId);
+        JSONArray canonical = table == null ? null : table.canonicalise(route);
+        return canonical == null ? route : canonical;
+    }
+
+    /**
+     * Get a route's holds as a bitset of its wall's hold ids.
+     * @param routeId the route id
+     * @return the bitset, null if the route or its wall's holds are
+     * unknown, or the route is off the wall's holds
+     */
+    public static long @Nullable [] getRouteHoldBits(final int routeId) {
+        Integer wallId = getWallIdFromRoute(routeId);
+        if (wallId == null) {
+            return null;
+        }
+        return holdBits(wallId, getRouteContent(routeId));
+    }
+
+    /**
+     * Get route content as a bitset of its wall's hold ids.
+     * @param wallId the wall id
+     * @param content the route content, a JSON array of {x, y} holds
+     * @return the bitset, null if the wall's holds are unknown, or the
+     * content is not a route on them
+     */
+    private static long @Nullable [] holdBits(
+        final int wallId, @Nullable final String content
+    ) {
+        HoldTable table = getWallHoldTable(wallId);
+        if (table == null || content == null) {
+            return null;
+        }
+        try {
+            return table.toBits(new JSONArray(content));
+        } catch (JSONException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Get the similar route index, building it from the stored routes on
+     * first use. Routes stored or deleted since are kept in step, as are
+     * those stored or deleted while it is built (replayed onto it).
+     * @return the similar route index, null if the routes cannot be read
+     */
+    public static @Nullable SimilarRouteIndex getSimilarRouteIndex() {
+        SimilarRouteIndex index = similarRouteIndex;
+        if (index != null) {
+            return index;
+        }
+        synchronized (SIMILAR_ROUTE_INDEX_BUILD_LOCK) {
+            if (similarRouteIndex != null) {
+                return similarRouteIndex;
+            }
+
+            // record changes from here on, as the read may miss them
+            synchronized (SIMILAR_ROUTE_INDEX_LOCK) {
+                similarRouteChanges = new ArrayList<>();
+            }
+            List<RouteFull> routes = RouteController.getAllRoutes();
+            index = routes == null ? null : new SimilarRouteIndex();
+            if (routes != null) {
+                for (RouteFull route : routes) {
+                    long[] bits = holdBits(
+                        route.getWallId(), route.getRouteContent()
+                    );
+                    if (bits != null) {
+                        index.add(
+                            route.getRouteId(), route.getWallId(),
+                            route.getDifficulty(), bits
+                        );
+                    }
+                }
+            }
+
+            // replay the changes, then publish the index
+            synchronized (SIMILAR_ROUTE_INDEX_LOCK) {
+                if (index != null) {
+                    for (Consumer<SimilarRouteIndex> change
+                        : similarRouteChanges) {
+                        change.accept(index);
+                    }
+                    similarRouteIndex = index;
+                }
+                similarRouteChanges = null;
+            }
+            return index;
+        }
+    }
+
+    /** Drop the similar route index, if built; rebuilt on next use. */
+    public static void closeSimilarRouteIndex() {
+        synchronized (SIMILAR_ROUTE_INDEX_BUILD_LOCK) {
+            similarRouteIndex = null;
+        }
+    }
+
+    /**
+     * Add a stored route to the similar route index, if built or being
+     * built.
+     * @param routeId the route id
+     * @param wallId the wall id
+     * @param grade the grade
+     * @param route route, as a JSON array of {x, y} holds
+     */
+    private static void indexRoute(
+        final int routeId, final int wallId, final int grade,
+        @NotNull final JSONArray route
+    ) {
+        HoldTable table = getWallHoldTable(wallId);
+        long[] bits = table == null ? null : table.toBits(route);
+        if (bits != null) {
+            changeSimilarRouteIndex(
+                index -> index.add(routeId, wallId, grade, bits)
+            );
+        }
+    }
+
+    /**
+     * Apply a change to the similar route index: now if built, after the
+     * build if being built, not at all otherwise (the build reads it).
+     * @param change the change
+     */
+    private static void changeSimilarRouteIndex(
+        @NotNull final Consumer<SimilarRouteIndex> change
+    ) {
+        synchronized (SIMILAR_ROUTE_INDEX_LOCK) {
+            SimilarRouteIndex index = similarRouteIndex;
+            if (index != null) {
+                change.accept(index);
+            } else if (similarRouteChanges != null) {
+                similarRouteChanges.add(change);
+            }
+        }
+    }
+
     /**
      * Generate a route on a 2016 MoonBoard.
      * @param grade grade
@@ -118,6 +891,18 @@ public final class RouteUtils {
     @Contract("_ -> new")
     public static @NotNull JSONArray generateRouteMoonBoard(final int grade)
         throws IOException {
+        return getRouteGenerator().generate(grade);
+    }
+
+    /**
+     * Generate a route on a 2016 MoonBoard with the python script.
+     * @param grade grade
+     * @return route as a JSON object of holds
+     */
+    @Contract("_ -> new")
+    public static @NotNull JSONArray generateRouteMoonBoardPython(
+        final int grade
+    ) throws IOException {
         // path is working dir + python-scripts/plot_holds.py
         File pythonFile = new File(
             getPythonScriptsDir(), getRouteGenerationScript()
@@ -130,19 +915,63 @@ public final class RouteUtils {
             );
         }
 
-        ProcessBuilder pb = new ProcessBuilder(
-            "python3",
-            pythonFile.toString(),
-            String.valueOf(grade)
+        // run on a pooled python worker, collect the list of holds
+        JSONObject args = new JSONObject();
+        args.put("grade", grade);
+        Object result = getPythonWorkerPool().call(
+            pythonFile, "generate_route", args,
+            PythonWorkerPool.DEFAULT_DEADLINE
         );
+        if (!(result instanceof JSONArray)) {
+            throw new IOException("Route generation returned no holds");
+        }
+        return (JSONArray) result;
+    }
+
+    /**
+     * Create a 2D route image by highlighting holds on a wall, rendered
+     * in-process. The image is content addressed (see routeImageKey), so
+     * is only rendered if no route on the same holds has it.
+     * @param routeId route ID
+     * @return file name of the route image
+     */
+    public static @Nullable String createRouteImage(final int routeId) {
+        // ensure the route exists
+        if (!routeExists(routeId)) {
+            return null;
+        }
+
+        // note every route has a wall
+        Integer wallId = getWallIdFromRoute(routeId);
+        String wallImageFileName = getWallImageFileNameFromRouteId(routeId);
+        assert wallId != null && wallImageFileName != null;
+
+        // Parse the JSON string into a JSON array
+        JSONArray holdArray = getRouteContentJSONArray(routeId);
+        if (holdArray == null) {
+            // route has no holds
+            return null;
+        }
 
-        // run py script, collect results
-        // comma separated list of coordinates (hold positions to be used)
-        StringBuilder output = runProcessGetOutputEnsureSuccess(pb);
-        String result = output.toString();
+        // skip rendering if the image of these holds exists
+        String imageKey = routeImageKey(wallId, wallImageFileName, holdArray);
+        String routeFileName = "r" + imageKey + "-" + wallImageFileName;
+        if (new File(ServletUtils.getRouteImagePath(), routeFileName)
+            .isFile()) {
+            return routeFileName;
+        }
 
-        // return route - parse result as a json object
-        return new JSONArray(result);
+        // plot holds on image
+        try {
+            return plotHoldsOnImage(
+                imageKey, wallImageFileName,
+                ServletUtils.getWallImagePath(),
+                ServletUtils.getRouteImagePath(),
+                holdArray
+            );
+        } catch (IOException | JSONException e) {
+            return null;
+        }
     }
 
     /**
@@ -201,7 +1030,7 @@ public final class RouteUtils {
         // note every route has a wall
 
         // create the route image
-        String routeImageFileName = createRouteImagePython(routeId);
+        String routeImageFileName = createRouteImage(routeId);
         if (routeImageFileName == null) {
             return false;
         }
@@ -211,8 +1040,207 @@ public final class RouteUtils {
             new File(ServletUtils.getRouteImagePath(), routeImageFileName);
         assert routeImage.exists();
 
-        // store the route image
-        return addImageToRoute(routeId, routeImageFileName);
+        // store the route image, and its placeholder
+        return addImageToRoute(
+            routeId, routeImageFileName,
+            routeImagePlaceholder(routeImageFileName)
+        );
+    }
+
+    /**
+     * Get a route's image, rendering it if not yet rendered (or its file
+     * is gone). Concurrent calls for a route share one render.
+     * @param routeId route id
+     * @return file name of the route image, null if the route does not
+     * exist or its image cannot be rendered
+     */
+    public static @Nullable String getOrCreateRouteImage(final int routeId) {
+        String routeImageFileName = storedRouteImage(routeId);
+        if (routeImageFileName != null) {
+            return routeImageFileName;
+        }
+
+        // join the render in flight, if any
+        CompletableFuture<String> render = new CompletableFuture<>();
+        CompletableFuture<String> inFlight =
+            ROUTE_IMAGE_RENDERS.putIfAbsent(routeId, render);
+        if (inFlight != null) {
+            try {
+                return inFlight.join();
+            } catch (CompletionException | CancellationException e) {
+                return null;
+            }
+        }
+
+        // otherwise render it, unless rendered since the first check
+        try {
+            routeImageFileName = storedRouteImage(routeId);
+            if (routeImageFileName == null && routeExists(routeId)) {
+                routeImageFileName = createAndStoreRouteImage(routeId)
+                    ? getRouteImageFileName(routeId) : null;
+            }
+            render.complete(routeImageFileName);
+            return routeImageFileName;
+        } catch (RuntimeException e) {
+            render.completeExceptionally(e);
+            throw e;
+        } finally {
+            ROUTE_IMAGE_RENDERS.remove(routeId, render);
+        }
+    }
+
+    /**
+     * Get a route's image at most a width wide (see ImageVariants). A
+     * cached variant is served after one query. Otherwise the variant is
+     * rendered from a subsampled decode of the wall, with the holds drawn
+     * at its scale, without rendering the full size route image first:
+     * that is rendered when first requested (see getOrCreateRouteImage).
+     * @param routeId route id
+     * @param width the width, ImageVariants.FULL for the full size image
+     * @return the image file to serve, null if the route does not exist
+     * or its image cannot be rendered
+     */
+    public static @Nullable File getOrCreateRouteImageVariant(
+        final int routeId, final int width
+    ) {
+        if (width != ImageVariants.FULL) {
+            // serve the cached variant, unless the route image changed
+            String stored = getRouteImageFileName(routeId);
+            File routeImage = stored == null ? null
+                : new File(ServletUtils.getRouteImagePath(), stored);
+            if (routeImage != null && routeImage.isFile()) {
+                File variant = ImageVariants.variantFile(routeImage, width);
+                if (variant.isFile()
+                    && variant.lastModified() == routeImage.lastModified()) {
+                    return variant;
+                }
+            }
+
+            // render the variant from the wall
+            File variant = renderRouteImageVariant(routeId, routeImage, width);
+            if (variant != null) {
+                return variant;
+            }
+        }
+
+        // otherwise, downscale the full size route image
+        String routeImageFileName = getOrCreateRouteImage(routeId);
+        if (routeImageFileName == null) {
+            return null;
+        }
+        File routeImage =
+            new File(ServletUtils.getRouteImagePath(), routeImageFileName);
+        try {
+            return ImageVariants.variant(routeImage, width);
+        } catch (IOException e) {
+            return routeImage;
+        }
+    }
+
+    /**
+     * Render a route image's variant from a subsampled decode of its
+     * wall. A route without a rendered image gets the variant of the
+     * image it will have (see routeImageKey).
+     * @param routeId route id
+     * @param routeImage the route image file, null if not rendered
+     * @param width the variant width
+     * @return the variant file, null if it cannot be rendered (or the
+     * wall is no wider)
+     */
+    private static @Nullable File renderRouteImageVariant(
+        final int routeId, @Nullable final File routeImage, final int width
+    ) {
+        Integer wallId = getWallIdFromRoute(routeId);
+        String wallImageFileName = getWallImageFileNameFromRouteId(routeId);
+        JSONArray holds = getRouteContentJSONArray(routeId);
+        if (wallId == null || wallImageFileName == null || holds == null
+            || holds.isEmpty()) {
+            return null;
+        }
+        try {
+            File image = routeImage != null && routeImage.isFile()
+                ? routeImage
+                : new File(
+                    ServletUtils.getRouteImagePath(),
+                    "r" + routeImageKey(wallId, wallImageFileName, holds)
+                        + "-" + wallImageFileName
+                );
+            File variant = ImageVariants.routeVariant(
+                image,
+                new File(ServletUtils.getWallImagePath(), wallImageFileName),
+                holds, width
+            );
+            return variant.equals(image) || !variant.isFile()
+                ? null : variant;
+        } catch (IOException | JSONException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Get the size of a route's wall image, from its header, to draw the
+     * route's holds over the wall (see HoldRenderer.overlaySvg).
+     * @param routeId route id
+     * @return the wall image size, null if the route does not exist or
+     * its wall image cannot be read
+     */
+    public static @Nullable Dimension getRouteWallImageSize(
+        final int routeId
+    ) {
+        String wallImageFileName = getWallImageFileNameFromRouteId(routeId);
+        if (wallImageFileName == null) {
+            return null;
+        }
+        try {
+            return ImageVariants.imageSize(
+                new File(ServletUtils.getWallImagePath(), wallImageFileName)
+            );
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Get a route's rendered image.
+     * @param routeId route id
+     * @return file name of the route image, null if none or its file is
+     * gone
+     */
+    private static @Nullable String storedRouteImage(final int routeId) {
+        String routeImageFileName = getRouteImageFileName(routeId);
+        if (routeImageFileName == null || !new File(
+            ServletUtils.getRouteImagePath(), routeImageFileName
+        ).isFile()) {
+            return null;
+        }
+        return routeImageFileName;
+    }
+
+    /**
+     * Plot holds on an image in-process, as plot_holds.py does.
+     * @param imageKey route id, or another key naming the image
+     * @param wallImageFileName wall image file name
+     * @param wallImageFilePath wall image file path
+     * @param routeImageFilePath route image file path
+     * @param holdArray json array of holds
+     * @return new file name
+     * @throws IOException if the wall cannot be read or the route written
+     */
+    static @NotNull String plotHoldsOnImage(
+        @NotNull final String imageKey,
+        @NotNull final String wallImageFileName,
+        @NotNull final String wallImageFilePath,
+        @NotNull final String routeImageFilePath,
+        @NotNull final JSONArray holdArray
+    ) throws IOException {
+        String routeImageFileName = "r" + imageKey + "-" + wallImageFileName;
+        HoldRenderer.render(
+            getWallRasterCache(),
+            new File(wallImageFilePath, wallImageFileName),
+            new File(routeImageFilePath, routeImageFileName),
+            holdArray
+        );
+        return routeImageFileName;
     }
 
     /**
@@ -230,6 +1258,28 @@ public final class RouteUtils {
         @NotNull final String wallImageFilePath,
         @NotNull final String routeImageFilePath,
         @NotNull final JSONArray holdArray
+    ) throws IOException {
+        return plotHoldsOnImagePython(
+            String.valueOf(routeId), wallImageFileName,
+            wallImageFilePath, routeImageFilePath, holdArray
+        );
+    }
+
+    /**
+     * Plot holds on an image using python script plot_holds.py.
+     * @param imageKey route id, or another key naming the image
+     * @param wallImageFileName wall image file name
+     * @param wallImageFilePath wall image file path
+     * @param routeImageFilePath route image file path
+     * @param holdArray json array of holds
+     * @return new file name
+     */
+    static @NotNull String plotHoldsOnImagePython(
+        @NotNull final String imageKey,
+        @NotNull final String wallImageFileName,
+        @NotNull final String wallImageFilePath,
+        @NotNull final String routeImageFilePath,
+        @NotNull final JSONArray holdArray
     ) throws IOException {
         // path is working dir + python-scripts/plot_holds.py
         File pythonFile = new File(
@@ -243,22 +1293,20 @@ public final class RouteUtils {
             );
         }
 
-        // python script with arguments: wallImageFileName, routeID, holdArray
-        ProcessBuilder pb = new ProcessBuilder(
-            "python3",
-            pythonFile.toString(),
-            wallImageFileName,
-            wallImageFilePath,
-            routeImageFilePath,
-            String.valueOf(routeId),
-            holdArray.toString()
+        // plot holds on a pooled python worker
+        JSONObject args = new JSONObject();
+        args.put("wall_image_filename_in", wallImageFileName);
+        args.put("wall_image_directory_in", wallImageFilePath);
+        args.put("route_image_directory_in", routeImageFilePath);
+        args.put("route_id_in", imageKey);
+        args.put("holds", holdArray);
+        getPythonWorkerPool().call(
+            pythonFile, "create_route_image", args,
+            PythonWorkerPool.DEFAULT_DEADLINE
         );
 
-        // run hold plotting script
-        runProcessEnsureSuccess(pb);
-
         // return the file name of the route image
-        return "r" + routeId + "-" + wallImageFileName;
+        return "r" + imageKey + "-" + wallImageFileName;
     }
 
     /**
@@ -301,7 +1349,8 @@ public final class RouteUtils {
     }
 
     /**
-     * Delete a route by its id (including its image file).
+     * Delete a route by its id (including its image file, unless another
+     * route shares it).
      * @param routeId route id
      */
     public static void deleteRoute(final int routeId) {
@@ -313,22 +1362,25 @@ public final class RouteUtils {
         String routeImageFileName = getRouteImageFileName(routeId);
         boolean routeImageGenerated = routeImageFileName != null;
 
-        // remove route image if it exists, do nothing if it doesn't exist
+        // remove from database, and the similar route index
+        RouteController.deleteRoute(routeId);
+        changeSimilarRouteIndex(index -> index.remove(routeId));
+
+        // remove the route image once no route references it (a route
+        // referencing it concurrently renders it again when viewed)
         if (routeImageGenerated) {
-            deleteRouteImage(routeImageFileName);
-            assert !new File(ServletUtils.getRouteImagePath(),
-                routeImageFileName).exists();
+            Integer references = countRouteImageReferences(routeImageFileName);
+            if (references != null && references == 0) {
+                deleteRouteImage(routeImageFileName);
+            }
         }
-
-        // remove from database
-        RouteController.deleteRoute(routeId);
     }
 
     /**
      * Delete a route image file. Does nothing if the file does not exist.
      * @param routeImageFileName route image file name
      */
-    private static void deleteRouteImage(final String routeImageFileName) {
+    static void deleteRouteImage(final String routeImageFileName) {
         // create the file system path
         File routeImageFile = new File(
             ServletUtils.getRouteImagePath(), routeImageFileName
@@ -340,5 +1392,8 @@ public final class RouteUtils {
         } catch (IOException e) {
             // IOException -> file does not exist
         }
+
+        // delete its downscaled variants
+        ImageVariants.deleteVariants(routeImageFile);
     }
 }
@@ -3,12 +3,23 @@ package pbrg.webservices.utils;
 import static org.apache.commons.io.FilenameUtils.getExtension;
 import static pbrg.webservices.database.ProductionDatabase.production;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.FileInputStream;
 import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.UUID;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * For servlet utils: file path utils, API utils (bitmap returns).
@@ -25,6 +36,10 @@ public final class ServletUtils {
     /** The path to the route images directory. */
     private static String routeImagePath;
 
+    /** The bytes of the images served most. */
+    private static volatile ImageByteCache imageByteCache =
+        new ImageByteCache(ImageByteCache.DEFAULT_BUDGET);
+
     /**
      * Get the path to the wall images directory.
      * @return the path to the wall images directory
@@ -96,6 +111,18 @@ public final class ServletUtils {
             Map.entry("png", "image/png")
         );
 
+    /**
+     * Cache-Control of images: cached, but revalidated on each use, as
+     * the URL does not name the image (the session chooses it).
+     */
+    static final String IMAGE_CACHE_CONTROL = "private, no-cache";
+
+    /** Length of an image's entity tag, in hex digits. */
+    private static final int ENTITY_TAG_LENGTH = 32;
+
+    /** Milliseconds per second. */
+    private static final long MILLIS_PER_SECOND = 1000;
+
     /**
      * Seven days.
      */
@@ -120,46 +147,33 @@ public final class ServletUtils {
     }
 
     /**
-     * Return an image as a byte array.
+     * Return an image as a bitmap.
+     * @param response response
      * @param filePath file name
-     * @return byte array
-     * @throws IOException file errors
-     */
-    static byte[] getBytesFromFile(final String filePath) throws IOException {
-        byte[] imageBuffer;
-        try (FileInputStream fis = new FileInputStream(filePath)) {
-            imageBuffer = getBytesFromFileInputStream(fis);
-        }
-        return imageBuffer;
-    }
-
-    /**
-     * Return an image as a byte array from a file input stream.
-     * @param fis file input stream
-     * @return byte array
      * @throws IOException file errors
      */
-    static byte[] getBytesFromFileInputStream(
-        final FileInputStream fis
+    static void returnImageAsBitmap(
+        @NotNull final HttpServletResponse response,
+        @NotNull final String filePath
     ) throws IOException {
-        int size = fis.available();
-        byte[] imageBuffer = new byte[size];
-        int bytesRead = fis.read(imageBuffer);
-        if (size != bytesRead) {
-            throw new IOException(
-                "Expected " + size + " bytes, read " + bytesRead
-            );
-        }
-        return imageBuffer;
+        returnImageAsBitmap(null, response, filePath);
     }
 
     /**
-     * Return an image as a bitmap.
+     * Return an image as a bitmap, streamed from the file with its length
+     * up front, so the heap used is the same for any size of image.
+     * Popular images are served from memory (ImageByteCache). Validators
+     * (ETag, Last-Modified) are sent, and a conditional request for an
+     * unchanged image is answered 304 Not Modified, without a body. Range
+     * requests are answered 206 Partial Content, with the ranges read
+     * from their offsets in the file.
+     * @param request request, null if unknown
      * @param response response
      * @param filePath file name
      * @throws IOException file errors
      */
     static void returnImageAsBitmap(
+        @Nullable final HttpServletRequest request,
         @NotNull final HttpServletResponse response,
         @NotNull final String filePath
     ) throws IOException {
@@ -170,17 +184,361 @@ public final class ServletUtils {
             response.sendError(HttpServletResponse.SC_UNSUPPORTED_MEDIA_TYPE);
             throw new IOException("Unsupported file type: " + ext);
         }
+
+        // serve popular images from memory
+        File file = new File(filePath);
+        ImageByteCache.Entry cached = imageByteCache.get(file, contentType);
+        if (cached != null) {
+            returnImage(
+                request, response, contentType,
+                cached.getEntityTag(), cached.getModified(),
+                cached.length(), cached::write
+            );
+            return;
+        }
+
+        try (
+            FileInputStream fis = new FileInputStream(filePath);
+            FileChannel channel = fis.getChannel()
+        ) {
+            long size = channel.size();
+            long modified = file.lastModified();
+            returnImage(
+                request, response, contentType,
+                entityTag(file.getName(), size, modified), modified, size,
+                (position, count, outputStream) ->
+                    transfer(channel, position, count, outputStream)
+            );
+        }
+    }
+
+    /** Writes part of an image, from its file or memory. */
+    @FunctionalInterface
+    private interface ImageBody {
+        /**
+         * Write part of the image to a stream.
+         * @param position the first byte to write
+         * @param count the number of bytes to write
+         * @param outputStream the stream
+         * @throws IOException file or stream errors
+         */
+        void write(long position, long count, OutputStream outputStream)
+            throws IOException;
+    }
+
+    /**
+     * Return an image: its validators, then 304, the requested ranges
+     * (206), or the whole image (200).
+     * @param request request, null if unknown
+     * @param response response
+     * @param contentType the image's content type
+     * @param entityTag the image's entity tag
+     * @param modified the image's modification time
+     * @param size the image's size, in bytes
+     * @param body writes the image
+     * @throws IOException file or stream errors
+     */
+    private static void returnImage(
+        @Nullable final HttpServletRequest request,
+        @NotNull final HttpServletResponse response,
+        @NotNull final String contentType,
+        @NotNull final String entityTag,
+        final long modified,
+        final long size,
+        @NotNull final ImageBody body
+    ) throws IOException {
+        // send validators, and nothing else if the client has the image
+        response.setHeader("ETag", entityTag);
+        response.setDateHeader("Last-Modified", modified);
+        response.setHeader("Cache-Control", IMAGE_CACHE_CONTROL);
+        if (notModified(request, entityTag, modified)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        // answer the requested ranges, if any, else the whole image
+        response.setHeader("Accept-Ranges", "bytes");
+        List<ByteRange> ranges =
+            requestedRanges(request, entityTag, modified, size);
+        if (ranges != null && ranges.isEmpty()) {
+            response.setHeader("Content-Range", "bytes */" + size);
+            response.sendError(
+                HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE
+            );
+            return;
+        }
+        if (ranges != null && ranges.size() > 1) {
+            returnRanges(response, body, contentType, size, ranges);
+            return;
+        }
+        ByteRange range;
+        if (ranges == null) {
+            range = new ByteRange(0, size - 1);
+            response.setStatus(HttpServletResponse.SC_OK);
+        } else {
+            range = ranges.get(0);
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setHeader("Content-Range", range.contentRange(size));
+        }
         response.setContentType(contentType);
+        response.setContentLengthLong(range.length());
 
-        // read-in image file
-        byte[] imageBuffer = getBytesFromFile(filePath);
+        // write the image to the response
+        try (OutputStream outputStream = response.getOutputStream()) {
+            body.write(range.getStart(), range.length(), outputStream);
+            outputStream.flush();
+        }
+    }
 
+    /**
+     * Get the ranges of an image a request asks for. Ranges are ignored
+     * if If-Range names another version of the image (so a resumed
+     * download never mixes two versions).
+     * @param request request, null if unknown
+     * @param entityTag the image's entity tag
+     * @param modified the image's modification time
+     * @param size the image's size, in bytes
+     * @return the ranges (empty if unsatisfiable), null for the whole image
+     */
+    static @Nullable List<ByteRange> requestedRanges(
+        @Nullable final HttpServletRequest request,
+        @NotNull final String entityTag,
+        final long modified,
+        final long size
+    ) {
+        if (request == null) {
+            return null;
+        }
+
+        // If-Range is an entity tag, compared strongly, or a date
+        String ifRange = request.getHeader("If-Range");
+        if (ifRange != null) {
+            ifRange = ifRange.trim();
+            if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+                if (!ifRange.equals(entityTag)) {
+                    return null;
+                }
+            } else {
+                long date;
+                try {
+                    date = request.getDateHeader("If-Range");
+                } catch (IllegalArgumentException e) {
+                    return null;
+                }
+                if (date < 0 || modified / MILLIS_PER_SECOND
+                    != date / MILLIS_PER_SECOND) {
+                    return null;
+                }
+            }
+        }
+        return ByteRange.parse(request.getHeader("Range"), size);
+    }
+
+    /**
+     * Return several ranges of an image, as a multipart/byteranges body.
+     * @param response response
+     * @param body writes the image
+     * @param contentType the image's content type
+     * @param size the image's size, in bytes
+     * @param ranges the ranges, at least two
+     * @throws IOException file or stream errors
+     */
+    private static void returnRanges(
+        @NotNull final HttpServletResponse response,
+        @NotNull final ImageBody body,
+        @NotNull final String contentType,
+        final long size,
+        @NotNull final List<ByteRange> ranges
+    ) throws IOException {
+        // each part is headed by the boundary, its type and range
+        String boundary = UUID.randomUUID().toString();
+        List<byte[]> headers = new ArrayList<>(ranges.size());
+        long length = 0;
+        for (ByteRange range : ranges) {
+            byte[] header = ("\r\n--" + boundary
+                + "\r\nContent-Type: " + contentType
+                + "\r\nContent-Range: " + range.contentRange(size)
+                + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+            headers.add(header);
+            length += header.length + range.length();
+        }
+        byte[] end = ("\r\n--" + boundary + "--\r\n")
+            .getBytes(StandardCharsets.US_ASCII);
+        length += end.length;
+
+        response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        response.setContentType("multipart/byteranges; boundary=" + boundary);
+        response.setContentLengthLong(length);
         try (OutputStream outputStream = response.getOutputStream()) {
-            outputStream.write(imageBuffer);
+            for (int i = 0; i < ranges.size(); i++) {
+                ByteRange range = ranges.get(i);
+                outputStream.write(headers.get(i));
+                body.write(range.getStart(), range.length(), outputStream);
+            }
+            outputStream.write(end);
             outputStream.flush();
         }
     }
 
+    /**
+     * Return a tile of a wall's pyramid as a bitmap (see WallTiles).
+     * @param request request
+     * @param response response
+     * @param tile the tile file
+     * @throws IOException file errors
+     */
+    public static void returnWallTileAsBitmap(
+        @NotNull final HttpServletRequest request,
+        @NotNull final HttpServletResponse response,
+        @NotNull final File tile
+    ) throws IOException {
+        returnImageAsBitmap(request, response, tile.getPath());
+    }
+
+    /**
+     * Return a route list's contact sheet as a bitmap (see RouteSheets).
+     * @param request request
+     * @param response response
+     * @param sheet the sheet image file
+     * @throws IOException file errors
+     */
+    public static void returnRouteSheetAsBitmap(
+        @NotNull final HttpServletRequest request,
+        @NotNull final HttpServletResponse response,
+        @NotNull final File sheet
+    ) throws IOException {
+        returnImageAsBitmap(request, response, sheet.getPath());
+    }
+
+    /**
+     * Get the cache of image bytes.
+     * @return the image byte cache
+     */
+    public static @NotNull ImageByteCache getImageByteCache() {
+        return imageByteCache;
+    }
+
+    /**
+     * Replace the cache of image bytes, e.g. to change its memory budget.
+     * @param cache the image byte cache
+     */
+    public static void setImageByteCache(@NotNull final ImageByteCache cache) {
+        ImageByteCache replaced = imageByteCache;
+        imageByteCache = cache;
+        replaced.clear();
+    }
+
+    /**
+     * Get the strong entity tag of an image file, from its name, size and
+     * modification time: the file's content only changes with these.
+     * @param name the file name
+     * @param size the file size, in bytes
+     * @param modified the file's modification time
+     * @return the quoted entity tag
+     */
+    @Contract(pure = true)
+    static @NotNull String entityTag(
+        @NotNull final String name, final long size, final long modified
+    ) {
+        String hash = RouteBits.sha256(name + ":" + size + ":" + modified);
+        return "\"" + hash.substring(0, ENTITY_TAG_LENGTH) + "\"";
+    }
+
+    /**
+     * Check whether a conditional request's copy of an image is current:
+     * If-None-Match lists its entity tag, or, without If-None-Match, it
+     * was not modified since If-Modified-Since.
+     * @param request request, null if unknown
+     * @param entityTag the image's entity tag
+     * @param modified the image's modification time
+     * @return true if the client's copy is current, false otherwise
+     */
+    static boolean notModified(
+        @Nullable final HttpServletRequest request,
+        @NotNull final String entityTag,
+        final long modified
+    ) {
+        if (request == null) {
+            return false;
+        }
+
+        // entity tags take precedence, compared weakly (as for GET)
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            for (String tag : ifNoneMatch.split(",")) {
+                tag = tag.trim();
+                if (tag.startsWith("W/")) {
+                    tag = tag.substring(2);
+                }
+                if (tag.equals("*") || tag.equals(entityTag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        // HTTP dates are to the second
+        long ifModifiedSince;
+        try {
+            ifModifiedSince = request.getDateHeader("If-Modified-Since");
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        return ifModifiedSince >= 0
+            && modified / MILLIS_PER_SECOND
+                <= ifModifiedSince / MILLIS_PER_SECOND;
+    }
+
+    /**
+     * Copy part of a file to a stream, without reading it onto the heap.
+     * @param channel the file channel
+     * @param position the first byte to copy
+     * @param count the number of bytes to copy
+     * @param outputStream the stream
+     * @throws IOException file or stream errors
+     */
+    static void transfer(
+        @NotNull final FileChannel channel, final long position,
+        final long count, @NotNull final OutputStream outputStream
+    ) throws IOException {
+        WritableByteChannel target = Channels.newChannel(outputStream);
+        long transferred = 0;
+        while (transferred < count) {
+            long sent = channel.transferTo(
+                position + transferred, count - transferred, target
+            );
+            if (sent <= 0) {
+                throw new IOException("File ended before the image was sent");
+            }
+            transferred += sent;
+        }
+    }
+
+    /**
+     * Return an image as a bitmap, downscaled to a width (see
+     * ImageVariants). If the variant cannot be made, the original is
+     * returned.
+     * @param request request
+     * @param response response
+     * @param original the original image file
+     * @param width the variant width, ImageVariants.FULL for the original
+     * @throws IOException file errors
+     */
+    static void returnImageVariantAsBitmap(
+        @NotNull final HttpServletRequest request,
+        @NotNull final HttpServletResponse response,
+        @NotNull final File original,
+        final int width
+    ) throws IOException {
+        File image;
+        try {
+            image = ImageVariants.variant(original, width);
+        } catch (IOException e) {
+            image = original;
+        }
+        returnImageAsBitmap(request, response, image.getPath());
+    }
+
     /**
      * Return a wall image as a bitmap.
      * @param response response
@@ -211,4 +569,44 @@ public final class ServletUtils {
             ServletUtils.routeImagePath + fileName
         );
     }
+
+    /**
+     * Return a wall image as a bitmap, downscaled to a width.
+     * @param request request
+     * @param response response
+     * @param fileName file name
+     * @param width the variant width, ImageVariants.FULL for the original
+     * @throws IOException file errors
+     */
+    public static void returnWallImageAsBitmap(
+        @NotNull final HttpServletRequest request,
+        @NotNull final HttpServletResponse response,
+        @NotNull final String fileName,
+        final int width
+    ) throws IOException {
+        returnImageVariantAsBitmap(
+            request, response,
+            new File(ServletUtils.wallImagePath, fileName), width
+        );
+    }
+
+    /**
+     * Return a route image as a bitmap, downscaled to a width.
+     * @param request request
+     * @param response response
+     * @param fileName file name
+     * @param width the variant width, ImageVariants.FULL for the original
+     * @throws IOException file errors
+     */
+    public static void returnRouteImageAsBitmap(
+        @NotNull final HttpServletRequest request,
+        @NotNull final HttpServletResponse response,
+        @NotNull final String fileName,
+        final int width
+    ) throws IOException {
+        returnImageVariantAsBitmap(
+            request, response,
+            new File(ServletUtils.routeImagePath, fileName), width
+        );
+    }
 }
@@ -0,0 +1,410 @@
+package pbrg.webservices.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * In-memory index of routes by hold set, for "more like this" queries.
+ * Each route's hold bitset gets a MinHash signature, split into bands;
+ * routes sharing a band on the same wall are candidates, ranked by their
+ * exact Jaccard similarity (shared holds / all holds). A query touches
+ * only the candidates' buckets, never the stored route content.
+ */
+public final class SimilarRouteIndex {
+
+    /** Number of MinHash functions in a signature. */
+    static final int HASHES = 128;
+
+    /**
+     * Number of LSH bands a signature is split into. Bands of 4 keep the
+     * buckets small on walls of few holds; 32 of them find most routes
+     * sharing half their holds.
+     */
+    static final int BANDS = 32;
+
+    /** Number of signature values per band. */
+    private static final int ROWS = HASHES / BANDS;
+
+    /** Seeds of the MinHash functions. */
+    private static final long[] SEEDS = new long[HASHES];
+
+    static {
+        long seed = 0x5EEDL;
+        for (int i = 0; i < HASHES; i++) {
+            seed += 0x9E3779B97F4A7C15L;
+            SEEDS[i] = mix(seed);
+        }
+    }
+
+    /** A route similar to the queried route. */
+    public static final class Match {
+
+        /** The route id. */
+        private final int routeId;
+
+        /** The route difficulty. */
+        private final int difficulty;
+
+        /** The Jaccard similarity to the queried route, 0 to 1. */
+        private final double similarity;
+
+        /**
+         * Create a match.
+         * @param pRouteId the route id
+         * @param pDifficulty the route difficulty
+         * @param pSimilarity the similarity to the queried route
+         */
+        Match(
+            final int pRouteId, final int pDifficulty,
+            final double pSimilarity
+        ) {
+            routeId = pRouteId;
+            difficulty = pDifficulty;
+            similarity = pSimilarity;
+        }
+
+        /**
+         * Get the route id.
+         * @return the route id
+         */
+        public int getRouteId() {
+            return routeId;
+        }
+
+        /**
+         * Get the route difficulty.
+         * @return the difficulty
+         */
+        public int getDifficulty() {
+            return difficulty;
+        }
+
+        /**
+         * Get the Jaccard similarity to the queried route.
+         * @return the similarity, 0 to 1
+         */
+        public double getSimilarity() {
+            return similarity;
+        }
+    }
+
+    /**
+     * A distinct hold set on a wall, and the routes using it. Routes are
+     * indexed by hold set, so repeats of a route cost no query time.
+     */
+    private static final class HoldSet {
+
+        /** The wall id. */
+        private final int wallId;
+
+        /** The hold bitset. */
+        private final long[] bits;
+
+        /** The LSH bucket keys, one per band. */
+        private final long[] bucketKeys;
+
+        /** The difficulty of each route using the holds, by route id. */
+        private final TreeMap<Integer, Integer> routes = new TreeMap<>();
+
+        /**
+         * Create a hold set, with no routes.
+         * @param pWallId the wall id
+         * @param pBits the hold bitset
+         */
+        HoldSet(final int pWallId, final long[] pBits) {
+            wallId = pWallId;
+            bits = pBits.clone();
+            bucketKeys = bucketKeys(pWallId, signature(pBits));
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            if (!(other instanceof HoldSet)) {
+                return false;
+            }
+            HoldSet holdSet = (HoldSet) other;
+            return wallId == holdSet.wallId
+                && Arrays.equals(bits, holdSet.bits);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * wallId + Arrays.hashCode(bits);
+        }
+    }
+
+    /** A hold set found by a query, with its similarity. */
+    private static final class Candidate {
+
+        /** The hold set. */
+        private final HoldSet holdSet;
+
+        /** The Jaccard similarity to the queried route's holds. */
+        private final double similarity;
+
+        /** The lowest id of a route using the holds. */
+        private final int firstRouteId;
+
+        /**
+         * Create a candidate.
+         * @param pHoldSet the hold set
+         * @param pSimilarity the similarity to the queried route's holds
+         */
+        Candidate(@NotNull final HoldSet pHoldSet, final double pSimilarity) {
+            holdSet = pHoldSet;
+            similarity = pSimilarity;
+            firstRouteId = pHoldSet.routes.firstKey();
+        }
+    }
+
+    /** Orders candidates most similar first, then by route id. */
+    private static final Comparator<Candidate> RANKING =
+        Comparator.<Candidate>comparingDouble(c -> -c.similarity)
+            .thenComparingInt(c -> c.firstRouteId);
+
+    /** Distinct hold sets, each its own key. */
+    private final Map<HoldSet, HoldSet> holdSets = new HashMap<>();
+
+    /** Hold sets by route id. */
+    private final Map<Integer, HoldSet> routes = new HashMap<>();
+
+    /** Hold sets by LSH bucket key (hold sets are interned). */
+    private final Map<Long, Set<HoldSet>> buckets = new HashMap<>();
+
+    /** Guards the hold sets, routes and buckets. */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Index a route, replacing it if already indexed.
+     * @param routeId the route id
+     * @param wallId the wall id
+     * @param difficulty the route difficulty
+     * @param bits the route's hold bitset (see HoldTable)
+     */
+    public void add(
+        final int routeId, final int wallId, final int difficulty,
+        final long @NotNull [] bits
+    ) {
+        HoldSet created = new HoldSet(wallId, bits);
+        lock.writeLock().lock();
+        try {
+            removeLocked(routeId);
+            HoldSet holdSet = holdSets.putIfAbsent(created, created);
+            if (holdSet == null) {
+                holdSet = created;
+                for (long key : holdSet.bucketKeys) {
+                    buckets.computeIfAbsent(key, k ->
+                        Collections.newSetFromMap(new IdentityHashMap<>())
+                    ).add(holdSet);
+                }
+            }
+            holdSet.routes.put(routeId, difficulty);
+            routes.put(routeId, holdSet);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove a route from the index. Does nothing if not indexed.
+     * @param routeId the route id
+     */
+    public void remove(final int routeId) {
+        lock.writeLock().lock();
+        try {
+            removeLocked(routeId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove a route, holding the write lock. A hold set is dropped with
+     * its last route.
+     * @param routeId the route id
+     */
+    private void removeLocked(final int routeId) {
+        HoldSet holdSet = routes.remove(routeId);
+        if (holdSet == null) {
+            return;
+        }
+        holdSet.routes.remove(routeId);
+        if (!holdSet.routes.isEmpty()) {
+            return;
+        }
+        holdSets.remove(holdSet);
+        for (long key : holdSet.bucketKeys) {
+            Set<HoldSet> bucket = buckets.get(key);
+            if (bucket != null) {
+                bucket.remove(holdSet);
+                if (bucket.isEmpty()) {
+                    buckets.remove(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * Check whether a route is indexed.
+     * @param routeId the route id
+     * @return true if indexed, false otherwise
+     */
+    public boolean contains(final int routeId) {
+        lock.readLock().lock();
+        try {
+            return routes.containsKey(routeId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Get the number of indexed routes.
+     * @return the number of routes
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return routes.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Find the routes on the same wall most similar to a route, most
+     * similar first (then by route id). Routes sharing no band with the
+     * route (very likely dissimilar) are not found.
+     * @param routeId the route id
+     * @param count the most routes to return
+     * @return the similar routes, empty if the route is not indexed
+     */
+    public @NotNull List<Match> similar(final int routeId, final int count) {
+        List<Match> matches = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            HoldSet query = routes.get(routeId);
+            if (query == null) {
+                return matches;
+            }
+
+            // gather the hold sets sharing a band with the route's
+            Set<HoldSet> candidates =
+                Collections.newSetFromMap(new IdentityHashMap<>());
+            for (long key : query.bucketKeys) {
+                candidates.addAll(buckets.get(key));
+            }
+
+            // rank the hold sets on the same wall by exact similarity
+            List<Candidate> ranked = new ArrayList<>(candidates.size());
+            for (HoldSet candidate : candidates) {
+                if (candidate.wallId == query.wallId) {
+                    ranked.add(new Candidate(
+                        candidate, jaccard(query.bits, candidate.bits)
+                    ));
+                }
+            }
+            ranked.sort(RANKING);
+
+            // take their routes, most similar first
+            for (Candidate candidate : ranked) {
+                for (Map.Entry<Integer, Integer> route
+                    : candidate.holdSet.routes.entrySet()) {
+                    if (matches.size() >= count) {
+                        return matches;
+                    }
+                    if (route.getKey() != routeId) {
+                        matches.add(new Match(
+                            route.getKey(), route.getValue(),
+                            candidate.similarity
+                        ));
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return matches;
+    }
+
+    /**
+     * Get the Jaccard similarity of two hold sets.
+     * @param a a bitset
+     * @param b a bitset, of the same wall
+     * @return shared holds over all holds, 0 to 1
+     */
+    @Contract(pure = true)
+    static double jaccard(final long @NotNull [] a, final long @NotNull [] b) {
+        int shared = RouteBits.overlap(a, b);
+        int all = RouteBits.count(a) + RouteBits.count(b) - shared;
+        return all == 0 ? 1 : (double) shared / all;
+    }
+
+    /**
+     * Compute the MinHash signature of a hold set: for each hash
+     * function, the least hash of any hold.
+     * @param bits the hold bitset
+     * @return the signature
+     */
+    @Contract(pure = true)
+    static long @NotNull [] signature(final long @NotNull [] bits) {
+        long[] signature = new long[HASHES];
+        Arrays.fill(signature, Long.MAX_VALUE);
+        for (int id = RouteBits.next(bits, 0); id >= 0;
+             id = RouteBits.next(bits, id + 1)) {
+            for (int i = 0; i < HASHES; i++) {
+                long hash = mix(id ^ SEEDS[i]) >>> 1;
+                if (hash < signature[i]) {
+                    signature[i] = hash;
+                }
+            }
+        }
+        return signature;
+    }
+
+    /**
+     * Get the LSH bucket keys of a signature on a wall, one per band.
+     * @param wallId the wall id
+     * @param signature the MinHash signature
+     * @return the bucket keys
+     */
+    @Contract(pure = true)
+    private static long @NotNull [] bucketKeys(
+        final int wallId, final long @NotNull [] signature
+    ) {
+        long[] keys = new long[BANDS];
+        for (int band = 0; band < BANDS; band++) {
+            long key = mix(((long) wallId << Integer.SIZE) | band);
+            for (int row = 0; row < ROWS; row++) {
+                key = mix(key ^ signature[band * ROWS + row]);
+            }
+            keys[band] = key;
+        }
+        return keys;
+    }
+
+    /**
+     * Scramble a long (the SplitMix64 finaliser).
+     * @param value the value
+     * @return the scrambled value
+     */
+    @Contract(pure = true)
+    private static long mix(final long value) {
+        long z = value;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,310 @@
+package pbrg.webservices.utils;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Decoded wall images, so renders on a wall decode it once. Walls are
+ * keyed by file and modification time (a changed file is decoded again)
+ * and evicted least recently used first, to keep the pixel data within a
+ * memory budget. Pixels are held on the heap, or off it in direct
+ * buffers (copied into a fresh image on each use).
+ */
+public final class WallRasterCache {
+
+    /** Default memory budget: 64 MiB, a dozen 12 megapixel walls. */
+    public static final long DEFAULT_BUDGET = 64L << 20;
+
+    /** A decoded wall. */
+    private static final class Entry {
+
+        /** The wall image file's modification time. */
+        private final long modified;
+
+        /** The wall width, in pixels. */
+        private final int width;
+
+        /** The wall height, in pixels. */
+        private final int height;
+
+        /** Whether the wall has transparency. */
+        private final boolean alpha;
+
+        /** The wall, if held on the heap. */
+        private final BufferedImage image;
+
+        /** The wall's pixels as (A)RGB ints, if held off the heap. */
+        private final IntBuffer pixels;
+
+        /**
+         * Create a decoded wall.
+         * @param pModified the file's modification time
+         * @param pImage the wall, as an INT_RGB or INT_ARGB image
+         * @param offHeap whether to hold the pixels off the heap
+         */
+        Entry(
+            final long pModified, @NotNull final BufferedImage pImage,
+            final boolean offHeap
+        ) {
+            modified = pModified;
+            width = pImage.getWidth();
+            height = pImage.getHeight();
+            alpha = pImage.getColorModel().hasAlpha();
+            if (offHeap) {
+                int[] data = ((DataBufferInt) pImage.getRaster()
+                    .getDataBuffer()).getData();
+                pixels = ByteBuffer.allocateDirect(data.length * Integer.BYTES)
+                    .order(ByteOrder.nativeOrder()).asIntBuffer();
+                pixels.put(data).flip();
+                image = null;
+            } else {
+                pixels = null;
+                image = pImage;
+            }
+        }
+
+        /**
+         * Get the size of the pixel data.
+         * @return the size, in bytes
+         */
+        long bytes() {
+            return (long) width * height * Integer.BYTES;
+        }
+
+        /**
+         * Get the wall as an image.
+         * @return the wall
+         */
+        @NotNull BufferedImage image() {
+            if (image != null) {
+                return image;
+            }
+            BufferedImage copy = new BufferedImage(width, height, type(alpha));
+            pixels.duplicate().get(
+                ((DataBufferInt) copy.getRaster().getDataBuffer()).getData()
+            );
+            return copy;
+        }
+    }
+
+    /** The memory budget, in bytes. */
+    private final long budget;
+
+    /** Whether pixels are held off the heap. */
+    private final boolean offHeap;
+
+    /** Decoded walls by file path, least recently used first. */
+    private final LinkedHashMap<String, Entry> entries =
+        new LinkedHashMap<>(16, 0.75f, true);
+
+    /** Size of the cached pixel data, in bytes. */
+    private long bytes;
+
+    /** Number of lookups served from the cache. */
+    private long hits;
+
+    /** Number of lookups that decoded the wall. */
+    private long misses;
+
+    /**
+     * Create a wall raster cache.
+     * @param pBudget the memory budget, in bytes
+     * @param pOffHeap whether to hold pixels off the heap
+     */
+    public WallRasterCache(final long pBudget, final boolean pOffHeap) {
+        if (pBudget < 0) {
+            throw new IllegalArgumentException("Negative memory budget");
+        }
+        budget = pBudget;
+        offHeap = pOffHeap;
+    }
+
+    /**
+     * Get a decoded wall, decoding it on a miss. Heap images are shared,
+     * so must not be drawn on.
+     * @param wallImage the wall image file
+     * @return the wall, as an INT_RGB or INT_ARGB image
+     * @throws IOException if the wall image cannot be read
+     */
+    public @NotNull BufferedImage get(@NotNull final File wallImage)
+        throws IOException {
+        String key = wallImage.getAbsolutePath();
+        long modified = wallImage.lastModified();
+        Entry cached;
+        synchronized (this) {
+            cached = entries.get(key);
+            if (cached != null && cached.modified == modified) {
+                hits++;
+            } else {
+                cached = null;
+                misses++;
+            }
+        }
+        if (cached != null) {
+            return cached.image();
+        }
+
+        // decode outside the lock, so other walls are still served
+        BufferedImage decoded = decode(wallImage);
+        Entry entry = new Entry(modified, decoded, offHeap);
+        if (entry.bytes() > budget) {
+            return decoded;
+        }
+        synchronized (this) {
+            Entry replaced = entries.put(key, entry);
+            if (replaced != null) {
+                bytes -= replaced.bytes();
+            }
+            bytes += entry.bytes();
+            evict();
+        }
+        return decoded;
+    }
+
+    /** Evict the least recently used walls until within the budget. */
+    private void evict() {
+        Iterator<Map.Entry<String, Entry>> eldest =
+            entries.entrySet().iterator();
+        while (bytes > budget && eldest.hasNext()) {
+            bytes -= eldest.next().getValue().bytes();
+            eldest.remove();
+        }
+    }
+
+    /** Drop every cached wall. */
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    /**
+     * Get the number of cached walls.
+     * @return the number of walls
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Get the size of the cached pixel data.
+     * @return the size, in bytes
+     */
+    public synchronized long bytes() {
+        return bytes;
+    }
+
+    /**
+     * Get the number of lookups served from the cache.
+     * @return the number of hits
+     */
+    public synchronized long hits() {
+        return hits;
+    }
+
+    /**
+     * Get the number of lookups that decoded the wall.
+     * @return the number of misses
+     */
+    public synchronized long misses() {
+        return misses;
+    }
+
+    /**
+     * Decode a wall image file into an INT_RGB or INT_ARGB image, the
+     * layouts Java2D copies fastest.
+     * @param wallImage the wall image file
+     * @return the wall
+     * @throws IOException if the wall image cannot be read
+     */
+    static @NotNull BufferedImage decode(@NotNull final File wallImage)
+        throws IOException {
+        return decode(wallImage, 1);
+    }
+
+    /**
+     * Decode a wall image file, reading only every n-th pixel of every
+     * n-th row, into an INT_RGB or INT_ARGB image.
+     * @param wallImage the wall image file
+     * @param subsampling the step between pixels read, 1 to read all
+     * @return the wall, about 1 / subsampling of its size
+     * @throws IOException if the wall image cannot be read
+     */
+    static @NotNull BufferedImage decode(
+        @NotNull final File wallImage, final int subsampling
+    ) throws IOException {
+        if (!wallImage.isFile()) {
+            throw new IOException("Wall image file does not exist");
+        }
+        BufferedImage read = read(wallImage, subsampling);
+        int type = type(read.getColorModel().hasAlpha());
+        if (read.getType() == type) {
+            return read;
+        }
+        BufferedImage wall =
+            new BufferedImage(read.getWidth(), read.getHeight(), type);
+        Graphics2D graphics = wall.createGraphics();
+        try {
+            graphics.drawImage(read, 0, 0, null);
+        } finally {
+            graphics.dispose();
+        }
+        return wall;
+    }
+
+    /**
+     * Read an image file with its first reader, subsampled.
+     * @param image the image file
+     * @param subsampling the step between pixels read, 1 to read all
+     * @return the image, as the reader decodes it
+     * @throws IOException if the image cannot be read
+     */
+    private static @NotNull BufferedImage read(
+        @NotNull final File image, final int subsampling
+    ) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(image)) {
+            Iterator<ImageReader> readers =
+                input == null ? null : ImageIO.getImageReaders(input);
+            if (readers == null || !readers.hasNext()) {
+                throw new IOException("Wall image " + image + " is unreadable");
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                ImageReadParam param = reader.getDefaultReadParam();
+                if (subsampling > 1) {
+                    param.setSourceSubsampling(
+                        subsampling, subsampling, 0, 0
+                    );
+                }
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Get the image type of a wall.
+     * @param alpha whether the wall has transparency
+     * @return INT_ARGB if so, INT_RGB otherwise
+     */
+    @Contract(pure = true)
+    private static int type(final boolean alpha) {
+        return alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+    }
+}
@@ -0,0 +1,450 @@
+package pbrg.webservices.utils;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Deep zoom tile pyramids of wall images, so clients can pan and zoom a
+ * large wall, loading only the tiles in view. Level 0 is one pixel; each
+ * level doubles the last, up to the wall's full size at the top level.
+ * Each level is cut into square tiles, addressed by column and row.
+ * Pyramids are cached on disk next to the wall, as
+ * wall.jpg_tiles/level/x_y.jpg, and built again when the wall changes.
+ */
+public final class WallTiles {
+
+    /** Width and height of a tile, in pixels (edge tiles may be less). */
+    public static final int TILE_SIZE = 256;
+
+    /** Name of a pyramid's descriptor file, written once it is complete. */
+    static final String DESCRIPTOR = "pyramid.json";
+
+    /** Pyramid builds in flight, by wall image path. */
+    private static final ConcurrentHashMap<String, CompletableFuture<Pyramid>>
+        BUILDS = new ConcurrentHashMap<>();
+
+    private WallTiles() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /** A wall's tile pyramid on disk. */
+    public static final class Pyramid {
+
+        /** The directory of the tiles. */
+        private final File directory;
+
+        /** The wall width, in pixels. */
+        private final int width;
+
+        /** The wall height, in pixels. */
+        private final int height;
+
+        /** The number of levels. */
+        private final int levels;
+
+        /** The tiles' image format, e.g. "jpg". */
+        private final String format;
+
+        /** The wall image file's modification time. */
+        private final long modified;
+
+        /**
+         * Create a tile pyramid.
+         * @param pDirectory the directory of the tiles
+         * @param pWidth the wall width
+         * @param pHeight the wall height
+         * @param pFormat the tiles' image format
+         * @param pModified the wall image file's modification time
+         */
+        Pyramid(
+            @NotNull final File pDirectory, final int pWidth,
+            final int pHeight, @NotNull final String pFormat,
+            final long pModified
+        ) {
+            directory = pDirectory;
+            width = pWidth;
+            height = pHeight;
+            levels = levels(pWidth, pHeight);
+            format = pFormat;
+            modified = pModified;
+        }
+
+        /**
+         * Get the number of levels.
+         * @return the number of levels, the top one full size
+         */
+        public int getLevels() {
+            return levels;
+        }
+
+        /**
+         * Get the width of a level.
+         * @param level the level
+         * @return the width, in pixels
+         */
+        public int levelWidth(final int level) {
+            return scaled(width, level);
+        }
+
+        /**
+         * Get the height of a level.
+         * @param level the level
+         * @return the height, in pixels
+         */
+        public int levelHeight(final int level) {
+            return scaled(height, level);
+        }
+
+        /**
+         * Get the number of tile columns of a level.
+         * @param level the level
+         * @return the number of columns
+         */
+        public int columns(final int level) {
+            return (levelWidth(level) + TILE_SIZE - 1) / TILE_SIZE;
+        }
+
+        /**
+         * Get the number of tile rows of a level.
+         * @param level the level
+         * @return the number of rows
+         */
+        public int rows(final int level) {
+            return (levelHeight(level) + TILE_SIZE - 1) / TILE_SIZE;
+        }
+
+        /**
+         * Check whether the pyramid has a tile.
+         * @param level the level
+         * @param x the tile column
+         * @param y the tile row
+         * @return true if so, false otherwise
+         */
+        public boolean hasTile(final int level, final int x, final int y) {
+            return level >= 0 && level < levels
+                && x >= 0 && x < columns(level)
+                && y >= 0 && y < rows(level);
+        }
+
+        /**
+         * Get a tile's file.
+         * @param level the level
+         * @param x the tile column
+         * @param y the tile row
+         * @return the tile file
+         */
+        public @NotNull File tileFile(
+            final int level, final int x, final int y
+        ) {
+            return new File(
+                new File(directory, String.valueOf(level)),
+                x + "_" + y + "." + format
+            );
+        }
+
+        /**
+         * Describe the pyramid, for clients to address its tiles.
+         * @return the wall size, tile size, levels and tile format
+         */
+        @Contract(" -> new")
+        public @NotNull JSONObject toJSON() {
+            JSONObject json = new JSONObject();
+            json.put("width", width);
+            json.put("height", height);
+            json.put("tileSize", TILE_SIZE);
+            json.put("levels", levels);
+            json.put("format", format);
+            return json;
+        }
+
+        /**
+         * Scale a full size length down to a level.
+         * @param length the full size length, in pixels
+         * @param level the level
+         * @return the length at the level, rounded up
+         */
+        private int scaled(final int length, final int level) {
+            int shift = levels - 1 - level;
+            return (int) ((length + (1L << shift) - 1) >> shift);
+        }
+    }
+
+    /**
+     * Get the number of levels of a wall's pyramid: enough to halve its
+     * longer side down to one pixel.
+     * @param width the wall width
+     * @param height the wall height
+     * @return the number of levels
+     */
+    @Contract(pure = true)
+    static int levels(final int width, final int height) {
+        int levels = 1;
+        for (int length = Math.max(width, height); length > 1;
+            length = (length + 1) / 2) {
+            levels++;
+        }
+        return levels;
+    }
+
+    /**
+     * Get the directory of a wall's tiles.
+     * @param wallImage the wall image file
+     * @return the directory, which may not exist
+     */
+    @Contract(pure = true)
+    static @NotNull File tileDirectory(@NotNull final File wallImage) {
+        return new File(
+            wallImage.getAbsoluteFile().getParentFile(),
+            wallImage.getName() + "_tiles"
+        );
+    }
+
+    /**
+     * Get a wall's tile pyramid, building it if missing or stale.
+     * Concurrent requests for one wall share a build.
+     * @param wallImage the wall image file
+     * @return the pyramid
+     * @throws IOException if the wall cannot be read or the tiles written
+     */
+    public static @NotNull Pyramid getOrCreatePyramid(
+        @NotNull final File wallImage
+    ) throws IOException {
+        return getOrCreatePyramid(wallImage, pyramid -> true);
+    }
+
+    /**
+     * Get a tile of a wall's pyramid, building the pyramid if missing or
+     * stale, or if the tile's file is missing (e.g. deleted, or moved
+     * away as the pyramid was rebuilt).
+     * @param wallImage the wall image file
+     * @param level the level
+     * @param x the tile column
+     * @param y the tile row
+     * @return the tile file, null if the pyramid has no such tile
+     * @throws IOException if the wall cannot be read or the tiles written
+     */
+    public static @Nullable File getOrCreateTile(
+        @NotNull final File wallImage, final int level, final int x,
+        final int y
+    ) throws IOException {
+        Pyramid pyramid = getOrCreatePyramid(
+            wallImage,
+            stored -> !stored.hasTile(level, x, y)
+                || stored.tileFile(level, x, y).isFile()
+        );
+        return pyramid.hasTile(level, x, y)
+            ? pyramid.tileFile(level, x, y) : null;
+    }
+
+    /**
+     * Get a wall's tile pyramid, building it if missing, stale or not
+     * usable. Concurrent requests for one wall share a build.
+     * @param wallImage the wall image file
+     * @param usable whether a stored pyramid can be used
+     * @return the pyramid
+     * @throws IOException if the wall cannot be read or the tiles written
+     */
+    private static @NotNull Pyramid getOrCreatePyramid(
+        @NotNull final File wallImage,
+        @NotNull final Predicate<Pyramid> usable
+    ) throws IOException {
+        Pyramid pyramid = storedPyramid(wallImage);
+        if (pyramid != null && usable.test(pyramid)) {
+            return pyramid;
+        }
+
+        // join the build in flight, if any
+        String key = wallImage.getAbsolutePath();
+        CompletableFuture<Pyramid> build = new CompletableFuture<>();
+        CompletableFuture<Pyramid> inFlight = BUILDS.putIfAbsent(key, build);
+        if (inFlight != null) {
+            try {
+                return inFlight.join();
+            } catch (CompletionException | CancellationException e) {
+                throw new IOException("Tile pyramid not built", e);
+            }
+        }
+
+        // otherwise build it, unless built since the first check
+        try {
+            pyramid = storedPyramid(wallImage);
+            if (pyramid == null || !usable.test(pyramid)) {
+                pyramid = build(wallImage);
+            }
+            build.complete(pyramid);
+            return pyramid;
+        } catch (IOException | RuntimeException e) {
+            build.completeExceptionally(e);
+            throw e;
+        } finally {
+            BUILDS.remove(key, build);
+        }
+    }
+
+    /**
+     * Get a wall's stored tile pyramid, if built from the wall as it is.
+     * @param wallImage the wall image file
+     * @return the pyramid, null if missing or stale
+     */
+    static @Nullable Pyramid storedPyramid(@NotNull final File wallImage) {
+        File directory = tileDirectory(wallImage);
+        File descriptor = new File(directory, DESCRIPTOR);
+        if (!descriptor.isFile()) {
+            return null;
+        }
+        try {
+            JSONObject json = new JSONObject(new String(
+                Files.readAllBytes(descriptor.toPath()),
+                StandardCharsets.UTF_8
+            ));
+            Pyramid pyramid = new Pyramid(
+                directory, json.getInt("width"), json.getInt("height"),
+                json.getString("format"), json.getLong("modified")
+            );
+            return pyramid.modified == wallImage.lastModified()
+                && json.getInt("tileSize") == TILE_SIZE ? pyramid : null;
+        } catch (IOException | JSONException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Build a wall's tile pyramid: decode the wall once, then halve it
+     * level by level, writing each level's tiles in parallel. The tiles
+     * are written to a temporary directory, then moved in place.
+     * @param wallImage the wall image file
+     * @return the pyramid
+     * @throws IOException if the wall cannot be read or the tiles written
+     */
+    static @NotNull Pyramid build(@NotNull final File wallImage)
+        throws IOException {
+        long modified = wallImage.lastModified();
+        BufferedImage wall = WallRasterCache.decode(wallImage);
+        String format = HoldRenderer.supportsAlpha(wallImage) ? "png" : "jpg";
+        File directory = tileDirectory(wallImage);
+        Path temporary = Files.createTempDirectory(
+            directory.getParentFile().toPath(), "." + directory.getName()
+        );
+        try {
+            Pyramid pyramid = new Pyramid(
+                temporary.toFile(), wall.getWidth(), wall.getHeight(),
+                format, modified
+            );
+            BufferedImage level = wall;
+            for (int l = pyramid.getLevels() - 1; l >= 0; l--) {
+                if (level.getWidth() != pyramid.levelWidth(l)
+                    || level.getHeight() != pyramid.levelHeight(l)) {
+                    level = ImageVariants.resize(
+                        level, pyramid.levelWidth(l), pyramid.levelHeight(l),
+                        wall.getType()
+                    );
+                }
+                writeTiles(pyramid, l, level);
+            }
+
+            // the descriptor marks the pyramid complete
+            JSONObject descriptor = pyramid.toJSON();
+            descriptor.put("modified", modified);
+            Files.write(
+                temporary.resolve(DESCRIPTOR),
+                descriptor.toString().getBytes(StandardCharsets.UTF_8)
+            );
+
+            // replace the stale pyramid, if any
+            if (directory.exists()) {
+                Path stale = Files.createTempDirectory(
+                    directory.getParentFile().toPath(),
+                    "." + directory.getName()
+                );
+                Files.move(
+                    directory.toPath(), stale.resolve(directory.getName()),
+                    StandardCopyOption.ATOMIC_MOVE
+                );
+                deleteTree(stale);
+            }
+            Files.move(
+                temporary, directory.toPath(), StandardCopyOption.ATOMIC_MOVE
+            );
+            return new Pyramid(
+                directory, wall.getWidth(), wall.getHeight(), format,
+                modified
+            );
+        } finally {
+            deleteTree(temporary);
+        }
+    }
+
+    /**
+     * Write a level's tiles, in parallel across cores.
+     * @param pyramid the pyramid
+     * @param level the level
+     * @param image the wall, scaled to the level
+     * @throws IOException if a tile cannot be written
+     */
+    private static void writeTiles(
+        @NotNull final Pyramid pyramid, final int level,
+        @NotNull final BufferedImage image
+    ) throws IOException {
+        Files.createDirectories(pyramid.tileFile(level, 0, 0).toPath()
+            .getParent());
+        int columns = pyramid.columns(level);
+        try {
+            IntStream.range(0, columns * pyramid.rows(level)).parallel()
+                .forEach(i -> {
+                    int x = i % columns;
+                    int y = i / columns;
+                    BufferedImage tile = image.getSubimage(
+                        x * TILE_SIZE, y * TILE_SIZE,
+                        Math.min(TILE_SIZE, image.getWidth() - x * TILE_SIZE),
+                        Math.min(TILE_SIZE, image.getHeight() - y * TILE_SIZE)
+                    );
+                    try {
+                        HoldRenderer.write(
+                            tile, pyramid.tileFile(level, x, y)
+                        );
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Delete a directory and its contents, if it exists.
+     * @param directory the directory
+     * @throws IOException if a file cannot be deleted
+     */
+    private static void deleteTree(@NotNull final Path directory)
+        throws IOException {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : (Iterable<Path>) paths
+                .sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+}
@@ -8,6 +8,8 @@ import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.fail;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static pbrg.webservices.database.AuthenticationController.userExists;
 import static pbrg.webservices.database.DatabaseTestMethods
@@ -15,11 +17,22 @@ import static pbrg.webservices.database.DatabaseTestMethods
 import static pbrg.webservices.database.DatabaseTestMethods.mockEmptyResultSet;
 import static pbrg.webservices.database.DatabaseTestMethods.mockNoAffectedRows;
 import static pbrg.webservices.database.RouteController.addRoute;
+import static pbrg.webservices.database.RouteController
+    .countRouteImageReferences;
+import static pbrg.webservices.database.RouteController.getAllRoutes;
 import static pbrg.webservices.database.RouteController.getRouteByRouteId;
 import static pbrg.webservices.database.RouteController.getRouteContent;
+import static pbrg.webservices.database.RouteController
+    .getRouteImageFileNames;
+import static pbrg.webservices.database.RouteController
+    .getRouteImagePlaceholder;
+import static pbrg.webservices.database.RouteController.getRoutesOnWall;
+import static pbrg.webservices.database.RouteController
+    .getRouteIdByFingerprint;
 import static pbrg.webservices.database.RouteController
     .getRoutesInGymMadeByUser;
 import static pbrg.webservices.database.RouteController.routeExists;
+import static pbrg.webservices.database.RouteController.setRouteImages;
 import static pbrg.webservices.database.TestDatabase.closeTestDatabaseInThread;
 import static pbrg.webservices.database.TestDatabase.getTestDataSource;
 import static pbrg.webservices.database.TestDatabase.startTestDatabaseInThread;
@@ -31,7 +44,9 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import javax.sql.DataSource;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
@@ -356,6 +371,47 @@ public final class RouteControllerTest {
         DatabaseController.setDataSource(originalDataSource);
     }
 
+    @Test
+    void getRouteImageFileNamesReadsEachRoute() throws SQLException {
+        // given: two routes, one without an image
+        DataSource dataSource = mock(DataSource.class);
+        Connection connection = mock(Connection.class);
+        PreparedStatement pst = mock(PreparedStatement.class);
+        ResultSet rs = mock(ResultSet.class);
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(pst);
+        when(pst.executeQuery()).thenReturn(rs);
+        when(rs.next()).thenReturn(true).thenReturn(true).thenReturn(false);
+        when(rs.getInt("RID"))
+            .thenReturn(FIRST_ROUTE_CREATOR_ID)
+            .thenReturn(SECOND_ROUTE_CREATOR_ID);
+        when(rs.getString("image_file_name"))
+            .thenReturn("r1-wall.jpg")
+            .thenReturn(null);
+
+        DataSource originalDataSource = DatabaseController.getDataSource();
+        DatabaseController.setDataSource(dataSource);
+
+        // when: getting the image file names
+        Map<Integer, String> imageFileNames = getRouteImageFileNames(1, 2);
+
+        // then: each route has its image, or null
+        assertNotNull(imageFileNames);
+        assertEquals(2, imageFileNames.size());
+        assertEquals(
+            "r1-wall.jpg", imageFileNames.get(FIRST_ROUTE_CREATOR_ID)
+        );
+        assertTrue(imageFileNames.containsKey(SECOND_ROUTE_CREATOR_ID));
+        assertNull(imageFileNames.get(SECOND_ROUTE_CREATOR_ID));
+
+        // when: the connection fails, then: null
+        DatabaseController.setDataSource(mockThrowsExceptionOnGetConnection());
+        assertNull(getRouteImageFileNames(1, 2));
+
+        // after: restore original data source
+        DatabaseController.setDataSource(originalDataSource);
+    }
+
     @Test
     void getRoutesInGymMadeByUserEmptyResultSet() {
         DataSource originalDataSource = DatabaseController.getDataSource();
@@ -371,6 +427,209 @@ public final class RouteControllerTest {
         DatabaseController.setDataSource(originalDataSource);
     }
 
+    @Test
+    void addRouteWithFingerprintRejectsDuplicates() {
+        // given: a route with a hold fingerprint
+        String fingerprint = "f".repeat(64);
+        Integer routeId = addRoute(
+            TEST_ROUTE_CONTENT, TEST_ROUTE_DIFFICULTY, 1, 1, fingerprint
+        );
+        assertNotNull(routeId);
+
+        // then: found by fingerprint, for its user and difficulty
+        assertEquals(routeId, getRouteIdByFingerprint(
+            fingerprint, 1, TEST_ROUTE_DIFFICULTY
+        ));
+        assertNull(getRouteIdByFingerprint(
+            fingerprint, 2, TEST_ROUTE_DIFFICULTY
+        ));
+
+        // when: adding it again, then: rejected
+        assertNull(addRoute(
+            TEST_ROUTE_CONTENT, TEST_ROUTE_DIFFICULTY, 1, 1, fingerprint
+        ));
+
+        // when: adding it for another user, then: added
+        Integer otherRouteId = addRoute(
+            TEST_ROUTE_CONTENT, TEST_ROUTE_DIFFICULTY, 2, 1, fingerprint
+        );
+        assertNotNull(otherRouteId);
+
+        // when: both share an image, then: it has two references
+        assertEquals(0, countRouteImageReferences("r.jpg"));
+        assertTrue(RouteController.addImageToRoute(routeId, "r.jpg"));
+        assertTrue(RouteController.addImageToRoute(otherRouteId, "r.jpg"));
+        assertEquals(2, countRouteImageReferences("r.jpg"));
+
+        // after: delete the routes
+        assertTrue(RouteController.deleteRoute(routeId));
+        assertTrue(RouteController.deleteRoute(otherRouteId));
+    }
+
+    @Test
+    void fingerprintLookupsThrowing() {
+        // mock the data source
+        DatabaseController.setDataSource(
+            mockThrowsExceptionOnGetConnection()
+        );
+
+        // then: nothing is found
+        assertNull(getRouteIdByFingerprint("f", 1, TEST_ROUTE_DIFFICULTY));
+        assertNull(countRouteImageReferences("f"));
+        assertNull(getRouteImagePlaceholder("f"));
+
+        // after: restore original data source
+        DatabaseController.setDataSource(getTestDataSource());
+    }
+
+    @Test
+    void getAllRoutesIncludesTestRoutes() {
+        // when: getting all routes
+        List<RouteFull> routes = getAllRoutes();
+
+        // then: the test database routes are included
+        assertNotNull(routes);
+        assertTrue(routes.stream().anyMatch(route -> route.getRouteId() == 1));
+    }
+
+    @Test
+    void setRouteImagesOfWallRoutes() {
+        // given: two routes on a wall
+        Integer routeId = addRoute(TEST_ROUTE_CONTENT, 1, 1, 1);
+        Integer otherRouteId = addRoute(TEST_ROUTE_CONTENT, 2, 1, 1);
+        assertNotNull(routeId);
+        assertNotNull(otherRouteId);
+
+        // when: setting their images in one batch
+        Map<Integer, String> images = new HashMap<>();
+        images.put(routeId, "a.jpg");
+        images.put(otherRouteId, "b.jpg");
+        assertTrue(setRouteImages(images));
+
+        // then: the wall's routes have their images
+        List<RouteFull> routes = getRoutesOnWall(1);
+        assertNotNull(routes);
+        assertTrue(routes.stream().allMatch(route -> route.getWallId() == 1));
+        assertEquals("a.jpg", getRouteByRouteId(routeId).getImageFileName());
+        assertEquals(
+            "b.jpg", getRouteByRouteId(otherRouteId).getImageFileName()
+        );
+
+        // when: clearing one, then: it has no image
+        images.clear();
+        images.put(routeId, null);
+        assertTrue(setRouteImages(images));
+        assertNull(getRouteByRouteId(routeId).getImageFileName());
+        assertTrue(setRouteImages(new HashMap<>()));
+
+        // after: delete the routes
+        assertTrue(RouteController.deleteRoute(routeId));
+        assertTrue(RouteController.deleteRoute(otherRouteId));
+    }
+
+    @Test
+    void routeImagePlaceholders() {
+        // given: two routes on a wall of gym 1, by user 1
+        Integer routeId = addRoute(TEST_ROUTE_CONTENT, 1, 1, 1);
+        Integer otherRouteId = addRoute(TEST_ROUTE_CONTENT, 2, 1, 1);
+        assertNotNull(routeId);
+        assertNotNull(otherRouteId);
+
+        // when: adding an image with its placeholder
+        assertTrue(RouteController.addImageToRoute(routeId, "p.jpg", "Lp"));
+
+        // then: the image's placeholder is found, and listed with the route
+        assertEquals("Lp", getRouteImagePlaceholder("p.jpg"));
+        assertTrue(getRoutesInGymMadeByUser(1, 1).stream().anyMatch(
+            route -> route.getRouteId() == routeId
+                && "Lp".equals(route.getImagePlaceholder())
+        ));
+
+        // when: setting images in a batch, with placeholders by image
+        Map<Integer, String> images = new HashMap<>();
+        images.put(routeId, "q.jpg");
+        images.put(otherRouteId, "p.jpg");
+        Map<String, String> placeholders = new HashMap<>();
+        placeholders.put("p.jpg", "Lp");
+        assertTrue(setRouteImages(images, placeholders));
+
+        // then: each route has its image's placeholder, or none
+        assertNull(getRouteImagePlaceholder("q.jpg"));
+        assertTrue(getRoutesInGymMadeByUser(1, 1).stream().anyMatch(
+            route -> route.getRouteId() == otherRouteId
+                && "Lp".equals(route.getImagePlaceholder())
+        ));
+
+        // when: adding an image without one, then: the old one is kept
+        assertTrue(RouteController.addImageToRoute(otherRouteId, "p.jpg"));
+        assertEquals("Lp", getRouteImagePlaceholder("p.jpg"));
+
+        // after: delete the routes
+        assertTrue(RouteController.deleteRoute(routeId));
+        assertTrue(RouteController.deleteRoute(otherRouteId));
+    }
+
+    @Test
+    void setRouteImagesRollsBack() throws SQLException {
+        // given: a batch that fails
+        Connection connection = mock(Connection.class);
+        PreparedStatement pst = mock(PreparedStatement.class);
+        when(connection.getAutoCommit()).thenReturn(true);
+        when(connection.prepareStatement(anyString())).thenReturn(pst);
+        when(pst.executeBatch()).thenThrow(SQLException.class);
+        DataSource dataSource = mock(DataSource.class);
+        when(dataSource.getConnection()).thenReturn(connection);
+        DatabaseController.setDataSource(dataSource);
+
+        // when: setting route images
+        Map<Integer, String> images = new HashMap<>();
+        images.put(1, "a.jpg");
+        boolean set = setRouteImages(images);
+
+        // then: none are set
+        assertFalse(set);
+        verify(connection).rollback();
+        verify(connection, never()).commit();
+        verify(connection).setAutoCommit(true);
+
+        // after: restore original data source
+        DatabaseController.setDataSource(getTestDataSource());
+    }
+
+    @Test
+    void wallRoutesThrowing() {
+        // mock the data source
+        DatabaseController.setDataSource(
+            mockThrowsExceptionOnGetConnection()
+        );
+
+        // then: nothing is read or set
+        assertNull(getRoutesOnWall(1));
+        Map<Integer, String> images = new HashMap<>();
+        images.put(1, "a.jpg");
+        assertFalse(setRouteImages(images));
+
+        // after: restore original data source
+        DatabaseController.setDataSource(getTestDataSource());
+    }
+
+    @Test
+    void getAllRoutesThrowing() {
+        // mock the data source
+        DatabaseController.setDataSource(
+            mockThrowsExceptionOnGetConnection()
+        );
+
+        // when: getting all routes
+        List<RouteFull> routes = getAllRoutes();
+
+        // then: routes should be null
+        assertNull(routes);
+
+        // after: restore original data source
+        DatabaseController.setDataSource(getTestDataSource());
+    }
+
     @Test
     void getRouteContentThrowing() {
         // mock the data source
@@ -1,5 +1,6 @@
 package pbrg.webservices.database;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
@@ -12,11 +13,14 @@ import static pbrg.webservices.database.TestDatabase.getTestDataSource;
 import static pbrg.webservices.database.TestDatabase.startTestDatabaseInThread;
 import static pbrg.webservices.database.WallController.addWall;
 import static pbrg.webservices.database.WallController.deleteWall;
+import static pbrg.webservices.database.WallController.getWallContent;
 import static pbrg.webservices.database.WallController.getWallIdFromGymId;
 import static pbrg.webservices.database.WallController.getWallIdFromRoute;
 import static pbrg.webservices.database.WallController.getWallImageFileName;
 import static pbrg.webservices.database.WallController.getWallImageFileNameFromRouteId;
+import static pbrg.webservices.database.WallController.getWallImagePlaceholder;
 import static pbrg.webservices.database.WallController.gymHasWall;
+import static pbrg.webservices.database.WallController.setWallImagePlaceholder;
 import static pbrg.webservices.database.WallController.wallExists;
 
 import java.lang.reflect.Constructor;
@@ -118,6 +122,89 @@ public final class WallControllerTest {
         DatabaseController.setDataSource(originalDataSource);
     }
 
+    @Test
+    void getWallContentRoundTrip() {
+        // given: a wall
+        int gymId = GymControllerTest.createTestGym();
+        int wallId = createTestWall(gymId);
+
+        // when: getting the wall content
+        String content = getWallContent(wallId);
+
+        // then: the content is as stored
+        assertEquals(TEST_WALL_CONTENT, content);
+
+        // after: remove the wall and gym
+        deleteWall(wallId);
+        GymController.deleteGym(gymId);
+    }
+
+    @Test
+    void wallImagePlaceholderRoundTrip() {
+        // given: a wall, without a placeholder
+        int gymId = GymControllerTest.createTestGym();
+        int wallId = createTestWall(gymId);
+        assertNull(getWallImagePlaceholder(wallId));
+
+        // when: setting its placeholder, then: it is as stored
+        assertTrue(setWallImagePlaceholder(wallId, "Lw"));
+        assertEquals("Lw", getWallImagePlaceholder(wallId));
+
+        // and a wall that does not exist has none
+        assertFalse(setWallImagePlaceholder(-1, "Lw"));
+        assertNull(getWallImagePlaceholder(-1));
+
+        // after: remove the wall and gym
+        deleteWall(wallId);
+        GymController.deleteGym(gymId);
+    }
+
+    @Test
+    void wallImagePlaceholderThrowing() {
+        // inject the mock data source
+        DataSource originalDataSource = DatabaseController.getDataSource();
+        DatabaseController.setDataSource(mockThrowsExceptionOnGetConnection());
+
+        // then: nothing is read or set
+        assertNull(getWallImagePlaceholder(-1));
+        assertFalse(setWallImagePlaceholder(-1, "Lw"));
+
+        // after: restore original data source
+        DatabaseController.setDataSource(originalDataSource);
+    }
+
+    @Test
+    void getWallContentEmptyResults() {
+        // inject the mock data source
+        DataSource originalDataSource = DatabaseController.getDataSource();
+        DatabaseController.setDataSource(mockEmptyResultSet());
+
+        // when: getting the wall content
+        String content = getWallContent(-1);
+
+        // then: content should be null
+        assertNull(content);
+
+        // after: restore original data source
+        DatabaseController.setDataSource(originalDataSource);
+    }
+
+    @Test
+    void getWallContentThrowing() {
+        // inject the mock data source
+        DataSource originalDataSource = DatabaseController.getDataSource();
+        DatabaseController.setDataSource(mockThrowsExceptionOnGetConnection());
+
+        // when: getting the wall content
+        String content = getWallContent(-1);
+
+        // then: content should be null
+        assertNull(content);
+
+        // after: restore original data source
+        DatabaseController.setDataSource(originalDataSource);
+    }
+
     @Test
     void getWallIdFromRouteTestNonExistentRoute() {
         // given an invalid routeId
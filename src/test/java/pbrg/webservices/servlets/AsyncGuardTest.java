@@ -0,0 +1,159 @@
+package pbrg.webservices.servlets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.Test;
+
+class AsyncGuardTest {
+
+    /** Time allowed for the handler thread to start writing. */
+    private static final long WAIT_SECONDS = 5;
+
+    @Test
+    void firstFinishWins() {
+        // given: a guard
+        AsyncGuard guard = new AsyncGuard();
+        AtomicBoolean handlerWriting = new AtomicBoolean(true);
+
+        // when: finished twice, then: only the first runs
+        assertTrue(guard.finish(handlerWriting::set));
+        assertFalse(guard.finish(writing -> {
+            throw new AssertionError("finished twice");
+        }));
+        assertTrue(guard.isFinished());
+
+        // and the handler had not written
+        assertFalse(handlerWriting.get());
+    }
+
+    @Test
+    void gettersDoNotMarkWriting() {
+        // given: a guarded response, only read
+        AsyncGuard guard = new AsyncGuard();
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        HttpServletResponse guarded = guard.response(response);
+        guarded.isCommitted();
+        guarded.getStatus();
+
+        // then: the handler has not started writing
+        AtomicBoolean handlerWriting = new AtomicBoolean(true);
+        guard.finish(handlerWriting::set);
+        assertFalse(handlerWriting.get());
+    }
+
+    @Test
+    void settersMarkWriting() {
+        // given: a guarded response, with a status set
+        AsyncGuard guard = new AsyncGuard();
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        guard.response(response).setStatus(HttpServletResponse.SC_OK);
+
+        // then: the handler has started writing
+        verify(response).setStatus(HttpServletResponse.SC_OK);
+        AtomicBoolean handlerWriting = new AtomicBoolean();
+        guard.finish(handlerWriting::set);
+        assertTrue(handlerWriting.get());
+    }
+
+    @Test
+    void finishedResponseRejectsCalls() {
+        // given: a guarded response, finished
+        AsyncGuard guard = new AsyncGuard();
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        HttpServletResponse guarded = guard.response(response);
+        guard.finish(writing -> { });
+
+        // then: it is not used
+        assertThrows(
+            IllegalStateException.class,
+            () -> guarded.setStatus(HttpServletResponse.SC_OK)
+        );
+        verify(response, never()).setStatus(HttpServletResponse.SC_OK);
+    }
+
+    @Test
+    void finishDoesNotWaitForWrite()
+        throws IOException, InterruptedException {
+        // given: a handler blocked writing to a slow client
+        AsyncGuard guard = new AsyncGuard();
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        ServletOutputStream out = mock(ServletOutputStream.class);
+        when(response.getOutputStream()).thenReturn(out);
+        CountDownLatch writeStarted = new CountDownLatch(1);
+        CountDownLatch clientRead = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            writeStarted.countDown();
+            clientRead.await();
+            return null;
+        }).when(out).write(1);
+        ServletOutputStream guarded =
+            guard.response(response).getOutputStream();
+        Thread handler = new Thread(() -> {
+            try {
+                guarded.write(1);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        handler.start();
+        assertTrue(writeStarted.await(WAIT_SECONDS, TimeUnit.SECONDS));
+
+        // when: finished mid-write
+        AtomicBoolean handlerWriting = new AtomicBoolean();
+        boolean finished = guard.finish(handlerWriting::set);
+
+        // then: finishing did not wait, and saw the handler writing
+        assertTrue(finished);
+        assertTrue(handlerWriting.get());
+
+        // and the handler's next write fails
+        clientRead.countDown();
+        handler.join();
+        assertThrows(IOException.class, () -> guarded.write(2));
+        verify(out, never()).write(2);
+    }
+
+    @Test
+    void finishedRequestRejectsStreamWrites() throws IOException {
+        // given: a guarded response's streams, taken before finishing
+        AsyncGuard guard = new AsyncGuard();
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        ServletOutputStream out = mock(ServletOutputStream.class);
+        StringWriter written = new StringWriter();
+        when(response.getOutputStream()).thenReturn(out);
+        when(response.getWriter()).thenReturn(new PrintWriter(written));
+        HttpServletResponse guarded = guard.response(response);
+        ServletOutputStream guardedOut = guarded.getOutputStream();
+        PrintWriter guardedWriter = guarded.getWriter();
+        guardedWriter.write("before");
+        guardedWriter.flush();
+
+        // when: finished
+        guard.finish(writing -> { });
+
+        // then: late writes do not reach the response
+        assertThrows(IOException.class, () -> guardedOut.write(1));
+        verify(out, never()).write(1);
+        guardedWriter.write("after");
+        guardedWriter.flush();
+        assertTrue(guardedWriter.checkError());
+        assertEquals("before", written.toString());
+    }
+}
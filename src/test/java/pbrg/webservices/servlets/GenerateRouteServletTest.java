@@ -1,5 +1,6 @@
 package pbrg.webservices.servlets;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -26,12 +27,14 @@ import static pbrg.webservices.database.WallController.getWallIdFromRoute;
 import static pbrg.webservices.database.WallController.wallExists;
 import static pbrg.webservices.database.WallControllerTest.createTestWall;
 import static pbrg.webservices.servlets.MyHttpServletTest.mockRequestWithBody;
+import static pbrg.webservices.utils.RouteUtils.getRouteGenerationJobs;
 
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import jakarta.servlet.http.HttpSession;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.time.Duration;
 import org.json.JSONObject;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.AfterEach;
@@ -40,6 +43,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
 import pbrg.webservices.database.DatabaseController;
+import pbrg.webservices.utils.RouteGenerationJobs;
 import pbrg.webservices.utils.RouteUtils;
 
 class GenerateRouteServletTest {
@@ -66,6 +70,8 @@ class GenerateRouteServletTest {
 
     @AfterAll
     static void closeResources() {
+        // delete unclaimed pre-generated route images
+        RouteUtils.closeRoutePool();
         closeTestDatabaseInThread();
     }
 
@@ -145,6 +151,50 @@ class GenerateRouteServletTest {
         RouteUtils.deleteRoute(routeId);
     }
 
+    @Test
+    void validRunThroughAsync() throws IOException {
+        // given: a user, a gym with a wall, a grade, in async mode
+
+        // mock session
+        HttpSession session = mock(HttpSession.class);
+        when(session.getAttribute("uid")).thenReturn(uid);
+        when(session.getAttribute("gid")).thenReturn(gid);
+
+        // mock request
+        String bodyString =
+            "{\"difficulty\": " + AVERAGE_GRADE + ", \"async\": true}";
+        HttpServletRequest request = mockRequestWithBody(bodyString);
+        when(request.getSession(anyBoolean())).thenReturn(session);
+
+        // mock response
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        PrintWriter writer = mock(PrintWriter.class);
+        when(response.getWriter()).thenReturn(writer);
+
+        // when: the servlet is called
+        new GenerateRouteServlet().doPost(request, response);
+
+        // then: a job id is returned, the job accepted
+        ArgumentCaptor<String> captor = ArgumentCaptor.forClass(String.class);
+        verify(writer).write(captor.capture());
+        JSONObject content = new JSONObject(captor.getValue());
+        assertTrue(content.has("jobId"));
+        verify(response).setStatus(HttpServletResponse.SC_ACCEPTED);
+
+        // then: the job generates a route for the user
+        RouteGenerationJobs.Job job =
+            getRouteGenerationJobs().get(content.getString("jobId"));
+        assertNotNull(job);
+        assertTrue(job.await(Duration.ofSeconds(30)));
+        assertEquals(RouteGenerationJobs.Status.SUCCEEDED, job.getStatus());
+        Integer routeId = job.getRouteId();
+        assertNotNull(routeId);
+        assertTrue(userOwnsRoute(uid, routeId));
+
+        // after: remove route
+        RouteUtils.deleteRoute(routeId);
+    }
+
     @Test
     void failingInvalidUser() throws IOException {
         // given an invalid user
@@ -251,8 +301,8 @@ class GenerateRouteServletTest {
     @Test
     void failingRouteThumbnailGenerationFails() throws IOException {
         // given route generation fails
-        String originalRouteGenScript = RouteUtils.getRouteGenerationScript();
-        RouteUtils.setRouteGenerationScript("not a file");
+        String originalRouteCache = RouteUtils.getRouteCacheFile();
+        RouteUtils.setRouteCacheFile("not a file");
 
         // mock session
         HttpSession session = mock(HttpSession.class);
@@ -278,8 +328,8 @@ class GenerateRouteServletTest {
             anyString()
         );
 
-        // reset the route generation script
-        RouteUtils.setRouteGenerationScript(originalRouteGenScript);
+        // reset the route cache
+        RouteUtils.setRouteCacheFile(originalRouteCache);
     }
 
     @Test
@@ -319,8 +369,8 @@ class GenerateRouteServletTest {
     @Test
     void failingRouteThumbnailGenerationFailsMockedWall() throws IOException {
         // given route generation fails
-        String originalRouteGenScript = RouteUtils.getRouteGenerationScript();
-        RouteUtils.setRouteGenerationScript("not a file");
+        String originalRouteCache = RouteUtils.getRouteCacheFile();
+        RouteUtils.setRouteCacheFile("not a file");
 
         // given a gym without a wall
         Integer gidWithoutWall = addGym("Gym without wall", "Test Location");
@@ -350,8 +400,8 @@ class GenerateRouteServletTest {
             anyString()
         );
 
-        // reset the route generation script
-        RouteUtils.setRouteGenerationScript(originalRouteGenScript);
+        // reset the route cache
+        RouteUtils.setRouteCacheFile(originalRouteCache);
 
         // after: remove gym
         assertTrue(deleteGym(gidWithoutWall));
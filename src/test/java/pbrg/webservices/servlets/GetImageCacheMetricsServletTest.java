@@ -0,0 +1,77 @@
+package pbrg.webservices.servlets;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+class GetImageCacheMetricsServletTest {
+
+    @Test
+    void testDoGetCallsDoPost() throws IOException {
+        // given a request and response
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        when(response.getWriter()).thenReturn(mock(PrintWriter.class));
+        GetImageCacheMetricsServlet servlet =
+            spy(new GetImageCacheMetricsServlet());
+
+        // when calling do get
+        servlet.doGet(request, response);
+
+        // then do post is called
+        verify(servlet).doPost(request, response);
+    }
+
+    @Test
+    void failingNoSession() throws IOException {
+        // given a request without a session
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+
+        // when: getting the metrics
+        new GetImageCacheMetricsServlet().doPost(request, response);
+
+        // then ensure error is SC_UNAUTHORIZED
+        verify(response).sendError(
+            eq(HttpServletResponse.SC_UNAUTHORIZED), anyString()
+        );
+        verify(response, never()).getWriter();
+    }
+
+    @Test
+    void returnsMetrics() throws IOException {
+        // given a signed in user's request and response
+        HttpSession session = mock(HttpSession.class);
+        when(session.getAttribute("uid")).thenReturn(1);
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getSession(anyBoolean())).thenReturn(session);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        StringWriter stringWriter = new StringWriter();
+        when(response.getWriter()).thenReturn(new PrintWriter(stringWriter));
+
+        // when: getting the metrics
+        new GetImageCacheMetricsServlet().doPost(request, response);
+
+        // then: hits, misses and evictions are returned
+        JSONObject metrics = new JSONObject(stringWriter.toString());
+        assertTrue(metrics.has("hits"));
+        assertTrue(metrics.has("misses"));
+        assertTrue(metrics.has("evictions"));
+        verify(response).setStatus(HttpServletResponse.SC_OK);
+    }
+}
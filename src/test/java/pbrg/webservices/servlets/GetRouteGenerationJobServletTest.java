@@ -0,0 +1,185 @@
+package pbrg.webservices.servlets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static pbrg.webservices.servlets.MyHttpServletTest.mockRequestWithBody;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import pbrg.webservices.utils.RouteGenerationJobs;
+import pbrg.webservices.utils.RouteUtils;
+
+class GetRouteGenerationJobServletTest {
+
+    /** The user submitting jobs. */
+    private static final int USER_ID = 7;
+
+    /** The route id returned by the jobs. */
+    private static final int ROUTE_ID = 42;
+
+    /** Time allowed for async work to finish. */
+    private static final long ASYNC_WAIT_MILLIS = 5000;
+
+    /**
+     * Mock a request polling a job.
+     * @param userId the user in the session
+     * @param body the request body
+     * @return the mocked request
+     * @throws IOException if the body cannot be mocked
+     */
+    private static HttpServletRequest mockPoll(
+        final int userId, final String body
+    ) throws IOException {
+        HttpSession session = mock(HttpSession.class);
+        when(session.getAttribute("uid")).thenReturn(userId);
+        HttpServletRequest request = mockRequestWithBody(body);
+        when(request.getSession(anyBoolean())).thenReturn(session);
+        return request;
+    }
+
+    @Test
+    void testDoGetCallsDoPost() throws IOException {
+        // given a request and response
+        HttpServletRequest request = mockRequestWithBody("");
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        GetRouteGenerationJobServlet servlet =
+            spy(new GetRouteGenerationJobServlet());
+
+        // when calling do get
+        servlet.doGet(request, response);
+
+        // then do post is called
+        verify(servlet).doPost(request, response);
+    }
+
+    @Test
+    void longPollReturnsFinishedJob() throws IOException {
+        // given: a submitted job
+        RouteGenerationJobs.Job job = RouteUtils.getRouteGenerationJobs()
+            .submit(USER_ID, () -> {
+                Thread.sleep(100);
+                return ROUTE_ID;
+            });
+        assertNotNull(job);
+
+        // mock request, response
+        HttpServletRequest request = mockPoll(
+            USER_ID,
+            "{\"jobId\": \"" + job.getId() + "\", \"waitMillis\": 5000}"
+        );
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        PrintWriter writer = mock(PrintWriter.class);
+        when(response.getWriter()).thenReturn(writer);
+
+        // when: polling, waiting for the job
+        new GetRouteGenerationJobServlet().doPost(request, response);
+
+        // then: the finished job is returned
+        ArgumentCaptor<String> captor = ArgumentCaptor.forClass(String.class);
+        verify(writer).write(captor.capture());
+        JSONObject content = new JSONObject(captor.getValue());
+        assertEquals("succeeded", content.getString("status"));
+        assertEquals(ROUTE_ID, content.getInt("routeId"));
+        verify(response).setStatus(HttpServletResponse.SC_OK);
+    }
+
+    @Test
+    void asyncLongPollAnswersOnTimeout()
+        throws IOException, InterruptedException {
+        // given: a job still running
+        CountDownLatch release = new CountDownLatch(1);
+        RouteGenerationJobs.Job job = RouteUtils.getRouteGenerationJobs()
+            .submit(USER_ID, () -> {
+                release.await();
+                return ROUTE_ID;
+            });
+        assertNotNull(job);
+
+        // mock an async request, response
+        HttpServletRequest request = mockPoll(
+            USER_ID,
+            "{\"jobId\": \"" + job.getId() + "\", \"waitMillis\": 50}"
+        );
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        AsyncContext context = mock(AsyncContext.class);
+        when(request.isAsyncSupported()).thenReturn(true);
+        when(request.startAsync(request, response)).thenReturn(context);
+        PrintWriter writer = mock(PrintWriter.class);
+        when(response.getWriter()).thenReturn(writer);
+        AtomicReference<String> answeredOn = new AtomicReference<>();
+        doAnswer(invocation -> {
+            answeredOn.set(Thread.currentThread().getName());
+            return null;
+        }).when(response).setStatus(HttpServletResponse.SC_OK);
+
+        // when: polling, waiting past the wait
+        new GetRouteGenerationJobServlet().doPost(request, response);
+
+        // then: the unfinished job is returned, off the job's thread
+        verify(context, timeout(ASYNC_WAIT_MILLIS)).complete();
+        ArgumentCaptor<String> captor = ArgumentCaptor.forClass(String.class);
+        verify(writer).write(captor.capture());
+        JSONObject content = new JSONObject(captor.getValue());
+        assertNotEquals("succeeded", content.getString("status"));
+        assertTrue(answeredOn.get().startsWith("servlet-async-"));
+        release.countDown();
+    }
+
+    @Test
+    void failingOtherUsersJob() throws IOException {
+        // given: another user's job
+        RouteGenerationJobs.Job job = RouteUtils.getRouteGenerationJobs()
+            .submit(USER_ID, () -> ROUTE_ID);
+        assertNotNull(job);
+
+        HttpServletRequest request = mockPoll(
+            USER_ID + 1, "{\"jobId\": \"" + job.getId() + "\"}"
+        );
+        HttpServletResponse response = mock(HttpServletResponse.class);
+
+        // when: polling
+        new GetRouteGenerationJobServlet().doPost(request, response);
+
+        // then: the job is not found
+        verify(response).sendError(
+            eq(HttpServletResponse.SC_NOT_FOUND), anyString()
+        );
+    }
+
+    @Test
+    void failingUnknownJob() throws IOException {
+        // given: an unknown job
+        HttpServletRequest request = mockPoll(
+            USER_ID, "{\"jobId\": \"not a job\"}"
+        );
+        HttpServletResponse response = mock(HttpServletResponse.class);
+
+        // when: polling
+        new GetRouteGenerationJobServlet().doPost(request, response);
+
+        // then: the job is not found
+        verify(response).sendError(
+            eq(HttpServletResponse.SC_NOT_FOUND), anyString()
+        );
+    }
+}
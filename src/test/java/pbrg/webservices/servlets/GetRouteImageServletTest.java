@@ -1,6 +1,7 @@
 package pbrg.webservices.servlets;
 
 import static org.apache.commons.io.FilenameUtils.getExtension;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
@@ -32,6 +33,7 @@ import static pbrg.webservices.database.WallController.wallExists;
 import static pbrg.webservices.database.WallControllerTest.createTestWall;
 import static pbrg.webservices.utils.RouteUtils.createAndStoreRouteImage;
 import static pbrg.webservices.utils.RouteUtils.generateRouteMoonBoard;
+import static pbrg.webservices.utils.RouteUtils.getRouteContentJSONArray;
 import static pbrg.webservices.utils.RouteUtils.getRouteImageFileName;
 import static pbrg.webservices.utils.ServletUtils.getContentType;
 import static pbrg.webservices.utils.ServletUtils.getRouteImagePath;
@@ -41,8 +43,13 @@ import jakarta.servlet.ServletOutputStream;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import jakarta.servlet.http.HttpSession;
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
 import org.json.JSONArray;
+import org.json.JSONObject;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeAll;
@@ -216,8 +223,10 @@ class GetRouteImageServletTest {
     }
 
     @Test
-    void failingRouteWithoutImage() throws IOException {
-        // given a route without an image (not generated)
+    void routeWithoutImageIsRendered() throws IOException {
+        // given a route without an image (not rendered)
+        assertNull(getRouteImageFileName(routeIdPartial));
+
         // mock the session
         String routeIdKey = "rid";
         HttpSession session = mock(HttpSession.class);
@@ -227,8 +236,62 @@ class GetRouteImageServletTest {
         HttpServletRequest request = mock(HttpServletRequest.class);
         HttpServletResponse response = mock(HttpServletResponse.class);
         when(request.getSession(anyBoolean())).thenReturn(session);
+        when(response.getOutputStream())
+            .thenReturn(mock(ServletOutputStream.class));
 
-        // when getting the wall image
+        // when getting the route image
+        new GetRouteImageServlet().doPost(request, response);
+
+        // then: the image is rendered, stored and returned
+        assertNotNull(getRouteImageFileName(routeIdPartial));
+        verify(response).setStatus(HttpServletResponse.SC_OK);
+    }
+
+    @Test
+    void thumbnailDoesNotRenderRouteImage() throws IOException {
+        // given a route without an image (not rendered)
+        assertNull(getRouteImageFileName(routeIdPartial));
+
+        // mock the session
+        String routeIdKey = "rid";
+        HttpSession session = mock(HttpSession.class);
+        when(session.getAttribute(routeIdKey)).thenReturn(routeIdPartial);
+
+        // mock the request and response
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        when(request.getSession(anyBoolean())).thenReturn(session);
+        when(request.getReader()).thenReturn(
+            new BufferedReader(new StringReader("{\"size\": \"thumb\"}"))
+        );
+        when(response.getOutputStream())
+            .thenReturn(mock(ServletOutputStream.class));
+
+        // when getting its thumbnail
+        new GetRouteImageServlet().doPost(request, response);
+
+        // then: the thumbnail is returned, the route image not rendered
+        verify(response).setStatus(HttpServletResponse.SC_OK);
+        assertNull(getRouteImageFileName(routeIdPartial));
+    }
+
+    @Test
+    void failingRouteImageCannotBeRendered() throws IOException {
+        // given a route without holds, so without an image
+        Integer routeId = addRoute("{}", GRADE, userId, wallId);
+        assertNotNull(routeId);
+
+        // mock the session
+        String routeIdKey = "rid";
+        HttpSession session = mock(HttpSession.class);
+        when(session.getAttribute(routeIdKey)).thenReturn(routeId);
+
+        // mock the request and response
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        when(request.getSession(anyBoolean())).thenReturn(session);
+
+        // when getting the route image
         new GetRouteImageServlet().doPost(request, response);
 
         // then: ensure the error is HttpServletResponse.SC_EXPECTATION_FAILED
@@ -236,6 +299,9 @@ class GetRouteImageServletTest {
             eq(HttpServletResponse.SC_EXPECTATION_FAILED),
             anyString()
         );
+
+        // after: delete the route
+        RouteUtils.deleteRoute(routeId);
     }
 
     @Test
@@ -317,4 +383,80 @@ class GetRouteImageServletTest {
         // then ensure success
         verify(response).setStatus(HttpServletResponse.SC_OK);
     }
+
+    @Test
+    void passingSvgOverlay() throws IOException {
+        // given a route without an image, and a request for an overlay
+        String routeIdKey = "rid";
+        HttpSession session = mock(HttpSession.class);
+        when(session.getAttribute(routeIdKey)).thenReturn(routeIdPartial);
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        when(request.getSession(anyBoolean())).thenReturn(session);
+        when(request.getReader()).thenReturn(
+            new BufferedReader(new StringReader("{\"format\": \"svg\"}"))
+        );
+        StringWriter stringWriter = new StringWriter();
+        when(response.getWriter()).thenReturn(new PrintWriter(stringWriter));
+
+        // when getting the route image
+        new GetRouteImageServlet().doPost(request, response);
+
+        // then: the holds are returned as SVG, no image is rendered
+        verify(response).setContentType("image/svg+xml");
+        verify(response).setStatus(HttpServletResponse.SC_OK);
+        assertTrue(stringWriter.toString().startsWith("<svg"));
+        assertTrue(stringWriter.toString().contains("<circle"));
+        assertNull(getRouteImageFileName(routeIdPartial));
+    }
+
+    @Test
+    void passingJsonOverlay() throws IOException {
+        // given a route, and a request for a JSON overlay
+        String routeIdKey = "rid";
+        HttpSession session = mock(HttpSession.class);
+        when(session.getAttribute(routeIdKey)).thenReturn(routeIdFull);
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        when(request.getSession(anyBoolean())).thenReturn(session);
+        when(request.getReader()).thenReturn(
+            new BufferedReader(new StringReader("{\"format\": \"json\"}"))
+        );
+        StringWriter stringWriter = new StringWriter();
+        when(response.getWriter()).thenReturn(new PrintWriter(stringWriter));
+
+        // when getting the route image
+        new GetRouteImageServlet().doPost(request, response);
+
+        // then: the route's holds are returned with the wall size
+        verify(response).setStatus(HttpServletResponse.SC_OK);
+        JSONObject overlay = new JSONObject(stringWriter.toString());
+        assertTrue(overlay.getInt("width") > 0);
+        assertEquals(
+            getRouteContentJSONArray(routeIdFull).length(),
+            overlay.getJSONArray("holds").length()
+        );
+    }
+
+    @Test
+    void failingInvalidFormat() throws IOException {
+        // given a request of an invalid format
+        String routeIdKey = "rid";
+        HttpSession session = mock(HttpSession.class);
+        when(session.getAttribute(routeIdKey)).thenReturn(routeIdFull);
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        when(request.getSession(anyBoolean())).thenReturn(session);
+        when(request.getReader()).thenReturn(
+            new BufferedReader(new StringReader("{\"format\": \"gif\"}"))
+        );
+
+        // when getting the route image
+        new GetRouteImageServlet().doPost(request, response);
+
+        // then ensure the response is HttpServletResponse.SC_BAD_REQUEST
+        verify(response).sendError(
+            eq(HttpServletResponse.SC_BAD_REQUEST), anyString()
+        );
+    }
 }
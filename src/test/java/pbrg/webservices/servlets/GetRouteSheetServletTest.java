@@ -0,0 +1,325 @@
+package pbrg.webservices.servlets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static pbrg.webservices.database.AuthenticationController.deleteUser;
+import static pbrg.webservices.database.AuthenticationController.userExists;
+import static pbrg.webservices.database.AuthenticationControllerTest
+    .createTestUser;
+import static pbrg.webservices.database.GymController.deleteGym;
+import static pbrg.webservices.database.GymController.gymExists;
+import static pbrg.webservices.database.GymControllerTest.createTestGym;
+import static pbrg.webservices.database.RouteController.routeExists;
+import static pbrg.webservices.database.RouteControllerTest.createTestRoute;
+import static pbrg.webservices.database.TestDatabase.closeTestDatabaseInThread;
+import static pbrg.webservices.database.TestDatabase.getTestDataSource;
+import static pbrg.webservices.database.TestDatabase.startTestDatabaseInThread;
+import static pbrg.webservices.database.WallController.deleteWall;
+import static pbrg.webservices.database.WallController.wallExists;
+import static pbrg.webservices.database.WallControllerTest.createTestWall;
+import static pbrg.webservices.utils.ServletUtils.getRouteImagePath;
+
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import pbrg.webservices.database.DatabaseController;
+import pbrg.webservices.utils.RouteSheets;
+import pbrg.webservices.utils.RouteUtils;
+
+class GetRouteSheetServletTest {
+
+    /** The user id of the test user. */
+    private int userId;
+
+    /** The gym id of the test gym. */
+    private int gymId;
+
+    /** The wall id of the test wall. */
+    private int wallId;
+
+    /** The route id of the test route. */
+    private int routeId;
+
+    /** The route id of a route added by a test, or -1. */
+    private int otherRouteId = -1;
+
+    @BeforeAll
+    public static void startResources() throws IllegalStateException {
+        startTestDatabaseInThread();
+
+        // use the test database
+        DatabaseController.setDataSource(getTestDataSource());
+    }
+
+    @AfterAll
+    static void closeResources() {
+        closeTestDatabaseInThread();
+    }
+
+    @BeforeEach
+    void createModels() {
+        userId = createTestUser();
+        gymId = createTestGym();
+        wallId = createTestWall(gymId);
+        routeId = createTestRoute(userId, wallId);
+        assertTrue(routeExists(routeId));
+    }
+
+    @AfterEach
+    void deleteModels() throws IOException {
+        // after: remove the sheets of the user's routes in the gym
+        RouteSheets.deleteSheets(list());
+
+        // and the database assets
+        for (int id : new int[] {routeId, otherRouteId}) {
+            if (routeExists(id)) {
+                RouteUtils.deleteRoute(id);
+                assertFalse(routeExists(id));
+            }
+        }
+        if (wallExists(wallId)) {
+            assertTrue(deleteWall(wallId));
+            assertFalse(wallExists(wallId));
+        }
+        if (gymExists(gymId)) {
+            assertTrue(deleteGym(gymId));
+            assertFalse(gymExists(gymId));
+        }
+        if (userExists(userId)) {
+            assertTrue(deleteUser(userId));
+            assertFalse(userExists(userId));
+        }
+    }
+
+    /**
+     * Get the name of the test user's route list in the test gym.
+     * @return the list name
+     */
+    private String list() {
+        return "u" + userId + "-g" + gymId;
+    }
+
+    /**
+     * Mock a request, in a user's session in a gym, with a body.
+     * @param user the user id
+     * @param gym the gym id
+     * @param body the request body
+     * @return the request
+     * @throws IOException never, mocked
+     */
+    private static HttpServletRequest request(
+        final int user, final int gym, final String body
+    ) throws IOException {
+        HttpSession session = mock(HttpSession.class);
+        when(session.getAttribute("uid")).thenReturn(user);
+        when(session.getAttribute("gid")).thenReturn(gym);
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getSession(anyBoolean())).thenReturn(session);
+        when(request.getReader())
+            .thenReturn(new BufferedReader(new StringReader(body)));
+        return request;
+    }
+
+    /**
+     * Get the test user's first page's index.
+     * @return the index
+     * @throws IOException never, mocked
+     */
+    private JSONObject index() throws IOException {
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        StringWriter writer = new StringWriter();
+        when(response.getWriter()).thenReturn(new PrintWriter(writer));
+        new GetRouteSheetServlet().doPost(
+            request(userId, gymId, "{}"), response
+        );
+        verify(response).setStatus(HttpServletResponse.SC_OK);
+        verify(response).setContentType("application/json");
+        return new JSONObject(writer.toString());
+    }
+
+    @Test
+    void testDoGetCallsDoPost() throws IOException {
+        // given a request and response
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        GetRouteSheetServlet servlet = spy(new GetRouteSheetServlet());
+
+        // when calling do get
+        servlet.doGet(request, response);
+
+        // then do post is called
+        verify(servlet).doPost(request, response);
+    }
+
+    @Test
+    void failingInvalidUser() throws IOException {
+        // given an invalid user
+        HttpServletRequest request = request(-1, gymId, "{}");
+        HttpServletResponse response = mock(HttpServletResponse.class);
+
+        // when getting the sheet
+        new GetRouteSheetServlet().doPost(request, response);
+
+        // then ensure error is SC_BAD_REQUEST
+        verify(response).sendError(
+            eq(HttpServletResponse.SC_BAD_REQUEST), anyString()
+        );
+    }
+
+    @Test
+    void failingInvalidPage() throws IOException {
+        // given a page size over the maximum
+        HttpServletRequest request = request(
+            userId, gymId,
+            "{\"pageSize\": " + (RouteSheets.MAX_PAGE_SIZE + 1) + "}"
+        );
+        HttpServletResponse response = mock(HttpServletResponse.class);
+
+        // when getting the sheet
+        new GetRouteSheetServlet().doPost(request, response);
+
+        // then ensure error is SC_BAD_REQUEST
+        verify(response).sendError(
+            eq(HttpServletResponse.SC_BAD_REQUEST), anyString()
+        );
+    }
+
+    @Test
+    void failingInvalidFormat() throws IOException {
+        // given an unknown format
+        HttpServletRequest request = request(
+            userId, gymId, "{\"format\": \"gif\"}"
+        );
+        HttpServletResponse response = mock(HttpServletResponse.class);
+
+        // when getting the sheet
+        new GetRouteSheetServlet().doPost(request, response);
+
+        // then ensure error is SC_BAD_REQUEST
+        verify(response).sendError(
+            eq(HttpServletResponse.SC_BAD_REQUEST), anyString()
+        );
+    }
+
+    @Test
+    void passingIndex() throws IOException {
+        // when getting the first page's index
+        JSONObject index = index();
+
+        // then: the route has a tile
+        assertEquals(0, index.getInt("page"));
+        assertEquals(
+            RouteSheets.DEFAULT_PAGE_SIZE, index.getInt("pageSize")
+        );
+        JSONArray routes = index.getJSONArray("routes");
+        assertEquals(1, routes.length());
+        JSONObject tile = routes.getJSONObject(0);
+        assertEquals(routeId, tile.getInt("routeId"));
+        assertEquals(0, tile.getInt("x"));
+        assertEquals(0, tile.getInt("y"));
+        assertTrue(tile.getInt("width") <= RouteSheets.TILE_WIDTH);
+    }
+
+    @Test
+    void passingImage() throws IOException {
+        // given a request for the sprite image
+        HttpServletRequest request = request(
+            userId, gymId, "{\"format\": \"image\"}"
+        );
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        when(response.getOutputStream())
+            .thenReturn(mock(ServletOutputStream.class));
+
+        // when getting the sheet
+        new GetRouteSheetServlet().doPost(request, response);
+
+        // then: the image is returned
+        verify(response).setStatus(HttpServletResponse.SC_OK);
+        verify(response).setContentType("image/jpeg");
+    }
+
+    @Test
+    void passingImageOfSheetId() throws IOException {
+        // given a request for the image of the index's sheet
+        String sheetId = index().getString("sheetId");
+        HttpServletRequest request = request(
+            userId, gymId,
+            "{\"format\": \"image\", \"sheetId\": \"" + sheetId + "\"}"
+        );
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        when(response.getOutputStream())
+            .thenReturn(mock(ServletOutputStream.class));
+
+        // when getting the sheet
+        new GetRouteSheetServlet().doPost(request, response);
+
+        // then: the image is returned
+        verify(response).setStatus(HttpServletResponse.SC_OK);
+        verify(response).setContentType("image/jpeg");
+    }
+
+    @Test
+    void failingSheetIdGone() throws IOException {
+        // given a request for the image of a replaced sheet
+        String sheetId = index().getString("sheetId");
+        otherRouteId = createTestRoute(userId, wallId);
+        index();
+        HttpServletRequest request = request(
+            userId, gymId,
+            "{\"format\": \"image\", \"sheetId\": \"" + sheetId + "\"}"
+        );
+        HttpServletResponse response = mock(HttpServletResponse.class);
+
+        // when getting the sheet
+        new GetRouteSheetServlet().doPost(request, response);
+
+        // then ensure error is SC_NOT_FOUND
+        verify(response).sendError(
+            eq(HttpServletResponse.SC_NOT_FOUND), anyString()
+        );
+    }
+
+    @Test
+    void changedPageIsNewSheet() throws IOException {
+        // given: the first page's sheet
+        String sheetId = index().getString("sheetId");
+        File sheet = new File(
+            getRouteImagePath(),
+            "sheet-" + list() + "-p0x" + RouteSheets.DEFAULT_PAGE_SIZE
+                + "-" + sheetId + ".jpg"
+        );
+        assertTrue(sheet.isFile());
+
+        // when: adding a route to the page
+        otherRouteId = createTestRoute(userId, wallId);
+        JSONObject index = index();
+
+        // then: the page is a new sheet, and the old one is deleted
+        assertNotEquals(sheetId, index.getString("sheetId"));
+        assertEquals(2, index.getJSONArray("routes").length());
+        assertFalse(sheet.exists());
+    }
+}
@@ -1,5 +1,6 @@
 package pbrg.webservices.servlets;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.anyBoolean;
@@ -15,6 +16,7 @@ import static pbrg.webservices.database.AuthenticationControllerTest.createTestU
 import static pbrg.webservices.database.GymController.deleteGym;
 import static pbrg.webservices.database.GymController.gymExists;
 import static pbrg.webservices.database.GymControllerTest.createTestGym;
+import static pbrg.webservices.database.RouteController.addImageToRoute;
 import static pbrg.webservices.database.RouteController.routeExists;
 import static pbrg.webservices.database.RouteControllerTest.createTestRoute;
 import static pbrg.webservices.database.TestDatabase.closeTestDatabaseInThread;
@@ -29,6 +31,9 @@ import jakarta.servlet.http.HttpServletResponse;
 import jakarta.servlet.http.HttpSession;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.StringWriter;
+import org.json.JSONArray;
+import org.json.JSONObject;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeAll;
@@ -188,4 +193,35 @@ class GetRoutesServletTest {
         // and ensure the response is correct
         verify(response).getWriter();
     }
+
+    @Test
+    void passingWithImagePlaceholder() throws IOException {
+        // given a route with an image and its placeholder
+        assertTrue(addImageToRoute(routeId, "r.jpg", "LKO2?U%2Tw=w"));
+
+        // mock session
+        HttpSession session = mock(HttpSession.class);
+        when(session.getAttribute("uid")).thenReturn(userId);
+        when(session.getAttribute("gid")).thenReturn(gymId);
+
+        // mock request, response
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        when(request.getSession(anyBoolean())).thenReturn(session);
+        StringWriter writer = new StringWriter();
+        when(response.getWriter()).thenReturn(new PrintWriter(writer));
+
+        // when getting the routes
+        new GetRoutesServlet().doPost(request, response);
+
+        // then the route's placeholder is inline
+        verify(response).setStatus(HttpServletResponse.SC_OK);
+        JSONArray routes = new JSONObject(writer.toString())
+            .getJSONArray("routes");
+        assertEquals(1, routes.length());
+        assertEquals(
+            "LKO2?U%2Tw=w",
+            routes.getJSONObject(0).getString("imagePlaceholder")
+        );
+    }
 }
@@ -0,0 +1,214 @@
+package pbrg.webservices.servlets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static pbrg.webservices.database.AuthenticationController.deleteUser;
+import static pbrg.webservices.database.AuthenticationController.userExists;
+import static pbrg.webservices.database.AuthenticationControllerTest
+    .createTestUser;
+import static pbrg.webservices.database.GymController.deleteGym;
+import static pbrg.webservices.database.GymController.gymExists;
+import static pbrg.webservices.database.GymControllerTest.createTestGym;
+import static pbrg.webservices.database.RouteController.addRoute;
+import static pbrg.webservices.database.RouteController.routeExists;
+import static pbrg.webservices.database.TestDatabase.closeTestDatabaseInThread;
+import static pbrg.webservices.database.TestDatabase.getTestDataSource;
+import static pbrg.webservices.database.TestDatabase.startTestDatabaseInThread;
+import static pbrg.webservices.database.WallController.addWall;
+import static pbrg.webservices.database.WallController.deleteWall;
+import static pbrg.webservices.database.WallController.wallExists;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import pbrg.webservices.database.DatabaseController;
+import pbrg.webservices.utils.RouteUtils;
+
+class GetSimilarRoutesServletTest {
+
+    /** The test route difficulty. */
+    private static final int DIFFICULTY = 1;
+
+    /** The test user id. */
+    private static int userId;
+
+    /** The test gym id. */
+    private static int gymId;
+
+    /** The test wall id. */
+    private static int wallId;
+
+    /** The test route id. */
+    private static int routeId;
+
+    /** A route with the test route's holds. */
+    private static int twinRouteId;
+
+    @BeforeAll
+    public static void startResources() throws IllegalStateException {
+        startTestDatabaseInThread();
+
+        // use the test database
+        DatabaseController.setDataSource(getTestDataSource());
+    }
+
+    @AfterAll
+    static void closeResources() {
+        RouteUtils.closeSimilarRouteIndex();
+        closeTestDatabaseInThread();
+    }
+
+    @BeforeEach
+    void createModels() throws IOException {
+        deleteModels();
+        userId = createTestUser();
+        gymId = createTestGym();
+
+        // a MoonBoard wall, with two routes on the same holds
+        Integer wall = addWall(
+            gymId,
+            RouteUtils.getRouteGenerator().getHoldTable().toJSON().toString(),
+            "MoonBoard2016.jpg"
+        );
+        assertNotNull(wall);
+        wallId = wall;
+        JSONArray holds = RouteUtils.generateRouteMoonBoard(DIFFICULTY);
+        Integer route = addRoute(holds.toString(), DIFFICULTY, userId, wallId);
+        Integer twin = addRoute(holds.toString(), DIFFICULTY, userId, wallId);
+        assertNotNull(route);
+        assertNotNull(twin);
+        routeId = route;
+        twinRouteId = twin;
+
+        // index the new routes
+        RouteUtils.closeSimilarRouteIndex();
+    }
+
+    @AfterEach
+    void deleteModels() {
+        // after: remove the database assets
+        for (int id : new int[] {routeId, twinRouteId}) {
+            if (routeExists(id)) {
+                RouteUtils.deleteRoute(id);
+                assertFalse(routeExists(id));
+            }
+        }
+        if (wallExists(wallId)) {
+            assertTrue(deleteWall(wallId));
+        }
+        if (gymExists(gymId)) {
+            assertTrue(deleteGym(gymId));
+        }
+        if (userExists(userId)) {
+            assertTrue(deleteUser(userId));
+        }
+    }
+
+    /**
+     * Mock a request for the routes similar to a route.
+     * @param sessionRouteId the route id in the session
+     * @return the request
+     */
+    private static HttpServletRequest requestFor(final int sessionRouteId) {
+        HttpSession session = mock(HttpSession.class);
+        when(session.getAttribute("rid")).thenReturn(sessionRouteId);
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getSession(anyBoolean())).thenReturn(session);
+        return request;
+    }
+
+    @Test
+    void testDoGetCallsDoPost() throws IOException {
+        // given a request and response
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        GetSimilarRoutesServlet servlet = spy(new GetSimilarRoutesServlet());
+
+        // when calling do get
+        servlet.doGet(request, response);
+
+        // then do post is called
+        verify(servlet).doPost(request, response);
+    }
+
+    @Test
+    void failingInvalidRoute() throws IOException {
+        // given an invalid route
+        HttpServletRequest request = requestFor(-1);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+
+        // when getting similar routes
+        new GetSimilarRoutesServlet().doPost(request, response);
+
+        // then SC_BAD_REQUEST is returned
+        verify(response).sendError(
+            eq(HttpServletResponse.SC_BAD_REQUEST),
+            anyString()
+        );
+    }
+
+    @Test
+    void findsRouteOnSameHolds() throws IOException {
+        // given a valid route
+        HttpServletRequest request = requestFor(routeId);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        StringWriter stringWriter = new StringWriter();
+        when(response.getWriter()).thenReturn(new PrintWriter(stringWriter));
+
+        // when getting similar routes
+        new GetSimilarRoutesServlet().doPost(request, response);
+
+        // then the route on the same holds is the most similar
+        verify(response).setStatus(HttpServletResponse.SC_OK);
+        JSONArray routes =
+            new JSONObject(stringWriter.toString()).getJSONArray("routes");
+        assertFalse(routes.isEmpty());
+        JSONObject mostSimilar = routes.getJSONObject(0);
+        assertEquals(twinRouteId, mostSimilar.getInt("routeId"));
+        assertEquals(DIFFICULTY, mostSimilar.getInt("difficulty"));
+        assertEquals(1.0, mostSimilar.getDouble("similarity"));
+    }
+
+    @Test
+    void deletedRouteIsNotFound() throws IOException {
+        // given: the similar route index is built, then the twin deleted
+        assertNotNull(RouteUtils.getSimilarRouteIndex());
+        RouteUtils.deleteRoute(twinRouteId);
+
+        HttpServletRequest request = requestFor(routeId);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        StringWriter stringWriter = new StringWriter();
+        when(response.getWriter()).thenReturn(new PrintWriter(stringWriter));
+
+        // when getting similar routes
+        new GetSimilarRoutesServlet().doPost(request, response);
+
+        // then the deleted route is not returned
+        JSONArray routes =
+            new JSONObject(stringWriter.toString()).getJSONArray("routes");
+        for (int i = 0; i < routes.length(); i++) {
+            assertFalse(
+                routes.getJSONObject(i).getInt("routeId") == twinRouteId
+            );
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package pbrg.webservices.servlets;
 
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -31,13 +32,17 @@ import jakarta.servlet.ServletOutputStream;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import jakarta.servlet.http.HttpSession;
+import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
+import java.io.StringReader;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import pbrg.webservices.database.DatabaseController;
+import pbrg.webservices.utils.ImageVariants;
 import pbrg.webservices.utils.ServletUtils;
 
 class GetWallImageServletTest {
@@ -322,4 +327,84 @@ class GetWallImageServletTest {
         // then ensure the response is HttpServletResponse.SC_OK
         verify(response).setStatus(HttpServletResponse.SC_OK);
     }
+
+    @Test
+    void passingThumbnail() throws IOException {
+        // given a gym that has a wall, and a request for a thumbnail
+        String gymIdKey = "gid";
+        HttpSession session = mock(HttpSession.class);
+        when(session.getAttribute(gymIdKey)).thenReturn(gymIdWithWall);
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        when(request.getSession(anyBoolean())).thenReturn(session);
+        when(request.getReader()).thenReturn(
+            new BufferedReader(new StringReader("{\"size\": \"thumb\"}"))
+        );
+        when(response.getOutputStream())
+            .thenReturn(mock(ServletOutputStream.class));
+
+        // when getting the wall image
+        new GetWallImageServlet().doPost(request, response);
+
+        // then: a thumbnail is cached beside the wall image, and returned
+        File wallImage = new File(
+            ServletUtils.getWallImagePath(), "MoonBoard2016.jpg"
+        );
+        Integer width = ImageVariants.parseWidth("thumb");
+        assertNotNull(width);
+        File thumbnail = ImageVariants.variant(wallImage, width);
+        assertNotEquals(wallImage, thumbnail);
+        assertTrue(thumbnail.exists());
+        verify(response).setStatus(HttpServletResponse.SC_OK);
+
+        // after: delete the thumbnail
+        ImageVariants.deleteVariants(wallImage);
+        assertFalse(thumbnail.exists());
+    }
+
+    @Test
+    void failingInvalidSize() throws IOException {
+        // given a gym that has a wall, and a request of an invalid size
+        String gymIdKey = "gid";
+        HttpSession session = mock(HttpSession.class);
+        when(session.getAttribute(gymIdKey)).thenReturn(gymIdWithWall);
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        when(request.getSession(anyBoolean())).thenReturn(session);
+        when(request.getReader()).thenReturn(
+            new BufferedReader(new StringReader("{\"size\": \"huge\"}"))
+        );
+
+        // when getting the wall image
+        new GetWallImageServlet().doPost(request, response);
+
+        // then ensure the response is HttpServletResponse.SC_BAD_REQUEST
+        verify(response).sendError(
+            eq(HttpServletResponse.SC_BAD_REQUEST), anyString()
+        );
+    }
+
+    @Test
+    void passingNotModified() throws IOException {
+        // given a gym that has a wall, and a client holding its image
+        String gymIdKey = "gid";
+        HttpSession session = mock(HttpSession.class);
+        when(session.getAttribute(gymIdKey)).thenReturn(gymIdWithWall);
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        when(request.getSession(anyBoolean())).thenReturn(session);
+        File wallImage = new File(
+            ServletUtils.getWallImagePath(), "MoonBoard2016.jpg"
+        );
+        when(request.getDateHeader("If-Modified-Since"))
+            .thenReturn(wallImage.lastModified());
+
+        // when getting the wall image
+        new GetWallImageServlet().doPost(request, response);
+
+        // then: 304, without the image
+        verify(response).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        verify(response, never()).setStatus(HttpServletResponse.SC_OK);
+        verify(response, never()).getOutputStream();
+    }
 }
@@ -0,0 +1,216 @@
+package pbrg.webservices.servlets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static pbrg.webservices.database.GymController.addGym;
+import static pbrg.webservices.database.GymController.deleteGym;
+import static pbrg.webservices.database.GymController.gymExists;
+import static pbrg.webservices.database.GymControllerTest.createTestGym;
+import static pbrg.webservices.database.TestDatabase.closeTestDatabaseInThread;
+import static pbrg.webservices.database.TestDatabase.getTestDataSource;
+import static pbrg.webservices.database.TestDatabase.startTestDatabaseInThread;
+import static pbrg.webservices.database.WallController.deleteWall;
+import static pbrg.webservices.database.WallController.getWallImageFileName;
+import static pbrg.webservices.database.WallController.wallExists;
+import static pbrg.webservices.database.WallControllerTest.createTestWall;
+
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import pbrg.webservices.database.DatabaseController;
+import pbrg.webservices.utils.ServletUtils;
+import pbrg.webservices.utils.WallTiles;
+
+class GetWallTileServletTest {
+
+    /** The gym id of the test gym (with wall). */
+    private int gymIdWithWall;
+
+    /** The gym id of the test gym (without wall). */
+    private int gymIdWithoutWall;
+
+    /** The wall id of the test wall. */
+    private int wallId;
+
+    @BeforeAll
+    public static void startResources() throws IllegalStateException {
+        startTestDatabaseInThread();
+
+        // use the test database
+        DatabaseController.setDataSource(getTestDataSource());
+    }
+
+    @AfterAll
+    static void closeResources() {
+        closeTestDatabaseInThread();
+    }
+
+    @BeforeEach
+    void createModels() {
+        deleteModels();
+        gymIdWithWall = createTestGym();
+        Integer newGym = addGym("Test gym without a wall", "Test Gym 2");
+        assertNotNull(newGym);
+        gymIdWithoutWall = newGym;
+        wallId = createTestWall(gymIdWithWall);
+        assertTrue(wallExists(wallId));
+    }
+
+    @AfterEach
+    void deleteModels() {
+        // after test: remove the tiles and database assets
+        if (wallExists(wallId)) {
+            String wallImageFileName = getWallImageFileName(wallId);
+            assertNotNull(wallImageFileName);
+            Path tiles = new File(
+                ServletUtils.getWallImagePath(), wallImageFileName + "_tiles"
+            ).toPath();
+            if (Files.exists(tiles)) {
+                try (Stream<Path> files = Files.walk(tiles)) {
+                    files.sorted(Comparator.reverseOrder())
+                        .forEach(file -> file.toFile().delete());
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+            assertTrue(deleteWall(wallId));
+            assertFalse(wallExists(wallId));
+        }
+        if (gymExists(gymIdWithWall)) {
+            assertTrue(deleteGym(gymIdWithWall));
+            assertFalse(gymExists(gymIdWithWall));
+        }
+        if (gymExists(gymIdWithoutWall)) {
+            assertTrue(deleteGym(gymIdWithoutWall));
+            assertFalse(gymExists(gymIdWithoutWall));
+        }
+    }
+
+    /**
+     * Mock a request, in a gym's session, with a body.
+     * @param gymId the gym id
+     * @param body the request body
+     * @return the request
+     * @throws IOException never, mocked
+     */
+    private static HttpServletRequest request(
+        final int gymId, final String body
+    ) throws IOException {
+        HttpSession session = mock(HttpSession.class);
+        when(session.getAttribute("gid")).thenReturn(gymId);
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getSession(anyBoolean())).thenReturn(session);
+        when(request.getReader())
+            .thenReturn(new BufferedReader(new StringReader(body)));
+        return request;
+    }
+
+    @Test
+    void testDoGetCallsDoPost() throws IOException {
+        // given a request and response
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        GetWallTileServlet servlet = spy(new GetWallTileServlet());
+
+        // when calling do get
+        servlet.doGet(request, response);
+
+        // then do post is called
+        verify(servlet).doPost(request, response);
+    }
+
+    @Test
+    void failingGymWithoutWall() throws IOException {
+        // given a gym that does not have a wall
+        HttpServletRequest request = request(gymIdWithoutWall, "{}");
+        HttpServletResponse response = mock(HttpServletResponse.class);
+
+        // when getting the wall's tiles
+        new GetWallTileServlet().doPost(request, response);
+
+        // then: ensure the error is HttpServletResponse.SC_BAD_REQUEST
+        verify(response).sendError(
+            eq(HttpServletResponse.SC_BAD_REQUEST), anyString()
+        );
+    }
+
+    @Test
+    void passingDescriptor() throws IOException {
+        // given a gym that has a wall, and no tile address
+        HttpServletRequest request = request(gymIdWithWall, "{}");
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        StringWriter writer = new StringWriter();
+        when(response.getWriter()).thenReturn(new PrintWriter(writer));
+
+        // when getting the wall's tiles
+        new GetWallTileServlet().doPost(request, response);
+
+        // then: the pyramid is described
+        verify(response).setStatus(HttpServletResponse.SC_OK);
+        verify(response).setContentType("application/json");
+        JSONObject descriptor = new JSONObject(writer.toString());
+        assertEquals(WallTiles.TILE_SIZE, descriptor.getInt("tileSize"));
+        assertTrue(descriptor.getInt("levels") > 1);
+    }
+
+    @Test
+    void passingTile() throws IOException {
+        // given a gym that has a wall, and the address of its 1 px tile
+        HttpServletRequest request = request(
+            gymIdWithWall, "{\"level\": 0, \"x\": 0, \"y\": 0}"
+        );
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        when(response.getOutputStream())
+            .thenReturn(mock(ServletOutputStream.class));
+
+        // when getting the tile
+        new GetWallTileServlet().doPost(request, response);
+
+        // then: the tile is returned
+        verify(response).setStatus(HttpServletResponse.SC_OK);
+        verify(response).setContentType("image/jpeg");
+    }
+
+    @Test
+    void failingInvalidTile() throws IOException {
+        // given a gym that has a wall, and a tile beyond its level
+        HttpServletRequest request = request(
+            gymIdWithWall, "{\"level\": 0, \"x\": 1, \"y\": 0}"
+        );
+        HttpServletResponse response = mock(HttpServletResponse.class);
+
+        // when getting the tile
+        new GetWallTileServlet().doPost(request, response);
+
+        // then: ensure the error is HttpServletResponse.SC_BAD_REQUEST
+        verify(response).sendError(
+            eq(HttpServletResponse.SC_BAD_REQUEST), anyString()
+        );
+    }
+}
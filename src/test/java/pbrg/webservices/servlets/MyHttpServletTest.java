@@ -13,15 +13,20 @@ import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static pbrg.webservices.servlets.MyHttpServlet.getBody;
 import static pbrg.webservices.servlets.MyHttpServlet.getBodyAsJson;
 import static pbrg.webservices.servlets.MyHttpServlet.getSession;
+import static pbrg.webservices.servlets.MyHttpServlet.handleAsync;
 import static pbrg.webservices.servlets.MyHttpServlet.validateBody;
 import static pbrg.webservices.servlets.MyHttpServlet.validateRequest;
 import static pbrg.webservices.servlets.MyHttpServlet.validateSession;
 
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
 import jakarta.servlet.ServletInputStream;
 import jakarta.servlet.http.Cookie;
 import jakarta.servlet.http.HttpServletRequest;
@@ -32,10 +37,14 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import org.jetbrains.annotations.NotNull;
 import org.json.JSONObject;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.stubbing.Answer;
 
 class MyHttpServletTest {
@@ -546,4 +555,112 @@ class MyHttpServletTest {
             verify(response, never()).sendError(anyInt(), anyString());
         }
     }
+
+    @Nested
+    class TestHandleAsync {
+
+        /** Time allowed for async work to finish. */
+        private static final long ASYNC_WAIT_MILLIS = 5000;
+
+        @Test
+        void withoutAsyncSupportHandlesInline() throws IOException {
+            // given a request without async support
+            HttpServletRequest request = mock(HttpServletRequest.class);
+            HttpServletResponse response = mock(HttpServletResponse.class);
+            AtomicReference<Thread> handledOn = new AtomicReference<>();
+
+            // when handling it
+            handleAsync(
+                request, response,
+                (req, res) -> handledOn.set(Thread.currentThread())
+            );
+
+            // then it is handled on the calling thread
+            assertEquals(Thread.currentThread(), handledOn.get());
+            verify(request, never()).startAsync(any(), any());
+        }
+
+        @Test
+        void withAsyncSupportCompletesContext() throws IOException {
+            // given a request with async support
+            HttpServletRequest request = mock(HttpServletRequest.class);
+            HttpServletResponse response = mock(HttpServletResponse.class);
+            AsyncContext context = mock(AsyncContext.class);
+            when(request.isAsyncSupported()).thenReturn(true);
+            when(request.startAsync(request, response)).thenReturn(context);
+
+            // when handling it
+            handleAsync(
+                request, response,
+                (req, res) -> res.setStatus(HttpServletResponse.SC_OK)
+            );
+
+            // then it is handled, and the context completed
+            verify(response, timeout(ASYNC_WAIT_MILLIS))
+                .setStatus(HttpServletResponse.SC_OK);
+            verify(context, timeout(ASYNC_WAIT_MILLIS)).complete();
+        }
+
+        @Test
+        void failingHandlerSendsError() throws IOException {
+            // given a request with async support, and a failing handler
+            HttpServletRequest request = mock(HttpServletRequest.class);
+            HttpServletResponse response = mock(HttpServletResponse.class);
+            AsyncContext context = mock(AsyncContext.class);
+            when(request.isAsyncSupported()).thenReturn(true);
+            when(request.startAsync(request, response)).thenReturn(context);
+
+            // when handling it
+            handleAsync(request, response, (req, res) -> {
+                throw new IOException("Test exception");
+            });
+
+            // then an error is sent, and the context completed
+            verify(response, timeout(ASYNC_WAIT_MILLIS))
+                .sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            verify(context, timeout(ASYNC_WAIT_MILLIS)).complete();
+        }
+    
+        @Test
+        void timeoutStopsLateHandler()
+            throws IOException, InterruptedException {
+            // given a request with async support, and a slow handler
+            HttpServletRequest request = mock(HttpServletRequest.class);
+            HttpServletResponse response = mock(HttpServletResponse.class);
+            AsyncContext context = mock(AsyncContext.class);
+            when(request.isAsyncSupported()).thenReturn(true);
+            when(request.startAsync(request, response)).thenReturn(context);
+            CountDownLatch timedOut = new CountDownLatch(1);
+            AtomicReference<Throwable> late = new AtomicReference<>();
+            CountDownLatch handled = new CountDownLatch(1);
+            handleAsync(request, response, (req, res) -> {
+                try {
+                    timedOut.await(ASYNC_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+                    res.setStatus(HttpServletResponse.SC_OK);
+                } catch (InterruptedException | RuntimeException e) {
+                    late.set(e);
+                } finally {
+                    handled.countDown();
+                }
+            });
+
+            // when the request times out before the handler writes
+            ArgumentCaptor<AsyncListener> listener =
+                ArgumentCaptor.forClass(AsyncListener.class);
+            verify(context).addListener(listener.capture());
+            AsyncEvent event = mock(AsyncEvent.class);
+            when(event.getSuppliedResponse()).thenReturn(response);
+            when(event.getAsyncContext()).thenReturn(context);
+            listener.getValue().onTimeout(event);
+            timedOut.countDown();
+
+            // then 503 is sent once, and the late handler cannot write
+            assertTrue(handled.await(ASYNC_WAIT_MILLIS, TimeUnit.MILLISECONDS));
+            verify(response)
+                .sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            assertTrue(late.get() instanceof IllegalStateException);
+            verify(response, never()).setStatus(HttpServletResponse.SC_OK);
+            verify(context).complete();
+        }
+    }
 }
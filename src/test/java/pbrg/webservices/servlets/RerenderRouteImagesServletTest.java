@@ -0,0 +1,203 @@
+package pbrg.webservices.servlets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static pbrg.webservices.database.GymController.addGym;
+import static pbrg.webservices.database.GymController.deleteGym;
+import static pbrg.webservices.database.GymController.gymExists;
+import static pbrg.webservices.database.GymControllerTest.createTestGym;
+import static pbrg.webservices.database.TestDatabase.closeTestDatabaseInThread;
+import static pbrg.webservices.database.TestDatabase.getTestDataSource;
+import static pbrg.webservices.database.TestDatabase.startTestDatabaseInThread;
+import static pbrg.webservices.database.WallController.deleteWall;
+import static pbrg.webservices.database.WallController.wallExists;
+import static pbrg.webservices.database.WallControllerTest.createTestWall;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.time.Duration;
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import pbrg.webservices.database.DatabaseController;
+import pbrg.webservices.utils.RouteImageRerenders;
+import pbrg.webservices.utils.RouteUtils;
+
+class RerenderRouteImagesServletTest {
+
+    /** Time allowed for a job to finish. */
+    private static final Duration WAIT = Duration.ofSeconds(30);
+
+    /** The gym id of the test gym (with wall). */
+    private int gymIdWithWall;
+
+    /** The gym id of the test gym (without wall). */
+    private int gymIdWithoutWall;
+
+    /** The wall id of the test wall. */
+    private int wallId;
+
+    @BeforeAll
+    public static void startResources() throws IllegalStateException {
+        startTestDatabaseInThread();
+
+        // use the test database
+        DatabaseController.setDataSource(getTestDataSource());
+    }
+
+    @AfterAll
+    static void closeResources() {
+        RouteUtils.closeRouteImageRerenders();
+        closeTestDatabaseInThread();
+    }
+
+    @BeforeEach
+    void createModels() {
+        deleteModels();
+        gymIdWithWall = createTestGym();
+        Integer newGym = addGym("Test gym without a wall", "Test Gym 2");
+        assertNotNull(newGym);
+        gymIdWithoutWall = newGym;
+        wallId = createTestWall(gymIdWithWall);
+        assertTrue(wallExists(wallId));
+    }
+
+    @AfterEach
+    void deleteModels() {
+        // after test: remove the database assets
+        if (wallExists(wallId)) {
+            assertTrue(deleteWall(wallId));
+            assertFalse(wallExists(wallId));
+        }
+        if (gymExists(gymIdWithWall)) {
+            assertTrue(deleteGym(gymIdWithWall));
+            assertFalse(gymExists(gymIdWithWall));
+        }
+        if (gymExists(gymIdWithoutWall)) {
+            assertTrue(deleteGym(gymIdWithoutWall));
+            assertFalse(gymExists(gymIdWithoutWall));
+        }
+    }
+
+    /**
+     * Mock a request, in a gym's session, with a body.
+     * @param gymId the gym id
+     * @param body the request body
+     * @return the request
+     * @throws IOException never, mocked
+     */
+    private static HttpServletRequest request(
+        final int gymId, final String body
+    ) throws IOException {
+        HttpSession session = mock(HttpSession.class);
+        when(session.getAttribute("gid")).thenReturn(gymId);
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getSession(anyBoolean())).thenReturn(session);
+        when(request.getReader())
+            .thenReturn(new BufferedReader(new StringReader(body)));
+        return request;
+    }
+
+    @Test
+    void testDoGetCallsDoPost() throws IOException {
+        // given a request and response
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        RerenderRouteImagesServlet servlet =
+            spy(new RerenderRouteImagesServlet());
+
+        // when calling do get
+        servlet.doGet(request, response);
+
+        // then do post is called
+        verify(servlet).doPost(request, response);
+    }
+
+    @Test
+    void failingGymWithoutWall() throws IOException {
+        // given a gym that does not have a wall
+        HttpServletRequest request = request(gymIdWithoutWall, "{}");
+        HttpServletResponse response = mock(HttpServletResponse.class);
+
+        // when re-rendering the wall's route images
+        new RerenderRouteImagesServlet().doPost(request, response);
+
+        // then: ensure the error is HttpServletResponse.SC_BAD_REQUEST
+        verify(response).sendError(
+            eq(HttpServletResponse.SC_BAD_REQUEST), anyString()
+        );
+    }
+
+    @Test
+    void passingStartThenPoll() throws IOException {
+        // given a gym that has a wall
+        HttpServletRequest request = request(gymIdWithWall, "{}");
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        StringWriter writer = new StringWriter();
+        when(response.getWriter()).thenReturn(new PrintWriter(writer));
+
+        // when re-rendering the wall's route images
+        new RerenderRouteImagesServlet().doPost(request, response);
+
+        // then: the job of the wall is returned
+        verify(response).setStatus(HttpServletResponse.SC_OK);
+        JSONObject started = new JSONObject(writer.toString());
+        assertEquals(wallId, started.getInt("wallId"));
+        String jobId = started.getString("jobId");
+        RouteImageRerenders.Job job =
+            RouteUtils.getRouteImageRerenders().get(jobId);
+        assertNotNull(job);
+        assertTrue(job.await(WAIT));
+
+        // when polling the job
+        HttpServletRequest poll = request(
+            gymIdWithWall, new JSONObject().put("jobId", jobId).toString()
+        );
+        HttpServletResponse polled = mock(HttpServletResponse.class);
+        StringWriter pollWriter = new StringWriter();
+        when(polled.getWriter()).thenReturn(new PrintWriter(pollWriter));
+        new RerenderRouteImagesServlet().doPost(poll, polled);
+
+        // then: its progress is returned
+        verify(polled).setStatus(HttpServletResponse.SC_OK);
+        JSONObject status = new JSONObject(pollWriter.toString());
+        assertEquals(jobId, status.getString("jobId"));
+        assertEquals("succeeded", status.getString("status"));
+        assertEquals(0, status.getInt("total"));
+    }
+
+    @Test
+    void failingUnknownJob() throws IOException {
+        // given a job id that does not exist
+        HttpServletRequest request = request(
+            gymIdWithWall, "{\"jobId\": \"none\", \"cancel\": true}"
+        );
+        HttpServletResponse response = mock(HttpServletResponse.class);
+
+        // when polling the job
+        new RerenderRouteImagesServlet().doPost(request, response);
+
+        // then: ensure the error is HttpServletResponse.SC_NOT_FOUND
+        verify(response).sendError(
+            eq(HttpServletResponse.SC_NOT_FOUND), anyString()
+        );
+    }
+}
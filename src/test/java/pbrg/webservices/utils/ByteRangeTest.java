@@ -0,0 +1,100 @@
+package pbrg.webservices.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class ByteRangeTest {
+
+    /** Size of the file ranges are parsed against. */
+    private static final long SIZE = 1000;
+
+    @Test
+    void parseFirstLast() {
+        assertEquals(
+            List.of(new ByteRange(0, 99)),
+            ByteRange.parse("bytes=0-99", SIZE)
+        );
+
+        // a last byte beyond the file is clamped to it
+        assertEquals(
+            List.of(new ByteRange(900, 999)),
+            ByteRange.parse("bytes=900-5000", SIZE)
+        );
+    }
+
+    @Test
+    void parseOpenEnded() {
+        assertEquals(
+            List.of(new ByteRange(500, 999)),
+            ByteRange.parse("bytes=500-", SIZE)
+        );
+    }
+
+    @Test
+    void parseSuffix() {
+        assertEquals(
+            List.of(new ByteRange(990, 999)),
+            ByteRange.parse("bytes=-10", SIZE)
+        );
+
+        // a suffix longer than the file is the whole file
+        assertEquals(
+            List.of(new ByteRange(0, 999)),
+            ByteRange.parse("bytes=-5000", SIZE)
+        );
+    }
+
+    @Test
+    void parseMultipleRangesInOrder() {
+        assertEquals(
+            List.of(new ByteRange(500, 599), new ByteRange(0, 9)),
+            ByteRange.parse("Bytes= 500-599, 0-9 ,", SIZE)
+        );
+    }
+
+    @Test
+    void parseUnsatisfiable() {
+        // ranges beyond the file are dropped, leaving none
+        List<ByteRange> ranges = ByteRange.parse("bytes=1000-,-0", SIZE);
+        assertTrue(ranges != null && ranges.isEmpty());
+
+        // unless another range is within the file
+        assertEquals(
+            List.of(new ByteRange(0, 0)),
+            ByteRange.parse("bytes=2000-3000,0-0", SIZE)
+        );
+    }
+
+    @Test
+    void parseIgnored() {
+        // no, malformed, or other units of range: the whole file
+        String[] headers = {
+            null, "", "bytes=", "items=0-9", "bytes=9-0", "bytes=-",
+            "bytes=a-b", "bytes=0-9;1", "bytes=+1-2", "bytes=0",
+            "bytes=99999999999999999999-"
+        };
+        for (String header : headers) {
+            assertNull(ByteRange.parse(header, SIZE), header);
+        }
+    }
+
+    @Test
+    void parseTooManyRanges() {
+        StringBuilder header = new StringBuilder("bytes=0-0");
+        for (int i = 1; i <= ByteRange.MAX_RANGES; i++) {
+            header.append(',').append(i).append('-').append(i);
+        }
+        assertNull(ByteRange.parse(header.toString(), SIZE));
+    }
+
+    @Test
+    void lengthAndContentRange() {
+        ByteRange range = new ByteRange(100, 199);
+        assertEquals(100, range.length());
+        assertEquals("bytes 100-199/1000", range.contentRange(SIZE));
+    }
+}
@@ -0,0 +1,247 @@
+package pbrg.webservices.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Path;
+import javax.imageio.ImageIO;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class HoldRendererTest {
+
+    /** Width and height of the test wall. */
+    private static final int SIZE = 200;
+
+    /**
+     * Create a quadrant wall image.
+     * @param type the image type
+     * @return the wall image
+     */
+    private static BufferedImage wall(final int type) {
+        return TestImages.quadrants(SIZE, SIZE, type);
+    }
+
+    /**
+     * Create a route of one hold in the middle of the wall.
+     * @return the route
+     */
+    private static JSONArray middleHold() {
+        return new JSONArray().put(RouteGenerator.hold(0.5, 0.5));
+    }
+
+    @Test
+    void testPrivateConstructor() throws NoSuchMethodException {
+        // get constructor
+        Constructor<HoldRenderer> constructor =
+            HoldRenderer.class.getDeclaredConstructor();
+
+        // ensure calling constructor throws an IllegalStateException
+        constructor.setAccessible(true);
+        InvocationTargetException e = assertThrows(
+            InvocationTargetException.class, constructor::newInstance
+        );
+        assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+
+    @Test
+    void rendersHoldOutlinesOnACopy() {
+        // given: a wall and a hold in its middle
+        BufferedImage wall = wall(BufferedImage.TYPE_INT_RGB);
+        int middle = SIZE / 2;
+
+        // when: rendering the route
+        BufferedImage route =
+            HoldRenderer.render(wall, middleHold(), false);
+
+        // then: the outline lies inside the hold radius, the rest is wall
+        int red = HoldRenderer.HOLD_COLOUR.getRGB();
+        int bottomLeft = TestImages.colour(TestImages.BOTTOM_LEFT);
+        int radius = HoldRenderer.HOLD_RADIUS;
+        assertEquals(red, route.getRGB(middle - radius + 1, middle));
+        assertEquals(red, route.getRGB(middle + radius - 1, middle));
+        assertEquals(red, route.getRGB(middle, middle - radius + 1));
+        assertEquals(
+            TestImages.colour(TestImages.BOTTOM_RIGHT),
+            route.getRGB(middle, middle)
+        );
+        assertEquals(bottomLeft, route.getRGB(middle - radius - 2, middle));
+        assertEquals(
+            TestImages.colour(TestImages.TOP_LEFT), route.getRGB(0, 0)
+        );
+
+        // then: the wall is unchanged
+        assertEquals(bottomLeft, wall.getRGB(middle - radius + 1, middle));
+    }
+
+    @Test
+    void rendersHoldsAtScale() {
+        // given: a wall at half size, and a hold in its middle
+        BufferedImage wall = wall(BufferedImage.TYPE_INT_RGB);
+        int middle = SIZE / 2;
+
+        // when: rendering the route at half scale
+        BufferedImage route =
+            HoldRenderer.render(wall, middleHold(), false, 0.5);
+
+        // then: the outline lies inside half the hold radius
+        int red = HoldRenderer.HOLD_COLOUR.getRGB();
+        int radius = HoldRenderer.HOLD_RADIUS / 2;
+        assertEquals(red, route.getRGB(middle - radius + 1, middle));
+        assertEquals(
+            TestImages.colour(TestImages.BOTTOM_RIGHT),
+            route.getRGB(middle, middle)
+        );
+        assertEquals(
+            TestImages.colour(TestImages.BOTTOM_LEFT),
+            route.getRGB(middle - HoldRenderer.HOLD_RADIUS + 1, middle)
+        );
+    }
+
+    @Test
+    void rendersTinyHoldsVisibly() {
+        // given: a wall far below full size
+        BufferedImage wall = wall(BufferedImage.TYPE_INT_RGB);
+        int middle = SIZE / 2;
+
+        // when: rendering the route at that scale
+        BufferedImage route =
+            HoldRenderer.render(wall, middleHold(), false, 0.01);
+
+        // then: the hold keeps the least radius
+        int radius = HoldRenderer.MIN_HOLD_RADIUS;
+        assertEquals(
+            HoldRenderer.HOLD_COLOUR.getRGB(),
+            route.getRGB(middle - radius + 1, middle)
+        );
+    }
+
+    @Test
+    void rendersNoHolds() {
+        // given: a wall
+        BufferedImage wall = wall(BufferedImage.TYPE_INT_RGB);
+
+        // when: rendering a route of no holds
+        BufferedImage route = HoldRenderer.render(wall, new JSONArray(), false);
+
+        // then: the route image is the wall
+        assertEquals(SIZE, route.getWidth());
+        assertEquals(SIZE, route.getHeight());
+        assertEquals(
+            TestImages.colour(TestImages.TOP_RIGHT), route.getRGB(SIZE - 1, 0)
+        );
+        assertEquals(
+            TestImages.colour(TestImages.BOTTOM_LEFT), route.getRGB(0, SIZE - 1)
+        );
+    }
+
+    @Test
+    void keepsAlphaOnlyWhenAsked() {
+        // given: a transparent wall
+        BufferedImage wall = wall(BufferedImage.TYPE_INT_ARGB);
+
+        // then: transparency is kept only when the format supports it
+        assertTrue(HoldRenderer.render(wall, middleHold(), true)
+            .getColorModel().hasAlpha());
+        assertFalse(HoldRenderer.render(wall, middleHold(), false)
+            .getColorModel().hasAlpha());
+    }
+
+    @Test
+    void rendersFiles(@TempDir final Path dir) throws IOException {
+        // given: a wall image file
+        File wallImage = TestImages.quadrants(dir, "wall.png", SIZE, SIZE);
+        File routeImage = dir.resolve("r1-wall.jpg").toFile();
+
+        // when: rendering the route to a file of another format
+        HoldRenderer.render(wallImage, routeImage, middleHold());
+
+        // then: the route image is written in that format, over the wall
+        BufferedImage route = ImageIO.read(routeImage);
+        assertNotNull(route);
+        assertEquals(SIZE, route.getWidth());
+        TestImages.assertNear(
+            TestImages.colour(TestImages.TOP_LEFT), route.getRGB(10, 10)
+        );
+        TestImages.assertNear(
+            TestImages.colour(TestImages.BOTTOM_RIGHT),
+            route.getRGB(SIZE - 10, SIZE - 10)
+        );
+    }
+
+    @Test
+    void renderingMissingWallFails(@TempDir final Path dir) {
+        // given: a wall image file that does not exist
+        File wallImage = dir.resolve("missing.jpg").toFile();
+        File routeImage = dir.resolve("r1-missing.jpg").toFile();
+
+        // then: rendering throws, writing nothing
+        assertThrows(IOException.class, () ->
+            HoldRenderer.render(wallImage, routeImage, middleHold())
+        );
+        assertFalse(routeImage.exists());
+    }
+
+    @Test
+    void renderingUnknownFormatFails(@TempDir final Path dir)
+        throws IOException {
+        // given: a wall image file and a route image of no known format
+        File wallImage = TestImages.quadrants(dir, "wall.png", SIZE, SIZE);
+        File routeImage = dir.resolve("r1-wall.unknown").toFile();
+
+        // then: rendering throws
+        assertThrows(IOException.class, () ->
+            HoldRenderer.render(wallImage, routeImage, middleHold())
+        );
+    }
+
+    @Test
+    void formatFromExtension() {
+        assertEquals("jpg", HoldRenderer.formatName(new File("r1-a.JPG")));
+        assertEquals("", HoldRenderer.formatName(new File("noextension")));
+        assertFalse(HoldRenderer.supportsAlpha(new File("a.jpeg")));
+        assertTrue(HoldRenderer.supportsAlpha(new File("a.png")));
+    }
+
+    @Test
+    void overlaySvgMatchesRender() {
+        // when: drawing the middle hold as an SVG overlay
+        String svg = HoldRenderer.overlaySvg(middleHold(), SIZE, SIZE);
+
+        // then: the circle is centred on the rendered pixel, its outer
+        // edge at the hold radius
+        assertTrue(svg.startsWith("<svg"));
+        assertTrue(svg.contains("viewBox=\"0 0 200 200\""));
+        assertTrue(svg.contains("stroke=\"#ff0000\""));
+        assertTrue(svg.contains("<circle cx=\"100.5\" cy=\"100.5\""));
+        assertTrue(svg.contains("r=\"23.0\""));
+    }
+
+    @Test
+    void overlayJSON() {
+        // when: describing the middle hold as a JSON overlay
+        JSONObject overlay = HoldRenderer.overlayJSON(middleHold(), SIZE, 100);
+
+        // then: the wall size, circle style and holds are given
+        assertEquals(SIZE, overlay.getInt("width"));
+        assertEquals(100, overlay.getInt("height"));
+        assertEquals(HoldRenderer.HOLD_RADIUS, overlay.getInt("radius"));
+        assertEquals(
+            HoldRenderer.HOLD_OUTLINE_WIDTH, overlay.getInt("strokeWidth")
+        );
+        assertEquals("#ff0000", overlay.getString("colour"));
+        assertEquals(
+            0.5, overlay.getJSONArray("holds").getJSONObject(0).getDouble("x")
+        );
+    }
+}
@@ -0,0 +1,135 @@
+package pbrg.webservices.utils;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import org.json.JSONArray;
+import org.junit.jupiter.api.Test;
+
+class HoldTableTest {
+
+    /** The shipped cached routes. */
+    private static final File CACHE_FILE =
+        new File("scripts/python/warwick-routes-cached-v4-9.bin");
+
+    /** A three hold test wall. */
+    private static final HoldTable TABLE = new HoldTable(
+        new double[] {0.1, 0.5, 0.9}, new double[] {0.2, 0.5, 0.8}
+    );
+
+    /**
+     * Build a route from x, y pairs.
+     * @param coordinates x, y pairs
+     * @return the route
+     */
+    private static JSONArray route(final double... coordinates) {
+        JSONArray route = new JSONArray();
+        for (int i = 0; i < coordinates.length; i += 2) {
+            route.put(RouteGenerator.hold(coordinates[i], coordinates[i + 1]));
+        }
+        return route;
+    }
+
+    @Test
+    void snapsToNearestHold() {
+        assertEquals(0, TABLE.snap(0.101, 0.199));
+        assertEquals(2, TABLE.snap(0.9, 0.8));
+        assertEquals(-1, TABLE.snap(0.3, 0.3));
+    }
+
+    @Test
+    void routeBitsRoundTrip() {
+        // given: a route slightly off its holds, out of id order
+        JSONArray route = route(0.899, 0.801, 0.1, 0.2);
+
+        // when: encoded as a bitset
+        long[] bits = TABLE.toBits(route);
+
+        // then: the holds are set, and decode to the canonical holds
+        assertNotNull(bits);
+        assertArrayEquals(new long[] {0b101}, bits);
+        assertEquals(
+            route(0.1, 0.2, 0.9, 0.8).toString(),
+            TABLE.toHolds(bits).toString()
+        );
+    }
+
+    @Test
+    void offWallRouteHasNoBits() {
+        assertNull(TABLE.toBits(route(0.1, 0.2, 0.3, 0.3)));
+        assertNull(TABLE.canonicalise(route(0.3, 0.3)));
+    }
+
+    @Test
+    void canonicaliseKeepsOrder() {
+        assertEquals(
+            route(0.9, 0.8, 0.1, 0.2).toString(),
+            TABLE.canonicalise(route(0.899, 0.801, 0.1, 0.2)).toString()
+        );
+    }
+
+    @Test
+    void jsonRoundTrip() {
+        HoldTable parsed = HoldTable.fromJSON(TABLE.toJSON().toString());
+        assertNotNull(parsed);
+        assertEquals(TABLE.size(), parsed.size());
+        assertEquals(1, parsed.snap(0.5, 0.5));
+    }
+
+    @Test
+    void nonTableContentIsNotParsed() {
+        assertNull(HoldTable.fromJSON(null));
+        assertNull(HoldTable.fromJSON("MoonBoard"));
+        assertNull(HoldTable.fromJSON("{\"holds\": 3}"));
+    }
+
+    @Test
+    void fromRoutesMergesNearbyHolds() {
+        // given: routes sharing a hold, slightly apart
+        List<JSONArray> routes = List.of(
+            route(0.9, 0.8, 0.1, 0.2), route(0.101, 0.2, 0.5, 0.5)
+        );
+
+        // when: building the hold table
+        HoldTable table = HoldTable.fromRoutes(routes);
+
+        // then: three holds, top to bottom
+        assertEquals(3, table.size());
+        assertEquals(0, table.snap(0.1, 0.2));
+        assertEquals(2, table.snap(0.9, 0.8));
+    }
+
+    @Test
+    void unpairedCoordinates() {
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> new HoldTable(new double[] {0.1}, new double[0])
+        );
+    }
+
+    @Test
+    void everyGeneratedRouteIsOnTheMoonBoard() throws IOException {
+        // given: the MoonBoard holds
+        RouteGenerator generator = new RouteGenerator(CACHE_FILE);
+        HoldTable table = generator.getHoldTable();
+        assertEquals(2, table.words());
+
+        // then: every cached and static route snaps to them
+        for (int grade = RouteGenerator.MIN_GRADE;
+             grade <= RouteGenerator.MAX_GRADE; grade++) {
+            assertNotNull(table.toBits(generator.generate(grade)));
+            for (int i = 0; i < generator.routeCount(grade); i++) {
+                long[] bits = table.toBits(generator.getRoute(grade, i));
+                assertNotNull(bits);
+                assertTrue(RouteBits.count(bits) > 0);
+            }
+        }
+    }
+}
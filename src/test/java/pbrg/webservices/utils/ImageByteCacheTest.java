@@ -0,0 +1,229 @@
+package pbrg.webservices.utils;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import javax.imageio.ImageIO;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ImageByteCacheTest {
+
+    /** Width and height of the test images. */
+    private static final int SIZE = 40;
+
+    /** Content type of the test images. */
+    private static final String CONTENT_TYPE = "image/png";
+
+    /**
+     * Write a quadrant image file.
+     * @param dir the directory
+     * @param name the file name
+     * @param turns quarter turns of the quadrant colours
+     * @return the image file
+     * @throws IOException if the file cannot be written
+     */
+    private static File image(
+        final Path dir, final String name, final int turns
+    ) throws IOException {
+        return TestImages.write(
+            TestImages.quadrants(
+                SIZE, SIZE, BufferedImage.TYPE_INT_RGB, turns
+            ),
+            dir, name
+        );
+    }
+
+    /**
+     * Decode the image an entry caches.
+     * @param entry the entry
+     * @return the image
+     * @throws IOException if the bytes cannot be written or decoded
+     */
+    private static BufferedImage decode(final ImageByteCache.Entry entry)
+        throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        entry.write(0, entry.length(), bytes);
+        return ImageIO.read(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+
+    @Test
+    void negativeBudget() {
+        assertThrows(
+            IllegalArgumentException.class, () -> new ImageByteCache(-1)
+        );
+    }
+
+    @Test
+    void readsOnce(@TempDir final Path dir) throws IOException {
+        // given: a cache and an image
+        ImageByteCache cache =
+            new ImageByteCache(ImageByteCache.DEFAULT_BUDGET);
+        File image = image(dir, "wall.png", 0);
+
+        // when: getting the image twice
+        ImageByteCache.Entry first = cache.get(image, CONTENT_TYPE);
+        ImageByteCache.Entry second = cache.get(image, CONTENT_TYPE);
+
+        // then: the image is read once, with its headers
+        assertNotNull(first);
+        assertSame(first, second);
+        assertEquals(1, cache.misses());
+        assertEquals(1, cache.hits());
+        assertEquals(image.length(), cache.bytes());
+        assertEquals(CONTENT_TYPE, first.getContentType());
+        assertEquals(image.lastModified(), first.getModified());
+        assertEquals(
+            ServletUtils.entityTag(
+                "wall.png", image.length(), image.lastModified()
+            ),
+            first.getEntityTag()
+        );
+    }
+
+    @Test
+    void writesBytes(@TempDir final Path dir) throws IOException {
+        // given: a cached image
+        ImageByteCache cache =
+            new ImageByteCache(ImageByteCache.DEFAULT_BUDGET);
+        File image = image(dir, "wall.png", 0);
+        ImageByteCache.Entry entry = cache.get(image, CONTENT_TYPE);
+        assertNotNull(entry);
+
+        // when: writing all, then part, of it
+        ByteArrayOutputStream all = new ByteArrayOutputStream();
+        entry.write(0, entry.length(), all);
+        ByteArrayOutputStream part = new ByteArrayOutputStream();
+        entry.write(10, 5, part);
+
+        // then: the file's bytes are written, and the entry is unchanged
+        byte[] file = Files.readAllBytes(image.toPath());
+        assertArrayEquals(file, all.toByteArray());
+        assertArrayEquals(
+            Arrays.copyOfRange(file, 10, 15), part.toByteArray()
+        );
+        assertEquals(image.length(), entry.length());
+
+        // and they decode to the image, its quadrants in place
+        BufferedImage decoded = decode(entry);
+        assertEquals(
+            TestImages.colour(TestImages.TOP_RIGHT),
+            decoded.getRGB(SIZE - 1, 0)
+        );
+        assertEquals(
+            TestImages.colour(TestImages.BOTTOM_LEFT),
+            decoded.getRGB(0, SIZE - 1)
+        );
+    }
+
+    @Test
+    void readsChangedImage(@TempDir final Path dir) throws IOException {
+        // given: a cached image
+        ImageByteCache cache =
+            new ImageByteCache(ImageByteCache.DEFAULT_BUDGET);
+        File image = image(dir, "wall.png", 0);
+        ImageByteCache.Entry first = cache.get(image, CONTENT_TYPE);
+        assertNotNull(first);
+
+        // when: the image changes
+        image(dir, "wall.png", 1);
+        Files.setLastModifiedTime(
+            image.toPath(), FileTime.fromMillis(first.getModified() + 1000)
+        );
+        ImageByteCache.Entry second = cache.get(image, CONTENT_TYPE);
+
+        // then: it is read again, replacing the stale copy
+        assertNotNull(second);
+        assertNotEquals(first.getEntityTag(), second.getEntityTag());
+        assertEquals(2, cache.misses());
+        assertEquals(1, cache.size());
+        assertEquals(image.length(), cache.bytes());
+        assertEquals(
+            TestImages.colour(TestImages.TOP_LEFT, 1),
+            decode(second).getRGB(0, 0)
+        );
+    }
+
+    @Test
+    void evictsLeastRecentlyUsed(@TempDir final Path dir)
+        throws IOException {
+        // given: a cache of two images
+        File a = image(dir, "a.png", 0);
+        File b = image(dir, "b.png", 1);
+        File c = image(dir, "c.png", 2);
+        ImageByteCache cache = new ImageByteCache(Math.max(
+            a.length() + b.length(), a.length() + c.length()
+        ));
+        cache.get(a, CONTENT_TYPE);
+        cache.get(b, CONTENT_TYPE);
+
+        // when: using a, then getting a third image
+        cache.get(a, CONTENT_TYPE);
+        cache.get(c, CONTENT_TYPE);
+
+        // then: b is evicted, a and c are kept
+        assertEquals(1, cache.evictions());
+        assertEquals(2, cache.size());
+        assertEquals(a.length() + c.length(), cache.bytes());
+        long hits = cache.hits();
+        cache.get(a, CONTENT_TYPE);
+        cache.get(c, CONTENT_TYPE);
+        assertEquals(hits + 2, cache.hits());
+
+        // and the metrics report the same
+        JSONObject metrics = cache.getMetrics();
+        assertEquals(cache.hits(), metrics.getLong("hits"));
+        assertEquals(cache.misses(), metrics.getLong("misses"));
+        assertEquals(1, metrics.getLong("evictions"));
+        assertEquals(2, metrics.getInt("images"));
+    }
+
+    @Test
+    void imageOverBudgetNotCached(@TempDir final Path dir)
+        throws IOException {
+        // given: a cache smaller than an image
+        File image = image(dir, "wall.png", 0);
+        ImageByteCache cache = new ImageByteCache(image.length() - 1);
+
+        // when, then: the image is not cached
+        assertNull(cache.get(image, CONTENT_TYPE));
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.bytes());
+    }
+
+    @Test
+    void missingImage(@TempDir final Path dir) {
+        ImageByteCache cache =
+            new ImageByteCache(ImageByteCache.DEFAULT_BUDGET);
+        assertThrows(
+            FileNotFoundException.class,
+            () -> cache.get(dir.resolve("none.png").toFile(), CONTENT_TYPE)
+        );
+    }
+
+    @Test
+    void clear(@TempDir final Path dir) throws IOException {
+        ImageByteCache cache =
+            new ImageByteCache(ImageByteCache.DEFAULT_BUDGET);
+        cache.get(image(dir, "wall.png", 0), CONTENT_TYPE);
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.bytes());
+    }
+}
@@ -0,0 +1,129 @@
+package pbrg.webservices.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import javax.imageio.ImageIO;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ImagePlaceholdersTest {
+
+    /** Digits of the base 83 encoding. */
+    private static final String DIGITS = "0123456789"
+        + "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz"
+        + "#$%*+,-.:;=?@[]^_{|}~";
+
+    /**
+     * Create an image of one colour.
+     * @param width the width
+     * @param height the height
+     * @param colour the colour
+     * @return the image
+     */
+    private static BufferedImage solid(
+        final int width, final int height, final Color colour
+    ) {
+        BufferedImage image =
+            new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(colour);
+        graphics.fillRect(0, 0, width, height);
+        graphics.dispose();
+        return image;
+    }
+
+    /**
+     * Decode base 83 digits.
+     * @param digits the digits
+     * @return the value
+     */
+    private static int decode83(final String digits) {
+        int value = 0;
+        for (char digit : digits.toCharArray()) {
+            value = value * DIGITS.length() + DIGITS.indexOf(digit);
+        }
+        return value;
+    }
+
+    @Test
+    void encodesSizeAndAverageColour() {
+        // given: an image of one colour, wider than the sample
+        Color colour = new Color(200, 30, 90);
+        BufferedImage image = solid(100, 60, colour);
+
+        // when: computing its placeholder
+        String placeholder = ImagePlaceholders.encode(image);
+
+        // then: it names 4 x 3 components, and the colour as average
+        assertEquals(ImagePlaceholders.LENGTH, placeholder.length());
+        assertEquals(
+            (ImagePlaceholders.COMPONENTS_X - 1)
+                + (ImagePlaceholders.COMPONENTS_Y - 1) * 9,
+            decode83(placeholder.substring(0, 1))
+        );
+        assertEquals(
+            colour.getRGB() & 0xFFFFFF,
+            decode83(placeholder.substring(2, 6))
+        );
+    }
+
+    @Test
+    void differentImagesDiffer() {
+        // given: two images, one dark above and one dark below
+        BufferedImage top = solid(40, 30, Color.WHITE);
+        BufferedImage bottom = solid(40, 30, Color.WHITE);
+        for (int x = 0; x < 40; x++) {
+            for (int y = 0; y < 15; y++) {
+                top.setRGB(x, y, 0);
+                bottom.setRGB(x, 29 - y, 0);
+            }
+        }
+
+        // then: they have the same average, but different placeholders
+        String topPlaceholder = ImagePlaceholders.encode(top);
+        String bottomPlaceholder = ImagePlaceholders.encode(bottom);
+        assertEquals(
+            topPlaceholder.substring(0, 6), bottomPlaceholder.substring(0, 6)
+        );
+        assertNotEquals(topPlaceholder, bottomPlaceholder);
+        assertEquals(topPlaceholder, ImagePlaceholders.encode(top));
+    }
+
+    @Test
+    void encodesFiles(@TempDir final Path dir) throws IOException {
+        // given: an image file
+        File file = dir.resolve("wall.png").toFile();
+        ImageIO.write(solid(300, 200, Color.BLUE), "png", file);
+
+        // when: computing its placeholder, decoded subsampled
+        String placeholder = ImagePlaceholders.of(file);
+
+        // then: it has the image's colour
+        assertNotNull(placeholder);
+        assertEquals(0x0000FF, decode83(placeholder.substring(2, 6)));
+    }
+
+    @Test
+    void unreadableFileHasNone(@TempDir final Path dir) {
+        assertNull(ImagePlaceholders.of(dir.resolve("none.jpg").toFile()));
+    }
+
+    @Test
+    void convertsChannelsBothWays() {
+        for (int channel = 0; channel <= 255; channel++) {
+            assertEquals(
+                channel,
+                ImagePlaceholders.toSrgb(ImagePlaceholders.toLinear(channel))
+            );
+        }
+    }
+}
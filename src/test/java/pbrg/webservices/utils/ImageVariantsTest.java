@@ -0,0 +1,270 @@
+package pbrg.webservices.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import javax.imageio.ImageIO;
+import org.json.JSONArray;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ImageVariantsTest {
+
+    /** Width of the test images. */
+    private static final int WIDTH = 600;
+
+    /** Height of the test images. */
+    private static final int HEIGHT = 900;
+
+    /**
+     * Write a quadrant image file.
+     * @param dir the directory
+     * @return the image file
+     * @throws IOException if the file cannot be written
+     */
+    private static File image(final Path dir) throws IOException {
+        return TestImages.quadrants(dir, "wall.png", WIDTH, HEIGHT);
+    }
+
+    @Test
+    void testPrivateConstructor() throws NoSuchMethodException {
+        // get constructor
+        Constructor<ImageVariants> constructor =
+            ImageVariants.class.getDeclaredConstructor();
+
+        // ensure calling constructor throws an IllegalStateException
+        constructor.setAccessible(true);
+        InvocationTargetException e = assertThrows(
+            InvocationTargetException.class, constructor::newInstance
+        );
+        assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+
+    @Test
+    void parseWidth() {
+        // names
+        assertEquals(ImageVariants.FULL, ImageVariants.parseWidth(null));
+        assertEquals(256, ImageVariants.parseWidth("thumb"));
+        assertEquals(768, ImageVariants.parseWidth(" Medium "));
+        assertEquals(ImageVariants.FULL, ImageVariants.parseWidth("full"));
+
+        // widths round up to a variant width
+        assertEquals(128, ImageVariants.parseWidth(1));
+        assertEquals(512, ImageVariants.parseWidth("300"));
+        assertEquals(ImageVariants.FULL, ImageVariants.parseWidth(10000));
+
+        // invalid
+        assertNull(ImageVariants.parseWidth("huge"));
+        assertNull(ImageVariants.parseWidth(0));
+        assertNull(ImageVariants.parseWidth(-1));
+    }
+
+    @Test
+    void variantFileIsBesideOriginal() {
+        assertEquals(
+            new File("/images/r1-wall@w256.jpg"),
+            ImageVariants.variantFile(new File("/images/r1-wall.jpg"), 256)
+        );
+    }
+
+    @Test
+    void createsAndCachesVariant(@TempDir final Path dir)
+        throws IOException {
+        // given: an image
+        File original = image(dir);
+
+        // when: getting a variant
+        File variant = ImageVariants.variant(original, 256);
+
+        // then: it is downscaled, keeping the aspect ratio and layout
+        BufferedImage scaled = ImageIO.read(variant);
+        assertEquals(256, scaled.getWidth());
+        assertEquals(384, scaled.getHeight());
+        assertEquals(
+            TestImages.colour(TestImages.TOP_LEFT), scaled.getRGB(64, 96)
+        );
+        assertEquals(
+            TestImages.colour(TestImages.TOP_RIGHT), scaled.getRGB(192, 96)
+        );
+        assertEquals(
+            TestImages.colour(TestImages.BOTTOM_LEFT), scaled.getRGB(64, 288)
+        );
+        assertEquals(
+            TestImages.colour(TestImages.BOTTOM_RIGHT),
+            scaled.getRGB(192, 288)
+        );
+        assertEquals(original.lastModified(), variant.lastModified());
+
+        // then: it is cached, the original not read again
+        long modified = original.lastModified();
+        Files.write(original.toPath(), new byte[] {0});
+        assertTrue(original.setLastModified(modified));
+        assertEquals(variant, ImageVariants.variant(original, 256));
+    }
+
+    @Test
+    void subsampling() {
+        // keeps at least twice the width
+        assertEquals(1, ImageVariants.subsampling(WIDTH, 256));
+        assertEquals(2, ImageVariants.subsampling(WIDTH, 128));
+        assertEquals(11, ImageVariants.subsampling(6000, 256));
+        assertEquals(1, ImageVariants.subsampling(100, 256));
+    }
+
+    @Test
+    void decodesSubsampled(@TempDir final Path dir) throws IOException {
+        // given: an image
+        File original = image(dir);
+
+        // when: decoding it for a small width
+        BufferedImage decoded = ImageVariants.decode(original, WIDTH, 128);
+
+        // then: only every other pixel of every other row is read
+        assertEquals(WIDTH / 2, decoded.getWidth());
+        assertEquals(HEIGHT / 2, decoded.getHeight());
+        assertEquals(BufferedImage.TYPE_INT_RGB, decoded.getType());
+        assertEquals(
+            TestImages.colour(TestImages.TOP_LEFT), decoded.getRGB(0, 0)
+        );
+        assertEquals(
+            TestImages.colour(TestImages.BOTTOM_RIGHT),
+            decoded.getRGB(WIDTH / 2 - 1, HEIGHT / 2 - 1)
+        );
+    }
+
+    @Test
+    void rendersRouteVariantFromWall(@TempDir final Path dir)
+        throws IOException {
+        // given: a wall, and a route image on it
+        File wall = image(dir);
+        JSONArray holds = new JSONArray().put(RouteGenerator.hold(0.5, 0.5));
+        File route = dir.resolve("r1-wall.png").toFile();
+        HoldRenderer.render(wall, route, holds);
+
+        // when: getting a route variant
+        File variant = ImageVariants.routeVariant(route, wall, holds, 128);
+
+        // then: the holds are drawn on the downscaled wall, at its scale
+        assertEquals(ImageVariants.variantFile(route, 128), variant);
+        assertEquals(route.lastModified(), variant.lastModified());
+        BufferedImage scaled = ImageIO.read(variant);
+        assertEquals(128, scaled.getWidth());
+        assertEquals(192, scaled.getHeight());
+        int radius = HoldRenderer.HOLD_RADIUS * 128 / WIDTH;
+        assertEquals(
+            HoldRenderer.HOLD_COLOUR.getRGB(), scaled.getRGB(64 - radius, 96)
+        );
+        assertEquals(
+            TestImages.colour(TestImages.BOTTOM_RIGHT), scaled.getRGB(66, 98)
+        );
+        assertEquals(
+            TestImages.colour(TestImages.TOP_LEFT), scaled.getRGB(32, 48)
+        );
+
+        // then: it is cached, and full size is the route image
+        assertEquals(
+            variant, ImageVariants.routeVariant(route, wall, holds, 128)
+        );
+        assertEquals(route, ImageVariants.routeVariant(
+            route, wall, holds, ImageVariants.FULL
+        ));
+    }
+
+    @Test
+    void rendersRouteVariantBeforeRouteImage(@TempDir final Path dir)
+        throws IOException {
+        // given: a wall, and a route not yet rendered
+        File wall = image(dir);
+        JSONArray holds = new JSONArray().put(RouteGenerator.hold(0.5, 0.5));
+        File route = dir.resolve("r1-wall.png").toFile();
+
+        // when: getting a route variant
+        File variant = ImageVariants.routeVariant(route, wall, holds, 128);
+
+        // then: it is rendered from the wall, without the route image
+        assertEquals(ImageVariants.variantFile(route, 128), variant);
+        assertEquals(wall.lastModified(), variant.lastModified());
+        assertFalse(route.exists());
+
+        // when: the route image is rendered, then: the variant is redone
+        HoldRenderer.render(wall, route, holds);
+        assertTrue(route.setLastModified(wall.lastModified() + 1000));
+        assertEquals(
+            variant, ImageVariants.routeVariant(route, wall, holds, 128)
+        );
+        assertEquals(route.lastModified(), variant.lastModified());
+    }
+
+    @Test
+    void replacesStaleVariant(@TempDir final Path dir) throws IOException {
+        // given: a variant of an image
+        File original = image(dir);
+        File variant = ImageVariants.variant(original, 128);
+
+        // when: the image changes
+        TestImages.write(
+            TestImages.quadrants(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB, 1),
+            dir, "wall.png"
+        );
+        assertTrue(original.setLastModified(original.lastModified() + 1000));
+
+        // then: the variant is made again
+        assertEquals(variant, ImageVariants.variant(original, 128));
+        assertEquals(original.lastModified(), variant.lastModified());
+        assertEquals(
+            TestImages.colour(TestImages.TOP_LEFT, 1),
+            ImageIO.read(variant).getRGB(0, 0)
+        );
+    }
+
+    @Test
+    void servesOriginalWhenNoWider(@TempDir final Path dir)
+        throws IOException {
+        // given: an image
+        File original = image(dir);
+
+        // then: the original is served for its size or wider
+        assertEquals(original, ImageVariants.variant(original, 768));
+        assertEquals(
+            original, ImageVariants.variant(original, ImageVariants.FULL)
+        );
+        assertFalse(ImageVariants.variantFile(original, 768).exists());
+    }
+
+    @Test
+    void deletesVariants(@TempDir final Path dir) throws IOException {
+        // given: variants of an image
+        File original = image(dir);
+        File small = ImageVariants.variant(original, 128);
+        File large = ImageVariants.variant(original, 512);
+
+        // when: deleting them
+        ImageVariants.deleteVariants(original);
+
+        // then: only the original is left
+        assertFalse(small.exists());
+        assertFalse(large.exists());
+        assertTrue(original.exists());
+    }
+
+    @Test
+    void unreadableOriginal(@TempDir final Path dir) {
+        // given: an image file that does not exist
+        File original = dir.resolve("missing.png").toFile();
+
+        // then: no variant can be made
+        assertThrows(
+            IOException.class, () -> ImageVariants.variant(original, 128)
+        );
+    }
+}
@@ -0,0 +1,132 @@
+package pbrg.webservices.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class MappedRouteCorpusTest {
+
+    /** Largest error of a 16-bit fixed point coordinate. */
+    private static final double TOLERANCE =
+        0.5 / MappedRouteCorpus.FIXED_POINT_SCALE;
+
+    /** The python scripts directory. */
+    private static final String SCRIPTS_DIR =
+        System.getProperty("user.dir") + "/scripts/python/";
+
+    /** The JSON cached routes file. */
+    private static final File JSON_FILE =
+        new File(SCRIPTS_DIR, "warwick-routes-cached-v4-9.json");
+
+    /** The binary cached routes file, shipped alongside the JSON. */
+    private static final File CORPUS_FILE =
+        new File(SCRIPTS_DIR, "warwick-routes-cached-v4-9.bin");
+
+    /** The JSON routes. */
+    private static JsonRouteCorpus jsonCorpus;
+
+    @BeforeAll
+    static void loadJson() throws IOException {
+        jsonCorpus = new JsonRouteCorpus(JSON_FILE);
+    }
+
+    /**
+     * Assert a corpus holds the JSON routes, within the fixed point error.
+     * @param corpus the corpus
+     */
+    private static void assertMatchesJson(final RouteCorpus corpus) {
+        for (int grade = 0; grade <= RouteGenerator.MAX_GRADE; grade++) {
+            assertEquals(
+                jsonCorpus.routeCount(grade), corpus.routeCount(grade)
+            );
+            for (int i = 0; i < jsonCorpus.routeCount(grade); i++) {
+                JSONArray expected = jsonCorpus.getRoute(grade, i);
+                JSONArray actual = corpus.getRoute(grade, i);
+                assertEquals(expected.length(), actual.length());
+                for (int j = 0; j < expected.length(); j++) {
+                    JSONObject expectedHold = expected.getJSONObject(j);
+                    JSONObject actualHold = actual.getJSONObject(j);
+                    assertEquals(
+                        expectedHold.getDouble("x"),
+                        actualHold.getDouble("x"), TOLERANCE
+                    );
+                    assertEquals(
+                        expectedHold.getDouble("y"),
+                        actualHold.getDouble("y"), TOLERANCE
+                    );
+                }
+            }
+        }
+    }
+
+    @Test
+    void roundTrip(@TempDir final Path dir) throws IOException {
+        // when: converting the JSON to a route corpus, and mapping it
+        File corpusFile = dir.resolve("routes.bin").toFile();
+        MappedRouteCorpus.convert(JSON_FILE, corpusFile);
+
+        // then: it holds the same routes
+        assertTrue(MappedRouteCorpus.isRouteCorpus(corpusFile));
+        assertMatchesJson(new MappedRouteCorpus(corpusFile));
+    }
+
+    @Test
+    void shippedCorpusMatchesJson() throws IOException {
+        // the shipped binary must be regenerated when the JSON changes
+        assertMatchesJson(new MappedRouteCorpus(CORPUS_FILE));
+    }
+
+    @Test
+    void generatorLoadsEitherFormat() throws IOException {
+        RouteGenerator fromCorpus = new RouteGenerator(CORPUS_FILE);
+        RouteGenerator fromJson = new RouteGenerator(JSON_FILE);
+        for (int grade = 0; grade <= RouteGenerator.MAX_GRADE; grade++) {
+            assertEquals(
+                fromJson.routeCount(grade), fromCorpus.routeCount(grade)
+            );
+        }
+    }
+
+    @Test
+    void jsonIsNotRouteCorpus() throws IOException {
+        assertFalse(MappedRouteCorpus.isRouteCorpus(JSON_FILE));
+    }
+
+    @Test
+    void truncatedCorpus(@TempDir final Path dir) throws IOException {
+        // given: a route corpus missing its last byte
+        byte[] bytes = Files.readAllBytes(CORPUS_FILE.toPath());
+        Path truncated = dir.resolve("truncated.bin");
+        Files.write(truncated, Arrays.copyOf(bytes, bytes.length - 1));
+
+        // then: it is rejected
+        assertThrows(
+            IOException.class,
+            () -> new MappedRouteCorpus(truncated.toFile())
+        );
+    }
+
+    @Test
+    void fixedPointRoundTrip() {
+        double[] values = {0, 0.25, 0.5, 0.8517037963867188, 1};
+        for (double value : values) {
+            assertEquals(
+                value,
+                MappedRouteCorpus.decode(MappedRouteCorpus.encode(value)),
+                TOLERANCE
+            );
+        }
+    }
+}
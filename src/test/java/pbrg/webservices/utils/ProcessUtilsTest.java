@@ -1,6 +1,7 @@
 package pbrg.webservices.utils;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -11,6 +12,7 @@ import static pbrg.webservices.utils.ProcessUtils.collectOutput;
 import static pbrg.webservices.utils.ProcessUtils.collectOutputAsList;
 import static pbrg.webservices.utils.ProcessUtils.getExitCode;
 import static pbrg.webservices.utils.ProcessUtils.readLines;
+import static pbrg.webservices.utils.ProcessUtils.runProcess;
 import static pbrg.webservices.utils.ProcessUtils.runProcessBuilder;
 import static pbrg.webservices.utils.ProcessUtils.runProcessEnsureSuccess;
 
@@ -21,11 +23,15 @@ import java.io.InputStreamReader;
 import java.io.UncheckedIOException;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.time.Duration;
 import java.util.List;
 import org.junit.jupiter.api.Test;
 
 class ProcessUtilsTest {
 
+    /** Bytes written to each stream, far more than a pipe buffer. */
+    private static final int LARGE_OUTPUT_BYTES = 1024 * 1024;
+
     @Test
     void testPrivateConstructor() {
         // get constructor
@@ -212,4 +218,59 @@ class ProcessUtilsTest {
             }
         });
     }
+
+    @Test
+    void runProcessDrainsBothStreams() throws IOException {
+        // given: a process filling both stdout and stderr
+        ProcessBuilder pb = new ProcessBuilder(
+            "sh", "-c",
+            "head -c " + LARGE_OUTPUT_BYTES + " /dev/zero | tr '\\0' o >&2;"
+                + " head -c " + LARGE_OUTPUT_BYTES + " /dev/zero | tr '\\0' o"
+        );
+
+        // when: running it
+        ProcessResult result = runProcess(
+            pb, Duration.ofSeconds(30), 2 * LARGE_OUTPUT_BYTES
+        );
+
+        // then: it completes, with all output captured
+        assertTrue(result.isSuccess());
+        assertFalse(result.isTruncated());
+        assertEquals(LARGE_OUTPUT_BYTES, result.getStdout().length());
+        assertEquals(LARGE_OUTPUT_BYTES, result.getStderr().length());
+    }
+
+    @Test
+    void runProcessKilledAtDeadline() throws IOException {
+        // given: a process slower than its deadline
+        ProcessBuilder pb = new ProcessBuilder("sleep", "10");
+
+        // when: running it
+        ProcessResult result = runProcess(
+            pb, Duration.ofMillis(200), ProcessUtils.DEFAULT_MAX_OUTPUT_BYTES
+        );
+
+        // then: it is killed at the deadline
+        assertTrue(result.isTimedOut());
+        assertFalse(result.isSuccess());
+        assertEquals(ProcessResult.TIMED_OUT_EXIT_CODE, result.getExitCode());
+        assertTrue(result.getDuration().compareTo(Duration.ofSeconds(5)) < 0);
+    }
+
+    @Test
+    void runProcessTruncatesOutput() throws IOException {
+        // given: a process writing more than the output limit
+        final int limit = 16;
+        ProcessBuilder pb = new ProcessBuilder(
+            "sh", "-c", "head -c " + LARGE_OUTPUT_BYTES + " /dev/zero"
+        );
+
+        // when: running it
+        ProcessResult result = runProcess(pb, Duration.ofSeconds(30), limit);
+
+        // then: it completes, keeping only the first bytes
+        assertTrue(result.isSuccess());
+        assertTrue(result.isTruncated());
+        assertEquals(limit, result.getStdout().length());
+    }
 }
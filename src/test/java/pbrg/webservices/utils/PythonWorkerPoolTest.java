@@ -0,0 +1,177 @@
+package pbrg.webservices.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class PythonWorkerPoolTest {
+
+    /** The average bouldering grade worldwide is V5. */
+    private static final int AVERAGE_GRADE = 5;
+
+    /** The number of workers in the test pool. */
+    private static final int POOL_SIZE = 2;
+
+    /** The python scripts directory. */
+    private static final String SCRIPTS_DIR =
+        System.getProperty("user.dir") + "/scripts/python/";
+
+    /** The route generation script. */
+    private static final File ROUTE_GEN_SCRIPT =
+        new File(SCRIPTS_DIR, "route_gen_moon_board.py");
+
+    /** The pool under test. */
+    private static PythonWorkerPool pool;
+
+    @BeforeAll
+    static void startPool() throws IOException {
+        pool = new PythonWorkerPool(
+            new File(SCRIPTS_DIR, "worker.py"), POOL_SIZE
+        );
+        pool.warm(ROUTE_GEN_SCRIPT);
+    }
+
+    @AfterAll
+    static void closePool() {
+        pool.close();
+    }
+
+    @Test
+    void callGenerateRoute() throws IOException {
+        // when: generating a route on a worker
+        JSONObject args = new JSONObject();
+        args.put("grade", AVERAGE_GRADE);
+        Object result = pool.call(
+            ROUTE_GEN_SCRIPT, "generate_route", args,
+            PythonWorkerPool.DEFAULT_DEADLINE
+        );
+
+        // then: a list of holds is returned
+        assertTrue(result instanceof JSONArray);
+        assertFalse(((JSONArray) result).isEmpty());
+        assertEquals(POOL_SIZE, pool.idleCount());
+    }
+
+    @Test
+    void callFailingFunction() {
+        // given: an invalid grade
+        JSONObject args = new JSONObject();
+        args.put("grade", -1);
+
+        // then: the python error is reported as an IOException
+        assertThrows(
+            IOException.class,
+            () -> pool.call(
+                ROUTE_GEN_SCRIPT, "generate_route", args,
+                PythonWorkerPool.DEFAULT_DEADLINE
+            )
+        );
+        assertEquals(POOL_SIZE, pool.idleCount());
+    }
+
+    @Test
+    void callPassingDeadline(@TempDir final Path dir) throws IOException {
+        // given: a function slower than the deadline
+        Path script = dir.resolve("slow.py");
+        Files.write(script, (
+            "import time\n\n\ndef wait(seconds):\n"
+                + "    time.sleep(seconds)\n    return seconds\n"
+        ).getBytes(StandardCharsets.UTF_8));
+        JSONObject args = new JSONObject();
+        args.put("seconds", 10);
+
+        // then: the call fails
+        assertThrows(
+            IOException.class,
+            () -> pool.call(
+                script.toFile(), "wait", args, Duration.ofMillis(500)
+            )
+        );
+
+        // then: the worker was replaced, and the pool still serves calls
+        assertEquals(POOL_SIZE, pool.idleCount());
+        args.put("seconds", 0);
+        assertEquals(0, pool.call(
+            script.toFile(), "wait", args, PythonWorkerPool.DEFAULT_DEADLINE
+        ));
+    }
+
+    @Test
+    void callWithNoTimeLeftKeepsWorkers() {
+        // when: calling with no time left
+        assertThrows(
+            IOException.class,
+            () -> pool.call(
+                ROUTE_GEN_SCRIPT, "generate_route", new JSONObject(),
+                Duration.ZERO
+            )
+        );
+
+        // then: no worker was taken, or killed
+        assertEquals(POOL_SIZE, pool.idleCount());
+    }
+
+    @Test
+    void queuedCallGetsItsOwnDeadline(@TempDir final Path dir)
+        throws IOException, InterruptedException, ExecutionException {
+        // given: a single worker, and a function taking most of a deadline
+        Path script = dir.resolve("slow.py");
+        Files.write(script, (
+            "import time\n\n\ndef wait(seconds):\n"
+                + "    time.sleep(seconds)\n    return seconds\n"
+        ).getBytes(StandardCharsets.UTF_8));
+        JSONObject args = new JSONObject();
+        args.put("seconds", 1);
+        Duration deadline = Duration.ofSeconds(2);
+        ExecutorService callers = Executors.newFixedThreadPool(2);
+        try (PythonWorkerPool single = new PythonWorkerPool(
+            new File(SCRIPTS_DIR, "worker.py"), 1
+        )) {
+            // when: two calls share the worker
+            Callable<Object> call = () -> single.call(
+                script.toFile(), "wait", args, deadline
+            );
+            Future<Object> first = callers.submit(call);
+            Future<Object> second = callers.submit(call);
+
+            // then: the queued call does not spend its deadline waiting
+            assertEquals(1, first.get());
+            assertEquals(1, second.get());
+        } finally {
+            callers.shutdownNow();
+        }
+    }
+
+    @Test
+    void healthCheckKeepsWorkers() {
+        pool.checkHealth();
+        assertEquals(POOL_SIZE, pool.idleCount());
+    }
+
+    @Test
+    void missingWorkerScript() {
+        assertThrows(
+            IOException.class,
+            () -> new PythonWorkerPool(new File("/dev/null/", "worker.py"))
+        );
+    }
+}
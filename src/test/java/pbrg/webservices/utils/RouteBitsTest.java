@@ -0,0 +1,109 @@
+package pbrg.webservices.utils;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import org.junit.jupiter.api.Test;
+
+class RouteBitsTest {
+
+    /** Number of holds of the test bitsets, spanning two words. */
+    private static final int HOLDS = 70;
+
+    /**
+     * Build a bitset of hold ids.
+     * @param ids the hold ids
+     * @return the bitset
+     */
+    private static long[] bits(final int... ids) {
+        long[] bits = new long[RouteBits.words(HOLDS)];
+        for (int id : ids) {
+            RouteBits.set(bits, id);
+        }
+        return bits;
+    }
+
+    @Test
+    void testPrivateConstructor() throws NoSuchMethodException {
+        // get constructor
+        Constructor<RouteBits> constructor =
+            RouteBits.class.getDeclaredConstructor();
+
+        // ensure calling constructor throws an IllegalStateException
+        constructor.setAccessible(true);
+        InvocationTargetException e = assertThrows(
+            InvocationTargetException.class, constructor::newInstance
+        );
+        assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+
+    @Test
+    void setGetAndCount() {
+        long[] bits = bits(0, 63, 64, 69);
+        assertTrue(RouteBits.get(bits, 63));
+        assertTrue(RouteBits.get(bits, 64));
+        assertFalse(RouteBits.get(bits, 1));
+        assertEquals(4, RouteBits.count(bits));
+    }
+
+    @Test
+    void nextWalksSetHolds() {
+        long[] bits = bits(3, 64, 69);
+        assertEquals(3, RouteBits.next(bits, 0));
+        assertEquals(64, RouteBits.next(bits, 4));
+        assertEquals(69, RouteBits.next(bits, 65));
+        assertEquals(-1, RouteBits.next(bits, 70));
+        assertEquals(-1, RouteBits.next(bits, 128));
+    }
+
+    @Test
+    void overlapAndSameHolds() {
+        assertEquals(2, RouteBits.overlap(bits(1, 2, 65), bits(2, 65, 66)));
+        assertTrue(RouteBits.sameHolds(bits(1, 65), bits(65, 1)));
+        assertFalse(RouteBits.sameHolds(bits(1, 65), bits(1)));
+    }
+
+    @Test
+    void allSetsOnlyTheHolds() {
+        long[] all = RouteBits.all(HOLDS);
+        assertEquals(HOLDS, RouteBits.count(all));
+        assertEquals(-1, RouteBits.next(all, HOLDS));
+    }
+
+    @Test
+    void hexRoundTrip() {
+        long[] bits = bits(0, 63, 69);
+        String hex = RouteBits.toHex(bits);
+        assertEquals(2 * 16, hex.length());
+        assertArrayEquals(bits, RouteBits.fromHex(hex));
+    }
+
+    @Test
+    void invalidHex() {
+        assertNull(RouteBits.fromHex(null));
+        assertNull(RouteBits.fromHex("abc"));
+        assertNull(RouteBits.fromHex("zzzzzzzzzzzzzzzz"));
+    }
+
+    @Test
+    void fingerprintOfWallAndHolds() {
+        // given: the same holds, set in different orders
+        String fingerprint = RouteBits.fingerprint(1, bits(3, 64, 5));
+
+        // then: the same fingerprint, 64 hex digits
+        assertEquals(fingerprint, RouteBits.fingerprint(1, bits(64, 5, 3)));
+        assertEquals(64, fingerprint.length());
+        assertTrue(fingerprint.matches("[0-9a-f]+"));
+
+        // then: another wall, or other holds, differ
+        assertNotEquals(fingerprint, RouteBits.fingerprint(2, bits(3, 64, 5)));
+        assertNotEquals(fingerprint, RouteBits.fingerprint(1, bits(3, 64)));
+    }
+}
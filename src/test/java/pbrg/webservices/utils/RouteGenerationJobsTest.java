@@ -0,0 +1,125 @@
+package pbrg.webservices.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class RouteGenerationJobsTest {
+
+    /** The user submitting jobs. */
+    private static final int OWNER_ID = 7;
+
+    /** The route id returned by successful jobs. */
+    private static final int ROUTE_ID = 42;
+
+    /** Time allowed for a job to finish. */
+    private static final Duration WAIT = Duration.ofSeconds(5);
+
+    /** The jobs under test: one thread, one waiting job. */
+    private RouteGenerationJobs jobs;
+
+    @BeforeEach
+    void startJobs() {
+        jobs = new RouteGenerationJobs(1, 1, Duration.ofMinutes(1));
+    }
+
+    @AfterEach
+    void closeJobs() {
+        jobs.close();
+    }
+
+    @Test
+    void submitSucceeds() {
+        // when: submitting a job
+        RouteGenerationJobs.Job job = jobs.submit(OWNER_ID, () -> ROUTE_ID);
+        assertNotNull(job);
+
+        // then: it finishes with the route id
+        assertTrue(job.await(WAIT));
+        assertEquals(RouteGenerationJobs.Status.SUCCEEDED, job.getStatus());
+        assertEquals(ROUTE_ID, job.getRouteId());
+        assertNull(job.getError());
+        assertEquals(OWNER_ID, job.getOwnerId());
+        assertSame(job, jobs.get(job.getId()));
+
+        JSONObject json = job.toJSON();
+        assertEquals(job.getId(), json.getString("jobId"));
+        assertEquals("succeeded", json.getString("status"));
+        assertEquals(ROUTE_ID, json.getInt("routeId"));
+    }
+
+    @Test
+    void submitFails() {
+        // when: submitting a failing job
+        RouteGenerationJobs.Job job = jobs.submit(OWNER_ID, () -> {
+            throw new IOException("Route generation failed");
+        });
+        assertNotNull(job);
+
+        // then: it finishes with the error
+        assertTrue(job.await(WAIT));
+        assertEquals(RouteGenerationJobs.Status.FAILED, job.getStatus());
+        assertNull(job.getRouteId());
+        assertEquals("Route generation failed", job.getError());
+        assertEquals("failed", job.toJSON().getString("status"));
+    }
+
+    @Test
+    void submitRejectedWhenQueueFull() throws InterruptedException {
+        // given: a running job, and a waiting job
+        CountDownLatch release = new CountDownLatch(1);
+        RouteGenerationJobs.Job running = jobs.submit(OWNER_ID, () -> {
+            release.await();
+            return ROUTE_ID;
+        });
+        RouteGenerationJobs.Job waiting = jobs.submit(OWNER_ID, () -> ROUTE_ID);
+        assertNotNull(running);
+        assertNotNull(waiting);
+        assertFalse(running.await(Duration.ofMillis(100)));
+        assertEquals(RouteGenerationJobs.Status.RUNNING, running.getStatus());
+        assertEquals(RouteGenerationJobs.Status.PENDING, waiting.getStatus());
+
+        // then: another job is rejected
+        assertNull(jobs.submit(OWNER_ID, () -> ROUTE_ID));
+        assertEquals(2, jobs.size());
+
+        // when: the running job is released, both finish
+        release.countDown();
+        assertTrue(running.await(WAIT));
+        assertTrue(waiting.await(WAIT));
+    }
+
+    @Test
+    void finishedJobsExpire() throws InterruptedException {
+        // given: jobs kept for a moment
+        jobs.close();
+        jobs = new RouteGenerationJobs(1, 1, Duration.ofMillis(1));
+
+        // when: a job finishes, and its time to live passes
+        RouteGenerationJobs.Job job = jobs.submit(OWNER_ID, () -> ROUTE_ID);
+        assertNotNull(job);
+        assertTrue(job.await(WAIT));
+        Thread.sleep(10);
+        jobs.evictExpired();
+
+        // then: the job is gone
+        assertNull(jobs.get(job.getId()));
+        assertEquals(0, jobs.size());
+    }
+
+    @Test
+    void unknownJob() {
+        assertNull(jobs.get("not a job"));
+    }
+}
@@ -0,0 +1,109 @@
+package pbrg.webservices.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+class RouteGeneratorTest {
+
+    /** The average bouldering grade worldwide is V5. */
+    private static final int AVERAGE_GRADE = 5;
+
+    /** The number of holds in each cached route. */
+    private static final int HOLDS_PER_ROUTE = 8;
+
+    /** The number of holds in the static route. */
+    private static final int STATIC_ROUTE_HOLDS = 7;
+
+    /** The cached routes file. */
+    private static File cacheFile;
+
+    /** The generator under test. */
+    private static RouteGenerator generator;
+
+    @BeforeAll
+    static void loadGenerator() throws IOException {
+        cacheFile = new File(
+            System.getProperty("user.dir") + "/scripts/python/",
+            "warwick-routes-cached-v4-9.json"
+        );
+        generator = new RouteGenerator(cacheFile);
+    }
+
+    @Test
+    void generateCachedGrade() {
+        // when: generating a route of a cached grade
+        JSONArray route = generator.generate(AVERAGE_GRADE);
+
+        // then: the route has x, y holds
+        assertEquals(HOLDS_PER_ROUTE, route.length());
+        for (int i = 0; i < route.length(); i++) {
+            JSONObject hold = route.getJSONObject(i);
+            assertTrue(hold.has("x"));
+            assertTrue(hold.has("y"));
+        }
+    }
+
+    @Test
+    void generateStaticGrades() {
+        int[] staticGrades = {1, 2, 3, 10, 14};
+        for (int grade : staticGrades) {
+            JSONArray route = generator.generate(grade);
+            assertEquals(STATIC_ROUTE_HOLDS, route.length());
+        }
+    }
+
+    @Test
+    void generateInvalidGrade() {
+        int[] invalidGrades = {0, -1, 15};
+        for (int grade : invalidGrades) {
+            assertThrows(
+                IllegalArgumentException.class,
+                () -> generator.generate(grade)
+            );
+        }
+    }
+
+    @Test
+    void cachedRoutesMatchFile() throws IOException {
+        // given: the cached routes file parsed directly
+        JSONObject routes = new JSONObject(new String(
+            Files.readAllBytes(cacheFile.toPath()), StandardCharsets.UTF_8
+        ));
+        JSONArray graded = routes.getJSONArray(String.valueOf(AVERAGE_GRADE));
+
+        // then: every route is loaded as-is
+        assertEquals(graded.length(), generator.routeCount(AVERAGE_GRADE));
+        for (int i = 0; i < graded.length(); i++) {
+            assertTrue(
+                graded.getJSONArray(i).similar(
+                    generator.getRoute(AVERAGE_GRADE, i)
+                )
+            );
+        }
+    }
+
+    @Test
+    void missingCacheFile() {
+        assertThrows(
+            IOException.class,
+            () -> new RouteGenerator(new File("/dev/null/", "missing.json"))
+        );
+    }
+
+    @Test
+    void gradeWithoutCachedRoutes() {
+        assertFalse(RouteGenerator.usesStaticRoute(AVERAGE_GRADE));
+        assertEquals(0, generator.routeCount(0));
+    }
+}
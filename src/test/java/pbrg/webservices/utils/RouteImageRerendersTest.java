@@ -0,0 +1,231 @@
+package pbrg.webservices.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static pbrg.webservices.database.AuthenticationController.deleteUser;
+import static pbrg.webservices.database.AuthenticationControllerTest
+    .createTestUser;
+import static pbrg.webservices.database.GymController.deleteGym;
+import static pbrg.webservices.database.GymControllerTest.createTestGym;
+import static pbrg.webservices.database.RouteController.addImageToRoute;
+import static pbrg.webservices.database.RouteController.addRoute;
+import static pbrg.webservices.database.TestDatabase.closeTestDatabaseInThread;
+import static pbrg.webservices.database.TestDatabase.getTestDataSource;
+import static pbrg.webservices.database.TestDatabase.startTestDatabaseInThread;
+import static pbrg.webservices.database.WallController.deleteWall;
+import static pbrg.webservices.database.WallControllerTest.createTestWall;
+import static pbrg.webservices.utils.RouteUtils.getRouteImageFileName;
+import static pbrg.webservices.utils.ServletUtils.getRouteImagePath;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.UUID;
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import pbrg.webservices.database.DatabaseController;
+
+class RouteImageRerendersTest {
+
+    /** Time allowed for a job to finish. */
+    private static final Duration WAIT = Duration.ofSeconds(30);
+
+    /** A route's holds. */
+    private static final String HOLDS = "[{x: 0.25, y: 0.25}]";
+
+    /** Other holds. */
+    private static final String OTHER_HOLDS = "[{x: 0.75, y: 0.75}]";
+
+    /** The re-renders under test: one thread. */
+    private RouteImageRerenders rerenders;
+
+    /** The route creator. */
+    private int userId;
+
+    /** The gym of the wall. */
+    private int gymId;
+
+    /** The wall of the routes. */
+    private int wallId;
+
+    @BeforeAll
+    static void startResources() throws IllegalStateException {
+        startTestDatabaseInThread();
+
+        // use the test database
+        DatabaseController.setDataSource(getTestDataSource());
+    }
+
+    @AfterAll
+    static void closeResources() {
+        closeTestDatabaseInThread();
+    }
+
+    @BeforeEach
+    void createModels() {
+        rerenders = new RouteImageRerenders(1, Duration.ofMinutes(1));
+        userId = createTestUser();
+        gymId = createTestGym();
+        wallId = createTestWall(gymId);
+    }
+
+    @AfterEach
+    void deleteModels() {
+        rerenders.close();
+        assertTrue(deleteWall(wallId));
+        assertTrue(deleteGym(gymId));
+        assertTrue(deleteUser(userId));
+    }
+
+    /**
+     * Store a route on the test wall, with a stale image.
+     * @param holds the route's holds
+     * @param grade the route's grade
+     * @param staleImage the stale image file name
+     * @return the route id
+     */
+    private int staleRoute(
+        final String holds, final int grade, final String staleImage
+    ) {
+        Integer routeId = addRoute(holds, grade, userId, wallId);
+        assertNotNull(routeId);
+        assertTrue(addImageToRoute(routeId, staleImage));
+        return routeId;
+    }
+
+    /**
+     * Write a stale route image file.
+     * @return the file
+     * @throws IOException if the file cannot be written
+     */
+    private static File staleImage() throws IOException {
+        File image = new File(
+            getRouteImagePath(), "rstale" + UUID.randomUUID() + ".jpg"
+        );
+        Files.write(image.toPath(), new byte[] {1, 2, 3});
+        return image;
+    }
+
+    @Test
+    void rerenderPointsRoutesAtNewImages() throws IOException {
+        // given: two routes on the same holds, and one on others, all with
+        // a stale image
+        File stale = staleImage();
+        int routeId = staleRoute(HOLDS, 1, stale.getName());
+        int sameHoldsRouteId = staleRoute(HOLDS, 2, stale.getName());
+        int otherRouteId = staleRoute(OTHER_HOLDS, 1, stale.getName());
+
+        // when: re-rendering the wall's route images
+        RouteImageRerenders.Job job = rerenders.submit(wallId);
+        assertNotNull(job);
+        assertTrue(job.await(WAIT));
+
+        // then: each hold set is rendered once
+        assertEquals(RouteImageRerenders.Status.SUCCEEDED, job.getStatus());
+        assertEquals(2, job.getTotal());
+        assertEquals(2, job.getRendered());
+        assertEquals(0, job.getFailed());
+        assertNull(job.getError());
+
+        // and the routes point at the new images, sharing one per hold set
+        String image = getRouteImageFileName(routeId);
+        String otherImage = getRouteImageFileName(otherRouteId);
+        assertNotNull(image);
+        assertNotNull(otherImage);
+        assertEquals(image, getRouteImageFileName(sameHoldsRouteId));
+        assertNotEquals(image, otherImage);
+        assertTrue(new File(getRouteImagePath(), image).isFile());
+        assertTrue(new File(getRouteImagePath(), otherImage).isFile());
+
+        // and the stale image is deleted
+        assertFalse(stale.exists());
+
+        // after: delete the routes, and their images
+        RouteUtils.deleteRoute(routeId);
+        RouteUtils.deleteRoute(sameHoldsRouteId);
+        RouteUtils.deleteRoute(otherRouteId);
+        assertFalse(new File(getRouteImagePath(), image).exists());
+    }
+
+    @Test
+    void cancelledJobLeavesRoutes() throws IOException {
+        // given: a route with a stale image, and a job ahead of its own
+        File stale = staleImage();
+        int routeId = staleRoute(HOLDS, 1, stale.getName());
+        int otherGymId = createTestGym();
+        int otherWallId = createTestWall(otherGymId);
+        RouteImageRerenders.Job ahead = rerenders.submit(otherWallId);
+        assertNotNull(ahead);
+
+        // when: cancelling its job before it runs
+        RouteImageRerenders.Job job = rerenders.submit(wallId);
+        assertNotNull(job);
+        job.cancel();
+
+        // then: the route keeps its image
+        assertTrue(job.await(WAIT));
+        assertEquals(RouteImageRerenders.Status.CANCELLED, job.getStatus());
+        assertEquals(stale.getName(), getRouteImageFileName(routeId));
+        assertTrue(stale.exists());
+        assertEquals("cancelled", job.toJSON().getString("status"));
+
+        // after: delete the models
+        assertTrue(ahead.await(WAIT));
+        RouteUtils.deleteRoute(routeId);
+        assertFalse(stale.exists());
+        assertTrue(deleteWall(otherWallId));
+        assertTrue(deleteGym(otherGymId));
+    }
+
+    @Test
+    void unknownWallFails() {
+        // when: re-rendering a wall that does not exist
+        RouteImageRerenders.Job job = rerenders.submit(-1);
+        assertNotNull(job);
+
+        // then: the job fails
+        assertTrue(job.await(WAIT));
+        assertEquals(RouteImageRerenders.Status.FAILED, job.getStatus());
+        assertEquals("Wall does not exist", job.getError());
+        assertEquals("failed", job.toJSON().getString("status"));
+    }
+
+    @Test
+    void finishedJobKeptThenReplaced() {
+        // given: a finished job
+        RouteImageRerenders.Job job = rerenders.submit(wallId);
+        assertNotNull(job);
+        assertTrue(job.await(WAIT));
+
+        // then: it is found by id, and described
+        assertSame(job, rerenders.get(job.getId()));
+        JSONObject json = job.toJSON();
+        assertEquals(job.getId(), json.getString("jobId"));
+        assertEquals(wallId, json.getInt("wallId"));
+        assertEquals(0, json.getInt("total"));
+
+        // when: re-rendering the wall again, then: a new job runs
+        RouteImageRerenders.Job again = rerenders.submit(wallId);
+        assertNotNull(again);
+        assertNotEquals(job.getId(), again.getId());
+        assertTrue(again.await(WAIT));
+        assertEquals(2, rerenders.size());
+    }
+
+    @Test
+    void closedRerendersRejectJobs() {
+        rerenders.close();
+        assertNull(rerenders.submit(wallId));
+        assertEquals(0, rerenders.size());
+    }
+}
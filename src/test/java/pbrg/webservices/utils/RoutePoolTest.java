@@ -0,0 +1,226 @@
+package pbrg.webservices.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class RoutePoolTest {
+
+    /** The test wall id. */
+    private static final int WALL_ID = 3;
+
+    /** The test wall image. */
+    private static final String WALL_IMAGE = "wall.jpg";
+
+    /** The average Hueco grade. */
+    private static final int AVERAGE_GRADE = 6;
+
+    /** Low-water mark of the test pool. */
+    private static final int LOW_WATER = 1;
+
+    /** High-water mark of the test pool. */
+    private static final int HIGH_WATER = 3;
+
+    /** Time allowed for a refill, in milliseconds. */
+    private static final long REFILL_WAIT_MILLIS = 5000;
+
+    /** Where the test pool renders images. */
+    @TempDir
+    private Path imageDir;
+
+    /** Version of the test wall image, as routes are drawn on it. */
+    private long wallVersion = 1;
+
+    /** The number of routes created. */
+    private final AtomicInteger created = new AtomicInteger();
+
+    /** The pool under test. */
+    private RoutePool pool;
+
+    /**
+     * Create a ready route with an empty image file.
+     * @param wallImageFileName the wall image
+     * @param grade the grade
+     * @return the ready route
+     * @throws IOException if the image cannot be created
+     */
+    private RoutePool.ReadyRoute createRoute(
+        final String wallImageFileName, final int grade
+    ) throws IOException {
+        File image = Files.createFile(imageDir.resolve(
+            "r" + created.incrementAndGet() + "-" + wallImageFileName
+        )).toFile();
+        return new RoutePool.ReadyRoute(new JSONArray(), image, wallVersion);
+    }
+
+    /**
+     * Claim a route of the test wall and grade.
+     * @return the ready route, null if none is ready
+     */
+    private RoutePool.ReadyRoute claim() {
+        return pool.claim(WALL_ID, WALL_IMAGE, wallVersion, AVERAGE_GRADE);
+    }
+
+    /**
+     * Wait until a number of routes are ready.
+     * @param count the number of routes
+     * @throws InterruptedException if interrupted
+     */
+    private void awaitReady(final int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + REFILL_WAIT_MILLIS;
+        while (pool.readyCount(WALL_ID, WALL_IMAGE, AVERAGE_GRADE) < count
+            && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(
+            count, pool.readyCount(WALL_ID, WALL_IMAGE, AVERAGE_GRADE)
+        );
+    }
+
+    @AfterEach
+    void closePool() {
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    @Test
+    void missRefillsThenHits() throws InterruptedException {
+        // given: an empty pool
+        pool = new RoutePool(this::createRoute, LOW_WATER, HIGH_WATER);
+
+        // when: claiming, then: a miss, which refills to the high water
+        assertNull(claim());
+        awaitReady(HIGH_WATER);
+
+        // when: claiming again, then: a hit
+        RoutePool.ReadyRoute route = claim();
+        assertNotNull(route);
+        assertTrue(route.getImage().exists());
+        assertEquals(1, pool.getHits());
+        assertEquals(1, pool.getMisses());
+
+        JSONObject metrics = pool.getMetrics();
+        assertEquals(1, metrics.getLong("hits"));
+        assertEquals(1, metrics.getLong("misses"));
+        assertEquals(HIGH_WATER, metrics.getLong("generated"));
+    }
+
+    @Test
+    void refillsOnlyBelowLowWater() throws InterruptedException {
+        // given: a full queue
+        pool = new RoutePool(this::createRoute, LOW_WATER, HIGH_WATER);
+        claim();
+        awaitReady(HIGH_WATER);
+
+        // when: claiming down to the low water
+        for (int i = LOW_WATER; i < HIGH_WATER; i++) {
+            assertNotNull(claim());
+        }
+
+        // then: nothing more is generated
+        assertEquals(LOW_WATER, pool.readyCount(
+            WALL_ID, WALL_IMAGE, AVERAGE_GRADE
+        ));
+        assertEquals(HIGH_WATER, created.get());
+
+        // when: claiming below the low water, then: refilled
+        assertNotNull(claim());
+        awaitReady(HIGH_WATER);
+    }
+
+    @Test
+    void failingFactoryKeepsMissing() throws InterruptedException {
+        // given: a factory that always fails
+        pool = new RoutePool(
+            (wallImage, grade) -> {
+                throw new IOException("Route generation failed");
+            },
+            LOW_WATER, HIGH_WATER
+        );
+
+        // then: claims miss
+        assertNull(claim());
+        Thread.sleep(100);
+        assertNull(claim());
+        assertEquals(2, pool.getMisses());
+    }
+
+    @Test
+    void closeDeletesUnclaimedImages() throws InterruptedException {
+        // given: ready routes
+        pool = new RoutePool(this::createRoute, LOW_WATER, HIGH_WATER);
+        claim();
+        awaitReady(HIGH_WATER);
+        File[] images = imageDir.toFile().listFiles();
+        assertNotNull(images);
+        assertEquals(HIGH_WATER, images.length);
+
+        // when: closing the pool
+        pool.close();
+
+        // then: the images are deleted
+        for (File image : images) {
+            assertFalse(image.exists());
+        }
+    }
+
+    @Test
+    void staleRoutesDiscarded() throws InterruptedException {
+        // given: a full queue
+        pool = new RoutePool(this::createRoute, LOW_WATER, HIGH_WATER);
+        claim();
+        awaitReady(HIGH_WATER);
+        File image = claim().getImage();
+        awaitReady(HIGH_WATER - 1);
+
+        // when: the wall image changes, then: its routes are discarded
+        wallVersion++;
+        assertNull(claim());
+        assertEquals(HIGH_WATER - 1, pool.getMetrics().getLong("stale"));
+        awaitReady(HIGH_WATER);
+        assertTrue(image.exists());
+
+        // and the refilled routes are drawn on the new wall image
+        RoutePool.ReadyRoute route = claim();
+        assertNotNull(route);
+        assertEquals(wallVersion, route.getWallVersion());
+    }
+
+    @Test
+    void invalidGradeRejected() {
+        // given: a pool
+        pool = new RoutePool(this::createRoute, LOW_WATER, HIGH_WATER);
+        int grade = RouteGenerator.MAX_GRADE + 1;
+
+        // when: claiming an invalid grade, then: rejected, not refilled
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> pool.claim(WALL_ID, WALL_IMAGE, wallVersion, grade)
+        );
+        assertEquals(0, pool.readyCount(WALL_ID, WALL_IMAGE, grade));
+        assertEquals(0, created.get());
+    }
+
+    @Test
+    void invalidWaterMarks() {
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> new RoutePool(this::createRoute, HIGH_WATER, LOW_WATER)
+        );
+    }
+}
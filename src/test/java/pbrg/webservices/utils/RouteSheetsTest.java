@@ -0,0 +1,180 @@
+package pbrg.webservices.utils;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import pbrg.webservices.models.Route;
+
+class RouteSheetsTest {
+
+    /** The route image path before the test. */
+    private String routeImagePath;
+
+    /** Directory of the test's sheets. */
+    @TempDir
+    Path dir;
+
+    @BeforeEach
+    void useTemporaryDirectory() {
+        routeImagePath = ServletUtils.getRouteImagePath();
+        ServletUtils.setRouteImagePath(dir.toString());
+    }
+
+    @AfterEach
+    void restoreDirectory() {
+        ServletUtils.setRouteImagePath(routeImagePath);
+    }
+
+    /**
+     * Create routes, in descending id order.
+     * @param count the number of routes
+     * @return the routes
+     */
+    private static List<Route> routes(final int count) {
+        List<Route> routes = new ArrayList<>();
+        for (int id = count; id > 0; id--) {
+            routes.add(new Route(id, 1, "Route #" + id));
+        }
+        return routes;
+    }
+
+    @Test
+    void pagesSortedById() {
+        // given: routes out of order
+        List<Route> routes = routes(10);
+
+        // then: pages are sorted by id, the last one partial
+        assertArrayEquals(
+            new int[] {1, 2, 3, 4},
+            RouteSheets.page(routes, 0, 4).stream()
+                .mapToInt(Route::getRouteId).toArray()
+        );
+        assertArrayEquals(
+            new int[] {9, 10},
+            RouteSheets.page(routes, 2, 4).stream()
+                .mapToInt(Route::getRouteId).toArray()
+        );
+        assertTrue(RouteSheets.page(routes, 3, 4).isEmpty());
+        assertTrue(RouteSheets.page(routes, -1, 4).isEmpty());
+    }
+
+    @Test
+    void emptySheetCached() throws IOException {
+        // given: a list's sheet of no routes
+        RouteSheets.Sheet sheet =
+            RouteSheets.getOrCreateSheet(
+                "u1-g1", "p0x24", new ArrayList<>(), Map.of()
+            );
+        File image = sheet.getImage();
+        long written = image.lastModified();
+
+        // then: it has no tiles
+        assertTrue(image.isFile());
+        assertEquals(0, sheet.getIndex().getJSONArray("routes").length());
+
+        // when: getting it again, then: it is read from disk
+        RouteSheets.Sheet again =
+            RouteSheets.getOrCreateSheet(
+                "u1-g1", "p0x24", new ArrayList<>(), Map.of()
+            );
+        assertEquals(image, again.getImage());
+        assertEquals(written, again.getImage().lastModified());
+        assertEquals(
+            sheet.getIndex().getString("sheetId"),
+            again.getIndex().getString("sheetId")
+        );
+
+        // and another list has its own sheet
+        assertNotEquals(
+            image,
+            RouteSheets.getOrCreateSheet(
+                "u2-g1", "p0x24", new ArrayList<>(), Map.of()
+            ).getImage()
+        );
+    }
+
+    @Test
+    void storedSheetById() throws IOException {
+        // given: a list's sheet
+        RouteSheets.Sheet sheet = RouteSheets.getOrCreateSheet(
+            "u1-g1", "p0x24", new ArrayList<>(), Map.of()
+        );
+        String sheetId = sheet.getIndex().getString("sheetId");
+
+        // then: it is found by its id, but not by another list's
+        RouteSheets.Sheet stored =
+            RouteSheets.getStoredSheet("u1-g1", "p0x24", sheetId);
+        assertNotNull(stored);
+        assertEquals(sheet.getImage(), stored.getImage());
+        assertNull(RouteSheets.getStoredSheet("u2-g1", "p0x24", sheetId));
+
+        // and ids that are not sheet ids are not looked up
+        assertNull(RouteSheets.getStoredSheet("u1-g1", "p0x24", "../x"));
+
+        // when: the sheet is deleted, then: it is not found
+        RouteSheets.deleteSheets("u1-g1");
+        assertNull(RouteSheets.getStoredSheet("u1-g1", "p0x24", sheetId));
+    }
+
+    @Test
+    void prunesOlderSheetsOfPage() throws IOException {
+        // given: sheets of a page, and of a page named alike
+        Files.write(dir.resolve("sheet-u1-g1-p0x24-old.jpg"), new byte[1]);
+        Files.write(dir.resolve("sheet-u1-g1-p0x24-old.json"), new byte[1]);
+        Files.write(dir.resolve("sheet-u1-g1-p0x240-other.jpg"), new byte[1]);
+        Files.write(dir.resolve("sheet-u1-g1-p0x24-new.jpg"), new byte[1]);
+
+        // when: pruning the page's sheets but the new one
+        RouteSheets.pruneSheets("u1-g1", "p0x24", "sheet-u1-g1-p0x24-new");
+
+        // then: only its older sheets are deleted
+        assertFalse(Files.exists(dir.resolve("sheet-u1-g1-p0x24-old.jpg")));
+        assertFalse(Files.exists(dir.resolve("sheet-u1-g1-p0x24-old.json")));
+        assertTrue(Files.exists(dir.resolve("sheet-u1-g1-p0x240-other.jpg")));
+        assertTrue(Files.exists(dir.resolve("sheet-u1-g1-p0x24-new.jpg")));
+
+        // when: deleting the list's, then: none are left
+        RouteSheets.deleteSheets("u1-g1");
+        assertFalse(Files.exists(dir.resolve("sheet-u1-g1-p0x24-new.jpg")));
+    }
+
+    @Test
+    void prunesOldestSheetsOfList() throws IOException {
+        // given: a full list of sheets, each page's written in turn
+        long written = System.currentTimeMillis();
+        for (int page = 0; page < RouteSheets.MAX_SHEETS_PER_LIST; page++) {
+            Path sheet = dir.resolve("sheet-u1-g1-p" + page + "x24-id.jpg");
+            Files.write(sheet, new byte[1]);
+            assertTrue(sheet.toFile().setLastModified(
+                written - (RouteSheets.MAX_SHEETS_PER_LIST - page) * 1000L
+            ));
+        }
+        Files.write(dir.resolve("sheet-u1-g10-p0x24-id.jpg"), new byte[1]);
+
+        // when: a sheet of another page is written
+        Files.write(dir.resolve("sheet-u1-g1-p0x12-id.jpg"), new byte[1]);
+        RouteSheets.pruneSheets("u1-g1", "p0x12", "sheet-u1-g1-p0x12-id");
+
+        // then: the list's oldest sheet is deleted, and only it
+        assertFalse(Files.exists(dir.resolve("sheet-u1-g1-p0x24-id.jpg")));
+        assertTrue(Files.exists(dir.resolve("sheet-u1-g1-p1x24-id.jpg")));
+        assertTrue(Files.exists(dir.resolve("sheet-u1-g1-p0x12-id.jpg")));
+        assertTrue(Files.exists(dir.resolve("sheet-u1-g10-p0x24-id.jpg")));
+    }
+}
@@ -2,6 +2,7 @@ package pbrg.webservices.utils;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -17,19 +18,36 @@ import static pbrg.webservices.database.GymController.deleteGym;
 import static pbrg.webservices.database.GymControllerTest.createTestGym;
 import static pbrg.webservices.database.RouteController.addImageToRoute;
 import static pbrg.webservices.database.RouteController.addRoute;
+import static pbrg.webservices.database.RouteController
+    .countRouteImageReferences;
+import static pbrg.webservices.database.RouteController.getRouteByRouteId;
+import static pbrg.webservices.database.RouteController
+    .getRouteImagePlaceholder;
 import static pbrg.webservices.database.RouteController.routeExists;
 import static pbrg.webservices.database.TestDatabase.closeTestDatabaseInThread;
 import static pbrg.webservices.database.TestDatabase.getTestDataSource;
 import static pbrg.webservices.database.TestDatabase.startTestDatabaseInThread;
 import static pbrg.webservices.database.WallController.addWall;
 import static pbrg.webservices.database.WallController.deleteWall;
+import static pbrg.webservices.database.WallController.getWallIdFromRoute;
+import static pbrg.webservices.database.WallController
+    .getWallImagePlaceholder;
+import static pbrg.webservices.database.WallController
+    .setWallImagePlaceholder;
 import static pbrg.webservices.database.WallControllerTest.createTestWall;
 import static pbrg.webservices.utils.RouteUtils.createAndStoreRouteImage;
+import static pbrg.webservices.utils.RouteUtils.createRouteImage;
 import static pbrg.webservices.utils.RouteUtils.createRouteImagePython;
+import static pbrg.webservices.utils.RouteUtils.generateAndStoreRoute;
 import static pbrg.webservices.utils.RouteUtils.generateRouteMoonBoard;
+import static pbrg.webservices.utils.RouteUtils.getOrCreateRouteImage;
+import static pbrg.webservices.utils.RouteUtils
+    .getOrCreateWallImagePlaceholder;
+import static pbrg.webservices.utils.RouteUtils.getRouteGenerator;
 import static pbrg.webservices.utils.RouteUtils.getPythonScriptsDir;
 import static pbrg.webservices.utils.RouteUtils.getRouteContentJSONArray;
 import static pbrg.webservices.utils.RouteUtils.getRouteImageFileName;
+import static pbrg.webservices.utils.RouteUtils.plotHoldsOnImage;
 import static pbrg.webservices.utils.RouteUtils.plotHoldsOnImagePython;
 import static pbrg.webservices.utils.RouteUtils.resetPythonScriptsDirectory;
 import static pbrg.webservices.utils.RouteUtils.setPythonScriptsDir;
@@ -40,6 +58,12 @@ import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.json.JSONArray;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
@@ -132,6 +156,42 @@ final class RouteUtilsTest {
         assertTrue(file.delete());
     }
 
+    @Test
+    void plotHoldsOnImageInProcess() throws IOException {
+        // given: holds, paths, route ID, working directory
+        JSONArray holds = generateRouteMoonBoard(AVERAGE_GRADE);
+        String wallImageFilePath = "MoonBoard2016.jpg";
+        String workingDirectory = ServletUtils.getWallImagePath();
+
+        // when: plotting holds on image without python
+        String newFile = plotHoldsOnImage(
+            String.valueOf(EXAMPLE_ROUTE_ID), wallImageFilePath,
+            workingDirectory, workingDirectory,
+            holds
+        );
+
+        // then: the file is named as the python script names it
+        assertEquals("r" + EXAMPLE_ROUTE_ID + "-MoonBoard2016.jpg", newFile);
+
+        // after: remove the file
+        File file = new File(getRouteImagePath(), newFile);
+        assertTrue(file.delete());
+    }
+
+    @Test
+    void plotHoldsOnImageWallDoesNotExist() {
+        assertThrows(
+            // then: an IOException should be thrown
+            IOException.class,
+
+            // when: plotting holds on a wall image that does not exist
+            () -> plotHoldsOnImage(
+                "-1", "missing.jpg", "/dev/null/", "/dev/null/",
+                new JSONArray()
+            )
+        );
+    }
+
     @Test
     void generateRouteMoonBoardFileDoesNotExist() {
         // given: a file path that does not exist
@@ -190,6 +250,15 @@ final class RouteUtilsTest {
         assertNull(routeImageFileName);
     }
 
+    @Test
+    void createRouteImageNullWallFile() {
+        // when: trying to create the thumbnail of a route that does not exist
+        String routeImageFileName = createRouteImage(INVALID_ROUTE_ID);
+
+        // then: routeImageFileName should be null
+        assertNull(routeImageFileName);
+    }
+
     @Test
     void createRouteImagePythonEmptyHoldArray()
         throws NullPointerException {
@@ -279,6 +348,211 @@ final class RouteUtilsTest {
         assertTrue(deleteUser(userId));
     }
 
+    @Test
+    void generateAndStoreRouteReusesDuplicates() throws IOException {
+        // given: two users, a gym (given a MoonBoard wall), the static route
+        int grade = 1;
+        int userId = createTestUser();
+        Integer otherUserId = addUser("other", "other@mail.com", "test");
+        assertNotNull(otherUserId);
+        int gymId = createTestGym();
+
+        // when: a user generates the same route twice
+        int routeId = generateAndStoreRoute(userId, gymId, grade);
+        int againRouteId = generateAndStoreRoute(userId, gymId, grade);
+
+        // then: their route is reused
+        assertEquals(routeId, againRouteId);
+
+        // when: another user generates it
+        int otherRouteId = generateAndStoreRoute(otherUserId, gymId, grade);
+
+        // then: they get their own route, sharing one image file
+        assertNotEquals(routeId, otherRouteId);
+        assertNotNull(getOrCreateRouteImage(routeId));
+        assertNotNull(getOrCreateRouteImage(otherRouteId));
+        String imageFileName = getRouteByRouteId(routeId).getImageFileName();
+        assertEquals(
+            imageFileName, getRouteByRouteId(otherRouteId).getImageFileName()
+        );
+        File image = new File(getRouteImagePath(), imageFileName);
+        assertEquals(2, countRouteImageReferences(imageFileName));
+
+        // when: deleting the first route, then: the other keeps the image
+        Integer wallId = getWallIdFromRoute(routeId);
+        assertNotNull(wallId);
+        RouteUtils.deleteRoute(routeId);
+        assertTrue(image.exists());
+        assertEquals(1, countRouteImageReferences(imageFileName));
+
+        // when: deleting the last route, then: the image is deleted
+        RouteUtils.deleteRoute(otherRouteId);
+        assertFalse(image.exists());
+
+        // after: delete models
+        assertTrue(deleteWall(wallId));
+        assertTrue(deleteGym(gymId));
+        assertTrue(deleteUser(userId));
+        assertTrue(deleteUser(otherUserId));
+    }
+
+    @Test
+    void generateAndStoreRouteRendersImageWhenViewed() throws IOException {
+        // given: a user and a gym (given a MoonBoard wall)
+        int grade = 2;
+        int userId = createTestUser();
+        int gymId = createTestGym();
+
+        // when: generating a route
+        int routeId = generateAndStoreRoute(userId, gymId, grade);
+
+        // then: its image is rendered on first view, then reused
+        String routeImage = getOrCreateRouteImage(routeId);
+        assertNotNull(routeImage);
+        assertTrue(new File(getRouteImagePath(), routeImage).exists());
+        assertEquals(routeImage, getRouteImageFileName(routeId));
+        assertEquals(routeImage, getOrCreateRouteImage(routeId));
+
+        // after: delete models
+        Integer wallId = getWallIdFromRoute(routeId);
+        assertNotNull(wallId);
+        RouteUtils.deleteRoute(routeId);
+        assertTrue(deleteWall(wallId));
+        assertTrue(deleteGym(gymId));
+        assertTrue(deleteUser(userId));
+    }
+
+    @Test
+    void renderedImagesHavePlaceholders() throws IOException {
+        // given: a user and a gym (given a MoonBoard wall)
+        int userId = createTestUser();
+        int gymId = createTestGym();
+
+        // when: generating a route
+        int routeId = generateAndStoreRoute(userId, gymId, AVERAGE_GRADE);
+        Integer wallId = getWallIdFromRoute(routeId);
+        assertNotNull(wallId);
+
+        // then: the mocked wall's image has a placeholder
+        String wallPlaceholder = getWallImagePlaceholder(wallId);
+        assertNotNull(wallPlaceholder);
+        assertEquals(ImagePlaceholders.LENGTH, wallPlaceholder.length());
+
+        // and its route image gets one when rendered
+        String routeImage = getOrCreateRouteImage(routeId);
+        assertNotNull(routeImage);
+        String routePlaceholder = getRouteImagePlaceholder(routeImage);
+        assertNotNull(routePlaceholder);
+        assertEquals(ImagePlaceholders.LENGTH, routePlaceholder.length());
+
+        // when: the wall has none, then: it is computed once, and stored
+        assertTrue(setWallImagePlaceholder(wallId, null));
+        assertEquals(wallPlaceholder, getOrCreateWallImagePlaceholder(wallId));
+        assertEquals(wallPlaceholder, getWallImagePlaceholder(wallId));
+        assertNull(getOrCreateWallImagePlaceholder(-1));
+
+        // after: delete models
+        RouteUtils.deleteRoute(routeId);
+        assertTrue(deleteWall(wallId));
+        assertTrue(deleteGym(gymId));
+        assertTrue(deleteUser(userId));
+    }
+
+    @Test
+    void getOrCreateRouteImageRendersOnce()
+        throws InterruptedException, ExecutionException {
+        // given: a route without an image
+        int userId = createTestUser();
+        int gymId = createTestGym();
+        int wallId = createTestWall(gymId);
+        JSONArray route = generateRouteMoonBoard(AVERAGE_GRADE);
+        Integer routeId = addRoute(
+            route.toString(), AVERAGE_GRADE, userId, wallId
+        );
+        assertNotNull(routeId);
+        assertNull(getRouteImageFileName(routeId));
+
+        // when: viewing it concurrently
+        int viewers = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(viewers);
+        List<Future<String>> views = new ArrayList<>();
+        for (int i = 0; i < viewers; i++) {
+            views.add(executor.submit(() -> getOrCreateRouteImage(routeId)));
+        }
+
+        // then: every view gets the one stored image
+        String routeImage = getRouteImageFileName(routeId);
+        for (Future<String> view : views) {
+            String viewed = view.get();
+            assertNotNull(viewed);
+            assertEquals(routeImage, viewed);
+        }
+        executor.shutdown();
+
+        // after: delete models
+        RouteUtils.deleteRoute(routeId);
+        assertTrue(deleteWall(wallId));
+        assertTrue(deleteGym(gymId));
+        assertTrue(deleteUser(userId));
+    }
+
+    @Test
+    void getOrCreateRouteImageInvalidRoute() {
+        assertNull(getOrCreateRouteImage(INVALID_ROUTE_ID));
+    }
+
+    @Test
+    void routeImageKeyAddressesContent() throws IOException {
+        // given: a route on the MoonBoard, in two hold orders
+        JSONArray route = generateRouteMoonBoard(AVERAGE_GRADE);
+        JSONArray reversed = new JSONArray();
+        for (int i = route.length() - 1; i >= 0; i--) {
+            reversed.put(route.get(i));
+        }
+        int gymId = createTestGym();
+        Integer wallId = addWall(
+            gymId, getRouteGenerator().getHoldTable().toJSON().toString(),
+            "MoonBoard2016.jpg"
+        );
+        assertNotNull(wallId);
+
+        // then: the key depends on the holds and wall image, not order
+        String key = RouteUtils.routeImageKey(
+            wallId, "MoonBoard2016.jpg", route
+        );
+        assertEquals(64, key.length());
+        assertEquals(key, RouteUtils.routeImageKey(
+            wallId, "MoonBoard2016.jpg", reversed
+        ));
+        assertNotEquals(key, RouteUtils.routeImageKey(
+            wallId, "wall1.jpg", route
+        ));
+        assertNotEquals(key, RouteUtils.routeImageKey(
+            wallId, "MoonBoard2016.jpg", new JSONArray()
+        ));
+
+        // after: delete models
+        assertTrue(deleteWall(wallId));
+        assertTrue(deleteGym(gymId));
+    }
+
+    @Test
+    void holdFingerprintNeedsHoldTable() throws IOException {
+        // given: a route on a wall with no hold table
+        JSONArray route = generateRouteMoonBoard(1);
+        Integer gymId = addGym("Fingerprint Gym", "Test City");
+        assertNotNull(gymId);
+        Integer wallId = addWall(gymId, "Test Wall", "wall1.jpg");
+        assertNotNull(wallId);
+
+        // then: no fingerprint
+        assertNull(RouteUtils.holdFingerprint(wallId, route));
+
+        // after: delete models
+        assertTrue(deleteWall(wallId));
+        assertTrue(deleteGym(gymId));
+    }
+
     @Test
     void testPathsInProduction() {
         // given: the production environment
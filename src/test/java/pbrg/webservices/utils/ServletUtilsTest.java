@@ -1,12 +1,19 @@
 package pbrg.webservices.utils;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static pbrg.webservices.utils.ServletUtils.getContentType;
@@ -18,12 +25,18 @@ import static pbrg.webservices.utils.ServletUtils.returnWallImageAsBitmap;
 import static pbrg.webservices.utils.ServletUtils.setPaths;
 
 import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
-import java.io.FileInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
@@ -86,7 +99,9 @@ class ServletUtilsTest {
 
         // Then
         verify(response).setContentType("image/jpeg");
-        verify(outputStream).write(any(byte[].class));
+        verify(response).setContentLengthLong(new File(filePath).length());
+        verify(outputStream, atLeastOnce())
+            .write(any(byte[].class), anyInt(), anyInt());
     }
 
     @Test
@@ -121,7 +136,8 @@ class ServletUtilsTest {
 
         // then
         verify(response).setContentType("image/jpeg");
-        verify(outputStream).write(any(byte[].class));
+        verify(outputStream, atLeastOnce())
+            .write(any(byte[].class), anyInt(), anyInt());
     }
 
     @Test
@@ -137,7 +153,8 @@ class ServletUtilsTest {
 
         // then
         verify(response).setContentType("image/jpeg");
-        verify(outputStream).write(any(byte[].class));
+        verify(outputStream, atLeastOnce())
+            .write(any(byte[].class), anyInt(), anyInt());
     }
 
     @Test
@@ -157,19 +174,246 @@ class ServletUtilsTest {
         );
     }
 
+    /**
+     * Get a servlet output stream writing to a buffer.
+     * @param body the buffer
+     * @return the output stream
+     */
+    private static ServletOutputStream bufferedOutput(
+        final ByteArrayOutputStream body
+    ) {
+        return new ServletOutputStream() {
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(final WriteListener listener) { }
+
+            @Override
+            public void write(final int b) {
+                body.write(b);
+            }
+        };
+    }
+
     @Test
-    void getBytesFromFileInputStreamNonMatchingSizes() throws IOException {
-        FileInputStream mockedFis = mock(FileInputStream.class);
-        when(mockedFis.available()).thenReturn(0);
-        when(mockedFis.read(any(byte[].class))).thenReturn(1);
+    void returnImageAsBitmapStreamsWholeFile() throws IOException {
+        // given a response writing to a buffer
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        when(response.getOutputStream()).thenReturn(bufferedOutput(body));
+        File file = new File(getWallImagePath(), "MoonBoard2016.jpg");
 
-        assertThrows(
-            // then: expect a IOException
-            IOException.class,
+        // when
+        returnImageAsBitmap(response, file.getPath());
+
+        // then the body is the file, with its length up front
+        verify(response).setContentLengthLong(file.length());
+        assertArrayEquals(
+            Files.readAllBytes(file.toPath()), body.toByteArray()
+        );
+    }
+
+    @Test
+    void returnImageAsBitmapSendsValidators() throws IOException {
+        // given an image
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        when(response.getOutputStream())
+            .thenReturn(mock(ServletOutputStream.class));
+        File file = new File(getWallImagePath(), "MoonBoard2016.jpg");
+
+        // when
+        returnImageAsBitmap(response, file.getPath());
+
+        // then its validators and caching policy are sent
+        verify(response).setHeader(
+            "ETag",
+            ServletUtils.entityTag(
+                file.getName(), file.length(), file.lastModified()
+            )
+        );
+        verify(response).setDateHeader("Last-Modified", file.lastModified());
+        verify(response).setHeader(
+            "Cache-Control", ServletUtils.IMAGE_CACHE_CONTROL
+        );
+        verify(response).setStatus(HttpServletResponse.SC_OK);
+    }
+
+    @Test
+    void returnImageAsBitmapNotModified() throws IOException {
+        // given a request holding the current image
+        File file = new File(getWallImagePath(), "MoonBoard2016.jpg");
+        String entityTag = ServletUtils.entityTag(
+            file.getName(), file.length(), file.lastModified()
+        );
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getHeader("If-None-Match")).thenReturn(entityTag);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+
+        // when
+        returnImageAsBitmap(request, response, file.getPath());
+
+        // then: 304, without the image
+        verify(response).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        verify(response, never()).setContentLengthLong(anyLong());
+        verify(response, never()).getOutputStream();
+    }
+
+    @Test
+    void entityTagChangesWithFile() {
+        String tag = ServletUtils.entityTag("wall.jpg", 10, 1000);
+        assertTrue(tag.startsWith("\"") && tag.endsWith("\""));
+        assertEquals(tag, ServletUtils.entityTag("wall.jpg", 10, 1000));
+        assertNotEquals(tag, ServletUtils.entityTag("wall.png", 10, 1000));
+        assertNotEquals(tag, ServletUtils.entityTag("wall.jpg", 11, 1000));
+        assertNotEquals(tag, ServletUtils.entityTag("wall.jpg", 10, 2000));
+    }
+
+    @Test
+    void notModifiedIfNoneMatch() {
+        String tag = ServletUtils.entityTag("wall.jpg", 10, 1000);
+        HttpServletRequest request = mock(HttpServletRequest.class);
+
+        // a listed, weak or wildcard tag matches
+        when(request.getHeader("If-None-Match"))
+            .thenReturn("\"other\", W/" + tag);
+        assertTrue(ServletUtils.notModified(request, tag, 1000));
+        when(request.getHeader("If-None-Match")).thenReturn("*");
+        assertTrue(ServletUtils.notModified(request, tag, 1000));
+
+        // other tags do not, even if not modified since
+        when(request.getHeader("If-None-Match")).thenReturn("\"other\"");
+        when(request.getDateHeader("If-Modified-Since")).thenReturn(5000L);
+        assertFalse(ServletUtils.notModified(request, tag, 1000));
+
+        // without a request, the image is sent
+        assertFalse(ServletUtils.notModified(null, tag, 1000));
+    }
 
-            // when: getBytesFromFileInputStream is called
-            () -> ServletUtils.getBytesFromFileInputStream(mockedFis)
+    @Test
+    void notModifiedIfModifiedSince() {
+        String tag = ServletUtils.entityTag("wall.jpg", 10, 1500);
+        HttpServletRequest request = mock(HttpServletRequest.class);
+
+        // dates compare to the second
+        when(request.getDateHeader("If-Modified-Since")).thenReturn(1000L);
+        assertTrue(ServletUtils.notModified(request, tag, 1500));
+        when(request.getDateHeader("If-Modified-Since")).thenReturn(999L);
+        assertFalse(ServletUtils.notModified(request, tag, 1500));
+
+        // absent or malformed dates do not match
+        when(request.getDateHeader("If-Modified-Since")).thenReturn(-1L);
+        assertFalse(ServletUtils.notModified(request, tag, 1500));
+        when(request.getDateHeader("If-Modified-Since"))
+            .thenThrow(new IllegalArgumentException());
+        assertFalse(ServletUtils.notModified(request, tag, 1500));
+    }
+
+    @Test
+    void returnImageAsBitmapRange() throws IOException {
+        // given a request for part of an image
+        File file = new File(getWallImagePath(), "MoonBoard2016.jpg");
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getHeader("Range")).thenReturn("bytes=100-199");
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        when(response.getOutputStream()).thenReturn(bufferedOutput(body));
+
+        // when
+        returnImageAsBitmap(request, response, file.getPath());
+
+        // then: 206, with only that part
+        verify(response).setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        verify(response).setHeader(
+            "Content-Range", "bytes 100-199/" + file.length()
+        );
+        verify(response).setContentLengthLong(100);
+        assertArrayEquals(
+            Arrays.copyOfRange(Files.readAllBytes(file.toPath()), 100, 200),
+            body.toByteArray()
+        );
+    }
+
+    @Test
+    void returnImageAsBitmapRangeNotSatisfiable() throws IOException {
+        // given a request for bytes beyond an image
+        File file = new File(getWallImagePath(), "MoonBoard2016.jpg");
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getHeader("Range"))
+            .thenReturn("bytes=" + file.length() + "-");
+        HttpServletResponse response = mock(HttpServletResponse.class);
+
+        // when
+        returnImageAsBitmap(request, response, file.getPath());
+
+        // then: 416, with the image's size
+        verify(response).setHeader("Content-Range", "bytes */" + file.length());
+        verify(response).sendError(
+            HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE
         );
+        verify(response, never()).getOutputStream();
+    }
+
+    @Test
+    void requestedRangesIfRange() {
+        String tag = ServletUtils.entityTag("wall.jpg", 1000, 1500);
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getHeader("Range")).thenReturn("bytes=0-9");
+        List<ByteRange> firstTen = List.of(new ByteRange(0, 9));
+
+        // without If-Range, or naming this version, ranges are served
+        assertEquals(
+            firstTen, ServletUtils.requestedRanges(request, tag, 1500, 1000)
+        );
+        when(request.getHeader("If-Range")).thenReturn(tag);
+        assertEquals(
+            firstTen, ServletUtils.requestedRanges(request, tag, 1500, 1000)
+        );
+        when(request.getHeader("If-Range"))
+            .thenReturn("Thu, 01 Jan 1970 00:00:01 GMT");
+        when(request.getDateHeader("If-Range")).thenReturn(1000L);
+        assertEquals(
+            firstTen, ServletUtils.requestedRanges(request, tag, 1500, 1000)
+        );
+
+        // naming another version (or a weak tag), the whole image is
+        when(request.getDateHeader("If-Range")).thenReturn(0L);
+        assertNull(ServletUtils.requestedRanges(request, tag, 1500, 1000));
+        when(request.getHeader("If-Range")).thenReturn("\"other\"");
+        assertNull(ServletUtils.requestedRanges(request, tag, 1500, 1000));
+        when(request.getHeader("If-Range")).thenReturn("W/" + tag);
+        assertNull(ServletUtils.requestedRanges(request, tag, 1500, 1000));
+    }
+
+    @Test
+    void returnImageAsBitmapServesFromCache() throws IOException {
+        // given an empty image byte cache
+        ImageByteCache original = ServletUtils.getImageByteCache();
+        ImageByteCache cache =
+            new ImageByteCache(ImageByteCache.DEFAULT_BUDGET);
+        ServletUtils.setImageByteCache(cache);
+        File file = new File(getWallImagePath(), "MoonBoard2016.jpg");
+
+        // when returning an image twice
+        for (int i = 0; i < 2; i++) {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            HttpServletResponse response = mock(HttpServletResponse.class);
+            when(response.getOutputStream()).thenReturn(bufferedOutput(body));
+            returnImageAsBitmap(response, file.getPath());
+            assertArrayEquals(
+                Files.readAllBytes(file.toPath()), body.toByteArray()
+            );
+        }
+
+        // then it is read from disk once, then served from memory
+        assertEquals(1, cache.misses());
+        assertEquals(1, cache.hits());
+        assertEquals(file.length(), cache.bytes());
+
+        // after: restore the original cache
+        ServletUtils.setImageByteCache(original);
     }
 
     @Test
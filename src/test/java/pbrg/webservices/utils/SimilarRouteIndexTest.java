@@ -0,0 +1,140 @@
+package pbrg.webservices.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class SimilarRouteIndexTest {
+
+    /** Number of holds of the test wall. */
+    private static final int HOLDS = 70;
+
+    /** The test wall id. */
+    private static final int WALL_ID = 1;
+
+    /** Another wall id. */
+    private static final int OTHER_WALL_ID = 2;
+
+    /** The test route difficulty. */
+    private static final int DIFFICULTY = 6;
+
+    /** A route's holds. */
+    private static final long[] ROUTE = bits(1, 8, 15, 22, 29, 36, 50, 64);
+
+    /** The route, with one hold moved. */
+    private static final long[] NEAR_ROUTE =
+        bits(1, 8, 15, 22, 29, 36, 50, 69);
+
+    /** A route sharing no holds with the route. */
+    private static final long[] FAR_ROUTE = bits(2, 9, 16, 23, 30, 37, 51);
+
+    /**
+     * Build a bitset of hold ids.
+     * @param ids the hold ids
+     * @return the bitset
+     */
+    private static long[] bits(final int... ids) {
+        long[] bits = new long[RouteBits.words(HOLDS)];
+        for (int id : ids) {
+            RouteBits.set(bits, id);
+        }
+        return bits;
+    }
+
+    @Test
+    void ranksByHoldOverlap() {
+        // given: a route, an identical route, and a near route
+        SimilarRouteIndex index = new SimilarRouteIndex();
+        index.add(1, WALL_ID, DIFFICULTY, ROUTE);
+        index.add(2, WALL_ID, DIFFICULTY + 1, NEAR_ROUTE);
+        index.add(3, WALL_ID, DIFFICULTY, ROUTE);
+        index.add(4, WALL_ID, DIFFICULTY, FAR_ROUTE);
+
+        // when: finding routes similar to the route
+        List<SimilarRouteIndex.Match> matches = index.similar(1, 10);
+
+        // then: the identical route, then the near route
+        assertTrue(matches.size() >= 2);
+        assertEquals(3, matches.get(0).getRouteId());
+        assertEquals(1.0, matches.get(0).getSimilarity());
+        assertEquals(2, matches.get(1).getRouteId());
+        assertEquals(DIFFICULTY + 1, matches.get(1).getDifficulty());
+        assertEquals(7.0 / 9, matches.get(1).getSimilarity(), 1e-9);
+        assertTrue(matches.stream().noneMatch(
+            match -> match.getRouteId() == 4
+        ));
+    }
+
+    @Test
+    void onlySameWall() {
+        // given: the same holds on two walls
+        SimilarRouteIndex index = new SimilarRouteIndex();
+        index.add(1, WALL_ID, DIFFICULTY, ROUTE);
+        index.add(2, OTHER_WALL_ID, DIFFICULTY, ROUTE);
+
+        // then: no similar routes
+        assertTrue(index.similar(1, 10).isEmpty());
+    }
+
+    @Test
+    void limitsCount() {
+        // given: many identical routes
+        SimilarRouteIndex index = new SimilarRouteIndex();
+        for (int routeId = 1; routeId <= 20; routeId++) {
+            index.add(routeId, WALL_ID, DIFFICULTY, ROUTE);
+        }
+
+        // then: at most count, lowest ids first
+        List<SimilarRouteIndex.Match> matches = index.similar(1, 5);
+        assertEquals(5, matches.size());
+        assertEquals(2, matches.get(0).getRouteId());
+        assertEquals(0, index.similar(1, 0).size());
+    }
+
+    @Test
+    void removeAndReplace() {
+        // given: two identical routes
+        SimilarRouteIndex index = new SimilarRouteIndex();
+        index.add(1, WALL_ID, DIFFICULTY, ROUTE);
+        index.add(2, WALL_ID, DIFFICULTY, ROUTE);
+        assertEquals(2, index.size());
+
+        // when: replacing one with dissimilar holds
+        index.add(2, WALL_ID, DIFFICULTY, FAR_ROUTE);
+
+        // then: still two routes, no longer similar
+        assertEquals(2, index.size());
+        assertTrue(index.similar(1, 10).isEmpty());
+
+        // when: removing one, then: gone
+        index.remove(2);
+        index.remove(2);
+        assertFalse(index.contains(2));
+        assertEquals(1, index.size());
+        assertTrue(index.similar(2, 10).isEmpty());
+    }
+
+    @Test
+    void jaccard() {
+        assertEquals(1.0, SimilarRouteIndex.jaccard(ROUTE, ROUTE));
+        assertEquals(0.0, SimilarRouteIndex.jaccard(ROUTE, FAR_ROUTE));
+        assertEquals(1.0, SimilarRouteIndex.jaccard(bits(), bits()));
+    }
+
+    @Test
+    void signatureOfEqualSetsIsEqual() {
+        assertEquals(
+            SimilarRouteIndex.HASHES, SimilarRouteIndex.signature(ROUTE).length
+        );
+        assertEquals(
+            Arrays.toString(SimilarRouteIndex.signature(ROUTE)),
+            Arrays.toString(SimilarRouteIndex.signature(
+                bits(64, 50, 36, 29, 22, 15, 8, 1)
+            ))
+        );
+    }
+}
@@ -0,0 +1,156 @@
+package pbrg.webservices.utils;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import javax.imageio.ImageIO;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Test images of four coloured quadrants, so tests can check that pixels
+ * end up where they should after decoding, scaling, tiling or rendering.
+ */
+final class TestImages {
+
+    /** Index of the top left quadrant. */
+    static final int TOP_LEFT = 0;
+
+    /** Index of the top right quadrant. */
+    static final int TOP_RIGHT = 1;
+
+    /** Index of the bottom right quadrant. */
+    static final int BOTTOM_RIGHT = 2;
+
+    /** Index of the bottom left quadrant. */
+    static final int BOTTOM_LEFT = 3;
+
+    /** Quadrant colours, clockwise from the top left; none is red. */
+    private static final Color[] COLOURS = {
+        Color.WHITE, Color.GREEN, Color.BLUE, Color.YELLOW
+    };
+
+    /** Greatest difference per channel of a lossily encoded colour. */
+    private static final int TOLERANCE = 24;
+
+    /** Private constructor to prevent instantiation. */
+    private TestImages() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * Get the colour of a quadrant, with the colours turned clockwise.
+     * @param quadrant the quadrant index
+     * @param turns quarter turns of the colours
+     * @return the quadrant's colour, as RGB
+     */
+    static int colour(final int quadrant, final int turns) {
+        return COLOURS[Math.floorMod(quadrant - turns, COLOURS.length)]
+            .getRGB();
+    }
+
+    /**
+     * Get the colour of a quadrant.
+     * @param quadrant the quadrant index
+     * @return the quadrant's colour, as RGB
+     */
+    static int colour(final int quadrant) {
+        return colour(quadrant, 0);
+    }
+
+    /**
+     * Create an image of four coloured quadrants.
+     * @param width the image width
+     * @param height the image height
+     * @param type the image type
+     * @param turns quarter turns of the colours, to make a different image
+     * @return the image
+     */
+    static @NotNull BufferedImage quadrants(
+        final int width, final int height, final int type, final int turns
+    ) {
+        BufferedImage image = new BufferedImage(width, height, type);
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                int quadrant;
+                if (y < height / 2) {
+                    quadrant = x < width / 2 ? TOP_LEFT : TOP_RIGHT;
+                } else {
+                    quadrant = x < width / 2 ? BOTTOM_LEFT : BOTTOM_RIGHT;
+                }
+                image.setRGB(x, y, colour(quadrant, turns));
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Create an image of four coloured quadrants.
+     * @param width the image width
+     * @param height the image height
+     * @param type the image type
+     * @return the image
+     */
+    static @NotNull BufferedImage quadrants(
+        final int width, final int height, final int type
+    ) {
+        return quadrants(width, height, type, 0);
+    }
+
+    /**
+     * Write an image file, in the format of its extension.
+     * @param image the image
+     * @param dir the directory
+     * @param name the file name
+     * @return the image file
+     * @throws IOException if the file cannot be written
+     */
+    static @NotNull File write(
+        @NotNull final BufferedImage image,
+        @NotNull final Path dir,
+        @NotNull final String name
+    ) throws IOException {
+        File file = dir.resolve(name).toFile();
+        assertTrue(
+            ImageIO.write(image, HoldRenderer.formatName(file), file)
+        );
+        return file;
+    }
+
+    /**
+     * Write an image file of four coloured quadrants.
+     * @param dir the directory
+     * @param name the file name, its extension the format
+     * @param width the image width
+     * @param height the image height
+     * @return the image file
+     * @throws IOException if the file cannot be written
+     */
+    static @NotNull File quadrants(
+        @NotNull final Path dir, @NotNull final String name,
+        final int width, final int height
+    ) throws IOException {
+        return write(
+            quadrants(width, height, BufferedImage.TYPE_INT_RGB), dir, name
+        );
+    }
+
+    /**
+     * Assert a pixel is a colour, allowing for lossy encoding.
+     * @param expected the colour, as RGB
+     * @param actual the pixel, as RGB
+     */
+    static void assertNear(final int expected, final int actual) {
+        Color e = new Color(expected);
+        Color a = new Color(actual);
+        assertTrue(
+            Math.abs(e.getRed() - a.getRed()) <= TOLERANCE
+                && Math.abs(e.getGreen() - a.getGreen()) <= TOLERANCE
+                && Math.abs(e.getBlue() - a.getBlue()) <= TOLERANCE,
+            () -> "expected " + e + " but was " + a
+        );
+    }
+}
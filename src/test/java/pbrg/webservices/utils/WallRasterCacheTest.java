@@ -0,0 +1,191 @@
+package pbrg.webservices.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class WallRasterCacheTest {
+
+    /** Width and height of the test walls. */
+    private static final int SIZE = 50;
+
+    /** Size of a test wall's pixel data, in bytes. */
+    private static final long WALL_BYTES = SIZE * SIZE * Integer.BYTES;
+
+    /**
+     * Write a quadrant wall image file, its pixels stored as 3-byte BGR.
+     * @param dir the directory
+     * @param name the file name
+     * @param turns quarter turns of the quadrant colours
+     * @return the wall image file
+     * @throws IOException if the file cannot be written
+     */
+    private static File wall(
+        final Path dir, final String name, final int turns
+    ) throws IOException {
+        return TestImages.write(
+            TestImages.quadrants(
+                SIZE, SIZE, BufferedImage.TYPE_3BYTE_BGR, turns
+            ),
+            dir, name
+        );
+    }
+
+    @Test
+    void negativeBudget() {
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> new WallRasterCache(-1, false)
+        );
+    }
+
+    @Test
+    void decodesOnce(@TempDir final Path dir) throws IOException {
+        // given: a cache and a wall
+        WallRasterCache cache =
+            new WallRasterCache(WallRasterCache.DEFAULT_BUDGET, false);
+        File wall = wall(dir, "wall.png", 0);
+
+        // when: getting the wall twice
+        BufferedImage first = cache.get(wall);
+        BufferedImage second = cache.get(wall);
+
+        // then: the wall is decoded once, into an INT_RGB image with its
+        // quadrants in place
+        assertSame(first, second);
+        assertEquals(BufferedImage.TYPE_INT_RGB, first.getType());
+        assertEquals(
+            TestImages.colour(TestImages.TOP_RIGHT), first.getRGB(SIZE - 1, 0)
+        );
+        assertEquals(
+            TestImages.colour(TestImages.BOTTOM_LEFT), first.getRGB(0, SIZE - 1)
+        );
+        assertEquals(1, cache.misses());
+        assertEquals(1, cache.hits());
+        assertEquals(WALL_BYTES, cache.bytes());
+    }
+
+    @Test
+    void decodesChangedWall(@TempDir final Path dir) throws IOException {
+        // given: a cached wall
+        WallRasterCache cache =
+            new WallRasterCache(WallRasterCache.DEFAULT_BUDGET, false);
+        File wall = wall(dir, "wall.png", 0);
+        cache.get(wall);
+
+        // when: the wall image changes
+        wall(dir, "wall.png", 1);
+        assertTrue(wall.setLastModified(wall.lastModified() + 1000));
+
+        // then: the new wall is decoded, replacing the old
+        assertEquals(
+            TestImages.colour(TestImages.TOP_LEFT, 1),
+            cache.get(wall).getRGB(0, 0)
+        );
+        assertEquals(2, cache.misses());
+        assertEquals(1, cache.size());
+        assertEquals(WALL_BYTES, cache.bytes());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsed(@TempDir final Path dir)
+        throws IOException {
+        // given: a cache with room for two walls, holding two
+        WallRasterCache cache = new WallRasterCache(2 * WALL_BYTES, false);
+        File a = wall(dir, "a.png", 0);
+        File b = wall(dir, "b.png", 1);
+        File c = wall(dir, "c.png", 2);
+        cache.get(a);
+        cache.get(b);
+
+        // when: using the first, then adding a third
+        cache.get(a);
+        cache.get(c);
+
+        // then: the second was evicted, the first kept
+        assertEquals(2, cache.size());
+        assertEquals(2 * WALL_BYTES, cache.bytes());
+        long misses = cache.misses();
+        cache.get(a);
+        assertEquals(misses, cache.misses());
+        cache.get(b);
+        assertEquals(misses + 1, cache.misses());
+    }
+
+    @Test
+    void skipsWallsOverBudget(@TempDir final Path dir) throws IOException {
+        // given: a cache with no room for a wall
+        WallRasterCache cache = new WallRasterCache(WALL_BYTES - 1, false);
+        File wall = wall(dir, "wall.png", 0);
+
+        // when: getting the wall
+        BufferedImage decoded = cache.get(wall);
+
+        // then: the wall is decoded, not cached
+        assertEquals(
+            TestImages.colour(TestImages.TOP_LEFT), decoded.getRGB(0, 0)
+        );
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.bytes());
+    }
+
+    @Test
+    void holdsPixelsOffHeap(@TempDir final Path dir) throws IOException {
+        // given: an off-heap cache and a cached wall
+        WallRasterCache cache =
+            new WallRasterCache(WallRasterCache.DEFAULT_BUDGET, true);
+        File wall = wall(dir, "wall.png", 0);
+        cache.get(wall);
+
+        // when: getting the wall from the cache
+        BufferedImage first = cache.get(wall);
+        BufferedImage second = cache.get(wall);
+
+        // then: each use gets its own copy of the same pixels
+        assertNotSame(first, second);
+        assertEquals(
+            TestImages.colour(TestImages.TOP_LEFT), first.getRGB(0, 0)
+        );
+        assertEquals(
+            TestImages.colour(TestImages.BOTTOM_RIGHT),
+            second.getRGB(SIZE - 1, SIZE - 1)
+        );
+        assertEquals(2, cache.hits());
+    }
+
+    @Test
+    void clearDropsWalls(@TempDir final Path dir) throws IOException {
+        // given: a cached wall
+        WallRasterCache cache =
+            new WallRasterCache(WallRasterCache.DEFAULT_BUDGET, false);
+        cache.get(wall(dir, "wall.png", 0));
+
+        // when: clearing the cache
+        cache.clear();
+
+        // then: nothing is cached
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.bytes());
+    }
+
+    @Test
+    void missingWall(@TempDir final Path dir) {
+        // given: a wall image file that does not exist
+        WallRasterCache cache =
+            new WallRasterCache(WallRasterCache.DEFAULT_BUDGET, false);
+        File wall = dir.resolve("missing.png").toFile();
+
+        // then: getting it throws
+        assertThrows(IOException.class, () -> cache.get(wall));
+        assertEquals(0, cache.size());
+    }
+}
@@ -0,0 +1,266 @@
+package pbrg.webservices.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+import javax.imageio.ImageIO;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class WallTilesTest {
+
+    /** Width of the test wall: two tiles and a bit. */
+    private static final int WIDTH = 2 * WallTiles.TILE_SIZE + 10;
+
+    /** Height of the test wall: one tile and a bit. */
+    private static final int HEIGHT = WallTiles.TILE_SIZE + 20;
+
+    /**
+     * Write a quadrant wall image file.
+     * @param dir the directory
+     * @param name the file name
+     * @return the wall image file
+     * @throws IOException if the file cannot be written
+     */
+    private static File wall(final Path dir, final String name)
+        throws IOException {
+        return TestImages.quadrants(dir, name, WIDTH, HEIGHT);
+    }
+
+    /**
+     * Read a pixel near the top left of a tile.
+     * @param pyramid the pyramid
+     * @param level the level
+     * @param x the tile column
+     * @param y the tile row
+     * @return the pixel, as RGB
+     * @throws IOException if the tile cannot be read
+     */
+    private static int tileRGB(
+        final WallTiles.Pyramid pyramid,
+        final int level, final int x, final int y
+    ) throws IOException {
+        return ImageIO.read(pyramid.tileFile(level, x, y)).getRGB(4, 4);
+    }
+
+    @Test
+    void levels() {
+        assertEquals(1, WallTiles.levels(1, 1));
+        assertEquals(2, WallTiles.levels(2, 1));
+        assertEquals(3, WallTiles.levels(3, 4));
+        assertEquals(11, WallTiles.levels(665, 1023));
+        assertEquals(11, WallTiles.levels(1024, 1));
+        assertEquals(12, WallTiles.levels(1025, 1));
+    }
+
+    @Test
+    void pyramidLevels(@TempDir final Path dir) throws IOException {
+        // given a wall
+        File wall = wall(dir, "wall.jpg");
+
+        // when getting its pyramid
+        WallTiles.Pyramid pyramid = WallTiles.getOrCreatePyramid(wall);
+
+        // then: the top level is full size, each below it half (rounded
+        // up), down to one pixel
+        int top = pyramid.getLevels() - 1;
+        assertEquals(WallTiles.levels(WIDTH, HEIGHT), pyramid.getLevels());
+        assertEquals(WIDTH, pyramid.levelWidth(top));
+        assertEquals(HEIGHT, pyramid.levelHeight(top));
+        assertEquals(WIDTH / 2, pyramid.levelWidth(top - 1));
+        assertEquals(HEIGHT / 2, pyramid.levelHeight(top - 1));
+        assertEquals(1, pyramid.levelWidth(0));
+        assertEquals(1, pyramid.levelHeight(0));
+
+        // and the top level is cut into 3 x 2 tiles
+        assertEquals(3, pyramid.columns(top));
+        assertEquals(2, pyramid.rows(top));
+        assertTrue(pyramid.hasTile(top, 2, 1));
+        assertFalse(pyramid.hasTile(top, 3, 0));
+        assertFalse(pyramid.hasTile(top, 0, 2));
+        assertFalse(pyramid.hasTile(top + 1, 0, 0));
+        assertFalse(pyramid.hasTile(-1, 0, 0));
+    }
+
+    @Test
+    void pyramidTiles(@TempDir final Path dir) throws IOException {
+        // given a wall's pyramid
+        File wall = wall(dir, "wall.jpg");
+        WallTiles.Pyramid pyramid = WallTiles.getOrCreatePyramid(wall);
+
+        // then: every tile is written, edge tiles cropped to the wall
+        for (int level = 0; level < pyramid.getLevels(); level++) {
+            for (int x = 0; x < pyramid.columns(level); x++) {
+                for (int y = 0; y < pyramid.rows(level); y++) {
+                    BufferedImage tile =
+                        ImageIO.read(pyramid.tileFile(level, x, y));
+                    assertNotNull(tile);
+                    assertEquals(
+                        Math.min(
+                            WallTiles.TILE_SIZE,
+                            pyramid.levelWidth(level) - x * WallTiles.TILE_SIZE
+                        ),
+                        tile.getWidth()
+                    );
+                    assertEquals(
+                        Math.min(
+                            WallTiles.TILE_SIZE,
+                            pyramid.levelHeight(level)
+                                - y * WallTiles.TILE_SIZE
+                        ),
+                        tile.getHeight()
+                    );
+                }
+            }
+        }
+
+        // and each top level tile holds its part of the wall
+        int top = pyramid.getLevels() - 1;
+        TestImages.assertNear(
+            TestImages.colour(TestImages.TOP_LEFT), tileRGB(pyramid, top, 0, 0)
+        );
+        TestImages.assertNear(
+            TestImages.colour(TestImages.TOP_RIGHT),
+            tileRGB(pyramid, top, 2, 0)
+        );
+        TestImages.assertNear(
+            TestImages.colour(TestImages.BOTTOM_LEFT),
+            tileRGB(pyramid, top, 0, 1)
+        );
+        TestImages.assertNear(
+            TestImages.colour(TestImages.BOTTOM_RIGHT),
+            tileRGB(pyramid, top, 2, 1)
+        );
+
+        // and described for clients
+        assertEquals(WIDTH, pyramid.toJSON().getInt("width"));
+        assertEquals(HEIGHT, pyramid.toJSON().getInt("height"));
+        assertEquals("jpg", pyramid.toJSON().getString("format"));
+    }
+
+    @Test
+    void pyramidCachedOnDisk(@TempDir final Path dir) throws IOException {
+        // given a wall's pyramid
+        File wall = wall(dir, "wall.jpg");
+        WallTiles.Pyramid built = WallTiles.getOrCreatePyramid(wall);
+        File tile = built.tileFile(0, 0, 0);
+        long written = tile.lastModified();
+
+        // when getting it again
+        WallTiles.Pyramid stored = WallTiles.storedPyramid(wall);
+
+        // then: it is read from disk, not built again
+        assertNotNull(stored);
+        assertEquals(built.toJSON().toString(), stored.toJSON().toString());
+        WallTiles.getOrCreatePyramid(wall);
+        assertEquals(written, tile.lastModified());
+    }
+
+    @Test
+    void pyramidOfChangedWallRebuilt(@TempDir final Path dir)
+        throws IOException {
+        // given a wall's pyramid
+        File wall = wall(dir, "wall.jpg");
+        WallTiles.getOrCreatePyramid(wall);
+
+        // when the wall changes
+        Files.setLastModifiedTime(
+            wall.toPath(), FileTime.fromMillis(wall.lastModified() + 1000)
+        );
+
+        // then: the stored pyramid is stale, and is built again
+        assertNull(WallTiles.storedPyramid(wall));
+        WallTiles.Pyramid rebuilt = WallTiles.getOrCreatePyramid(wall);
+        assertTrue(rebuilt.tileFile(0, 0, 0).exists());
+        assertNotNull(WallTiles.storedPyramid(wall));
+
+        // and no temporary directories are left behind
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(2, files.count());
+        }
+    }
+
+    @Test
+    void pyramidBuiltOnce(@TempDir final Path dir)
+        throws IOException, InterruptedException, ExecutionException {
+        // given a wall, and concurrent requests for its pyramid
+        File wall = wall(dir, "wall.jpg");
+        int threads = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<WallTiles.Pyramid>> pyramids = new ArrayList<>();
+
+        // when each requests the pyramid
+        try {
+            for (int i = 0; i < threads; i++) {
+                pyramids.add(
+                    executor.submit(() -> WallTiles.getOrCreatePyramid(wall))
+                );
+            }
+            for (Future<WallTiles.Pyramid> pyramid : pyramids) {
+                assertTrue(pyramid.get().tileFile(0, 0, 0).exists());
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        // then: one pyramid is left on disk
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(2, files.count());
+        }
+    }
+
+    @Test
+    void missingTileRebuilt(@TempDir final Path dir) throws IOException {
+        // given: a pyramid that has lost a tile
+        File wall = wall(dir, "wall.jpg");
+        WallTiles.Pyramid pyramid = WallTiles.getOrCreatePyramid(wall);
+        int top = pyramid.getLevels() - 1;
+        File tile = pyramid.tileFile(top, 0, 0);
+        assertTrue(tile.delete());
+
+        // when: getting the tile, then: the pyramid is rebuilt with it
+        assertEquals(tile, WallTiles.getOrCreateTile(wall, top, 0, 0));
+        TestImages.assertNear(
+            TestImages.colour(TestImages.TOP_LEFT), tileRGB(pyramid, top, 0, 0)
+        );
+
+        // and tiles outside the pyramid are not found
+        assertNull(WallTiles.getOrCreateTile(wall, top + 1, 0, 0));
+    }
+
+    @Test
+    void tileDirectoriesOfWallsDiffer() {
+        assertNotEquals(
+            WallTiles.tileDirectory(new File("wall.jpg")),
+            WallTiles.tileDirectory(new File("wall.png"))
+        );
+    }
+
+    @Test
+    void unreadableWall(@TempDir final Path dir) throws IOException {
+        File wall = Files.write(dir.resolve("wall.jpg"), new byte[] {1, 2})
+            .toFile();
+        assertThrows(
+            IOException.class, () -> WallTiles.getOrCreatePyramid(wall)
+        );
+        assertFalse(WallTiles.tileDirectory(wall).exists());
+    }
+}